@@ -20,7 +20,16 @@ import cloud.alchemy.ip.api.controller.IpRecordController;
 import cloud.alchemy.ip.api.controller.IpStatsController;
 import cloud.alchemy.ip.api.exception.ApiExceptionHandler;
 import cloud.alchemy.ip.api.mapper.IpRecordMapper;
+import cloud.alchemy.ip.config.IpManagementProperties;
 import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRecordCountEstimator;
+import cloud.alchemy.ip.repository.IpRollupRepository;
+import cloud.alchemy.ip.rollup.IpRollupAggregator;
+import cloud.alchemy.ip.rollup.IpRollupRebuilder;
+import cloud.alchemy.ip.sketch.IpDistinctCounter;
+import cloud.alchemy.ip.sketch.IpHeavyHitterTracker;
+import cloud.alchemy.ip.sketch.IpSketchBackfiller;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -48,16 +57,45 @@ public class IpManagementApiAutoConfiguration {
         return new IpRecordMapper();
     }
 
+    /**
+     * Creates the record controller. Numbered pages report their total as
+     * {@code alchemy.ip.api.count-mode} says unless a request sets {@code count}.
+     */
     @Bean
     @ConditionalOnMissingBean
-    public IpRecordController ipRecordController(IpAddressRepository repository, IpRecordMapper mapper) {
-        return new IpRecordController(repository, mapper);
+    public IpRecordController ipRecordController(IpAddressRepository repository,
+                                                 IpRecordMapper mapper,
+                                                 IpManagementApiProperties properties,
+                                                 ObjectProvider<IpRecordCountEstimator> countEstimator) {
+        return new IpRecordController(repository, mapper, properties.getCountMode(), countEstimator.getIfAvailable());
     }
 
+    /**
+     * Creates the stats controller. It reads from the rollups when they are maintained
+     * ({@code alchemy.ip.rollups.enabled=true}) and {@code alchemy.ip.rollups.serve-stats}
+     * is not turned off, estimates distinct counts from sketches when they are
+     * maintained ({@code alchemy.ip.sketches.enabled=true}), and reads frequent IP
+     * addresses from the heavy-hitter tracker when it runs
+     * ({@code alchemy.ip.heavy-hitters.enabled=true}).
+     */
     @Bean
     @ConditionalOnMissingBean
-    public IpStatsController ipStatsController(IpAddressRepository repository, IpRecordMapper mapper) {
-        return new IpStatsController(repository, mapper);
+    public IpStatsController ipStatsController(IpAddressRepository repository,
+                                               ObjectProvider<IpManagementProperties> properties,
+                                               ObjectProvider<IpRollupAggregator> rollupAggregator,
+                                               ObjectProvider<IpRollupRepository> rollups,
+                                               ObjectProvider<IpRollupRebuilder> rollupRebuilder,
+                                               ObjectProvider<IpDistinctCounter> distinctCounter,
+                                               ObjectProvider<IpSketchBackfiller> sketchBackfiller,
+                                               ObjectProvider<IpHeavyHitterTracker> heavyHitterTracker) {
+        IpManagementProperties coreProperties = properties.getIfAvailable();
+        boolean serveRollups = rollupAggregator.getIfAvailable() != null
+                && coreProperties != null && coreProperties.getRollups().isServeStats();
+        return IpStatsController.builder(repository)
+                .rollups(serveRollups ? rollups.getIfAvailable() : null, rollupRebuilder.getIfAvailable())
+                .distinctCounter(distinctCounter.getIfAvailable(), sketchBackfiller.getIfAvailable())
+                .heavyHitterTracker(heavyHitterTracker.getIfAvailable())
+                .build();
     }
 
     @Bean
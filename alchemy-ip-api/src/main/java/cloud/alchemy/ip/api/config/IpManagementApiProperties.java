@@ -46,6 +46,12 @@ public class IpManagementApiProperties {
      */
     private int maxPageSize = 100;
 
+    /**
+     * How record listings paged by page number report the total, unless a request
+     * sets the {@code count} parameter.
+     */
+    private CountMode countMode = CountMode.EXACT;
+
     /**
      * Enable CORS for API endpoints.
      */
@@ -93,6 +99,14 @@ public class IpManagementApiProperties {
         this.maxPageSize = maxPageSize;
     }
 
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
     public boolean isCorsEnabled() {
         return corsEnabled;
     }
@@ -117,6 +131,28 @@ public class IpManagementApiProperties {
         this.security = security;
     }
 
+    /**
+     * How a record listing paged by page number reports the total.
+     */
+    public enum CountMode {
+
+        /**
+         * Count the matching records with a second query.
+         */
+        EXACT,
+
+        /**
+         * Skip the count query. Unfiltered listings report the row count estimated
+         * from database statistics; filtered listings report no total.
+         */
+        APPROXIMATE,
+
+        /**
+         * Skip the count query and report no total, only whether there is a next page.
+         */
+        NONE
+    }
+
     /**
      * Security sub-configuration.
      */
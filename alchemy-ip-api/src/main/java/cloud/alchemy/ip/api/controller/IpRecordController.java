@@ -15,6 +15,7 @@
  */
 package cloud.alchemy.ip.api.controller;
 
+import cloud.alchemy.ip.api.config.IpManagementApiProperties.CountMode;
 import cloud.alchemy.ip.api.dto.IpRecordDetailDto;
 import cloud.alchemy.ip.api.dto.IpRecordDto;
 import cloud.alchemy.ip.api.dto.PageResponseDto;
@@ -23,11 +24,15 @@ import cloud.alchemy.ip.api.exception.RecordNotFoundException;
 import cloud.alchemy.ip.api.mapper.IpRecordMapper;
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRecordCountEstimator;
+import cloud.alchemy.ip.repository.IpRecordCursor;
 import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -36,20 +41,55 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.Function;
 
 /**
  * REST controller for IP address record operations.
+ *
+ * <p>Listings are paged by page number or, with the {@code cursor} parameter, by
+ * keyset: the cursor names the last record of the previous page and the next page is
+ * read from there, so deep pages cost the same as the first one and no count query
+ * runs. Pass an empty cursor for the first page. Cursors follow the creation time
+ * order, so they require {@code sortBy=createdAt}; pages sorted that way carry the
+ * cursor of their next page in both modes, so a client can switch to cursors after
+ * the first numbered page.
+ *
+ * <p>Numbered pages count the matching records with a second query, which on large
+ * filtered listings can cost more than reading the page. The {@code count} parameter,
+ * or {@code alchemy.ip.api.count-mode} for requests without it, skips that query:
+ * {@link CountMode#NONE} reports only whether there is a next page, and
+ * {@link CountMode#APPROXIMATE} also reports the row count estimated from database
+ * statistics for unfiltered listings.
  */
 @RestController
 @RequestMapping("${alchemy.ip.api.base-path:/api/alchemy-ip}")
 public class IpRecordController {
 
+    private static final String CREATED_AT = "createdAt";
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final IpAddressRepository repository;
     private final IpRecordMapper mapper;
+    private final CountMode defaultCountMode;
+    private final IpRecordCountEstimator countEstimator;
 
+    @Autowired
     public IpRecordController(IpAddressRepository repository, IpRecordMapper mapper) {
+        this(repository, mapper, CountMode.EXACT, null);
+    }
+
+    /**
+     * Creates a controller that reports totals of numbered pages as the given count
+     * mode says unless a request sets one, estimating them with the given estimator
+     * when there is one.
+     */
+    public IpRecordController(IpAddressRepository repository, IpRecordMapper mapper,
+                              CountMode defaultCountMode, IpRecordCountEstimator countEstimator) {
         this.repository = repository;
         this.mapper = mapper;
+        this.defaultCountMode = defaultCountMode;
+        this.countEstimator = countEstimator;
     }
 
     /**
@@ -60,11 +100,11 @@ public class IpRecordController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "DESC") Sort.Direction direction) {
+            @RequestParam(defaultValue = "DESC") Sort.Direction direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) CountMode count) {
 
-        Pageable pageable = PageRequest.of(page, Math.min(size, 100), Sort.by(direction, sortBy));
-        Page<IpAddressRecord> records = repository.findAll(pageable);
-        return PageResponseDto.from(records, mapper::toDto);
+        return list(null, cursor, count, page, size, sortBy, direction);
     }
 
     /**
@@ -84,11 +124,12 @@ public class IpRecordController {
     public PageResponseDto<IpRecordDto> getRecordsByIp(
             @PathVariable String ipAddress,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) CountMode count) {
 
-        Pageable pageable = PageRequest.of(page, Math.min(size, 100), Sort.by(Sort.Direction.DESC, "createdAt"));
-        Page<IpAddressRecord> records = repository.findByIpAddress(ipAddress, pageable);
-        return PageResponseDto.from(records, mapper::toDto);
+        return list(new SearchCriteriaDto(ipAddress, null, null, null, null, null, null, null), cursor, count, page, size,
+                CREATED_AT, Sort.Direction.DESC);
     }
 
     /**
@@ -98,11 +139,12 @@ public class IpRecordController {
     public PageResponseDto<IpRecordDto> getRecordsByUser(
             @PathVariable String userId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) CountMode count) {
 
-        Pageable pageable = PageRequest.of(page, Math.min(size, 100), Sort.by(Sort.Direction.DESC, "createdAt"));
-        Page<IpAddressRecord> records = repository.findByUserId(userId, pageable);
-        return PageResponseDto.from(records, mapper::toDto);
+        return list(new SearchCriteriaDto(null, userId, null, null, null, null, null, null), cursor, count, page, size,
+                CREATED_AT, Sort.Direction.DESC);
     }
 
     /**
@@ -112,11 +154,12 @@ public class IpRecordController {
     public PageResponseDto<IpRecordDto> getRecordsByTag(
             @PathVariable String tag,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) CountMode count) {
 
-        Pageable pageable = PageRequest.of(page, Math.min(size, 100), Sort.by(Sort.Direction.DESC, "createdAt"));
-        Page<IpAddressRecord> records = repository.findByTag(tag, pageable);
-        return PageResponseDto.from(records, mapper::toDto);
+        return list(new SearchCriteriaDto(null, null, tag, null, null, null, null, null), cursor, count, page, size,
+                CREATED_AT, Sort.Direction.DESC);
     }
 
     /**
@@ -126,11 +169,12 @@ public class IpRecordController {
     public PageResponseDto<IpRecordDto> getRecordsByCountry(
             @PathVariable String countryCode,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) CountMode count) {
 
-        Pageable pageable = PageRequest.of(page, Math.min(size, 100), Sort.by(Sort.Direction.DESC, "createdAt"));
-        Page<IpAddressRecord> records = repository.findByCountryCode(countryCode.toUpperCase(), pageable);
-        return PageResponseDto.from(records, mapper::toDto);
+        return list(new SearchCriteriaDto(null, null, null, countryCode, null, null, null, null), cursor, count, page, size,
+                CREATED_AT, Sort.Direction.DESC);
     }
 
     /**
@@ -141,11 +185,12 @@ public class IpRecordController {
             @RequestParam Instant startDate,
             @RequestParam Instant endDate,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) CountMode count) {
 
-        Pageable pageable = PageRequest.of(page, Math.min(size, 100), Sort.by(Sort.Direction.DESC, "createdAt"));
-        Page<IpAddressRecord> records = repository.findByCreatedAtBetween(startDate, endDate, pageable);
-        return PageResponseDto.from(records, mapper::toDto);
+        return list(new SearchCriteriaDto(null, null, null, null, null, null, startDate, endDate), cursor, count, page, size,
+                CREATED_AT, Sort.Direction.DESC);
     }
 
     /**
@@ -157,13 +202,11 @@ public class IpRecordController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "DESC") Sort.Direction direction) {
+            @RequestParam(defaultValue = "DESC") Sort.Direction direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) CountMode count) {
 
-        Pageable pageable = PageRequest.of(page, Math.min(size, 100), Sort.by(direction, sortBy));
-
-        Specification<IpAddressRecord> spec = buildSpecification(criteria);
-        Page<IpAddressRecord> records = repository.findAll(spec, pageable);
-        return PageResponseDto.from(records, mapper::toDto);
+        return list(criteria, cursor, count, page, size, sortBy, direction);
     }
 
     /**
@@ -175,6 +218,73 @@ public class IpRecordController {
         return ResponseEntity.ok(Map.of("deletedCount", deletedCount));
     }
 
+    /**
+     * Lists records by cursor when one is given, by page number otherwise. Numbered
+     * pages are read as a page when counting, as a slice otherwise. Either way only the
+     * columns of {@link IpRecordDto} are read, straight into the DTOs.
+     */
+    private PageResponseDto<IpRecordDto> list(SearchCriteriaDto criteria,
+                                              String cursor,
+                                              CountMode count,
+                                              int page,
+                                              int size,
+                                              String sortBy,
+                                              Sort.Direction direction) {
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+        boolean byCreatedAt = CREATED_AT.equals(sortBy);
+        Specification<IpAddressRecord> spec = isUnfiltered(criteria) ? null : buildSpecification(criteria);
+        if (cursor == null) {
+            Sort sort = byCreatedAt ? IpRecordCursor.sort(direction) : Sort.by(direction, sortBy);
+            Pageable pageable = PageRequest.of(page, pageSize, sort);
+            CountMode countMode = count != null ? count : defaultCountMode;
+            Slice<IpRecordDto> records;
+            PageResponseDto<IpRecordDto> response;
+            if (countMode == CountMode.EXACT) {
+                Page<IpRecordDto> counted = repository.findAll(spec, pageable, IpRecordDto.class);
+                records = counted;
+                response = PageResponseDto.from(counted);
+            } else {
+                records = repository.findSlice(spec, pageable, IpRecordDto.class);
+                response = PageResponseDto.from(records, Function.identity());
+                if (countMode == CountMode.APPROXIMATE && response.totalElements() < 0
+                        && spec == null && countEstimator != null) {
+                    OptionalLong estimate = countEstimator.estimate();
+                    if (estimate.isPresent()) {
+                        response = response.withApproximateTotal(estimate.getAsLong());
+                    }
+                }
+            }
+            return byCreatedAt && records.hasNext()
+                    ? response.withNextCursor(nextCursor(records.getContent()))
+                    : response;
+        }
+
+        if (!byCreatedAt) {
+            throw new IllegalArgumentException("Cursor pagination requires sortBy=" + CREATED_AT);
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must not be less than one");
+        }
+        IpRecordCursor after = cursor.isBlank() ? null : IpRecordCursor.decode(cursor);
+        // One extra record tells whether there is a next page
+        List<IpRecordDto> records = repository.findAfter(spec, after, direction, pageSize + 1, IpRecordDto.class);
+        boolean hasNext = records.size() > pageSize;
+        List<IpRecordDto> content = hasNext ? records.subList(0, pageSize) : records;
+        return PageResponseDto.ofCursor(content, pageSize, after == null, hasNext ? nextCursor(content) : null);
+    }
+
+    private static boolean isUnfiltered(SearchCriteriaDto criteria) {
+        return criteria == null || criteria.equals(new SearchCriteriaDto(null, null, null, null, null, null, null, null));
+    }
+
+    private static String nextCursor(List<IpRecordDto> content) {
+        if (content.isEmpty()) {
+            return null;
+        }
+        IpRecordDto last = content.get(content.size() - 1);
+        return new IpRecordCursor(last.createdAt(), last.id()).encode();
+    }
+
     private Specification<IpAddressRecord> buildSpecification(SearchCriteriaDto criteria) {
         return (root, query, cb) -> {
             List<Predicate> predicates = new ArrayList<>();
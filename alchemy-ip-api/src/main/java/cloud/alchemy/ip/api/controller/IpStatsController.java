@@ -16,95 +16,153 @@
 package cloud.alchemy.ip.api.controller;
 
 import cloud.alchemy.ip.api.dto.*;
-import cloud.alchemy.ip.api.mapper.IpRecordMapper;
-import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRollupRepository;
+import cloud.alchemy.ip.rollup.IpRollupDimension;
+import cloud.alchemy.ip.rollup.IpRollupGranularity;
+import cloud.alchemy.ip.rollup.IpRollupRebuilder;
+import cloud.alchemy.ip.sketch.IpDistinctCounter;
+import cloud.alchemy.ip.sketch.IpHeavyHitterTracker;
+import cloud.alchemy.ip.sketch.IpSketchBackfiller;
+import cloud.alchemy.ip.sketch.IpSketchScope;
+import cloud.alchemy.ip.sketch.IpSketchType;
+import cloud.alchemy.ip.sketch.SpaceSaving;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.*;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * REST controller for IP statistics and analytics.
+ *
+ * <p>Counts are numbers of stored records. Records captured with a sample rate
+ * below 1 count once, like any other record: each stands for a deduplicated IP
+ * address and user combination, not for a number of requests.
+ *
+ * <p>When built with an {@link IpRollupRepository}, totals, top lists, the
+ * timeline and per-IP and per-user counts are read from the hourly and daily rollups
+ * instead of the raw records. The ten most recent records, the oldest and newest
+ * timestamps and the distinct counts are still read from the records table, unless
+ * sketches estimate the distinct counts; they are bounded by an index. Rollups bucket by UTC hour, so
+ * in zones whose offset is not a whole number of hours, timeline days and "today"
+ * are shifted by the offset's minutes.
+ *
+ * <p>When built with an {@link IpDistinctCounter}, the distinct IP and user
+ * counts of the summary and the per-key distinct counts are estimated from
+ * HyperLogLog sketches with a single read each. Pass {@code exact=true} to count
+ * them from the records instead.
+ *
+ * <p>When built with an {@link IpHeavyHitterTracker}, the frequent IP addresses
+ * and the summary's top IP addresses are read from its in-memory Space-Saving
+ * summaries, which also serve the frequent IP addresses of the recent window. Their
+ * counts may overestimate by up to the total count divided by the tracker's capacity.
+ * Pass {@code exact=true} to count the all-time figures from the rollups or the
+ * records instead.
  */
 @RestController
 @RequestMapping("${alchemy.ip.api.base-path:/api/alchemy-ip}")
 public class IpStatsController {
 
+    private static final long DAY_SECONDS = 86_400;
+    private static final long HOUR_SECONDS = 3_600;
+    private static final long QUARTER_HOUR_SECONDS = 900;
+    private static final int MAX_COUNTRIES = 250;
+    private static final int MAX_CITIES = 20;
+    private static final int MAX_DISTINCT_DAYS = 366;
+    private static final int MAX_TIMELINE_DAYS = 366;
+    private static final int MAX_DISTINCT_IPS_PAGE_SIZE = 1000;
+
     private final IpAddressRepository repository;
-    private final IpRecordMapper mapper;
+    private final IpRollupRepository rollups;
+    private final IpRollupRebuilder rollupRebuilder;
+    private final IpDistinctCounter distinctCounter;
+    private final IpSketchBackfiller sketchBackfiller;
+    private final IpHeavyHitterTracker heavyHitterTracker;
+
+    @Autowired
+    public IpStatsController(IpAddressRepository repository) {
+        this(builder(repository));
+    }
 
-    public IpStatsController(IpAddressRepository repository, IpRecordMapper mapper) {
-        this.repository = repository;
-        this.mapper = mapper;
+    private IpStatsController(Builder builder) {
+        this.repository = builder.repository;
+        this.rollups = builder.rollups;
+        this.rollupRebuilder = builder.rollupRebuilder;
+        this.distinctCounter = builder.distinctCounter;
+        this.sketchBackfiller = builder.sketchBackfiller;
+        this.heavyHitterTracker = builder.heavyHitterTracker;
     }
 
     /**
-     * Get summary statistics for the dashboard.
+     * Returns a builder of a controller that reads only from the records until
+     * rollups, sketches or heavy hitters are added.
+     */
+    public static Builder builder(IpAddressRepository repository) {
+        return new Builder(repository);
+    }
+
+    /**
+     * Get summary statistics for the dashboard. Every figure is computed by an
+     * aggregate query; no records are loaded besides the ten most recent ones.
+     * Distinct counts and top IP addresses are estimates when sketches or heavy hitters
+     * are enabled, unless {@code exact} is set.
      */
     @GetMapping("/stats/summary")
-    public IpStatsDto getSummaryStats() {
-        long totalRecords = repository.count();
-
-        // Get unique counts
-        List<IpAddressRecord> allRecords = repository.findAll();
-        long uniqueIps = allRecords.stream()
-                .map(IpAddressRecord::getIpAddress)
-                .distinct()
-                .count();
-        long uniqueUsers = allRecords.stream()
-                .map(IpAddressRecord::getUserId)
-                .filter(Objects::nonNull)
-                .distinct()
-                .count();
+    public IpStatsDto getSummaryStats(@RequestParam(defaultValue = "false") boolean exact) {
+        Instant now = Instant.now();
+        Instant end = allTimeEnd(now);
+        long totalRecords = rollups != null
+                ? Math.round(rollups.sumHits(IpRollupGranularity.DAY, IpRollupDimension.TOTAL, Instant.EPOCH, end))
+                : repository.count();
+
+        long uniqueIps;
+        long uniqueUsers;
+        if (distinctCounter != null && !exact) {
+            uniqueIps = distinctCounter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, "");
+            uniqueUsers = distinctCounter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.GLOBAL, "");
+        } else {
+            // Summed rollup rows cannot tell how many values repeat across buckets
+            uniqueIps = repository.countDistinctIpAddresses();
+            uniqueUsers = repository.countDistinctUsers();
+        }
 
         // Records today and this week
-        Instant now = Instant.now();
         Instant startOfToday = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant();
         Instant startOfWeek = LocalDate.now().minusDays(7).atStartOfDay(ZoneId.systemDefault()).toInstant();
 
-        long recordsToday = repository.findByCreatedAtBetween(startOfToday, now, PageRequest.of(0, 1))
-                .getTotalElements();
-        long recordsThisWeek = repository.findByCreatedAtBetween(startOfWeek, now, PageRequest.of(0, 1))
-                .getTotalElements();
+        long recordsToday = countBetween(startOfToday, now);
+        long recordsThisWeek = countBetween(startOfWeek, now);
 
         // Top countries
-        Map<String, Long> topCountries = allRecords.stream()
-                .filter(r -> r.getCountryCode() != null && !r.getCountryCode().isBlank())
-                .collect(Collectors.groupingBy(IpAddressRecord::getCountryCode, Collectors.counting()))
-                .entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(10)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                        (e1, e2) -> e1, LinkedHashMap::new));
+        Map<String, Long> topCountries = topCountries(10);
 
         // Top IP addresses
-        Page<Object[]> frequentIps = repository.findFrequentIpAddresses(1, PageRequest.of(0, 10));
-        List<FrequentIpDto> topIps = frequentIps.getContent().stream()
-                .map(arr -> new FrequentIpDto((String) arr[0], (Long) arr[1]))
+        List<Object[]> frequentIps = heavyHitterTracker != null && !exact
+                ? heavyHitterRows(heavyHitterTracker.allTime(), 10, 1)
+                : rollups != null
+                ? rollups.findTopValues(IpRollupGranularity.DAY, IpRollupDimension.IP, Instant.EPOCH, end,
+                        PageRequest.of(0, 10))
+                : repository.findFrequentIpAddresses(1, PageRequest.of(0, 10)).getContent();
+        List<FrequentIpDto> topIps = frequentIps.stream()
+                .map(arr -> new FrequentIpDto((String) arr[0], toCount(arr[1])))
                 .toList();
 
         // Recent records
-        List<IpRecordDto> recentRecords = repository.findAll(
-                        PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "createdAt")))
-                .getContent().stream()
-                .map(mapper::toDto)
-                .toList();
+        List<IpRecordDto> recentRecords = repository.findSlice(null,
+                        PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "createdAt")), IpRecordDto.class)
+                .getContent();
 
         // Oldest and newest timestamps
-        Instant oldestRecord = allRecords.stream()
-                .map(IpAddressRecord::getCreatedAt)
-                .min(Instant::compareTo)
-                .orElse(null);
-        Instant newestRecord = allRecords.stream()
-                .map(IpAddressRecord::getCreatedAt)
-                .max(Instant::compareTo)
-                .orElse(null);
+        Instant oldestRecord = repository.findOldestCreatedAt().orElse(null);
+        Instant newestRecord = repository.findNewestCreatedAt().orElse(null);
 
         return new IpStatsDto(
                 totalRecords,
@@ -121,69 +179,94 @@ public class IpStatsController {
     }
 
     /**
-     * Get timeline data for charts.
+     * Get timeline data for charts. Records are counted per day, in the server's time
+     * zone, with a single grouped query; days without records are filled with zero.
+     * At most {@value #MAX_TIMELINE_DAYS} days before today are returned.
      */
     @GetMapping("/stats/timeline")
     public TimelineDataDto getTimelineData(
             @RequestParam(defaultValue = "30") int days) {
 
-        LocalDate endDate = LocalDate.now();
-        LocalDate startDate = endDate.minusDays(days);
+        if (days < 0) {
+            throw new IllegalArgumentException("days must not be negative");
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate endDate = LocalDate.now(zone);
+        LocalDate startDate = endDate.minusDays(Math.min(days, MAX_TIMELINE_DAYS));
+        Instant start = startDate.atStartOfDay(zone).toInstant();
+        Instant end = endDate.plusDays(1).atStartOfDay(zone).toInstant();
+
+        // The database buckets by epoch seconds; buckets are folded into local days here
+        long bucketSeconds = bucketSeconds(zone, start, end);
+        Map<LocalDate, Double> countsByDay = new HashMap<>();
+        if (rollups != null) {
+            IpRollupGranularity granularity = bucketSeconds == DAY_SECONDS
+                    ? IpRollupGranularity.DAY : IpRollupGranularity.HOUR;
+            for (Object[] row : rollups.sumHitsByBucket(granularity, IpRollupDimension.TOTAL, start, end)) {
+                LocalDate day = ((Instant) row[0]).atZone(zone).toLocalDate();
+                countsByDay.merge(day, ((Number) row[1]).doubleValue(), Double::sum);
+            }
+        } else {
+            for (Object[] row : repository.countByCreatedAtBuckets(start, end, bucketSeconds)) {
+                LocalDate day = Instant.ofEpochSecond(((Number) row[0]).longValue() * bucketSeconds)
+                        .atZone(zone).toLocalDate();
+                countsByDay.merge(day, ((Number) row[1]).doubleValue(), Double::sum);
+            }
+        }
 
         List<LocalDate> labels = new ArrayList<>();
         List<Long> counts = new ArrayList<>();
-
         for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            Instant dayStart = date.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            Instant dayEnd = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant();
-
-            long count = repository.findByCreatedAtBetween(dayStart, dayEnd, PageRequest.of(0, 1))
-                    .getTotalElements();
-
             labels.add(date);
-            counts.add(count);
+            counts.add(Math.round(countsByDay.getOrDefault(date, 0.0)));
         }
 
         return new TimelineDataDto(labels, counts);
     }
 
     /**
-     * Get geographic distribution.
+     * Get geographic distribution: the top countries and cities, counted by the database.
      */
     @GetMapping("/stats/geographic")
     public GeoDistributionDto getGeoDistribution() {
-        List<IpAddressRecord> allRecords = repository.findAll();
-
-        Map<String, Long> countryDistribution = allRecords.stream()
-                .filter(r -> r.getCountryCode() != null && !r.getCountryCode().isBlank())
-                .collect(Collectors.groupingBy(IpAddressRecord::getCountryCode, Collectors.counting()));
-
-        Map<String, Long> cityDistribution = allRecords.stream()
-                .filter(r -> r.getCity() != null && !r.getCity().isBlank())
-                .collect(Collectors.groupingBy(IpAddressRecord::getCity, Collectors.counting()))
-                .entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(20)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                        (e1, e2) -> e1, LinkedHashMap::new));
+        Map<String, Long> countryDistribution = topCountries(MAX_COUNTRIES);
+        Map<String, Long> cityDistribution = rollups != null
+                ? toCountMap(rollups.findTopValues(IpRollupGranularity.DAY, IpRollupDimension.CITY, Instant.EPOCH,
+                        allTimeEnd(Instant.now()), PageRequest.of(0, MAX_CITIES)))
+                : toCountMap(repository.findTopCities(PageRequest.of(0, MAX_CITIES)));
 
         return new GeoDistributionDto(countryDistribution, cityDistribution);
     }
 
     /**
-     * Get frequent IP addresses.
+     * Get frequent IP addresses. With a heavy-hitter tracker they are read from its
+     * summaries, and at most its capacity of IP addresses are listed; {@code recent}
+     * lists those of the tracker's sliding window instead of all time, and is always
+     * estimated.
      */
     @GetMapping("/stats/frequent")
     public PageResponseDto<FrequentIpDto> getFrequentIps(
             @RequestParam(defaultValue = "2") long threshold,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean exact,
+            @RequestParam(defaultValue = "false") boolean recent) {
 
+        if (recent && heavyHitterTracker == null) {
+            throw new IllegalArgumentException(
+                    "Recent frequent IP addresses require alchemy.ip.heavy-hitters.enabled=true");
+        }
         Pageable pageable = PageRequest.of(page, Math.min(size, 100));
-        Page<Object[]> frequentIps = repository.findFrequentIpAddresses(threshold, pageable);
+        Page<Object[]> frequentIps = heavyHitterTracker != null && (recent || !exact)
+                ? heavyHitterPage(recent ? heavyHitterTracker.window() : heavyHitterTracker.allTime(),
+                        threshold, pageable)
+                : rollups != null
+                ? rollups.findFrequentValues(IpRollupGranularity.DAY, IpRollupDimension.IP, Instant.EPOCH,
+                        allTimeEnd(Instant.now()), threshold, pageable)
+                : repository.findFrequentIpAddresses(threshold, pageable);
 
         List<FrequentIpDto> content = frequentIps.getContent().stream()
-                .map(arr -> new FrequentIpDto((String) arr[0], (Long) arr[1]))
+                .map(arr -> new FrequentIpDto((String) arr[0], toCount(arr[1])))
                 .toList();
 
         return new PageResponseDto<>(
@@ -202,7 +285,9 @@ public class IpStatsController {
      */
     @GetMapping("/stats/ip/{ipAddress}/count")
     public Map<String, Long> getCountByIp(@PathVariable String ipAddress) {
-        long count = repository.countByIpAddress(ipAddress);
+        long count = rollups != null
+                ? countByValue(IpRollupDimension.IP, ipAddress)
+                : repository.countByIpAddress(ipAddress);
         return Map.of("count", count);
     }
 
@@ -211,26 +296,252 @@ public class IpStatsController {
      */
     @GetMapping("/stats/user/{userId}/count")
     public Map<String, Long> getCountByUser(@PathVariable String userId) {
-        long count = repository.countByUserId(userId);
+        long count = rollups != null
+                ? countByValue(IpRollupDimension.USER, userId)
+                : repository.countByUserId(userId);
         return Map.of("count", count);
     }
 
     /**
-     * Get distinct IP count for a user.
+     * Get distinct IP count for a user, with one page of the IP addresses in address
+     * order. The count is an estimate when sketches are enabled, unless {@code exact}
+     * is set.
      */
     @GetMapping("/stats/user/{userId}/distinct-ips")
-    public Map<String, Object> getDistinctIpsForUser(@PathVariable String userId) {
-        long count = repository.countDistinctIpAddressesByUserId(userId);
-        List<String> ips = repository.findDistinctIpAddressesByUserId(userId);
-        return Map.of("count", count, "ipAddresses", ips);
+    public Map<String, Object> getDistinctIpsForUser(@PathVariable String userId,
+                                                     @RequestParam(defaultValue = "0") int page,
+                                                     @RequestParam(defaultValue = "100") int size,
+                                                     @RequestParam(defaultValue = "false") boolean exact) {
+        long count = distinctCounter != null && !exact
+                ? distinctCounter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, userId)
+                : repository.countDistinctIpAddressesByUserId(userId);
+        Pageable pageable = PageRequest.of(page, Math.min(size, MAX_DISTINCT_IPS_PAGE_SIZE));
+        List<String> ips = repository.findDistinctIpAddressesByUserId(userId, pageable);
+        return Map.of("count", count, "ipAddresses", ips, "page", pageable.getPageNumber(),
+                "size", pageable.getPageSize());
     }
 
     /**
-     * Get distinct user count for an IP.
+     * Get distinct user count for an IP. The count is an estimate when sketches are
+     * enabled, unless {@code exact} is set.
      */
     @GetMapping("/stats/ip/{ipAddress}/distinct-users")
-    public Map<String, Long> getDistinctUsersForIp(@PathVariable String ipAddress) {
-        long count = repository.countDistinctUsersByIpAddress(ipAddress);
+    public Map<String, Long> getDistinctUsersForIp(@PathVariable String ipAddress,
+                                                   @RequestParam(defaultValue = "false") boolean exact) {
+        long count = distinctCounter != null && !exact
+                ? distinctCounter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.IP, ipAddress)
+                : repository.countDistinctUsersByIpAddress(ipAddress);
         return Map.of("count", count);
     }
+
+    /**
+     * Estimate distinct IP and user counts from the sketches: overall, for a tag, for a
+     * country, or for a range of UTC days.
+     */
+    @GetMapping("/stats/distinct")
+    public Map<String, Object> getDistinctCounts(
+            @RequestParam(required = false) String tag,
+            @RequestParam(required = false) String country,
+            @RequestParam(required = false) LocalDate from,
+            @RequestParam(required = false) LocalDate to) {
+        if (distinctCounter == null) {
+            throw new IllegalArgumentException("Sketches are not enabled");
+        }
+        int filters = (tag != null ? 1 : 0) + (country != null ? 1 : 0) + (from != null || to != null ? 1 : 0);
+        if (filters > 1) {
+            throw new IllegalArgumentException("Use only one of tag, country and from/to");
+        }
+
+        long ips;
+        long users;
+        if (from != null || to != null) {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            LocalDate first = from != null ? from : today;
+            LocalDate last = to != null ? to : today;
+            if (first.isAfter(last) || first.plusDays(MAX_DISTINCT_DAYS).isBefore(last)) {
+                throw new IllegalArgumentException("from must not be after to, and at most "
+                        + MAX_DISTINCT_DAYS + " days before it");
+            }
+            ips = distinctCounter.estimateDays(IpSketchType.DISTINCT_IPS, first, last);
+            users = distinctCounter.estimateDays(IpSketchType.DISTINCT_USERS, first, last);
+        } else {
+            IpSketchScope scope = tag != null ? IpSketchScope.TAG
+                    : country != null ? IpSketchScope.COUNTRY : IpSketchScope.GLOBAL;
+            String key = tag != null ? tag : country != null ? country : "";
+            ips = distinctCounter.estimate(IpSketchType.DISTINCT_IPS, scope, key);
+            users = distinctCounter.estimate(IpSketchType.DISTINCT_USERS, scope, key);
+        }
+        return Map.of("uniqueIps", ips, "uniqueUsers", users, "relativeError", distinctCounter.getRelativeError());
+    }
+
+    /**
+     * Recomputes the rollups of the days overlapping a time range from the records table.
+     */
+    @PostMapping("/stats/rollups/rebuild")
+    public Map<String, Long> rebuildRollups(@RequestParam Instant from, @RequestParam Instant to) {
+        if (rollupRebuilder == null) {
+            throw new IllegalArgumentException("Rollups are not enabled");
+        }
+        return Map.of("recordCount", rollupRebuilder.rebuild(from, to));
+    }
+
+    /**
+     * Adds the records of a time range from the records table to the sketches.
+     */
+    @PostMapping("/stats/sketches/backfill")
+    public Map<String, Long> backfillSketches(@RequestParam Instant from, @RequestParam Instant to) {
+        if (sketchBackfiller == null) {
+            throw new IllegalArgumentException("Sketches are not enabled");
+        }
+        return Map.of("recordCount", sketchBackfiller.backfill(from, to));
+    }
+
+    /**
+     * Counts records in a time range.
+     */
+    private long countBetween(Instant start, Instant end) {
+        if (rollups != null) {
+            return Math.round(rollups.sumHits(IpRollupGranularity.HOUR, IpRollupDimension.TOTAL, start, end));
+        }
+        return repository.countByCreatedAtBetween(start, end);
+    }
+
+    /**
+     * Finds the countries with the most records.
+     */
+    private Map<String, Long> topCountries(int limit) {
+        if (rollups != null) {
+            return toCountMap(rollups.findTopValues(IpRollupGranularity.DAY, IpRollupDimension.COUNTRY, Instant.EPOCH,
+                    allTimeEnd(Instant.now()), PageRequest.of(0, limit)));
+        }
+        return toCountMap(repository.findTopCountries(PageRequest.of(0, limit)));
+    }
+
+    /**
+     * Counts the records of one IP address or user from the daily rollups.
+     */
+    private long countByValue(IpRollupDimension dimension, String value) {
+        return Math.round(rollups.sumHitsByValue(IpRollupGranularity.DAY, dimension, value, Instant.EPOCH,
+                allTimeEnd(Instant.now())));
+    }
+
+    /**
+     * Returns an end for rollup queries over all buckets, past the bucket that is still filling.
+     */
+    private static Instant allTimeEnd(Instant now) {
+        return now.plus(Duration.ofDays(1));
+    }
+
+    /**
+     * Returns the widest bucket whose boundaries fall on the zone's midnights within the
+     * range: whole days for UTC, hours for zones whose offsets are whole hours, and
+     * quarter hours otherwise.
+     */
+    private static long bucketSeconds(ZoneId zone, Instant start, Instant end) {
+        ZoneRules rules = zone.getRules();
+        if (rules.isFixedOffset() && rules.getOffset(start).getTotalSeconds() == 0) {
+            return DAY_SECONDS;
+        }
+        boolean wholeHours = rules.getOffset(start).getTotalSeconds() % HOUR_SECONDS == 0;
+        for (ZoneOffsetTransition transition = rules.nextTransition(start);
+             wholeHours && transition != null && transition.getInstant().isBefore(end);
+             transition = rules.nextTransition(transition.getInstant())) {
+            wholeHours = transition.getOffsetAfter().getTotalSeconds() % HOUR_SECONDS == 0;
+        }
+        return wholeHours ? HOUR_SECONDS : QUARTER_HOUR_SECONDS;
+    }
+
+    /**
+     * Converts a count returned by an aggregate query or a heavy-hitter summary;
+     * rollup and summary counts are doubles.
+     */
+    private static long toCount(Object value) {
+        return value instanceof Number number ? Math.round(number.doubleValue()) : 0L;
+    }
+
+    /**
+     * Returns the pageable slice of the IP addresses of a heavy-hitter summary counted
+     * at least {@code threshold} times.
+     */
+    private static Page<Object[]> heavyHitterPage(SpaceSaving summary, long threshold, Pageable pageable) {
+        List<Object[]> rows = heavyHitterRows(summary, summary.getCapacity(), threshold);
+        int from = (int) Math.min(pageable.getOffset(), rows.size());
+        int to = Math.min(from + pageable.getPageSize(), rows.size());
+        return new PageImpl<>(rows.subList(from, to), pageable, rows.size());
+    }
+
+    /**
+     * Converts the entries of a heavy-hitter summary to key and count rows, by
+     * descending count.
+     */
+    private static List<Object[]> heavyHitterRows(SpaceSaving summary, int limit, long threshold) {
+        List<Object[]> rows = new ArrayList<>();
+        for (SpaceSaving.Entry entry : summary.top(limit)) {
+            if (Math.round(entry.count()) < threshold) {
+                break;
+            }
+            rows.add(new Object[]{entry.value(), entry.count()});
+        }
+        return rows;
+    }
+
+    /**
+     * Converts key and count rows of an aggregate query, keeping their order.
+     */
+    private static Map<String, Long> toCountMap(List<Object[]> rows) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            counts.put((String) row[0], toCount(row[1]));
+        }
+        return counts;
+    }
+
+    /**
+     * Builder of {@link IpStatsController}.
+     */
+    public static final class Builder {
+
+        private final IpAddressRepository repository;
+            private IpRollupRepository rollups;
+        private IpRollupRebuilder rollupRebuilder;
+        private IpDistinctCounter distinctCounter;
+        private IpSketchBackfiller sketchBackfiller;
+        private IpHeavyHitterTracker heavyHitterTracker;
+
+        private Builder(IpAddressRepository repository) {
+            this.repository = repository;
+        }
+
+        /**
+         * Reads from the rollups when a rollup repository is given; the rebuilder,
+         * if any, serves the rebuild endpoint.
+         */
+        public Builder rollups(IpRollupRepository rollups, IpRollupRebuilder rollupRebuilder) {
+            this.rollups = rollups;
+            this.rollupRebuilder = rollupRebuilder;
+            return this;
+        }
+
+        /**
+         * Estimates distinct counts from sketches when a distinct counter is given;
+         * the backfiller, if any, serves the backfill endpoint.
+         */
+        public Builder distinctCounter(IpDistinctCounter distinctCounter, IpSketchBackfiller sketchBackfiller) {
+            this.distinctCounter = distinctCounter;
+            this.sketchBackfiller = sketchBackfiller;
+            return this;
+        }
+
+        /**
+         * Reads frequent IP addresses from the tracker when one is given.
+         */
+        public Builder heavyHitterTracker(IpHeavyHitterTracker heavyHitterTracker) {
+            this.heavyHitterTracker = heavyHitterTracker;
+            return this;
+        }
+
+        public IpStatsController build() {
+            return new IpStatsController(this);
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package cloud.alchemy.ip.api.dto;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 import java.util.function.Function;
@@ -23,13 +24,23 @@ import java.util.function.Function;
 /**
  * Standardized pagination response DTO.
  *
+ * <p>Pages are requested either by page number or, for record listings, by cursor.
+ * A cursor page does not know its position or the total, so {@code pageNumber},
+ * {@code totalElements} and {@code totalPages} are {@code -1}. Pages read without a
+ * count query do not know the total either until the last page, unless it is
+ * estimated; {@code approximateTotal} tells an estimate from an exact total.
+ *
  * @param content       the page content
- * @param pageNumber    current page number (0-indexed)
+ * @param pageNumber    current page number (0-indexed), or -1 for a cursor page
  * @param pageSize      page size
- * @param totalElements total number of elements
- * @param totalPages    total number of pages
+ * @param totalElements total number of elements, or -1 if unknown
+ * @param totalPages    total number of pages, or -1 if unknown
  * @param first         whether this is the first page
  * @param last          whether this is the last page
+ * @param nextCursor    the cursor of the next page, or {@code null} if this is the
+ *                      last page or the listing does not support cursors
+ * @param approximateTotal whether {@code totalElements} and {@code totalPages} are
+ *                      estimated from database statistics
  * @param <T>           the content element type
  */
 public record PageResponseDto<T>(
@@ -39,9 +50,66 @@ public record PageResponseDto<T>(
         long totalElements,
         int totalPages,
         boolean first,
-        boolean last
+        boolean last,
+        String nextCursor,
+        boolean approximateTotal
 ) {
 
+    /**
+     * Creates a page without a next cursor.
+     */
+    public PageResponseDto(List<T> content, int pageNumber, int pageSize, long totalElements, int totalPages,
+                           boolean first, boolean last) {
+        this(content, pageNumber, pageSize, totalElements, totalPages, first, last, null);
+    }
+
+    /**
+     * Creates a page with an exact or no total.
+     */
+    public PageResponseDto(List<T> content, int pageNumber, int pageSize, long totalElements, int totalPages,
+                           boolean first, boolean last, String nextCursor) {
+        this(content, pageNumber, pageSize, totalElements, totalPages, first, last, nextCursor, false);
+    }
+
+    /**
+     * Creates a page requested by cursor.
+     *
+     * @param content    the page content
+     * @param pageSize   page size
+     * @param first      whether this is the first page
+     * @param nextCursor the cursor of the next page, or {@code null} if this is the last page
+     * @param <T>        the content element type
+     * @return a new PageResponseDto
+     */
+    public static <T> PageResponseDto<T> ofCursor(List<T> content, int pageSize, boolean first, String nextCursor) {
+        return new PageResponseDto<>(content, -1, pageSize, -1, -1, first, nextCursor == null, nextCursor);
+    }
+
+    /**
+     * Returns a copy of this page with the given next cursor.
+     *
+     * @param cursor the cursor of the next page
+     * @return a new PageResponseDto
+     */
+    public PageResponseDto<T> withNextCursor(String cursor) {
+        return new PageResponseDto<>(content, pageNumber, pageSize, totalElements, totalPages, first, last, cursor,
+                approximateTotal);
+    }
+
+    /**
+     * Returns a copy of this page with an estimated total. The estimate is raised to
+     * the number of elements up to this page, plus one if there is a next page.
+     *
+     * @param estimate the estimated total number of elements
+     * @return a new PageResponseDto
+     */
+    public PageResponseDto<T> withApproximateTotal(long estimate) {
+        long seen = content.isEmpty() ? 0 : (long) pageNumber * pageSize + content.size() + (last ? 0 : 1);
+        long total = Math.max(estimate, seen);
+        int pages = pageSize > 0 ? (int) Math.min(Integer.MAX_VALUE, (total + pageSize - 1) / pageSize) : 1;
+        return new PageResponseDto<>(content, pageNumber, pageSize, total, pages, first, last, nextCursor, true);
+    }
+
     /**
      * Creates a PageResponseDto from a Spring Data Page.
      *
@@ -81,4 +149,31 @@ public record PageResponseDto<T>(
                 page.isLast()
         );
     }
+
+    /**
+     * Creates a PageResponseDto from a Spring Data Slice with content mapping. A slice
+     * is read without counting, so the total is only known on the last slice with
+     * content and is -1 otherwise.
+     *
+     * @param slice  the Spring Data Slice
+     * @param mapper function to map slice content
+     * @param <T>    the source content element type
+     * @param <R>    the target content element type
+     * @return a new PageResponseDto with mapped content
+     */
+    public static <T, R> PageResponseDto<R> from(Slice<T> slice, Function<T, R> mapper) {
+        // An empty slice past the first one could be anywhere past the last record
+        boolean totalKnown = !slice.hasNext() && (slice.hasContent() || slice.isFirst());
+        long total = totalKnown ? (long) slice.getNumber() * slice.getSize() + slice.getNumberOfElements() : -1;
+        int pages = totalKnown ? (slice.hasContent() ? slice.getNumber() + 1 : 0) : -1;
+        return new PageResponseDto<>(
+                slice.getContent().stream().map(mapper).toList(),
+                slice.getNumber(),
+                slice.getSize(),
+                total,
+                pages,
+                slice.isFirst(),
+                slice.isLast()
+        );
+    }
 }
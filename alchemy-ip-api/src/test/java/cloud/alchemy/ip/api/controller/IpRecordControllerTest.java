@@ -15,11 +15,15 @@
  */
 package cloud.alchemy.ip.api.controller;
 
+import cloud.alchemy.ip.api.config.IpManagementApiProperties.CountMode;
+import cloud.alchemy.ip.api.dto.IpRecordDto;
 import cloud.alchemy.ip.api.dto.SearchCriteriaDto;
 import cloud.alchemy.ip.api.exception.ApiExceptionHandler;
 import cloud.alchemy.ip.api.mapper.IpRecordMapper;
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRecordCountEstimator;
+import cloud.alchemy.ip.repository.IpRecordCursor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -34,14 +38,17 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -124,9 +131,9 @@ class IpRecordControllerTest {
         @DisplayName("should return paginated records")
         void shouldReturnPaginatedRecords() throws Exception {
             List<IpAddressRecord> records = List.of(testRecord);
-            Page<IpAddressRecord> page = new PageImpl<>(records, PageRequest.of(0, 20), 1);
+            Page<IpRecordDto> page = dtoPage(records, PageRequest.of(0, 20), 1);
 
-            when(repository.findAll(any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records"))
                     .andExpect(status().isOk())
@@ -136,15 +143,15 @@ class IpRecordControllerTest {
                     .andExpect(jsonPath("$.pageNumber", is(0)))
                     .andExpect(jsonPath("$.pageSize", is(20)));
 
-            verify(repository).findAll(any(Pageable.class));
+            verify(repository).findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class));
         }
 
         @Test
         @DisplayName("should respect pagination parameters")
         void shouldRespectPaginationParameters() throws Exception {
-            Page<IpAddressRecord> page = new PageImpl<>(List.of(), PageRequest.of(2, 10), 0);
+            Page<IpRecordDto> page = dtoPage(List.of(), PageRequest.of(2, 10), 0);
 
-            when(repository.findAll(any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records")
                             .param("page", "2")
@@ -157,23 +164,23 @@ class IpRecordControllerTest {
         @Test
         @DisplayName("should limit page size to 100")
         void shouldLimitPageSizeTo100() throws Exception {
-            Page<IpAddressRecord> page = new PageImpl<>(List.of(), PageRequest.of(0, 100), 0);
+            Page<IpRecordDto> page = dtoPage(List.of(), PageRequest.of(0, 100), 0);
 
-            when(repository.findAll(any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records")
                             .param("size", "500"))
                     .andExpect(status().isOk());
 
-            verify(repository).findAll(argThat((Pageable pageable) -> pageable.getPageSize() <= 100));
+            verify(repository).findAll(isNull(), argThat((Pageable pageable) -> pageable.getPageSize() <= 100), eq(IpRecordDto.class));
         }
 
         @Test
         @DisplayName("should return empty page when no records")
         void shouldReturnEmptyPageWhenNoRecords() throws Exception {
-            Page<IpAddressRecord> emptyPage = new PageImpl<>(List.of(), PageRequest.of(0, 20), 0);
+            Page<IpRecordDto> emptyPage = dtoPage(List.of(), PageRequest.of(0, 20), 0);
 
-            when(repository.findAll(any(Pageable.class))).thenReturn(emptyPage);
+            when(repository.findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(emptyPage);
 
             mockMvc.perform(get("/api/alchemy-ip/records"))
                     .andExpect(status().isOk())
@@ -182,6 +189,145 @@ class IpRecordControllerTest {
         }
     }
 
+    @Nested
+    @DisplayName("cursor pagination")
+    class CursorPagination {
+
+        @Test
+        @DisplayName("should read the first page by keyset and return the next cursor")
+        void shouldReturnNextCursor() throws Exception {
+            IpAddressRecord first = testRecord.toBuilder().id(2L).build();
+            IpAddressRecord second = testRecord.toBuilder().id(1L).build();
+            IpAddressRecord extra = testRecord.toBuilder().id(0L).createdAt(testTimestamp.minusSeconds(1)).build();
+            when(repository.findAfter(any(), isNull(), eq(Sort.Direction.DESC), eq(3), eq(IpRecordDto.class)))
+                    .thenReturn(dtos(List.of(first, second, extra)));
+
+            mockMvc.perform(get("/api/alchemy-ip/records").param("cursor", "").param("size", "2"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content", hasSize(2)))
+                    .andExpect(jsonPath("$.first", is(true)))
+                    .andExpect(jsonPath("$.last", is(false)))
+                    .andExpect(jsonPath("$.totalElements", is(-1)))
+                    .andExpect(jsonPath("$.nextCursor", is(IpRecordCursor.of(second).encode())));
+
+            verify(repository, never()).findAll(any(), any(Pageable.class), any());
+        }
+
+        @Test
+        @DisplayName("should continue after the decoded cursor with the endpoint's filter")
+        void shouldSeekAfterCursor() throws Exception {
+            IpRecordCursor cursor = new IpRecordCursor(testTimestamp, 42L);
+            when(repository.findAfter(any(), eq(cursor), eq(Sort.Direction.DESC), eq(21), eq(IpRecordDto.class)))
+                    .thenReturn(dtos(List.of(testRecord.toBuilder().id(41L).build())));
+
+            mockMvc.perform(get("/api/alchemy-ip/records/ip/192.168.1.100").param("cursor", cursor.encode()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content", hasSize(1)))
+                    .andExpect(jsonPath("$.first", is(false)))
+                    .andExpect(jsonPath("$.last", is(true)))
+                    .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+            verify(repository).findAfter(notNull(), eq(cursor), eq(Sort.Direction.DESC), eq(21), eq(IpRecordDto.class));
+            verify(repository, never()).findAll(any(), any(Pageable.class), any());
+        }
+
+        @Test
+        @DisplayName("should add the next cursor to numbered pages sorted by creation time")
+        void shouldAddCursorToNumberedPages() throws Exception {
+            IpAddressRecord record = testRecord.toBuilder().id(7L).build();
+            when(repository.findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(dtoPage(List.of(record), PageRequest.of(0, 1), 5));
+
+            mockMvc.perform(get("/api/alchemy-ip/records/tag/login").param("size", "1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalElements", is(5)))
+                    .andExpect(jsonPath("$.nextCursor", is(IpRecordCursor.of(record).encode())));
+
+            verify(repository).findAll(notNull(),
+                    argThat((Pageable pageable) -> pageable.getSort().equals(IpRecordCursor.sort(Sort.Direction.DESC))),
+                    eq(IpRecordDto.class));
+        }
+
+        @Test
+        @DisplayName("should reject invalid cursors and cursors with another sort order")
+        void shouldRejectInvalidCursors() throws Exception {
+            mockMvc.perform(get("/api/alchemy-ip/records").param("cursor", "not-a-cursor"))
+                    .andExpect(status().isBadRequest());
+            mockMvc.perform(get("/api/alchemy-ip/records").param("cursor", "").param("sortBy", "ipAddress"))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Nested
+    @DisplayName("Count-free pagination")
+    class CountFreePagination {
+
+        @Test
+        @DisplayName("should read a slice without counting when count is NONE")
+        void shouldReadSliceWithoutCount() throws Exception {
+            IpAddressRecord record = testRecord.toBuilder().id(7L).build();
+            when(repository.findSlice(notNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(dtos(List.of(record)), PageRequest.of(0, 1), true));
+
+            mockMvc.perform(get("/api/alchemy-ip/records/tag/login").param("size", "1").param("count", "NONE"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content", hasSize(1)))
+                    .andExpect(jsonPath("$.last", is(false)))
+                    .andExpect(jsonPath("$.totalElements", is(-1)))
+                    .andExpect(jsonPath("$.totalPages", is(-1)))
+                    .andExpect(jsonPath("$.approximateTotal", is(false)))
+                    .andExpect(jsonPath("$.nextCursor", is(IpRecordCursor.of(record).encode())));
+
+            verify(repository, never()).findAll(any(), any(Pageable.class), any());
+        }
+
+        @Test
+        @DisplayName("should know the total on the last slice")
+        void shouldReportTotalOnLastSlice() throws Exception {
+            when(repository.findSlice(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(dtos(List.of(testRecord)), PageRequest.of(2, 10), false));
+
+            mockMvc.perform(get("/api/alchemy-ip/records").param("page", "2").param("size", "10")
+                            .param("count", "NONE"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.last", is(true)))
+                    .andExpect(jsonPath("$.totalElements", is(21)))
+                    .andExpect(jsonPath("$.totalPages", is(3)));
+        }
+
+        @Test
+        @DisplayName("should estimate the total of unfiltered listings only")
+        void shouldEstimateUnfilteredTotal() throws Exception {
+            IpAddressRecord record = testRecord.toBuilder().id(7L).build();
+            IpRecordCountEstimator estimator = mock(IpRecordCountEstimator.class);
+            when(estimator.estimate()).thenReturn(OptionalLong.of(95));
+            when(repository.findSlice(any(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(dtos(List.of(record)), PageRequest.of(0, 20), true));
+            when(repository.findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(dtoPage(List.of(record), PageRequest.of(0, 20), 1));
+            MockMvc approximate = MockMvcBuilders.standaloneSetup(
+                            new IpRecordController(repository, mapper, CountMode.APPROXIMATE, estimator))
+                    .setControllerAdvice(new ApiExceptionHandler())
+                    .build();
+
+            approximate.perform(get("/api/alchemy-ip/records"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalElements", is(95)))
+                    .andExpect(jsonPath("$.totalPages", is(5)))
+                    .andExpect(jsonPath("$.approximateTotal", is(true)));
+            approximate.perform(get("/api/alchemy-ip/records/user/alice"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalElements", is(-1)))
+                    .andExpect(jsonPath("$.approximateTotal", is(false)));
+            approximate.perform(get("/api/alchemy-ip/records").param("count", "EXACT"))
+                    .andExpect(status().isOk());
+
+            verify(estimator, times(1)).estimate();
+            verify(repository).findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class));
+            verify(repository).findSlice(notNull(), any(Pageable.class), eq(IpRecordDto.class));
+        }
+    }
+
     @Nested
     @DisplayName("GET /api/alchemy-ip/records/{id}")
     class GetRecordById {
@@ -219,16 +365,16 @@ class IpRecordControllerTest {
         @DisplayName("should return records for IP address")
         void shouldReturnRecordsForIpAddress() throws Exception {
             List<IpAddressRecord> records = List.of(testRecord);
-            Page<IpAddressRecord> page = new PageImpl<>(records, PageRequest.of(0, 20), 1);
+            Page<IpRecordDto> page = dtoPage(records, PageRequest.of(0, 20), 1);
 
-            when(repository.findByIpAddress(eq("192.168.1.100"), any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records/ip/192.168.1.100"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.content", hasSize(1)))
                     .andExpect(jsonPath("$.content[0].ipAddress", is("192.168.1.100")));
 
-            verify(repository).findByIpAddress(eq("192.168.1.100"), any(Pageable.class));
+            verify(repository).findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class));
         }
     }
 
@@ -240,16 +386,16 @@ class IpRecordControllerTest {
         @DisplayName("should return records for user ID")
         void shouldReturnRecordsForUserId() throws Exception {
             List<IpAddressRecord> records = List.of(testRecord);
-            Page<IpAddressRecord> page = new PageImpl<>(records, PageRequest.of(0, 20), 1);
+            Page<IpRecordDto> page = dtoPage(records, PageRequest.of(0, 20), 1);
 
-            when(repository.findByUserId(eq("user@example.com"), any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records/user/user@example.com"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.content", hasSize(1)))
                     .andExpect(jsonPath("$.content[0].userId", is("user@example.com")));
 
-            verify(repository).findByUserId(eq("user@example.com"), any(Pageable.class));
+            verify(repository).findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class));
         }
     }
 
@@ -262,15 +408,15 @@ class IpRecordControllerTest {
         void shouldReturnRecordsForTag() throws Exception {
             IpAddressRecord recordWithTag = createTestRecordWithTag("login");
             List<IpAddressRecord> records = List.of(recordWithTag);
-            Page<IpAddressRecord> page = new PageImpl<>(records, PageRequest.of(0, 20), 1);
+            Page<IpRecordDto> page = dtoPage(records, PageRequest.of(0, 20), 1);
 
-            when(repository.findByTag(eq("login"), any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records/tag/login"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.content", hasSize(1)));
 
-            verify(repository).findByTag(eq("login"), any(Pageable.class));
+            verify(repository).findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class));
         }
     }
 
@@ -283,15 +429,15 @@ class IpRecordControllerTest {
         void shouldReturnRecordsForCountryCode() throws Exception {
             IpAddressRecord recordWithCountry = createTestRecordWithCountry("US");
             List<IpAddressRecord> records = List.of(recordWithCountry);
-            Page<IpAddressRecord> page = new PageImpl<>(records, PageRequest.of(0, 20), 1);
+            Page<IpRecordDto> page = dtoPage(records, PageRequest.of(0, 20), 1);
 
-            when(repository.findByCountryCode(eq("US"), any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records/country/us"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.content", hasSize(1)));
 
-            verify(repository).findByCountryCode(eq("US"), any(Pageable.class));
+            verify(repository).findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class));
         }
     }
 
@@ -305,9 +451,9 @@ class IpRecordControllerTest {
             Instant startDate = testTimestamp.minus(1, ChronoUnit.DAYS);
             Instant endDate = testTimestamp.plus(1, ChronoUnit.DAYS);
             List<IpAddressRecord> records = List.of(testRecord);
-            Page<IpAddressRecord> page = new PageImpl<>(records, PageRequest.of(0, 20), 1);
+            Page<IpRecordDto> page = dtoPage(records, PageRequest.of(0, 20), 1);
 
-            when(repository.findByCreatedAtBetween(any(Instant.class), any(Instant.class), any(Pageable.class)))
+            when(repository.findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class)))
                     .thenReturn(page);
 
             mockMvc.perform(get("/api/alchemy-ip/records/date-range")
@@ -316,7 +462,7 @@ class IpRecordControllerTest {
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.content", hasSize(1)));
 
-            verify(repository).findByCreatedAtBetween(any(Instant.class), any(Instant.class), any(Pageable.class));
+            verify(repository).findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class));
         }
     }
 
@@ -339,9 +485,9 @@ class IpRecordControllerTest {
             );
 
             List<IpAddressRecord> records = List.of(testRecord);
-            Page<IpAddressRecord> page = new PageImpl<>(records, PageRequest.of(0, 20), 1);
+            Page<IpRecordDto> page = dtoPage(records, PageRequest.of(0, 20), 1);
 
-            when(repository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(post("/api/alchemy-ip/records/search")
                             .contentType(MediaType.APPLICATION_JSON)
@@ -349,7 +495,7 @@ class IpRecordControllerTest {
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.content", hasSize(1)));
 
-            verify(repository).findAll(any(Specification.class), any(Pageable.class));
+            verify(repository).findAll(notNull(), any(Pageable.class), eq(IpRecordDto.class));
         }
 
         @Test
@@ -359,9 +505,9 @@ class IpRecordControllerTest {
                     null, null, null, null, null, null, null, null
             );
 
-            Page<IpAddressRecord> page = new PageImpl<>(List.of(), PageRequest.of(0, 20), 0);
+            Page<IpRecordDto> page = dtoPage(List.of(), PageRequest.of(0, 20), 0);
 
-            when(repository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(page);
+            when(repository.findAll(isNull(), any(Pageable.class), eq(IpRecordDto.class))).thenReturn(page);
 
             mockMvc.perform(post("/api/alchemy-ip/records/search")
                             .contentType(MediaType.APPLICATION_JSON)
@@ -412,6 +558,14 @@ class IpRecordControllerTest {
                 .build();
     }
 
+    private static List<IpRecordDto> dtos(List<IpAddressRecord> records) {
+        return records.stream().map(new IpRecordMapper()::toDto).toList();
+    }
+
+    private static Page<IpRecordDto> dtoPage(List<IpAddressRecord> records, Pageable pageable, long total) {
+        return new PageImpl<>(dtos(records), pageable, total);
+    }
+
     private IpAddressRecord createTestRecordWithTag(String tag) {
         return IpAddressRecord.builder()
                 .ipAddress("192.168.1.100")
@@ -15,13 +15,28 @@
  */
 package cloud.alchemy.ip.api.controller;
 
+import cloud.alchemy.ip.api.dto.IpRecordDto;
+import cloud.alchemy.ip.api.exception.ApiExceptionHandler;
 import cloud.alchemy.ip.api.mapper.IpRecordMapper;
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRollupRepository;
+import cloud.alchemy.ip.rollup.IpRollupDimension;
+import cloud.alchemy.ip.rollup.IpRollupGranularity;
+import cloud.alchemy.ip.rollup.IpRollupRebuilder;
+import cloud.alchemy.ip.sketch.IpDistinctCounter;
+import cloud.alchemy.ip.sketch.IpHeavyHitterTracker;
+import cloud.alchemy.ip.sketch.IpSketchBackfiller;
+import cloud.alchemy.ip.sketch.IpSketchScope;
+import cloud.alchemy.ip.sketch.IpSketchType;
+import cloud.alchemy.ip.sketch.SpaceSaving;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+import org.mockito.invocation.Invocation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -31,17 +46,30 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -59,9 +87,6 @@ class IpStatsControllerTest {
     @MockBean
     private IpAddressRepository repository;
 
-    @MockBean
-    private IpRecordMapper mapper;
-
     private List<IpAddressRecord> testRecords;
     private Instant testTimestamp;
 
@@ -74,21 +99,6 @@ class IpStatsControllerTest {
         IpAddressRecord record3 = createTestRecord("192.168.1.100", "user1@example.com", "UK", "London");
 
         testRecords = List.of(record1, record2, record3);
-
-        // Default mapper behavior
-        when(mapper.toDto(any(IpAddressRecord.class))).thenAnswer(invocation -> {
-            IpAddressRecord record = invocation.getArgument(0);
-            return new cloud.alchemy.ip.api.dto.IpRecordDto(
-                    record.getId(),
-                    record.getIpAddress(),
-                    record.getUserId(),
-                    record.getHttpMethod(),
-                    record.getRequestPath(),
-                    record.getTag(),
-                    record.getCountryCode(),
-                    record.getCreatedAt()
-            );
-        });
     }
 
     @Nested
@@ -99,43 +109,53 @@ class IpStatsControllerTest {
         @DisplayName("should return summary statistics")
         void shouldReturnSummaryStatistics() throws Exception {
             when(repository.count()).thenReturn(3L);
-            when(repository.findAll()).thenReturn(testRecords);
-            when(repository.findByCreatedAtBetween(any(Instant.class), any(Instant.class), any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(testRecords, PageRequest.of(0, 1), 3));
+            when(repository.countDistinctIpAddresses()).thenReturn(2L);
+            when(repository.countDistinctUsers()).thenReturn(2L);
+            when(repository.countByCreatedAtBetween(any(Instant.class), any(Instant.class))).thenReturn(3L);
+            List<Object[]> topCountries = new java.util.ArrayList<>();
+            topCountries.add(new Object[]{"US", 2.0});
+            topCountries.add(new Object[]{"UK", 1.0});
+            when(repository.findTopCountries(any(Pageable.class))).thenReturn(topCountries);
+            when(repository.findOldestCreatedAt()).thenReturn(java.util.Optional.of(testTimestamp.minusSeconds(60)));
+            when(repository.findNewestCreatedAt()).thenReturn(java.util.Optional.of(testTimestamp));
             List<Object[]> frequentIpsList = new java.util.ArrayList<>();
             frequentIpsList.add(new Object[]{"192.168.1.100", 2L});
             Page<Object[]> frequentIpsPage = new PageImpl<>(frequentIpsList);
             when(repository.findFrequentIpAddresses(anyLong(), any(Pageable.class)))
                     .thenReturn(frequentIpsPage);
-            when(repository.findAll(any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(testRecords, PageRequest.of(0, 10), 3));
+            List<IpRecordDto> recentRecords = testRecords.stream().map(new IpRecordMapper()::toDto).toList();
+            when(repository.findSlice(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(recentRecords));
 
             mockMvc.perform(get("/api/alchemy-ip/stats/summary"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.totalRecords", is(3)))
                     .andExpect(jsonPath("$.uniqueIpAddresses", is(2)))
                     .andExpect(jsonPath("$.uniqueUsers", is(2)))
-                    .andExpect(jsonPath("$.topCountries", hasKey("US")))
-                    .andExpect(jsonPath("$.topIpAddresses", hasSize(greaterThanOrEqualTo(0))));
+                    .andExpect(jsonPath("$.recordsToday", is(3)))
+                    .andExpect(jsonPath("$.topCountries.US", is(2)))
+                    .andExpect(jsonPath("$.topCountries.UK", is(1)))
+                    .andExpect(jsonPath("$.topIpAddresses", hasSize(greaterThanOrEqualTo(0))))
+                    .andExpect(jsonPath("$.oldestRecord", notNullValue()))
+                    .andExpect(jsonPath("$.newestRecord", notNullValue()));
         }
 
         @Test
         @DisplayName("should handle empty database")
         void shouldHandleEmptyDatabase() throws Exception {
             when(repository.count()).thenReturn(0L);
-            when(repository.findAll()).thenReturn(List.of());
-            when(repository.findByCreatedAtBetween(any(Instant.class), any(Instant.class), any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 1), 0));
             when(repository.findFrequentIpAddresses(anyLong(), any(Pageable.class)))
                     .thenReturn(new PageImpl<>(new java.util.ArrayList<Object[]>()));
-            when(repository.findAll(any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 10), 0));
+            when(repository.findSlice(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(List.of()));
 
             mockMvc.perform(get("/api/alchemy-ip/stats/summary"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.totalRecords", is(0)))
                     .andExpect(jsonPath("$.uniqueIpAddresses", is(0)))
-                    .andExpect(jsonPath("$.uniqueUsers", is(0)));
+                    .andExpect(jsonPath("$.uniqueUsers", is(0)))
+                    .andExpect(jsonPath("$.topCountries", anEmptyMap()))
+                    .andExpect(jsonPath("$.oldestRecord", nullValue()));
         }
     }
 
@@ -146,27 +166,61 @@ class IpStatsControllerTest {
         @Test
         @DisplayName("should return timeline data with default 30 days")
         void shouldReturnTimelineDataWithDefault30Days() throws Exception {
-            when(repository.findByCreatedAtBetween(any(Instant.class), any(Instant.class), any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 1), 0));
-
             mockMvc.perform(get("/api/alchemy-ip/stats/timeline"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.labels", hasSize(31))) // 30 days + today
                     .andExpect(jsonPath("$.counts", hasSize(31)));
+
+            verify(repository).countByCreatedAtBuckets(any(Instant.class), any(Instant.class), anyLong());
         }
 
         @Test
         @DisplayName("should respect days parameter")
         void shouldRespectDaysParameter() throws Exception {
-            when(repository.findByCreatedAtBetween(any(Instant.class), any(Instant.class), any(Pageable.class)))
-                    .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 1), 0));
-
             mockMvc.perform(get("/api/alchemy-ip/stats/timeline")
                             .param("days", "7"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.labels", hasSize(8))) // 7 days + today
                     .andExpect(jsonPath("$.counts", hasSize(8)));
         }
+
+        @Test
+        @DisplayName("should cap days and reject negative values")
+        void shouldBoundDays() throws Exception {
+            mockMvc.perform(get("/api/alchemy-ip/stats/timeline")
+                            .param("days", "100000000"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.labels", hasSize(367)));
+            mockMvc(new IpStatsController(repository)).perform(get("/api/alchemy-ip/stats/timeline")
+                            .param("days", "-1"))
+                    .andExpect(status().isBadRequest());
+        }
+
+        @Test
+        @DisplayName("should fold buckets into days and zero-fill the gaps")
+        void shouldFoldBucketsIntoDays() throws Exception {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate today = LocalDate.now(zone);
+            Instant todayStart = today.atStartOfDay(zone).toInstant();
+            Instant twoDaysAgoNoon = today.minusDays(2).atTime(12, 0).atZone(zone).toInstant();
+            Instant twoDaysAgoEvening = today.minusDays(2).atTime(20, 0).atZone(zone).toInstant();
+            when(repository.countByCreatedAtBuckets(any(Instant.class), any(Instant.class), anyLong()))
+                    .thenAnswer(invocation -> {
+                        long bucketSeconds = invocation.getArgument(2);
+                        List<Object[]> rows = new java.util.ArrayList<>();
+                        rows.add(new Object[]{todayStart.getEpochSecond() / bucketSeconds, 2.0});
+                        rows.add(new Object[]{twoDaysAgoNoon.getEpochSecond() / bucketSeconds, 1.5});
+                        rows.add(new Object[]{twoDaysAgoEvening.getEpochSecond() / bucketSeconds, 1.5});
+                        return rows;
+                    });
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/timeline")
+                            .param("days", "3"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.labels", hasSize(4)))
+                    .andExpect(jsonPath("$.labels[3]", is(today.toString())))
+                    .andExpect(jsonPath("$.counts", contains(0, 3, 0, 2)));
+        }
     }
 
     @Nested
@@ -176,27 +230,42 @@ class IpStatsControllerTest {
         @Test
         @DisplayName("should return geographic distribution")
         void shouldReturnGeoDistribution() throws Exception {
-            when(repository.findAll()).thenReturn(testRecords);
+            List<Object[]> countries = new java.util.ArrayList<>();
+            countries.add(new Object[]{"US", 2.0});
+            countries.add(new Object[]{"UK", 1.0});
+            List<Object[]> cities = new java.util.ArrayList<>();
+            cities.add(new Object[]{"New York", 1.0});
+            cities.add(new Object[]{"Los Angeles", 1.0});
+            cities.add(new Object[]{"London", 1.0});
+            when(repository.findTopCountries(any(Pageable.class))).thenReturn(countries);
+            when(repository.findTopCities(any(Pageable.class))).thenReturn(cities);
 
             mockMvc.perform(get("/api/alchemy-ip/stats/geographic"))
                     .andExpect(status().isOk())
-                    .andExpect(jsonPath("$.countryDistribution", hasKey("US")))
-                    .andExpect(jsonPath("$.countryDistribution", hasKey("UK")))
+                    .andExpect(jsonPath("$.countryDistribution.US", is(2)))
+                    .andExpect(jsonPath("$.countryDistribution.UK", is(1)))
                     .andExpect(jsonPath("$.cityDistribution", hasKey("New York")))
                     .andExpect(jsonPath("$.cityDistribution", hasKey("Los Angeles")))
                     .andExpect(jsonPath("$.cityDistribution", hasKey("London")));
+
+            verify(repository).findTopCities(PageRequest.of(0, 20));
         }
 
         @Test
-        @DisplayName("should handle records without geo data")
-        void shouldHandleRecordsWithoutGeoData() throws Exception {
-            IpAddressRecord recordWithoutGeo = IpAddressRecord.builder()
-                    .ipAddress("192.168.1.100")
-                    .createdAt(testTimestamp)
-                    .build();
+        @DisplayName("should round fractional counts")
+        void shouldRoundFractionalCounts() throws Exception {
+            List<Object[]> countries = new java.util.ArrayList<>();
+            countries.add(new Object[]{"DE", 9.999999});
+            when(repository.findTopCountries(any(Pageable.class))).thenReturn(countries);
 
-            when(repository.findAll()).thenReturn(List.of(recordWithoutGeo));
+            mockMvc.perform(get("/api/alchemy-ip/stats/geographic"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.countryDistribution.DE", is(10)));
+        }
 
+        @Test
+        @DisplayName("should handle records without geo data")
+        void shouldHandleRecordsWithoutGeoData() throws Exception {
             mockMvc.perform(get("/api/alchemy-ip/stats/geographic"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.countryDistribution", anEmptyMap()))
@@ -294,7 +363,7 @@ class IpStatsControllerTest {
         @DisplayName("should return distinct IPs for user")
         void shouldReturnDistinctIpsForUser() throws Exception {
             when(repository.countDistinctIpAddressesByUserId("user@example.com")).thenReturn(3L);
-            when(repository.findDistinctIpAddressesByUserId("user@example.com"))
+            when(repository.findDistinctIpAddressesByUserId("user@example.com", PageRequest.of(0, 100)))
                     .thenReturn(List.of("192.168.1.100", "192.168.1.101", "192.168.1.102"));
 
             mockMvc.perform(get("/api/alchemy-ip/stats/user/user@example.com/distinct-ips"))
@@ -303,6 +372,23 @@ class IpStatsControllerTest {
                     .andExpect(jsonPath("$.ipAddresses", hasSize(3)))
                     .andExpect(jsonPath("$.ipAddresses[0]", is("192.168.1.100")));
         }
+
+        @Test
+        @DisplayName("should page the IP addresses and cap the page size")
+        void shouldPageIpAddresses() throws Exception {
+            when(repository.countDistinctIpAddressesByUserId("user@example.com")).thenReturn(5000L);
+            when(repository.findDistinctIpAddressesByUserId("user@example.com", PageRequest.of(2, 1000)))
+                    .thenReturn(List.of("192.168.1.100"));
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/user/user@example.com/distinct-ips")
+                            .param("page", "2")
+                            .param("size", "5000"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.count", is(5000)))
+                    .andExpect(jsonPath("$.ipAddresses", hasSize(1)))
+                    .andExpect(jsonPath("$.page", is(2)))
+                    .andExpect(jsonPath("$.size", is(1000)));
+        }
     }
 
     @Nested
@@ -322,6 +408,374 @@ class IpStatsControllerTest {
         }
     }
 
+    @Nested
+    @DisplayName("full table reads")
+    class FullTableReads {
+
+        /**
+         * Repository methods that read aggregates, single keys or bounded pages.
+         */
+        private static final Set<String> BOUNDED_READS = Set.of(
+                "count",
+                "countByCreatedAtBetween",
+                "countByCreatedAtBuckets",
+                "countDistinctIpAddresses",
+                "countDistinctUsers",
+                "countByIpAddress",
+                "countByUserId",
+                "countDistinctIpAddressesByUserId",
+                "countDistinctUsersByIpAddress",
+                "findDistinctIpAddressesByUserId",
+                "findFrequentIpAddresses",
+                "findOldestCreatedAt",
+                "findNewestCreatedAt",
+                "findSlice",
+                "findTopCities",
+                "findTopCountries"
+        );
+
+        @Autowired
+        private RequestMappingHandlerMapping handlerMapping;
+
+        @TestFactory
+        @DisplayName("should never load every record")
+        Stream<DynamicTest> shouldNeverLoadEveryRecord() {
+            final List<String> paths = handlerMapping.getHandlerMethods().entrySet().stream()
+                    .filter(entry -> entry.getValue().getBeanType() == IpStatsController.class)
+                    .filter(entry -> entry.getKey().getMethodsCondition().getMethods().contains(RequestMethod.GET))
+                    .flatMap(entry -> entry.getKey().getPatternValues().stream())
+                    .sorted()
+                    .toList();
+            assertThat(paths, hasItem("/api/alchemy-ip/stats/summary"));
+
+            final MockMvc controller = mockMvc(new IpStatsController(repository));
+            return paths.stream().map(path -> dynamicTest(path, () -> {
+                clearInvocations(repository);
+                when(repository.findFrequentIpAddresses(anyLong(), any(Pageable.class)))
+                        .thenReturn(new PageImpl<>(List.of()));
+                when(repository.findSlice(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                        .thenReturn(new SliceImpl<>(List.of()));
+
+                controller.perform(get(path
+                                .replace("{ipAddress}", "192.168.1.100")
+                                .replace("{userId}", "user@example.com")))
+                        .andExpect(status().is(lessThan(500)));
+
+                mockingDetails(repository).getInvocations().stream()
+                        .filter(invocation -> BOUNDED_READS.contains(invocation.getMethod().getName()))
+                        .forEach(Invocation::markVerified);
+                verifyNoMoreInteractions(repository);
+            }));
+        }
+    }
+
+    @Nested
+    @DisplayName("with rollups")
+    class WithRollups {
+
+        private final IpRollupRepository rollups = mock(IpRollupRepository.class);
+        private final IpRollupRebuilder rebuilder = mock(IpRollupRebuilder.class);
+
+        private MockMvc mockMvc;
+
+        @BeforeEach
+        void setUp() {
+            mockMvc = mockMvc(IpStatsController.builder(repository)
+                    .rollups(rollups, rebuilder)
+                    .build());
+            when(repository.findSlice(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(List.of()));
+        }
+
+        @Test
+        @DisplayName("should compute the summary from the rollups")
+        void shouldComputeSummaryFromRollups() throws Exception {
+            when(rollups.sumHits(eq(IpRollupGranularity.DAY), eq(IpRollupDimension.TOTAL), any(), any()))
+                    .thenReturn(12.4);
+            when(rollups.sumHits(eq(IpRollupGranularity.HOUR), eq(IpRollupDimension.TOTAL), any(), any()))
+                    .thenReturn(3.0);
+            when(repository.countDistinctIpAddresses()).thenReturn(5L);
+            when(repository.countDistinctUsers()).thenReturn(4L);
+            when(rollups.findTopValues(eq(IpRollupGranularity.DAY), eq(IpRollupDimension.COUNTRY), any(), any(), any()))
+                    .thenReturn(rows(new Object[]{"US", 7.0}));
+            when(rollups.findTopValues(eq(IpRollupGranularity.DAY), eq(IpRollupDimension.IP), any(), any(), any()))
+                    .thenReturn(rows(new Object[]{"203.0.113.1", 6.0}));
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/summary"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalRecords", is(12)))
+                    .andExpect(jsonPath("$.uniqueIpAddresses", is(5)))
+                    .andExpect(jsonPath("$.uniqueUsers", is(4)))
+                    .andExpect(jsonPath("$.recordsToday", is(3)))
+                    .andExpect(jsonPath("$.topCountries.US", is(7)))
+                    .andExpect(jsonPath("$.topIpAddresses[0].ipAddress", is("203.0.113.1")));
+
+            verify(repository, never()).count();
+            verify(repository, never()).findTopCountries(any());
+            verify(repository, never()).findFrequentIpAddresses(anyLong(), any());
+        }
+
+        @Test
+        @DisplayName("should fold rollup buckets into the timeline")
+        void shouldFoldRollupBucketsIntoTimeline() throws Exception {
+            ZoneId zone = ZoneId.systemDefault();
+            Instant todayStart = LocalDate.now(zone).atStartOfDay(zone).toInstant();
+            when(rollups.sumHitsByBucket(any(), eq(IpRollupDimension.TOTAL), any(), any()))
+                    .thenReturn(rows(new Object[]{todayStart, 2.0}));
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/timeline").param("days", "2"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.counts", contains(0, 0, 2)));
+
+            verify(repository, never()).countByCreatedAtBuckets(any(), any(), anyLong());
+        }
+
+        @Test
+        @DisplayName("should read geographic distribution and per-key counts from the rollups")
+        void shouldReadGeographicAndCountsFromRollups() throws Exception {
+            when(rollups.findTopValues(eq(IpRollupGranularity.DAY), eq(IpRollupDimension.CITY), any(), any(), any()))
+                    .thenReturn(rows(new Object[]{"Berlin", 3.0}));
+            when(rollups.sumHitsByValue(eq(IpRollupGranularity.DAY), eq(IpRollupDimension.IP), eq("203.0.113.1"),
+                    any(), any())).thenReturn(9.0);
+            when(rollups.findFrequentValues(eq(IpRollupGranularity.DAY), eq(IpRollupDimension.IP), any(), any(),
+                    anyDouble(), any())).thenReturn(new PageImpl<>(rows(new Object[]{"203.0.113.1", 9.0})));
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/geographic"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.cityDistribution.Berlin", is(3)));
+            mockMvc.perform(get("/api/alchemy-ip/stats/ip/203.0.113.1/count"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.count", is(9)));
+            mockMvc.perform(get("/api/alchemy-ip/stats/frequent"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content[0].count", is(9)));
+
+            verify(repository, never()).findTopCities(any());
+            verify(repository, never()).countByIpAddress(any());
+        }
+
+        @Test
+        @DisplayName("should rebuild the rollups of a range")
+        void shouldRebuildRollups() throws Exception {
+            Instant from = Instant.parse("2024-03-01T00:00:00Z");
+            Instant to = Instant.parse("2024-03-02T00:00:00Z");
+            when(rebuilder.rebuild(from, to)).thenReturn(42L);
+
+            mockMvc.perform(post("/api/alchemy-ip/stats/rollups/rebuild")
+                            .param("from", from.toString())
+                            .param("to", to.toString()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.recordCount", is(42)));
+        }
+
+        @Test
+        @DisplayName("should reject a rebuild when rollups are not enabled")
+        void shouldRejectRebuildWithoutRollups() throws Exception {
+            MockMvc rawMockMvc = mockMvc(new IpStatsController(repository));
+
+            rawMockMvc.perform(post("/api/alchemy-ip/stats/rollups/rebuild")
+                            .param("from", "2024-03-01T00:00:00Z")
+                            .param("to", "2024-03-02T00:00:00Z"))
+                    .andExpect(status().isBadRequest());
+        }
+
+        private static List<Object[]> rows(Object[]... rows) {
+            return new ArrayList<>(List.of(rows));
+        }
+    }
+
+    @Nested
+    @DisplayName("with sketches")
+    class WithSketches {
+
+        private final IpDistinctCounter counter = mock(IpDistinctCounter.class);
+        private final IpSketchBackfiller backfiller = mock(IpSketchBackfiller.class);
+
+        private MockMvc mockMvc;
+
+        @BeforeEach
+        void setUp() {
+            mockMvc = mockMvc(IpStatsController.builder(repository)
+                    .distinctCounter(counter, backfiller)
+                    .build());
+            when(repository.findSlice(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(List.of()));
+            when(repository.findFrequentIpAddresses(anyLong(), any(Pageable.class)))
+                    .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 10), 0));
+            when(counter.getRelativeError()).thenReturn(0.008);
+        }
+
+        @Test
+        @DisplayName("should estimate the summary's distinct counts from the global sketches")
+        void shouldEstimateSummaryDistinctCounts() throws Exception {
+            when(counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, "")).thenReturn(1_000_000L);
+            when(counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.GLOBAL, "")).thenReturn(40_000L);
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/summary"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.uniqueIpAddresses", is(1_000_000)))
+                    .andExpect(jsonPath("$.uniqueUsers", is(40_000)));
+
+            verify(repository, never()).countDistinctIpAddresses();
+            verify(repository, never()).countDistinctUsers();
+        }
+
+        @Test
+        @DisplayName("should count exactly when asked to")
+        void shouldCountExactlyOnRequest() throws Exception {
+            when(repository.countDistinctIpAddresses()).thenReturn(7L);
+            when(repository.countDistinctUsersByIpAddress("203.0.113.1")).thenReturn(3L);
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/summary").param("exact", "true"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.uniqueIpAddresses", is(7)));
+            mockMvc.perform(get("/api/alchemy-ip/stats/ip/203.0.113.1/distinct-users").param("exact", "true"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.count", is(3)));
+
+            verify(counter, never()).estimate(any(), any(), any(String.class));
+        }
+
+        @Test
+        @DisplayName("should estimate per-key distinct counts from the user and IP sketches")
+        void shouldEstimatePerKeyCounts() throws Exception {
+            when(counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, "alice")).thenReturn(12L);
+            when(counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.IP, "203.0.113.1")).thenReturn(2L);
+            when(repository.findDistinctIpAddressesByUserId(eq("alice"), any(Pageable.class))).thenReturn(List.of("203.0.113.1"));
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/user/alice/distinct-ips"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.count", is(12)))
+                    .andExpect(jsonPath("$.ipAddresses", hasSize(1)));
+            mockMvc.perform(get("/api/alchemy-ip/stats/ip/203.0.113.1/distinct-users"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.count", is(2)));
+
+            verify(repository, never()).countDistinctIpAddressesByUserId(any());
+            verify(repository, never()).countDistinctUsersByIpAddress(any());
+        }
+
+        @Test
+        @DisplayName("should estimate distinct counts per tag and per day range")
+        void shouldEstimateScopedCounts() throws Exception {
+            when(counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.TAG, "login")).thenReturn(30L);
+            when(counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.TAG, "login")).thenReturn(20L);
+            when(counter.estimateDays(eq(IpSketchType.DISTINCT_IPS), eq(LocalDate.parse("2024-03-01")),
+                    eq(LocalDate.parse("2024-03-07")))).thenReturn(55L);
+
+            mockMvc.perform(get("/api/alchemy-ip/stats/distinct").param("tag", "login"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.uniqueIps", is(30)))
+                    .andExpect(jsonPath("$.uniqueUsers", is(20)))
+                    .andExpect(jsonPath("$.relativeError", is(0.008)));
+            mockMvc.perform(get("/api/alchemy-ip/stats/distinct")
+                            .param("from", "2024-03-01").param("to", "2024-03-07"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.uniqueIps", is(55)));
+            mockMvc.perform(get("/api/alchemy-ip/stats/distinct").param("tag", "login").param("country", "US"))
+                    .andExpect(status().isBadRequest());
+            mockMvc.perform(get("/api/alchemy-ip/stats/distinct")
+                            .param("from", "2024-03-07").param("to", "2024-03-01"))
+                    .andExpect(status().isBadRequest());
+        }
+
+        @Test
+        @DisplayName("should backfill the sketches of a time range")
+        void shouldBackfill() throws Exception {
+            when(backfiller.backfill(Instant.parse("2024-03-01T00:00:00Z"), Instant.parse("2024-03-02T00:00:00Z")))
+                    .thenReturn(42L);
+
+            mockMvc.perform(post("/api/alchemy-ip/stats/sketches/backfill")
+                            .param("from", "2024-03-01T00:00:00Z")
+                            .param("to", "2024-03-02T00:00:00Z"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.recordCount", is(42)));
+        }
+
+        @Test
+        @DisplayName("should reject sketch endpoints when sketches are disabled")
+        void shouldRejectWhenDisabled() throws Exception {
+            final MockMvc withoutSketches = mockMvc(new IpStatsController(repository));
+
+            withoutSketches.perform(get("/api/alchemy-ip/stats/distinct"))
+                    .andExpect(status().isBadRequest());
+            withoutSketches.perform(post("/api/alchemy-ip/stats/sketches/backfill")
+                            .param("from", "2024-03-01T00:00:00Z")
+                            .param("to", "2024-03-02T00:00:00Z"))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Nested
+    @DisplayName("with heavy hitters")
+    class WithHeavyHitters {
+
+        private final IpHeavyHitterTracker tracker = mock(IpHeavyHitterTracker.class);
+
+        private MockMvc mockMvc;
+
+        @BeforeEach
+        void setUp() {
+            mockMvc = mockMvc(IpStatsController.builder(repository)
+                    .heavyHitterTracker(tracker)
+                    .build());
+            when(repository.findSlice(isNull(), any(Pageable.class), eq(IpRecordDto.class)))
+                    .thenReturn(new SliceImpl<>(List.of()));
+            when(repository.findFrequentIpAddresses(anyLong(), any(Pageable.class)))
+                    .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 10), 0));
+            when(tracker.allTime()).thenAnswer(invocation -> summary("203.0.113.1", 9, "203.0.113.2", 5, "203.0.113.3", 1));
+            when(tracker.window()).thenAnswer(invocation -> summary("203.0.113.2", 4, "203.0.113.4", 3));
+        }
+
+        @Test
+        @DisplayName("should page frequent IP addresses from the all-time summary")
+        void shouldPageFrequentIps() throws Exception {
+            mockMvc.perform(get("/api/alchemy-ip/stats/frequent").param("size", "1").param("page", "1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content", hasSize(1)))
+                    .andExpect(jsonPath("$.content[0].ipAddress", is("203.0.113.2")))
+                    .andExpect(jsonPath("$.content[0].count", is(5)))
+                    .andExpect(jsonPath("$.totalElements", is(2)))
+                    .andExpect(jsonPath("$.last", is(true)));
+
+            verify(repository, never()).findFrequentIpAddresses(anyLong(), any(Pageable.class));
+        }
+
+        @Test
+        @DisplayName("should serve the sliding window and top IPs of the summary from the tracker")
+        void shouldServeWindowAndSummary() throws Exception {
+            mockMvc.perform(get("/api/alchemy-ip/stats/frequent").param("recent", "true").param("threshold", "1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content[*].ipAddress", contains("203.0.113.2", "203.0.113.4")));
+            mockMvc.perform(get("/api/alchemy-ip/stats/summary"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.topIpAddresses", hasSize(3)))
+                    .andExpect(jsonPath("$.topIpAddresses[0].count", is(9)));
+
+            verify(repository, never()).findFrequentIpAddresses(anyLong(), any(Pageable.class));
+        }
+
+        @Test
+        @DisplayName("should count exactly when asked to, and reject recent without a tracker")
+        void shouldCountExactlyOnRequest() throws Exception {
+            mockMvc.perform(get("/api/alchemy-ip/stats/frequent").param("exact", "true"))
+                    .andExpect(status().isOk());
+            verify(repository).findFrequentIpAddresses(anyLong(), any(Pageable.class));
+
+            mockMvc(new IpStatsController(repository))
+                    .perform(get("/api/alchemy-ip/stats/frequent").param("recent", "true"))
+                    .andExpect(status().isBadRequest());
+        }
+
+        private static SpaceSaving summary(Object... valuesAndCounts) {
+            final SpaceSaving summary = new SpaceSaving(10);
+            for (int i = 0; i < valuesAndCounts.length; i += 2) {
+                summary.offer((String) valuesAndCounts[i], (Integer) valuesAndCounts[i + 1]);
+            }
+            return summary;
+        }
+    }
+
     private IpAddressRecord createTestRecord(String ipAddress, String userId, String countryCode, String city) {
         return IpAddressRecord.builder()
                 .ipAddress(ipAddress)
@@ -333,4 +787,10 @@ class IpStatsControllerTest {
                 .createdAt(testTimestamp)
                 .build();
     }
+
+    private static MockMvc mockMvc(IpStatsController controller) {
+        return MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new ApiExceptionHandler())
+                .build();
+    }
 }
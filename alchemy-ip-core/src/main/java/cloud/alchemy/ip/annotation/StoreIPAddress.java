@@ -121,4 +121,16 @@ public @interface StoreIPAddress {
      * @return the SpEL expression for user ID extraction
      */
     String userIdExpression() default "";
+
+    /**
+     * Fraction of requests to capture, between {@code 0.0} (none) and {@code 1.0} (all).
+     * The decision is made before any extraction work, and records captured at a
+     * rate below 1 carry that rate so statistics can scale counts back up.
+     *
+     * <p>A negative value (the default) uses {@code alchemy.ip.sample-rate}.
+     *
+     * @return the sample rate, or a negative value for the global default
+     * @since 1.1.0
+     */
+    double sampleRate() default -1.0;
 }
@@ -16,8 +16,11 @@
 package cloud.alchemy.ip.aspect;
 
 import cloud.alchemy.ip.annotation.StoreIPAddress;
+import cloud.alchemy.ip.capture.CaptureOptions;
+import cloud.alchemy.ip.capture.IpCaptureDispatcher;
+import cloud.alchemy.ip.capture.IpRecordFactory;
+import cloud.alchemy.ip.config.IpManagementProperties.SyncMode;
 import cloud.alchemy.ip.customization.UserIdResolver;
-import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.extractor.IpAddressExtractor;
 import cloud.alchemy.ip.service.IpAddressStorageService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -44,6 +47,13 @@ import java.util.Optional;
  * <p>This aspect extracts the client IP address from the current HTTP request
  * and stores it in the database along with optional metadata.
  *
+ * <p>Synchronous captures are either stored immediately after the controller
+ * method returns, or - with {@link SyncMode#AFTER_COMPLETION} - from a request
+ * destruction callback that runs once the response has been flushed.
+ *
+ * <p>When a sample rate below 1 applies, unsampled invocations skip capture
+ * entirely, before the request is even looked up.
+ *
  * <p>This class is immutable and thread-safe.
  *
  * @author Alchemy Team
@@ -53,17 +63,17 @@ import java.util.Optional;
 public final class IpAddressStorageAspect {
 
     private static final Logger log = LoggerFactory.getLogger(IpAddressStorageAspect.class);
-    private static final int MAX_USER_AGENT_LENGTH = 512;
-    private static final int MAX_REQUEST_PATH_LENGTH = 2048;
 
-    private final IpAddressStorageService storageService;
-    private final IpAddressExtractor ipAddressExtractor;
+    private final IpCaptureDispatcher dispatcher;
+    private final IpRecordFactory recordFactory;
     private final UserIdResolver userIdResolver;
     private final BeanFactory beanFactory;
     private final ExpressionParser expressionParser;
+    private final double defaultSampleRate;
 
     /**
-     * Creates a new aspect with the specified dependencies.
+     * Creates a new aspect with the specified dependencies that stores
+     * synchronous captures immediately.
      *
      * @param storageService     the IP address storage service
      * @param ipAddressExtractor the IP address extractor
@@ -74,11 +84,31 @@ public final class IpAddressStorageAspect {
                                    IpAddressExtractor ipAddressExtractor,
                                    UserIdResolver userIdResolver,
                                    BeanFactory beanFactory) {
-        this.storageService = storageService;
-        this.ipAddressExtractor = ipAddressExtractor;
+        this(new IpCaptureDispatcher(storageService, SyncMode.IMMEDIATE, null),
+                new IpRecordFactory(ipAddressExtractor), userIdResolver, beanFactory, 1.0);
+    }
+
+    /**
+     * Creates a new aspect that hands captured records to the given dispatcher.
+     *
+     * @param dispatcher        the dispatcher that hands records to storage
+     * @param recordFactory     the record factory
+     * @param userIdResolver    the user ID resolver
+     * @param beanFactory       the Spring bean factory for SpEL evaluation
+     * @param defaultSampleRate the sample rate for annotations that do not set one
+     * @since 1.1.0
+     */
+    public IpAddressStorageAspect(IpCaptureDispatcher dispatcher,
+                                   IpRecordFactory recordFactory,
+                                   UserIdResolver userIdResolver,
+                                   BeanFactory beanFactory,
+                                   double defaultSampleRate) {
+        this.dispatcher = dispatcher;
+        this.recordFactory = recordFactory;
         this.userIdResolver = userIdResolver;
         this.beanFactory = beanFactory;
         this.expressionParser = new SpelExpressionParser();
+        this.defaultSampleRate = defaultSampleRate;
     }
 
     /**
@@ -94,6 +124,11 @@ public final class IpAddressStorageAspect {
             "@within(org.springframework.stereotype.Controller))")
     public Object aroundControllerMethod(ProceedingJoinPoint joinPoint,
                                          StoreIPAddress storeIPAddress) throws Throwable {
+        final CaptureOptions options = CaptureOptions.of(storeIPAddress, defaultSampleRate);
+        if (!options.sample()) {
+            return joinPoint.proceed();
+        }
+
         final HttpServletRequest request = getCurrentRequest();
         if (request == null) {
             log.warn("No HTTP request available in current context, skipping IP storage");
@@ -103,7 +138,7 @@ public final class IpAddressStorageAspect {
         final Object result = joinPoint.proceed();
 
         try {
-            storeIpAddress(request, storeIPAddress, joinPoint, result);
+            storeIpAddress(request, storeIPAddress, options, joinPoint, result);
         } catch (Exception e) {
             log.error("Failed to store IP address, but not affecting the request processing", e);
         }
@@ -113,60 +148,20 @@ public final class IpAddressStorageAspect {
 
     private void storeIpAddress(HttpServletRequest request,
                                 StoreIPAddress annotation,
+                                CaptureOptions options,
                                 ProceedingJoinPoint joinPoint,
                                 Object methodResult) {
-        final Optional<String> ipAddressOpt = ipAddressExtractor.extractIpAddress(request);
-        if (ipAddressOpt.isEmpty()) {
+        final Optional<String> ipAddress = recordFactory.extractIpAddress(request);
+        if (ipAddress.isEmpty()) {
             log.warn("Could not extract IP address from request");
             return;
         }
-
-        final String ipAddress = ipAddressOpt.get();
-        final String userId = resolveUserId(request, annotation, joinPoint, methodResult);
-
-        final IpAddressRecord.Builder recordBuilder = IpAddressRecord.builder()
-                .ipAddress(ipAddress)
-                .userId(userId);
-
-        if (annotation.storeUserAgent()) {
-            recordBuilder.userAgent(truncate(request.getHeader("User-Agent"), MAX_USER_AGENT_LENGTH));
-        }
-
-        if (annotation.storeRequestPath()) {
-            recordBuilder.requestPath(truncate(request.getRequestURI(), MAX_REQUEST_PATH_LENGTH));
-        }
-
-        if (annotation.storeHttpMethod()) {
-            recordBuilder.httpMethod(request.getMethod());
-        }
-
-        if (!annotation.tag().isEmpty()) {
-            recordBuilder.tag(annotation.tag());
+        if (!dispatcher.tryAcquire(ipAddress.get())) {
+            return;
         }
 
-        final IpAddressRecord record = recordBuilder.build();
-
-        if (annotation.async()) {
-            storageService.storeAsync(record)
-                    .thenAccept(savedOpt -> {
-                        if (savedOpt.isPresent()) {
-                            log.debug("Async IP address stored: {}", ipAddress);
-                        } else {
-                            log.debug("Async IP address skipped (duplicate): {}", ipAddress);
-                        }
-                    })
-                    .exceptionally(ex -> {
-                        log.error("Async IP storage failed for IP: {}", ipAddress, ex);
-                        return null;
-                    });
-        } else {
-            final Optional<IpAddressRecord> savedOpt = storageService.store(record);
-            if (savedOpt.isPresent()) {
-                log.debug("IP address stored: {}", ipAddress);
-            } else {
-                log.debug("IP address skipped (duplicate): {}", ipAddress);
-            }
-        }
+        final String userId = resolveUserId(request, annotation, joinPoint, methodResult);
+        dispatcher.dispatch(recordFactory.create(request, ipAddress.get(), userId, options), options.async());
     }
 
     private String resolveUserId(HttpServletRequest request,
@@ -214,10 +209,4 @@ public final class IpAddressStorageAspect {
         }
     }
 
-    private static String truncate(String value, int maxLength) {
-        if (value == null) {
-            return null;
-        }
-        return value.length() <= maxLength ? value : value.substring(0, maxLength);
-    }
 }
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.breaker;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link IpAddressStorageService} decorator that stops sending captures to a slow
+ * or failing database.
+ *
+ * <p>Every call takes a permit from a {@link StorageCircuitBreaker}. While the
+ * breaker is open, single-record stores return immediately and their record is
+ * spilled instead: either into a bounded in-memory ring, which is drained back
+ * into the delegate in the background once the breaker closes, or into an external
+ * target such as the local journal. Records whose store throws are spilled the
+ * same way, so callers no longer see storage errors. Permanent errors are the
+ * exception: an {@link IllegalArgumentException} for an invalid record or a
+ * {@link DataIntegrityViolationException} says nothing about the database's health
+ * and would fail again on every retry, so it is rethrown without being spilled or
+ * counted against the breaker.
+ *
+ * <p>When draining the ring, a batch that fails with a permanent error is retried
+ * record by record, and the records that still fail on their own are discarded
+ * rather than requeued.
+ *
+ * <p>{@link #storeAll(List)} is not spilled: a rejected batch fails fast with a
+ * {@link StorageCircuitOpenException} and a failed batch rethrows, leaving the
+ * batch to the caller's own failure path. The record writer hands failed batches
+ * to its failed-batch handler; the journal replayer retries them later.
+ *
+ * <p>{@code storeFromRequest} variants build the record inside the delegate, so a
+ * rejected call cannot be spilled and returns empty.
+ *
+ * <p>The delegate is not a Spring bean and so has no {@code @Async} proxy. Given an
+ * executor, the async variants therefore run the synchronous call on it themselves
+ * and return at once; without one they call the delegate's async variants.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class CircuitBreakingIpAddressStorageService implements IpAddressStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakingIpAddressStorageService.class);
+
+    private final IpAddressStorageService delegate;
+    private final StorageCircuitBreaker breaker;
+    private final Executor asyncExecutor;
+    private final SpillBuffer buffer;
+    private final Consumer<List<IpAddressRecord>> spillTarget;
+    private final int drainBatchSize;
+    private final String drainThreadName;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final LongAdder spilledCount = new LongAdder();
+    private final LongAdder discardedCount = new LongAdder();
+
+    /**
+     * Creates a decorator that spills into a bounded in-memory ring.
+     *
+     * @param delegate        the storage service calls are forwarded to
+     * @param breaker         the circuit breaker
+     * @param asyncExecutor   runs the async variants, or {@code null} to call the
+     *                        delegate's async variants
+     * @param spillCapacity   maximum records held while the breaker is open
+     * @param spillMaxBytes   maximum estimated heap size of the records held
+     * @param drainBatchSize  maximum records per storeAll call when draining the ring
+     * @param drainThreadName name of the virtual thread that drains the ring
+     */
+    public CircuitBreakingIpAddressStorageService(IpAddressStorageService delegate,
+                                                  StorageCircuitBreaker breaker,
+                                                  Executor asyncExecutor,
+                                                  int spillCapacity,
+                                                  long spillMaxBytes,
+                                                  int drainBatchSize,
+                                                  String drainThreadName) {
+        if (drainBatchSize < 1) {
+            throw new IllegalArgumentException("drainBatchSize must be positive");
+        }
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.asyncExecutor = asyncExecutor;
+        this.buffer = new SpillBuffer(spillCapacity, spillMaxBytes);
+        this.spillTarget = buffer::offer;
+        this.drainBatchSize = drainBatchSize;
+        this.drainThreadName = drainThreadName;
+    }
+
+    /**
+     * Creates a decorator that spills into an external target, which is then
+     * responsible for getting the records into the database.
+     *
+     * @param delegate      the storage service calls are forwarded to
+     * @param breaker       the circuit breaker
+     * @param asyncExecutor runs the async variants, or {@code null} to call the
+     *                      delegate's async variants
+     * @param spillTarget   receives records that were rejected or failed
+     */
+    public CircuitBreakingIpAddressStorageService(IpAddressStorageService delegate,
+                                                  StorageCircuitBreaker breaker,
+                                                  Executor asyncExecutor,
+                                                  Consumer<List<IpAddressRecord>> spillTarget) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.asyncExecutor = asyncExecutor;
+        this.buffer = null;
+        this.spillTarget = spillTarget;
+        this.drainBatchSize = 0;
+        this.drainThreadName = null;
+    }
+
+    @Override
+    public Optional<IpAddressRecord> store(IpAddressRecord record) {
+        final long permit = breaker.acquirePermission();
+        if (permit == StorageCircuitBreaker.NO_PERMIT) {
+            spill(List.of(record));
+            return Optional.empty();
+        }
+        final long start = System.nanoTime();
+        final Optional<IpAddressRecord> stored;
+        try {
+            stored = delegate.store(record);
+        } catch (RuntimeException e) {
+            if (IpAddressStorageService.isPermanentFailure(e)) {
+                breaker.onIgnored(permit);
+                throw e;
+            }
+            breaker.onFailure(permit, System.nanoTime() - start);
+            log.debug("Failed to store IP address record, spilling it: {}", e.getMessage());
+            spill(List.of(record));
+            return Optional.empty();
+        }
+        breaker.onSuccess(permit, System.nanoTime() - start);
+        drainIfRecovered();
+        return stored;
+    }
+
+    @Override
+    public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+        if (asyncExecutor != null) {
+            return CompletableFuture.supplyAsync(() -> store(record), asyncExecutor);
+        }
+        final long permit = breaker.acquirePermission();
+        if (permit == StorageCircuitBreaker.NO_PERMIT) {
+            spill(List.of(record));
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        final long start = System.nanoTime();
+        final CompletableFuture<Optional<IpAddressRecord>> future;
+        try {
+            future = delegate.storeAsync(record);
+        } catch (RuntimeException e) {
+            if (IpAddressStorageService.isPermanentFailure(e)) {
+                breaker.onIgnored(permit);
+                throw e;
+            }
+            breaker.onFailure(permit, System.nanoTime() - start);
+            spill(List.of(record));
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return future.handle((stored, error) -> {
+            if (error != null && IpAddressStorageService.isPermanentFailure(unwrap(error))) {
+                breaker.onIgnored(permit);
+                throw new CompletionException(unwrap(error));
+            }
+            if (error != null) {
+                breaker.onFailure(permit, System.nanoTime() - start);
+                log.debug("Failed to store IP address record, spilling it: {}", error.getMessage());
+                spill(List.of(record));
+                return Optional.empty();
+            }
+            breaker.onSuccess(permit, System.nanoTime() - start);
+            drainIfRecovered();
+            return stored;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws StorageCircuitOpenException if the circuit breaker rejects the batch
+     */
+    @Override
+    public List<IpAddressRecord> storeAll(List<IpAddressRecord> records) {
+        final long permit = breaker.acquirePermission();
+        if (permit == StorageCircuitBreaker.NO_PERMIT) {
+            throw new StorageCircuitOpenException(
+                    "IP storage circuit breaker is " + breaker.getState() + ", rejected " + records.size() + " records");
+        }
+        final List<IpAddressRecord> stored = call(permit, () -> delegate.storeAll(records));
+        drainIfRecovered();
+        return stored;
+    }
+
+    @Override
+    public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+        final long permit = breaker.acquirePermission();
+        if (permit == StorageCircuitBreaker.NO_PERMIT) {
+            return Optional.empty();
+        }
+        return call(permit, () -> delegate.storeFromRequest(request, userId));
+    }
+
+    @Override
+    public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request,
+                                                                              String userId) {
+        if (asyncExecutor != null) {
+            return CompletableFuture.supplyAsync(() -> storeFromRequest(request, userId), asyncExecutor);
+        }
+        final long permit = breaker.acquirePermission();
+        if (permit == StorageCircuitBreaker.NO_PERMIT) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        final long start = System.nanoTime();
+        final CompletableFuture<Optional<IpAddressRecord>> future;
+        try {
+            future = delegate.storeFromRequestAsync(request, userId);
+        } catch (RuntimeException e) {
+            breaker.onFailure(permit, System.nanoTime() - start);
+            throw e;
+        }
+        return future.whenComplete((stored, error) -> {
+            if (error != null) {
+                breaker.onFailure(permit, System.nanoTime() - start);
+            } else {
+                breaker.onSuccess(permit, System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * Hands records to the spill target. Also used as the record writer's
+     * failed-batch handler when no journal is configured.
+     *
+     * @param records the records to spill
+     */
+    public void spill(List<IpAddressRecord> records) {
+        spilledCount.add(records.size());
+        spillTarget.accept(records);
+    }
+
+    /**
+     * Returns the circuit breaker guarding the delegate.
+     *
+     * @return the circuit breaker
+     */
+    public StorageCircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Returns the total number of records spilled.
+     *
+     * @return the spilled record count
+     */
+    public long getSpilledCount() {
+        return spilledCount.sum();
+    }
+
+    /**
+     * Returns the number of records held in the in-memory ring, or 0 when
+     * spilling to an external target.
+     *
+     * @return the pending spilled record count
+     */
+    public int getSpillPendingCount() {
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    /**
+     * Returns the estimated heap size of the records held in the in-memory ring, or 0
+     * when spilling to an external target.
+     *
+     * @return the pending spilled bytes
+     */
+    public long getSpillPendingBytes() {
+        return buffer == null ? 0 : buffer.getBytes();
+    }
+
+    /**
+     * Returns the number of records dropped because the in-memory ring was full, by
+     * count or by bytes.
+     *
+     * @return the dropped record count
+     */
+    public long getSpillDroppedCount() {
+        return buffer == null ? 0 : buffer.getDroppedCount();
+    }
+
+    /**
+     * Returns the number of spilled records discarded while draining because they
+     * failed permanently.
+     *
+     * @return the discarded record count
+     */
+    public long getSpillDiscardedCount() {
+        return discardedCount.sum();
+    }
+
+    private <T> T call(long permit, Supplier<T> action) {
+        final long start = System.nanoTime();
+        final T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            if (IpAddressStorageService.isPermanentFailure(e)) {
+                breaker.onIgnored(permit);
+            } else {
+                breaker.onFailure(permit, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        breaker.onSuccess(permit, System.nanoTime() - start);
+        return result;
+    }
+
+    private void drainIfRecovered() {
+        if (buffer == null || buffer.size() == 0 || breaker.getState() != StorageCircuitBreaker.State.CLOSED) {
+            return;
+        }
+        if (draining.compareAndSet(false, true)) {
+            Thread.ofVirtual().name(drainThreadName).start(this::drain);
+        }
+    }
+
+    private void drain() {
+        int drained = 0;
+        try {
+            while (true) {
+                final List<IpAddressRecord> batch = buffer.poll(drainBatchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                DrainOutcome outcome = storeDrained(batch);
+                if (outcome == DrainOutcome.STORED) {
+                    drained += batch.size();
+                    continue;
+                }
+                int next = 0;
+                if (outcome == DrainOutcome.FAILED_PERMANENTLY) {
+                    // Isolate the records that cannot be stored from the rest of the batch
+                    for (; next < batch.size(); next++) {
+                        final IpAddressRecord record = batch.get(next);
+                        outcome = storeDrained(List.of(record));
+                        if (outcome == DrainOutcome.STORED) {
+                            drained++;
+                        } else if (outcome == DrainOutcome.FAILED_PERMANENTLY) {
+                            discardedCount.increment();
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                if (next < batch.size()) {
+                    buffer.requeue(batch.subList(next, batch.size()));
+                    break;
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        if (drained > 0) {
+            log.info("Drained {} spilled IP records into storage", drained);
+        }
+    }
+
+    private DrainOutcome storeDrained(List<IpAddressRecord> batch) {
+        final long permit = breaker.acquirePermission();
+        if (permit == StorageCircuitBreaker.NO_PERMIT) {
+            return DrainOutcome.RETRY;
+        }
+        try {
+            call(permit, () -> delegate.storeAll(batch));
+            return DrainOutcome.STORED;
+        } catch (RuntimeException e) {
+            if (IpAddressStorageService.isPermanentFailure(e)) {
+                if (batch.size() == 1) {
+                    log.warn("Discarding spilled IP record that cannot be stored: {}", e.getMessage());
+                }
+                return DrainOutcome.FAILED_PERMANENTLY;
+            }
+            log.warn("Failed to drain {} spilled IP records, keeping them: {}", batch.size(), e.getMessage());
+            return DrainOutcome.RETRY;
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private enum DrainOutcome {
+        STORED,
+        RETRY,
+        FAILED_PERMANENTLY
+    }
+}
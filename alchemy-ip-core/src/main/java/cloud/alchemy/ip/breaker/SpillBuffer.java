@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.breaker;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.writer.RecordSizeEstimator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded in-memory ring that holds captures while the circuit breaker is open.
+ * The ring is bounded by record count and by estimated heap size
+ * ({@link RecordSizeEstimator}); when either bound is reached, the oldest records
+ * are dropped to make room for new ones.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+final class SpillBuffer {
+
+    private final ArrayDeque<Entry> records = new ArrayDeque<>();
+    private final int capacity;
+    private final long maxBytes;
+    private long bytes;
+    private long droppedCount;
+
+    SpillBuffer(int capacity, long maxBytes) {
+        if (capacity < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("capacity and maxBytes must be positive");
+        }
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void offer(List<IpAddressRecord> batch) {
+        for (IpAddressRecord record : batch) {
+            final Entry entry = new Entry(record, RecordSizeEstimator.estimate(record));
+            if (entry.bytes > maxBytes) {
+                droppedCount++;
+                continue;
+            }
+            while (records.size() == capacity || bytes + entry.bytes > maxBytes) {
+                bytes -= records.pollFirst().bytes;
+                droppedCount++;
+            }
+            records.addLast(entry);
+            bytes += entry.bytes;
+        }
+    }
+
+    synchronized List<IpAddressRecord> poll(int maxRecords) {
+        final int count = Math.min(maxRecords, records.size());
+        final List<IpAddressRecord> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Entry entry = records.pollFirst();
+            bytes -= entry.bytes;
+            batch.add(entry.record);
+        }
+        return batch;
+    }
+
+    /**
+     * Puts a batch that could not be drained back at the head of the ring, keeping
+     * newer records if there is no longer room for all of it.
+     */
+    synchronized void requeue(List<IpAddressRecord> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            final Entry entry = new Entry(batch.get(i), RecordSizeEstimator.estimate(batch.get(i)));
+            if (records.size() == capacity || bytes + entry.bytes > maxBytes) {
+                droppedCount += i + 1;
+                return;
+            }
+            records.addFirst(entry);
+            bytes += entry.bytes;
+        }
+    }
+
+    synchronized int size() {
+        return records.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private record Entry(IpAddressRecord record, long bytes) {
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.breaker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker guarding the database behind IP storage.
+ *
+ * <p>The outcomes of the last {@code windowSize} calls are kept in a ring. Once at
+ * least {@code minimumCalls} have been recorded, the breaker opens when the share
+ * of failed calls reaches {@code failureRateThreshold} or the share of calls slower
+ * than {@code slowCallThreshold} reaches {@code slowCallRateThreshold}. While open,
+ * every call is rejected without touching the database. After {@code openDuration}
+ * the breaker half-opens and lets {@code halfOpenProbes} calls through: if they all
+ * succeed in time it closes again, otherwise it re-opens.
+ *
+ * <p>Callers take a permit with {@link #acquirePermission()} and report the outcome
+ * with {@link #onSuccess(long, long)} or {@link #onFailure(long, long)}, or hand it
+ * back with {@link #onIgnored(long)} when the call failed without reaching the
+ * database. Permits are
+ * tied to the state they were issued in, so a call that started before a transition
+ * does not count towards the next state.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class StorageCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageCircuitBreaker.class);
+
+    /**
+     * Returned by {@link #acquirePermission()} when the call is rejected.
+     */
+    public static final long NO_PERMIT = -1;
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    /**
+     * Breaker states.
+     */
+    public enum State {
+
+        /**
+         * Calls go through and their outcomes are recorded.
+         */
+        CLOSED,
+
+        /**
+         * Calls are rejected until the open duration has elapsed.
+         */
+        OPEN,
+
+        /**
+         * A limited number of probe calls go through to test recovery.
+         */
+        HALF_OPEN
+    }
+
+    private final byte[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallThresholdNanos;
+    private final double slowCallRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier nanoClock;
+
+    private volatile State state = State.CLOSED;
+    private long generation;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int probesIssued;
+    private int probesSucceeded;
+
+    private long successCount;
+    private long failureCount;
+    private long slowCount;
+    private long rejectedCount;
+
+    /**
+     * Creates a new circuit breaker.
+     *
+     * @param windowSize            number of recent calls considered
+     * @param minimumCalls          calls required in the window before the breaker may open
+     * @param failureRateThreshold  failed share of the window (0 to 1) that opens the breaker
+     * @param slowCallThreshold     duration above which a call counts as slow
+     * @param slowCallRateThreshold slow share of the window (0 to 1) that opens the breaker
+     * @param openDuration          how long the breaker stays open before probing
+     * @param halfOpenProbes        successful probes required to close the breaker
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public StorageCircuitBreaker(int windowSize,
+                                 int minimumCalls,
+                                 double failureRateThreshold,
+                                 Duration slowCallThreshold,
+                                 double slowCallRateThreshold,
+                                 Duration openDuration,
+                                 int halfOpenProbes) {
+        this(windowSize, minimumCalls, failureRateThreshold, slowCallThreshold, slowCallRateThreshold,
+                openDuration, halfOpenProbes, System::nanoTime);
+    }
+
+    StorageCircuitBreaker(int windowSize,
+                          int minimumCalls,
+                          double failureRateThreshold,
+                          Duration slowCallThreshold,
+                          double slowCallRateThreshold,
+                          Duration openDuration,
+                          int halfOpenProbes,
+                          LongSupplier nanoClock) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        if (minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+        }
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)
+                || !(slowCallRateThreshold > 0 && slowCallRateThreshold <= 1)) {
+            throw new IllegalArgumentException("Rate thresholds must be in (0, 1]");
+        }
+        if (slowCallThreshold.isNegative() || slowCallThreshold.isZero()
+                || openDuration.isNegative() || openDuration.isZero()) {
+            throw new IllegalArgumentException("Durations must be positive");
+        }
+        if (halfOpenProbes < 1) {
+            throw new IllegalArgumentException("halfOpenProbes must be positive");
+        }
+        this.window = new byte[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThresholdNanos = slowCallThreshold.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Asks whether a call may go to the database.
+     *
+     * @return a permit to pass to {@link #onSuccess} or {@link #onFailure},
+     *         or {@link #NO_PERMIT} if the call is rejected
+     */
+    public synchronized long acquirePermission() {
+        halfOpenIfDue();
+        switch (state) {
+            case CLOSED:
+                return generation;
+            case HALF_OPEN:
+                if (probesIssued < halfOpenProbes) {
+                    probesIssued++;
+                    return generation;
+                }
+                break;
+            default:
+                break;
+        }
+        rejectedCount++;
+        return NO_PERMIT;
+    }
+
+    /**
+     * Records a call that completed normally.
+     *
+     * @param permit        the permit returned by {@link #acquirePermission()}
+     * @param durationNanos how long the call took
+     */
+    public synchronized void onSuccess(long permit, long durationNanos) {
+        final boolean slow = durationNanos > slowCallThresholdNanos;
+        successCount++;
+        if (slow) {
+            slowCount++;
+        }
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (slow) {
+                transitionTo(State.OPEN, "slow probe call");
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                transitionTo(State.CLOSED, probesSucceeded + " successful probe calls");
+            }
+            return;
+        }
+        record(slow ? SLOW : 0);
+    }
+
+    /**
+     * Records a call that threw.
+     *
+     * @param permit        the permit returned by {@link #acquirePermission()}
+     * @param durationNanos how long the call took
+     */
+    public synchronized void onFailure(long permit, long durationNanos) {
+        final boolean slow = durationNanos > slowCallThresholdNanos;
+        failureCount++;
+        if (slow) {
+            slowCount++;
+        }
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN, "failed probe call");
+            return;
+        }
+        record((byte) (FAILED | (slow ? SLOW : 0)));
+    }
+
+    /**
+     * Hands back a permit whose call failed for a reason unrelated to the database,
+     * such as an invalid record, without recording an outcome. A half-open probe
+     * is released so that another call can probe instead.
+     *
+     * @param permit the permit returned by {@link #acquirePermission()}
+     */
+    public synchronized void onIgnored(long permit) {
+        if (permit == generation && state == State.HALF_OPEN && probesIssued > probesSucceeded) {
+            probesIssued--;
+        }
+    }
+
+    /**
+     * Returns the current state. An open breaker whose open duration has elapsed
+     * is reported as half-open.
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        halfOpenIfDue();
+        return state;
+    }
+
+    /**
+     * Returns the failed share of the current window, or 0 while fewer than
+     * {@code minimumCalls} calls have been recorded.
+     *
+     * @return the failure rate between 0 and 1
+     */
+    public synchronized double getFailureRate() {
+        return recorded < minimumCalls ? 0 : (double) failures / recorded;
+    }
+
+    /**
+     * Returns the slow share of the current window, or 0 while fewer than
+     * {@code minimumCalls} calls have been recorded.
+     *
+     * @return the slow call rate between 0 and 1
+     */
+    public synchronized double getSlowCallRate() {
+        return recorded < minimumCalls ? 0 : (double) slowCalls / recorded;
+    }
+
+    /**
+     * Returns the total number of calls that completed normally.
+     *
+     * @return the success count
+     */
+    public synchronized long getSuccessCount() {
+        return successCount;
+    }
+
+    /**
+     * Returns the total number of calls that threw.
+     *
+     * @return the failure count
+     */
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the total number of calls slower than the slow call threshold.
+     *
+     * @return the slow call count
+     */
+    public synchronized long getSlowCount() {
+        return slowCount;
+    }
+
+    /**
+     * Returns the total number of calls rejected without reaching the database.
+     *
+     * @return the rejected call count
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    private void record(byte outcome) {
+        if (recorded == window.length) {
+            final byte evicted = window[next];
+            if ((evicted & FAILED) != 0) {
+                failures--;
+            }
+            if ((evicted & SLOW) != 0) {
+                slowCalls--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        if ((outcome & FAILED) != 0) {
+            failures++;
+        }
+        if ((outcome & SLOW) != 0) {
+            slowCalls++;
+        }
+
+        if (recorded < minimumCalls) {
+            return;
+        }
+        final double failureRate = (double) failures / recorded;
+        final double slowCallRate = (double) slowCalls / recorded;
+        if (failureRate >= failureRateThreshold) {
+            transitionTo(State.OPEN, String.format("failure rate %.2f", failureRate));
+        } else if (slowCallRate >= slowCallRateThreshold) {
+            transitionTo(State.OPEN, String.format("slow call rate %.2f", slowCallRate));
+        }
+    }
+
+    private void halfOpenIfDue() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openDurationNanos) {
+            transitionTo(State.HALF_OPEN, "open duration elapsed");
+        }
+    }
+
+    private void transitionTo(State target, String reason) {
+        if (target == State.OPEN) {
+            log.warn("IP storage circuit breaker opened ({}), spilling captures for {} ms",
+                    reason, openDurationNanos / 1_000_000);
+            openedAt = nanoClock.getAsLong();
+        } else {
+            log.info("IP storage circuit breaker {} ({})", target == State.CLOSED ? "closed" : "half-open", reason);
+        }
+        state = target;
+        generation++;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        probesIssued = 0;
+        probesSucceeded = 0;
+    }
+}
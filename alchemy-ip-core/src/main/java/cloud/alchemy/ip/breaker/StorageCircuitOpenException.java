@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.breaker;
+
+/**
+ * Thrown by {@link CircuitBreakingIpAddressStorageService#storeAll(java.util.List)}
+ * when the circuit breaker rejects a batch. Callers that own a failure path for
+ * batches (the record writer and the journal replayer) handle it like any other
+ * storage failure, without the database having been touched.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class StorageCircuitOpenException extends IllegalStateException {
+
+    /**
+     * Creates a new exception.
+     *
+     * @param message the detail message
+     */
+    public StorageCircuitOpenException(String message) {
+        super(message);
+    }
+}
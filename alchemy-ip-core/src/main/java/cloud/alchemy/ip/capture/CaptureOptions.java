@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import cloud.alchemy.ip.annotation.StoreIPAddress;
+import cloud.alchemy.ip.config.IpManagementProperties;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable set of options controlling which request metadata is captured
+ * alongside the IP address.
+ *
+ * <p>Options are derived either from a {@link StoreIPAddress} annotation
+ * (aspect capture mode) or from configuration properties (filter capture modes),
+ * so both modes produce identical records.
+ *
+ * @param storeUserAgent   whether to store the User-Agent header
+ * @param storeRequestPath whether to store the request URI
+ * @param storeHttpMethod  whether to store the HTTP method
+ * @param tag              custom tag, or {@code null}/empty for none
+ * @param async            whether the record is stored asynchronously
+ * @param sampleRate       fraction of requests to capture, in {@code [0, 1]}
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public record CaptureOptions(
+        boolean storeUserAgent,
+        boolean storeRequestPath,
+        boolean storeHttpMethod,
+        String tag,
+        boolean async,
+        double sampleRate
+) {
+
+    /**
+     * Creates capture options that capture every request.
+     *
+     * @param storeUserAgent   whether to store the User-Agent header
+     * @param storeRequestPath whether to store the request URI
+     * @param storeHttpMethod  whether to store the HTTP method
+     * @param tag              custom tag, or {@code null}/empty for none
+     * @param async            whether the record is stored asynchronously
+     */
+    public CaptureOptions(boolean storeUserAgent,
+                          boolean storeRequestPath,
+                          boolean storeHttpMethod,
+                          String tag,
+                          boolean async) {
+        this(storeUserAgent, storeRequestPath, storeHttpMethod, tag, async, 1.0);
+    }
+
+    /**
+     * Creates capture options from a {@link StoreIPAddress} annotation, capturing
+     * every request unless the annotation sets a sample rate.
+     *
+     * @param annotation the annotation
+     * @return the capture options
+     */
+    public static CaptureOptions of(StoreIPAddress annotation) {
+        return of(annotation, 1.0);
+    }
+
+    /**
+     * Creates capture options from a {@link StoreIPAddress} annotation.
+     *
+     * @param annotation        the annotation
+     * @param defaultSampleRate the sample rate used when the annotation does not set one
+     * @return the capture options
+     */
+    public static CaptureOptions of(StoreIPAddress annotation, double defaultSampleRate) {
+        return new CaptureOptions(
+                annotation.storeUserAgent(),
+                annotation.storeRequestPath(),
+                annotation.storeHttpMethod(),
+                annotation.tag(),
+                annotation.async(),
+                annotation.sampleRate() >= 0 ? annotation.sampleRate() : defaultSampleRate
+        );
+    }
+
+    /**
+     * Creates capture options from the {@code alchemy.ip.capture.*} properties and
+     * the global {@code alchemy.ip.sample-rate}.
+     *
+     * @param properties the IP management properties
+     * @return the capture options
+     */
+    public static CaptureOptions of(IpManagementProperties properties) {
+        final IpManagementProperties.Capture capture = properties.getCapture();
+        return new CaptureOptions(
+                capture.isStoreUserAgent(),
+                capture.isStoreRequestPath(),
+                capture.isStoreHttpMethod(),
+                capture.getTag(),
+                capture.isAsync(),
+                properties.getSampleRate()
+        );
+    }
+
+    /**
+     * Decides whether the current request is captured. Uses the calling thread's
+     * {@link ThreadLocalRandom}, so the decision costs a few nanoseconds and no
+     * shared state is touched.
+     *
+     * @return {@code true} if the request should be captured
+     */
+    public boolean sample() {
+        return sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * Returns whether records are captured at a rate below 1 and must be flagged.
+     *
+     * @return {@code true} if sampling is in effect
+     */
+    public boolean isSampled() {
+        return sampleRate < 1.0;
+    }
+}
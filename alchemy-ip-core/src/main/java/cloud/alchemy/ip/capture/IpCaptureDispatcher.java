@@ -0,0 +1,257 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import cloud.alchemy.ip.config.IpManagementProperties.SyncMode;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.journal.IpRecordJournal;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands captured records to the storage layer according to the configured
+ * sync and async modes.
+ *
+ * <ul>
+ *   <li>Async captures go to the {@link IpRecordWriter} when one is configured,
+ *       otherwise to {@link IpAddressStorageService#storeAsync(IpAddressRecord)}.</li>
+ *   <li>Sync captures are stored on the calling thread, either immediately or -
+ *       with {@link SyncMode#AFTER_COMPLETION} - once the response has been flushed.</li>
+ * </ul>
+ *
+ * <p>When an {@link IpCaptureThrottle} is configured, capture paths call
+ * {@link #tryAcquire(String)} first thing, with only the IP address extracted, and
+ * drop captures from an IP that exceeds its rate before resolving the user or
+ * building the record.
+ *
+ * <p>When an {@link IpRecordJournal} is configured, async captures that fail to
+ * store - or that the writer has no room for - are appended to the journal for
+ * later replay. In write-ahead mode every async capture goes to the journal instead
+ * of the writer or executor.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class IpCaptureDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(IpCaptureDispatcher.class);
+    private static final String COMPLETION_CALLBACK_PREFIX = IpCaptureDispatcher.class.getName() + ".store.";
+    private static final AtomicLong COMPLETION_CALLBACK_SEQUENCE = new AtomicLong();
+
+    private final IpAddressStorageService storageService;
+    private final SyncMode syncMode;
+    private final IpRecordWriter writer;
+    private final IpCaptureThrottle throttle;
+    private final IpRecordJournal journal;
+
+    /**
+     * Creates a new dispatcher without throttling.
+     *
+     * @param storageService the IP address storage service
+     * @param syncMode       when synchronous captures are persisted
+     * @param writer         the batching writer for async captures, or {@code null}
+     *                       to use {@link IpAddressStorageService#storeAsync(IpAddressRecord)}
+     */
+    public IpCaptureDispatcher(IpAddressStorageService storageService, SyncMode syncMode, IpRecordWriter writer) {
+        this(storageService, syncMode, writer, null);
+    }
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param storageService the IP address storage service
+     * @param syncMode       when synchronous captures are persisted
+     * @param writer         the batching writer for async captures, or {@code null}
+     *                       to use {@link IpAddressStorageService#storeAsync(IpAddressRecord)}
+     * @param throttle       the per-IP throttle, or {@code null} for none
+     */
+    public IpCaptureDispatcher(IpAddressStorageService storageService,
+                               SyncMode syncMode,
+                               IpRecordWriter writer,
+                               IpCaptureThrottle throttle) {
+        this(storageService, syncMode, writer, throttle, null);
+    }
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param storageService the IP address storage service
+     * @param syncMode       when synchronous captures are persisted
+     * @param writer         the batching writer for async captures, or {@code null}
+     *                       to use {@link IpAddressStorageService#storeAsync(IpAddressRecord)}
+     * @param throttle       the per-IP throttle, or {@code null} for none
+     * @param journal        the journal for async captures that cannot be stored,
+     *                       or {@code null} for none
+     */
+    public IpCaptureDispatcher(IpAddressStorageService storageService,
+                               SyncMode syncMode,
+                               IpRecordWriter writer,
+                               IpCaptureThrottle throttle,
+                               IpRecordJournal journal) {
+        this.storageService = storageService;
+        this.syncMode = syncMode != null ? syncMode : SyncMode.IMMEDIATE;
+        this.writer = writer;
+        this.throttle = throttle;
+        this.journal = journal;
+    }
+
+    /**
+     * Dispatches a record captured while the request is still being handled.
+     * With {@link SyncMode#AFTER_COMPLETION}, synchronous storage is deferred
+     * to a request destruction callback.
+     *
+     * @param record the captured record
+     * @param async  whether to store asynchronously
+     */
+    public void dispatch(IpAddressRecord record, boolean async) {
+        if (async) {
+            storeAsync(record);
+        } else if (syncMode == SyncMode.AFTER_COMPLETION && storeAfterCompletion(record)) {
+            log.debug("IP address storage deferred until request completion: {}", record.getIpAddress());
+        } else {
+            storeSynchronously(record);
+        }
+    }
+
+    /**
+     * Dispatches a record captured after the rest of the request has been processed,
+     * such as from a servlet filter. With {@link SyncMode#AFTER_COMPLETION}, the
+     * response is flushed before synchronous storage.
+     *
+     * @param record   the captured record
+     * @param async    whether to store asynchronously
+     * @param response the current response
+     */
+    public void dispatchAfterResponse(IpAddressRecord record, boolean async, HttpServletResponse response) {
+        if (async) {
+            storeAsync(record);
+            return;
+        }
+        if (syncMode == SyncMode.AFTER_COMPLETION) {
+            flushResponse(response);
+        }
+        storeSynchronously(record);
+    }
+
+    /**
+     * Takes a throttle token for a capture from the given IP. Called before any other
+     * capture work, so that throttled captures cost no more than the IP extraction.
+     *
+     * @param ipAddress the client IP address
+     * @return {@code true} if the capture may proceed, {@code false} if it is throttled
+     */
+    public boolean tryAcquire(String ipAddress) {
+        if (throttle == null || throttle.tryAcquire(ipAddress)) {
+            return true;
+        }
+        log.debug("IP capture throttled: {}", ipAddress);
+        return false;
+    }
+
+    private void storeAsync(IpAddressRecord record) {
+        final String ipAddress = record.getIpAddress();
+        if (journal != null && journal.isWriteAhead() && journal.append(record)) {
+            return;
+        }
+        if (writer != null) {
+            if (!writer.submit(record) && !journalFailed(record)) {
+                log.warn("IP storage buffer full, capture dropped for IP: {}", ipAddress);
+            }
+            return;
+        }
+
+        storageService.storeAsync(record)
+                .thenAccept(savedOpt -> {
+                    if (savedOpt.isPresent()) {
+                        log.debug("Async IP address stored: {}", ipAddress);
+                    } else {
+                        log.debug("Async IP address skipped (duplicate): {}", ipAddress);
+                    }
+                })
+                .exceptionally(ex -> {
+                    if (journalFailed(record)) {
+                        log.warn("Async IP storage failed for IP: {}, journaled for replay: {}",
+                                ipAddress, ex.getMessage());
+                    } else {
+                        log.error("Async IP storage failed for IP: {}", ipAddress, ex);
+                    }
+                    return null;
+                });
+    }
+
+    private boolean journalFailed(IpAddressRecord record) {
+        return journal != null && journal.append(record);
+    }
+
+    private void storeSynchronously(IpAddressRecord record) {
+        final Optional<IpAddressRecord> savedOpt = storageService.store(record);
+        if (savedOpt.isPresent()) {
+            log.debug("IP address stored: {}", record.getIpAddress());
+        } else {
+            log.debug("IP address skipped (duplicate): {}", record.getIpAddress());
+        }
+    }
+
+    /**
+     * Registers a request destruction callback that flushes the response and then
+     * stores the record. Destruction callbacks run when the request attributes are
+     * completed, i.e. after the handler has written the response but before the
+     * servlet returns, so the container completes the response only after the store.
+     *
+     * @return {@code false} if no servlet request attributes are bound, in which
+     *         case the caller should store immediately
+     */
+    private boolean storeAfterCompletion(IpAddressRecord record) {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return false;
+        }
+
+        final String callbackName = COMPLETION_CALLBACK_PREFIX + COMPLETION_CALLBACK_SEQUENCE.incrementAndGet();
+        servletAttributes.registerDestructionCallback(callbackName, () -> {
+            try {
+                flushResponse(servletAttributes.getResponse());
+                storeSynchronously(record);
+            } catch (Exception e) {
+                log.error("Failed to store IP address after request completion", e);
+            }
+        }, RequestAttributes.SCOPE_REQUEST);
+        return true;
+    }
+
+    private static void flushResponse(HttpServletResponse response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            response.flushBuffer();
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Could not flush response before IP storage: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import cloud.alchemy.ip.customization.UserIdResolver;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Servlet filter that captures client IP addresses for every request whose path
+ * matches one of the configured patterns.
+ *
+ * <p>This is the alternative to {@link cloud.alchemy.ip.aspect.IpAddressStorageAspect}
+ * selected with {@code alchemy.ip.capture.mode=filter}. It avoids per-call AOP proxy
+ * matching and also records requests that fail before reaching a controller
+ * (authentication failures, 404s, exceptions thrown by other filters).
+ *
+ * <p>The capture happens in a {@code finally} block after the rest of the chain,
+ * so the user resolved by {@link UserIdResolver} reflects the state after the
+ * request was processed.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class IpCaptureFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(IpCaptureFilter.class);
+
+    private final IpCaptureDispatcher dispatcher;
+    private final IpRecordFactory recordFactory;
+    private final UserIdResolver userIdResolver;
+    private final PathPatternTrie includePatterns;
+    private final CaptureOptions options;
+
+    /**
+     * Creates a new capture filter.
+     *
+     * @param dispatcher      the dispatcher that hands records to storage
+     * @param recordFactory   the record factory
+     * @param userIdResolver  the user ID resolver
+     * @param includePatterns the compiled path patterns to capture
+     * @param options         the capture options applied to every record
+     */
+    public IpCaptureFilter(IpCaptureDispatcher dispatcher,
+                           IpRecordFactory recordFactory,
+                           UserIdResolver userIdResolver,
+                           PathPatternTrie includePatterns,
+                           CaptureOptions options) {
+        this.dispatcher = dispatcher;
+        this.recordFactory = recordFactory;
+        this.userIdResolver = userIdResolver;
+        this.includePatterns = includePatterns;
+        this.options = options;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !includePatterns.matches(pathWithinApplication(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!options.sample()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            try {
+                capture(request, response);
+            } catch (Exception e) {
+                log.error("Failed to store IP address, but not affecting the request processing", e);
+            }
+        }
+    }
+
+    private void capture(HttpServletRequest request, HttpServletResponse response) {
+        final Optional<String> ipAddress = recordFactory.extractIpAddress(request);
+        if (ipAddress.isEmpty()) {
+            log.warn("Could not extract IP address from request");
+            return;
+        }
+        if (!dispatcher.tryAcquire(ipAddress.get())) {
+            return;
+        }
+
+        final String userId = userIdResolver.resolveUserId(request).orElse(null);
+        final IpAddressRecord record = recordFactory.create(request, ipAddress.get(), userId, options);
+        dispatcher.dispatchAfterResponse(record, options.async(), response);
+    }
+
+    private static String pathWithinApplication(HttpServletRequest request) {
+        final String requestUri = request.getRequestURI();
+        final String contextPath = request.getContextPath();
+        if (requestUri == null) {
+            return null;
+        }
+        if (contextPath != null && !contextPath.isEmpty() && requestUri.startsWith(contextPath)) {
+            return requestUri.substring(contextPath.length());
+        }
+        return requestUri;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-IP token-bucket limiter applied to captures before they reach storage.
+ *
+ * <p>Buckets live in a fixed array of stripes indexed by the IP's hash, so memory
+ * is bounded regardless of how many distinct addresses are seen and no eviction
+ * is needed. IPs that hash to the same stripe share a bucket; with the default
+ * stripe count this is rare enough to be irrelevant for attack traffic.
+ *
+ * <p>Each bucket is a single {@code long} holding its theoretical arrival time
+ * (the GCRA formulation of a token bucket): a capture is allowed if that time is
+ * at most {@code (burst - 1)} emission intervals ahead of now, and it then advances
+ * the time by one interval. The update is a single CAS, so {@link #tryAcquire(String)}
+ * never locks.
+ *
+ * <p>Throttled captures are counted per IP for up to {@code maxTrackedIps}
+ * addresses; beyond that they are only reflected in the total. An IP stops being
+ * tracked once it has not been throttled for {@link #TRACKING_IDLE_NANOS}: when the
+ * limit is reached, idle IPs are swept out, at most once per idle period, so that
+ * later offenders can take their place.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class IpCaptureThrottle {
+
+    private static final Logger log = LoggerFactory.getLogger(IpCaptureThrottle.class);
+
+    /**
+     * Stripes are spaced one cache line apart to avoid false sharing between
+     * neighbouring buckets.
+     */
+    private static final int PADDING_SHIFT = 3;
+
+    /**
+     * How long an IP stays tracked after it was last throttled.
+     */
+    static final long TRACKING_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final AtomicLongArray buckets;
+    private final int stripeMask;
+    private final long emissionIntervalNanos;
+    private final long toleranceNanos;
+    private final int maxTrackedIps;
+    private final LongSupplier nanoClock;
+    private final long origin;
+
+    private final ConcurrentHashMap<String, Tracked> throttledByIp = new ConcurrentHashMap<>();
+    private final LongAdder throttledTotal = new LongAdder();
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    /**
+     * Creates a new throttle.
+     *
+     * @param ratePerSecond sustained captures allowed per IP and second
+     * @param burst         captures an idle IP may make back to back
+     * @param stripes       number of buckets, rounded up to a power of two
+     * @param maxTrackedIps maximum number of IPs with an individual throttled counter
+     */
+    public IpCaptureThrottle(double ratePerSecond, int burst, int stripes, int maxTrackedIps) {
+        this(ratePerSecond, burst, stripes, maxTrackedIps, System::nanoTime);
+    }
+
+    IpCaptureThrottle(double ratePerSecond, int burst, int stripes, int maxTrackedIps, LongSupplier nanoClock) {
+        if (ratePerSecond <= 0 || burst < 1 || stripes < 1) {
+            throw new IllegalArgumentException("ratePerSecond, burst and stripes must be positive");
+        }
+        final int stripeCount = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.buckets = new AtomicLongArray(stripeCount << PADDING_SHIFT);
+        this.stripeMask = stripeCount - 1;
+        this.emissionIntervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.toleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.maxTrackedIps = Math.max(0, maxTrackedIps);
+        this.nanoClock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes a token for the given IP.
+     *
+     * @param ipAddress the client IP address
+     * @return {@code true} if the capture may proceed, {@code false} if it is throttled
+     */
+    public boolean tryAcquire(String ipAddress) {
+        final int index = stripe(ipAddress);
+        final long now = nanoClock.getAsLong() - origin;
+        while (true) {
+            final long arrival = buckets.get(index);
+            final long base = Math.max(arrival, now);
+            if (base - now > toleranceNanos) {
+                recordThrottled(ipAddress, now);
+                return false;
+            }
+            if (buckets.compareAndSet(index, arrival, base + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the total number of throttled captures.
+     *
+     * @return the throttled capture count
+     */
+    public long getThrottledCount() {
+        return throttledTotal.sum();
+    }
+
+    /**
+     * Returns the number of throttled captures for the given IP since it was last
+     * started being tracked.
+     *
+     * @param ipAddress the client IP address
+     * @return the throttled capture count, or 0 if the IP is not tracked
+     */
+    public long getThrottledCount(String ipAddress) {
+        final Tracked tracked = throttledByIp.get(ipAddress);
+        return tracked != null ? tracked.count.sum() : 0;
+    }
+
+    /**
+     * Returns the IPs that currently have an individual throttled counter.
+     *
+     * @return an unmodifiable view of the tracked IPs
+     */
+    public Set<String> getThrottledIps() {
+        return Collections.unmodifiableSet(throttledByIp.keySet());
+    }
+
+    /**
+     * Returns the number of IPs that currently have an individual throttled counter.
+     *
+     * @return the tracked IP count, at most {@code maxTrackedIps}
+     */
+    public int getThrottledIpCount() {
+        return throttledByIp.size();
+    }
+
+    private void recordThrottled(String ipAddress, long now) {
+        throttledTotal.increment();
+        Tracked tracked = throttledByIp.get(ipAddress);
+        if (tracked == null) {
+            if (throttledByIp.size() >= maxTrackedIps && !sweepIdle(now)) {
+                return;
+            }
+            final Tracked created = new Tracked();
+            tracked = throttledByIp.putIfAbsent(ipAddress, created);
+            if (tracked == null) {
+                tracked = created;
+                log.info("Throttling IP captures for {}", ipAddress);
+            }
+        }
+        tracked.lastThrottled = now;
+        tracked.count.increment();
+    }
+
+    /**
+     * Stops tracking IPs that have not been throttled for the idle period.
+     *
+     * @return {@code true} if there is room for another IP afterwards
+     */
+    private boolean sweepIdle(long now) {
+        final long next = nextSweep.get();
+        if (now - next < 0 || !nextSweep.compareAndSet(next, now + TRACKING_IDLE_NANOS)) {
+            return false;
+        }
+        throttledByIp.values().removeIf(tracked -> now - tracked.lastThrottled >= TRACKING_IDLE_NANOS);
+        return throttledByIp.size() < maxTrackedIps;
+    }
+
+    private int stripe(String ipAddress) {
+        final int hash = ipAddress.hashCode();
+        return ((hash ^ (hash >>> 16)) & stripeMask) << PADDING_SHIFT;
+    }
+
+    /**
+     * Throttled captures of one tracked IP.
+     */
+    private static final class Tracked {
+        final LongAdder count = new LongAdder();
+        volatile long lastThrottled;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.IpAddressExtractor;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Optional;
+
+/**
+ * Builds {@link IpAddressRecord}s from servlet requests.
+ *
+ * <p>Shared by every capture mode so that a request produces the same record
+ * regardless of whether it was intercepted by the aspect or by the filter.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class IpRecordFactory {
+
+    /**
+     * Maximum stored length of the User-Agent header.
+     */
+    public static final int MAX_USER_AGENT_LENGTH = 512;
+
+    /**
+     * Maximum stored length of the request path.
+     */
+    public static final int MAX_REQUEST_PATH_LENGTH = 2048;
+
+    private final IpAddressExtractor ipAddressExtractor;
+
+    /**
+     * Creates a new factory.
+     *
+     * @param ipAddressExtractor the IP address extractor
+     */
+    public IpRecordFactory(IpAddressExtractor ipAddressExtractor) {
+        this.ipAddressExtractor = ipAddressExtractor;
+    }
+
+    /**
+     * Creates a record for the given request.
+     *
+     * @param request the HTTP servlet request
+     * @param userId  the resolved user ID (may be null)
+     * @param options the capture options
+     * @return the record, or empty if no IP address could be extracted
+     */
+    public Optional<IpAddressRecord> create(HttpServletRequest request, String userId, CaptureOptions options) {
+        return extractIpAddress(request).map(ipAddress -> create(request, ipAddress, userId, options));
+    }
+
+    /**
+     * Extracts the client IP address of the given request, so that a capture can be
+     * throttled before the rest of the record is resolved.
+     *
+     * @param request the HTTP servlet request
+     * @return the client IP address, or empty if none could be extracted
+     */
+    public Optional<String> extractIpAddress(HttpServletRequest request) {
+        return ipAddressExtractor.extractIpAddress(request);
+    }
+
+    /**
+     * Creates a record for the given request and its already extracted IP address.
+     *
+     * @param request   the HTTP servlet request
+     * @param ipAddress the client IP address
+     * @param userId    the resolved user ID (may be null)
+     * @param options   the capture options
+     * @return the record
+     */
+    public IpAddressRecord create(HttpServletRequest request, String ipAddress, String userId,
+                                  CaptureOptions options) {
+        return create(ipAddress, userId, options,
+                request.getHeader("User-Agent"), request.getRequestURI(), request.getMethod());
+    }
+
+    /**
+     * Creates a record from already extracted request values. Used by capture
+     * paths that do not operate on a {@link HttpServletRequest}.
+     *
+     * @param ipAddress   the client IP address
+     * @param userId      the resolved user ID (may be null)
+     * @param options     the capture options
+     * @param userAgent   the User-Agent header value (may be null)
+     * @param requestPath the request path (may be null)
+     * @param httpMethod  the HTTP method (may be null)
+     * @return the record
+     */
+    public static IpAddressRecord create(String ipAddress,
+                                         String userId,
+                                         CaptureOptions options,
+                                         String userAgent,
+                                         String requestPath,
+                                         String httpMethod) {
+        final IpAddressRecord.Builder recordBuilder = IpAddressRecord.builder()
+                .ipAddress(ipAddress)
+                .userId(userId);
+
+        if (options.storeUserAgent()) {
+            recordBuilder.userAgent(truncate(userAgent, MAX_USER_AGENT_LENGTH));
+        }
+
+        if (options.storeRequestPath()) {
+            recordBuilder.requestPath(truncate(requestPath, MAX_REQUEST_PATH_LENGTH));
+        }
+
+        if (options.storeHttpMethod()) {
+            recordBuilder.httpMethod(httpMethod);
+        }
+
+        if (options.tag() != null && !options.tag().isEmpty()) {
+            recordBuilder.tag(options.tag());
+        }
+
+        if (options.isSampled()) {
+            recordBuilder.sampleRate(options.sampleRate());
+        }
+
+        return recordBuilder.build();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+}
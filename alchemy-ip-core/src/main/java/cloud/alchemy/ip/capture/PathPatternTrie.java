@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches request paths against a set of {@link PathPattern}s compiled once at startup.
+ *
+ * <p>Patterns are indexed in a trie keyed by their leading literal segments
+ * ({@code /api/users/{id}} is stored under {@code api -> users}). Matching walks the
+ * trie along the request path and only evaluates the patterns found on that walk,
+ * so the cost of a lookup depends on the path depth rather than on the number of
+ * configured patterns.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class PathPatternTrie {
+
+    private final Node root = new Node();
+    private final int size;
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param patterns the path patterns (Spring {@link PathPattern} syntax)
+     * @throws org.springframework.web.util.pattern.PatternParseException if a pattern is invalid
+     */
+    public PathPatternTrie(List<String> patterns) {
+        final PathPatternParser parser = PathPatternParser.defaultInstance;
+        int count = 0;
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isBlank()) {
+                continue;
+            }
+            final PathPattern compiled = parser.parse(pattern.trim());
+            insert(compiled);
+            count++;
+        }
+        this.size = count;
+    }
+
+    /**
+     * Returns whether the given path matches any compiled pattern.
+     *
+     * @param path the request path, without context path
+     * @return {@code true} if a pattern matches
+     */
+    public boolean matches(String path) {
+        if (size == 0 || path == null) {
+            return false;
+        }
+
+        final PathContainer container = PathContainer.parsePath(path);
+        Node node = root;
+        if (node.matchesAny(container)) {
+            return true;
+        }
+        for (PathContainer.Element element : container.elements()) {
+            if (element instanceof PathContainer.Separator) {
+                continue;
+            }
+            node = node.children.get(element.value());
+            if (node == null) {
+                return false;
+            }
+            if (node.matchesAny(container)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether no patterns were compiled.
+     *
+     * @return {@code true} if the trie is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void insert(PathPattern pattern) {
+        Node node = root;
+        for (String segment : pattern.getPatternString().split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (!isLiteral(segment)) {
+                break;
+            }
+            node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+        node.patterns.add(pattern);
+    }
+
+    private static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            final char c = segment.charAt(i);
+            if (c == '{' || c == '*' || c == '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<PathPattern> patterns = new ArrayList<>(1);
+
+        boolean matchesAny(PathContainer path) {
+            for (PathPattern pattern : patterns) {
+                if (pattern.matches(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import cloud.alchemy.ip.capture.CaptureOptions;
+import cloud.alchemy.ip.capture.IpCaptureDispatcher;
+import cloud.alchemy.ip.capture.IpCaptureFilter;
+import cloud.alchemy.ip.capture.IpRecordFactory;
+import cloud.alchemy.ip.capture.PathPatternTrie;
+import cloud.alchemy.ip.customization.UserIdResolver;
+import cloud.alchemy.ip.extractor.IpAddressExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Registers the {@link IpCaptureFilter} when {@code alchemy.ip.capture.mode=filter}.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(OncePerRequestFilter.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "alchemy.ip.capture", name = "mode", havingValue = "filter")
+public class IpCaptureFilterConfiguration {
+
+    private static final Logger log = LoggerFactory.getLogger(IpCaptureFilterConfiguration.class);
+
+    /**
+     * Creates the capture filter registration. Path patterns are compiled once here.
+     *
+     * @param properties         the IP management properties
+     * @param dispatcher         the capture dispatcher
+     * @param ipAddressExtractor the IP address extractor
+     * @param userIdResolver     the user ID resolver
+     * @return the filter registration
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "ipCaptureFilterRegistration")
+    public FilterRegistrationBean<IpCaptureFilter> ipCaptureFilterRegistration(
+            IpManagementProperties properties,
+            IpCaptureDispatcher dispatcher,
+            IpAddressExtractor ipAddressExtractor,
+            UserIdResolver userIdResolver) {
+        final IpManagementProperties.Capture capture = properties.getCapture();
+        final PathPatternTrie includePatterns = new PathPatternTrie(capture.getIncludePatterns());
+        if (includePatterns.isEmpty()) {
+            log.warn("Capture mode is 'filter' but alchemy.ip.capture.include-patterns is empty; no requests will be captured");
+        }
+
+        final CaptureOptions options = CaptureOptions.of(properties);
+
+        log.debug("Creating IP capture filter for patterns {}", capture.getIncludePatterns());
+        final IpCaptureFilter filter = new IpCaptureFilter(
+                dispatcher,
+                new IpRecordFactory(ipAddressExtractor),
+                userIdResolver,
+                includePatterns,
+                options
+        );
+
+        final FilterRegistrationBean<IpCaptureFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setName("ipCaptureFilter");
+        registration.setOrder(capture.getFilterOrder());
+        return registration;
+    }
+}
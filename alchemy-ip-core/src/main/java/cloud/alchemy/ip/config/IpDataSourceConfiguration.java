@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Registers the {@link IpManagementDataSource} used by the library's JDBC paths:
+ * the primary data source, or with {@code alchemy.ip.datasource.enabled=true} a
+ * dedicated HikariCP pool.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Configuration(proxyBeanMethods = false)
+public class IpDataSourceConfiguration {
+
+    private static final Logger log = LoggerFactory.getLogger(IpDataSourceConfiguration.class);
+
+    /**
+     * Creates the data source used by the library's JDBC paths from the primary data
+     * source. Backs off when {@link DedicatedPoolConfiguration} created a pool.
+     *
+     * @param properties the IP management properties
+     * @param dataSource the primary data source
+     * @return the IP management data source
+     * @throws IllegalStateException if {@code alchemy.ip.datasource.enabled} is set
+     *                               without HikariCP on the classpath
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean(IpManagementDataSource.class)
+    public IpManagementDataSource ipManagementDataSource(IpManagementProperties properties,
+                                                         ObjectProvider<DataSource> dataSource) {
+        if (properties.getDatasource().isEnabled()) {
+            throw new IllegalStateException("alchemy.ip.datasource.enabled=true requires HikariCP on the classpath");
+        }
+        return new IpManagementDataSource(dataSource.getObject(), false);
+    }
+
+    /**
+     * Creates the dedicated pool of {@code alchemy.ip.datasource.*}. Kept apart so that
+     * HikariCP is only loaded when it is on the classpath.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(HikariDataSource.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.datasource", name = "enabled", havingValue = "true")
+    static class DedicatedPoolConfiguration {
+
+        /**
+         * Creates the dedicated connection pool.
+         *
+         * @param properties           the IP management properties
+         * @param dataSourceProperties the primary data source properties, used as defaults for the pool
+         * @return the IP management data source
+         */
+        @Bean(destroyMethod = "close")
+        @ConditionalOnMissingBean(IpManagementDataSource.class)
+        public IpManagementDataSource ipManagementDataSource(IpManagementProperties properties,
+                                                             ObjectProvider<DataSourceProperties> dataSourceProperties) {
+            if (properties.getStorageMode() == IpManagementProperties.StorageMode.JPA) {
+                log.warn("alchemy.ip.datasource.enabled=true only moves the library's JDBC paths to a pool of "
+                        + "their own; with alchemy.ip.storage-mode=jpa, capture writes and the stats queries still "
+                        + "use the primary data source. Set alchemy.ip.storage-mode=jdbc to move capture writes too");
+            }
+            final HikariDataSource pool = new HikariDataSource(
+                    hikariConfig(properties.getDatasource(), dataSourceProperties.getIfAvailable()));
+            log.debug("Created dedicated IP management connection pool '{}' (max {} connections)",
+                    pool.getPoolName(), pool.getMaximumPoolSize());
+            return new IpManagementDataSource(pool, true);
+        }
+
+        private static HikariConfig hikariConfig(IpManagementProperties.Datasource poolConfig,
+                                                 DataSourceProperties primary) {
+            final HikariConfig config = new HikariConfig();
+            final String url = poolConfig.getUrl() != null ? poolConfig.getUrl()
+                    : primary != null ? primary.determineUrl() : null;
+            if (url == null) {
+                throw new IllegalStateException(
+                        "alchemy.ip.datasource.enabled=true requires alchemy.ip.datasource.url or spring.datasource.url");
+            }
+            config.setJdbcUrl(url);
+            config.setUsername(poolConfig.getUsername() != null ? poolConfig.getUsername()
+                    : primary != null ? primary.determineUsername() : null);
+            config.setPassword(poolConfig.getPassword() != null ? poolConfig.getPassword()
+                    : primary != null ? primary.determinePassword() : null);
+            final String driverClassName = poolConfig.getDriverClassName() != null ? poolConfig.getDriverClassName()
+                    : primary != null && url.equals(primary.determineUrl()) ? primary.determineDriverClassName() : null;
+            if (driverClassName != null) {
+                config.setDriverClassName(driverClassName);
+            }
+            config.setPoolName(poolConfig.getPoolName());
+            config.setMaximumPoolSize(poolConfig.getMaximumPoolSize());
+            config.setMinimumIdle(poolConfig.getMinimumIdle());
+            config.setConnectionTimeout(poolConfig.getConnectionTimeout().toMillis());
+            // Capture writes are batched; let the drivers that support it collapse a batch into one statement
+            if (url.startsWith("jdbc:postgresql:")) {
+                config.addDataSourceProperty("reWriteBatchedInserts", "true");
+            } else if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:")) {
+                config.addDataSourceProperty("rewriteBatchedStatements", "true");
+                config.addDataSourceProperty("cachePrepStmts", "true");
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import cloud.alchemy.ip.breaker.CircuitBreakingIpAddressStorageService;
+import cloud.alchemy.ip.breaker.StorageCircuitBreaker;
+import cloud.alchemy.ip.health.IpStorageHealthIndicator;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers health indicators for the IP management components when Spring Boot
+ * Actuator is on the classpath.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(HealthIndicator.class)
+public class IpHealthConfiguration {
+
+    /**
+     * Creates the storage circuit breaker health indicator, exposed as {@code ipStorage}.
+     *
+     * @param breaker        the circuit breaker
+     * @param storageService the IP address storage service
+     * @return the health indicator
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "ipStorageHealthIndicator")
+    @ConditionalOnProperty(prefix = "alchemy.ip.circuit-breaker", name = "enabled", havingValue = "true")
+    public IpStorageHealthIndicator ipStorageHealthIndicator(StorageCircuitBreaker breaker,
+                                                             IpAddressStorageService storageService) {
+        return new IpStorageHealthIndicator(breaker,
+                storageService instanceof CircuitBreakingIpAddressStorageService decorator ? decorator : null);
+    }
+}
@@ -16,27 +16,58 @@
 package cloud.alchemy.ip.config;
 
 import cloud.alchemy.ip.aspect.IpAddressStorageAspect;
+import cloud.alchemy.ip.breaker.CircuitBreakingIpAddressStorageService;
+import cloud.alchemy.ip.breaker.StorageCircuitBreaker;
+import cloud.alchemy.ip.capture.IpCaptureDispatcher;
+import cloud.alchemy.ip.capture.IpCaptureThrottle;
+import cloud.alchemy.ip.capture.IpRecordFactory;
 import cloud.alchemy.ip.customization.DefaultUserIdResolver;
 import cloud.alchemy.ip.customization.IpRecordCustomizer;
 import cloud.alchemy.ip.customization.UserIdResolver;
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
 import cloud.alchemy.ip.extractor.IpAddressExtractor;
+import cloud.alchemy.ip.id.IpRecordIdGenerator;
+import cloud.alchemy.ip.id.TsidGenerator;
+import cloud.alchemy.ip.journal.IpRecordJournal;
+import cloud.alchemy.ip.journal.IpRecordJournalReplayer;
 import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRecordCountEstimator;
+import cloud.alchemy.ip.service.AbstractIpAddressStorageService;
 import cloud.alchemy.ip.service.DefaultIpAddressStorageService;
 import cloud.alchemy.ip.service.IpAddressStorageService;
+import cloud.alchemy.ip.service.IpRecordStoredListener;
+import cloud.alchemy.ip.service.JdbcIpAddressStorageService;
+import cloud.alchemy.ip.service.WindowedDeduplicator;
+import cloud.alchemy.ip.rollup.IpRollupAggregator;
+import cloud.alchemy.ip.rollup.IpRollupRebuilder;
+import cloud.alchemy.ip.rollup.JdbcIpRollupStore;
+import cloud.alchemy.ip.sketch.HyperLogLog;
+import cloud.alchemy.ip.sketch.IpDistinctCounter;
+import cloud.alchemy.ip.sketch.IpHeavyHitterTracker;
+import cloud.alchemy.ip.sketch.IpSketchBackfiller;
+import cloud.alchemy.ip.sketch.JdbcIpSketchStore;
+import cloud.alchemy.ip.sighting.IpSightingAggregator;
+import cloud.alchemy.ip.sighting.JdbcIpSightingStore;
+import cloud.alchemy.ip.writer.AdaptiveBatchController;
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import org.hibernate.cfg.AvailableSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -45,6 +76,7 @@ import jakarta.persistence.EntityManager;
 import javax.sql.DataSource;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
 
 /**
  * Auto-configuration for the Alchemy IP Management Tool.
@@ -67,6 +99,8 @@ import java.util.concurrent.Executor;
 @EntityScan(basePackageClasses = IpAddressRecord.class)
 @EnableAspectJAutoProxy
 @EnableAsync
+@Import({IpCaptureFilterConfiguration.class, IpReactiveCaptureConfiguration.class, IpMetricsConfiguration.class,
+        IpHealthConfiguration.class, IpDataSourceConfiguration.class})
 public class IpManagementAutoConfiguration {
 
     private static final Logger log = LoggerFactory.getLogger(IpManagementAutoConfiguration.class);
@@ -117,24 +151,410 @@ public class IpManagementAutoConfiguration {
      * Can be overridden by providing a custom {@link IpAddressStorageService} bean.
      *
      * @param repository         the IP address repository
+     * @param dataSource         the IP management data source, used in JDBC storage mode
      * @param ipAddressExtractor the IP address extractor
      * @param customizers        optional list of record customizers
+     * @param sightingAggregator the optional sighting aggregator
+     * @param storedListeners    the listeners notified of stored records
+     * @param circuitBreaker     the optional storage circuit breaker
+     * @param journal            the optional journal used as spill target
+     * @param taskExecutor       the optional async executor, which runs the async
+     *                           stores of the circuit breaker
      * @return the IP address storage service
      */
     @Bean
     @ConditionalOnMissingBean(IpAddressStorageService.class)
     public IpAddressStorageService ipAddressStorageService(
             IpAddressRepository repository,
+            IpManagementDataSource dataSource,
             IpAddressExtractor ipAddressExtractor,
-            ObjectProvider<List<IpRecordCustomizer>> customizers) {
+            ObjectProvider<List<IpRecordCustomizer>> customizers,
+            ObjectProvider<IpSightingAggregator> sightingAggregator,
+            ObjectProvider<IpRecordStoredListener> storedListeners,
+            ObjectProvider<StorageCircuitBreaker> circuitBreaker,
+            ObjectProvider<IpRecordJournal> journal,
+            @Qualifier("ipManagementTaskExecutor") ObjectProvider<Executor> taskExecutor) {
         log.debug("Creating default IP address storage service");
-        return new DefaultIpAddressStorageService(repository, ipAddressExtractor);
+        final IpManagementProperties.Dedup dedup = properties.getDedup();
+        WindowedDeduplicator deduplicator = null;
+        if (dedup.getMode() == IpManagementProperties.DedupMode.WINDOW) {
+            log.debug("Using windowed dedup with window {}", dedup.getWindow());
+            deduplicator = new WindowedDeduplicator(dedup.getWindow(), dedup.getMaxKeys());
+        }
+        final AbstractIpAddressStorageService.Builder<?, ?> builder;
+        if (properties.getStorageMode() == IpManagementProperties.StorageMode.JDBC) {
+            log.debug("Using JDBC storage for table '{}'", properties.getTable().getName());
+            final IpManagementProperties.Id id = properties.getId();
+            final LongSupplier idGenerator = id.getStrategy() == IpManagementProperties.IdStrategy.TSID
+                    ? TsidGenerator.forNode(id.getNode())::nextId : null;
+            builder = JdbcIpAddressStorageService.builder(dataSource.getJdbcTemplate(),
+                    properties.getTable().getName(), ipAddressExtractor).idGenerator(idGenerator);
+        } else {
+            builder = DefaultIpAddressStorageService.builder(repository, ipAddressExtractor);
+        }
+        builder.windowedDeduplicator(deduplicator).sightingAggregator(sightingAggregator.getIfAvailable());
+        storedListeners.orderedStream().forEach(builder::storedListener);
+        final IpAddressStorageService storageService = builder.build();
+
+        final StorageCircuitBreaker breaker = circuitBreaker.getIfAvailable();
+        if (breaker == null) {
+            return storageService;
+        }
+        // The wrapped service is not a bean, so the decorator runs its async stores itself
+        final Executor asyncExecutor = taskExecutor.getIfAvailable();
+        final IpManagementProperties.CircuitBreaker breakerConfig = properties.getCircuitBreaker();
+        final IpRecordJournal spillJournal = journal.getIfAvailable();
+        if (breakerConfig.getSpill() == IpManagementProperties.SpillMode.JOURNAL) {
+            if (spillJournal != null) {
+                log.debug("Wrapping IP address storage in a circuit breaker spilling to the journal");
+                return new CircuitBreakingIpAddressStorageService(storageService, breaker, asyncExecutor,
+                        spillJournal::appendAll);
+            }
+            log.warn("alchemy.ip.circuit-breaker.spill=journal but the journal is disabled; spilling to memory");
+        }
+        log.debug("Wrapping IP address storage in a circuit breaker spilling to memory (capacity {})",
+                breakerConfig.getSpillCapacity());
+        return new CircuitBreakingIpAddressStorageService(storageService, breaker, asyncExecutor,
+                breakerConfig.getSpillCapacity(), breakerConfig.getSpillMaxSize().toBytes(),
+                properties.getAsync().getBatchSize(),
+                properties.getAsync().getThreadNamePrefix() + "spill-drain");
+    }
+
+    /**
+     * Passes {@code alchemy.ip.id.*} to the record ID generator through the Hibernate
+     * settings. With the {@code tsid} strategy and {@code alchemy.ip.id.batch-inserts},
+     * {@code hibernate.jdbc.batch_size} defaults to the writer batch size and inserts
+     * are ordered; both apply to the whole persistence unit.
+     *
+     * @return the Hibernate properties customizer
+     */
+    @Bean
+    public HibernatePropertiesCustomizer ipRecordIdHibernatePropertiesCustomizer() {
+        final IpManagementProperties.Id id = properties.getId();
+        return hibernateProperties -> {
+            hibernateProperties.put(IpRecordIdGenerator.STRATEGY_SETTING, id.getStrategy().name());
+            if (id.getStrategy() != IpManagementProperties.IdStrategy.TSID) {
+                return;
+            }
+            if (id.getNode() != null) {
+                hibernateProperties.put(IpRecordIdGenerator.NODE_SETTING, id.getNode());
+            }
+            if (!id.isBatchInserts()) {
+                return;
+            }
+            hibernateProperties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE,
+                    properties.getAsync().getBatchSize());
+            hibernateProperties.putIfAbsent(AvailableSettings.ORDER_INSERTS, true);
+            log.info("Batching JPA inserts for the whole persistence unit: {}={}, {}={}",
+                    AvailableSettings.STATEMENT_BATCH_SIZE,
+                    hibernateProperties.get(AvailableSettings.STATEMENT_BATCH_SIZE),
+                    AvailableSettings.ORDER_INSERTS, hibernateProperties.get(AvailableSettings.ORDER_INSERTS));
+        };
+    }
+
+    /**
+     * Creates the storage circuit breaker when {@code alchemy.ip.circuit-breaker.enabled=true}.
+     * It wraps the default storage service only.
+     *
+     * @return the circuit breaker
+     */
+    @Bean
+    @ConditionalOnMissingBean(StorageCircuitBreaker.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.circuit-breaker", name = "enabled", havingValue = "true")
+    public StorageCircuitBreaker storageCircuitBreaker() {
+        final IpManagementProperties.CircuitBreaker breakerConfig = properties.getCircuitBreaker();
+        return new StorageCircuitBreaker(
+                breakerConfig.getWindowSize(),
+                breakerConfig.getMinimumCalls(),
+                breakerConfig.getFailureRateThreshold(),
+                breakerConfig.getSlowCallThreshold(),
+                breakerConfig.getSlowCallRateThreshold(),
+                breakerConfig.getOpenDuration(),
+                breakerConfig.getHalfOpenProbes()
+        );
+    }
+
+    /**
+     * Creates the estimator reading the number of records from database statistics,
+     * used by listings that report an approximate total instead of counting.
+     *
+     * @param dataSource the IP management data source
+     * @return the record count estimator
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpRecordCountEstimator.class)
+    public IpRecordCountEstimator ipRecordCountEstimator(IpManagementDataSource dataSource) {
+        return new IpRecordCountEstimator(dataSource.getJdbcTemplate(), properties.getTable().getName());
+    }
+
+    /**
+     * Creates the sighting aggregator when {@code alchemy.ip.sightings.enabled=true}.
+     *
+     * @param dataSource the IP management data source
+     * @return the sighting aggregator
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpSightingAggregator.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.sightings", name = "enabled", havingValue = "true")
+    public IpSightingAggregator ipSightingAggregator(IpManagementDataSource dataSource) {
+        final IpManagementProperties.Sightings sightings = properties.getSightings();
+        log.debug("Creating IP sighting aggregator with flush interval {}", sightings.getFlushInterval());
+        return new IpSightingAggregator(
+                new JdbcIpSightingStore(dataSource.getJdbcTemplate()),
+                sightings.getFlushInterval(),
+                sightings.getMaxKeys(),
+                properties.getAsync().getThreadNamePrefix() + "sightings"
+        );
+    }
+
+    /**
+     * Creates the rollup aggregator when {@code alchemy.ip.rollups.enabled=true}.
+     *
+     * @param dataSource the IP management data source
+     * @return the rollup aggregator
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpRollupAggregator.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.rollups", name = "enabled", havingValue = "true")
+    public IpRollupAggregator ipRollupAggregator(IpManagementDataSource dataSource) {
+        final IpManagementProperties.Rollups rollups = properties.getRollups();
+        log.debug("Creating IP rollup aggregator with flush interval {}", rollups.getFlushInterval());
+        return new IpRollupAggregator(
+                new JdbcIpRollupStore(dataSource.getJdbcTemplate()),
+                rollups.getFlushInterval(),
+                rollups.getMaxKeys(),
+                properties.getAsync().getThreadNamePrefix() + "rollups"
+        );
+    }
+
+    /**
+     * Creates the command that recomputes the rollups of a time range from the
+     * records table when {@code alchemy.ip.rollups.enabled=true}.
+     *
+     * @param dataSource       the IP management data source
+     * @param rollupAggregator the rollup aggregator, flushed before each rebuild
+     * @return the rollup rebuilder
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpRollupRebuilder.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.rollups", name = "enabled", havingValue = "true")
+    public IpRollupRebuilder ipRollupRebuilder(IpManagementDataSource dataSource,
+                                               ObjectProvider<IpRollupAggregator> rollupAggregator) {
+        return new IpRollupRebuilder(
+                dataSource.getJdbcTemplate(),
+                properties.getTable().getName(),
+                new JdbcIpRollupStore(dataSource.getJdbcTemplate()),
+                rollupAggregator.getIfAvailable()
+        );
+    }
+
+    /**
+     * Creates the distinct counter maintaining HyperLogLog sketches when
+     * {@code alchemy.ip.sketches.enabled=true}.
+     *
+     * @param dataSource the IP management data source
+     * @return the distinct counter
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpDistinctCounter.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.sketches", name = "enabled", havingValue = "true")
+    public IpDistinctCounter ipDistinctCounter(IpManagementDataSource dataSource) {
+        final IpManagementProperties.Sketches sketches = properties.getSketches();
+        final int precision = HyperLogLog.precisionFor(sketches.getRelativeError());
+        log.debug("Creating IP distinct counter with precision {} and flush interval {}",
+                precision, sketches.getFlushInterval());
+        return new IpDistinctCounter(
+                JdbcIpSketchStore.forHyperLogLog(dataSource.getJdbcTemplate()),
+                precision,
+                sketches.getFlushInterval(),
+                sketches.getMaxKeys(),
+                properties.getAsync().getThreadNamePrefix() + "sketches"
+        );
+    }
+
+    /**
+     * Creates the command that adds the records of a time range to the sketches
+     * when {@code alchemy.ip.sketches.enabled=true}.
+     *
+     * @param dataSource      the IP management data source
+     * @param distinctCounter the distinct counter
+     * @return the sketch backfiller
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpSketchBackfiller.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.sketches", name = "enabled", havingValue = "true")
+    public IpSketchBackfiller ipSketchBackfiller(IpManagementDataSource dataSource,
+                                                 IpDistinctCounter distinctCounter) {
+        return new IpSketchBackfiller(
+                dataSource.getJdbcTemplate(),
+                properties.getTable().getName(),
+                distinctCounter
+        );
+    }
+
+    /**
+     * Creates the tracker maintaining Space-Saving summaries of the most frequent IP
+     * addresses when {@code alchemy.ip.heavy-hitters.enabled=true}.
+     *
+     * @param dataSource the IP management data source
+     * @return the heavy-hitter tracker
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpHeavyHitterTracker.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.heavy-hitters", name = "enabled", havingValue = "true")
+    public IpHeavyHitterTracker ipHeavyHitterTracker(IpManagementDataSource dataSource) {
+        final IpManagementProperties.HeavyHitters heavyHitters = properties.getHeavyHitters();
+        log.debug("Creating IP heavy-hitter tracker with capacity {} and window {}",
+                heavyHitters.getCapacity(), heavyHitters.getWindow());
+        return new IpHeavyHitterTracker(
+                JdbcIpSketchStore.forSpaceSaving(dataSource.getJdbcTemplate()),
+                heavyHitters.getCapacity(),
+                heavyHitters.getWindow(),
+                heavyHitters.getWindowBuckets(),
+                heavyHitters.getFlushInterval(),
+                heavyHitters.getMaxKeys(),
+                properties.getAsync().getThreadNamePrefix() + "heavy-hitters"
+        );
+    }
+
+    /**
+     * Creates the batching writer that drains captured records on a virtual thread.
+     * Only created for reactive capture and, with {@code alchemy.ip.async.mode=writer},
+     * for asynchronous servlet captures.
+     *
+     * @param storageService the IP address storage service
+     * @param journal        the optional journal that receives failed batches; without
+     *                       one, a circuit-breaking storage service spills them
+     * @return the record writer
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpRecordWriter.class)
+    @Conditional(OnIpRecordWriterCondition.class)
+    public IpRecordWriter ipRecordWriter(IpAddressStorageService storageService,
+                                         ObjectProvider<IpRecordJournal> journal) {
+        final IpManagementProperties.Async asyncConfig = properties.getAsync();
+        log.debug("Creating IP record writer with {} lane(s), batch size {} ({})",
+                asyncConfig.getWriterLanes(), asyncConfig.getBatchSize(), asyncConfig.isAdaptive() ? "adaptive" : "fixed");
+        final IpRecordWriter writer = new IpRecordWriter(
+                storageService,
+                asyncConfig.getWriterQueueCapacity(),
+                asyncConfig.getWriterMaxBufferedSize().toBytes(),
+                asyncConfig.getWriterLanes(),
+                () -> batchController(asyncConfig),
+                asyncConfig.getThreadNamePrefix() + "writer"
+        );
+        final IpRecordJournal failedBatchJournal = journal.getIfAvailable();
+        if (failedBatchJournal != null) {
+            writer.setFailedBatchHandler(failedBatchJournal::appendAll);
+        } else if (storageService instanceof CircuitBreakingIpAddressStorageService breakingService) {
+            writer.setFailedBatchHandler(breakingService::spill);
+        }
+        return writer;
+    }
+
+    private static AdaptiveBatchController batchController(IpManagementProperties.Async asyncConfig) {
+        if (!asyncConfig.isAdaptive()) {
+            return AdaptiveBatchController.fixed(asyncConfig.getBatchSize(), asyncConfig.getFlushInterval());
+        }
+        return new AdaptiveBatchController(
+                asyncConfig.getBatchSize(),
+                asyncConfig.getMinBatchSize(),
+                asyncConfig.getMaxBatchSize(),
+                asyncConfig.getFlushInterval(),
+                asyncConfig.getMinFlushInterval(),
+                asyncConfig.getMaxFlushInterval(),
+                asyncConfig.getTargetFlushLatency()
+        );
+    }
+
+    /**
+     * Creates the local capture journal when {@code alchemy.ip.journal.enabled=true}.
+     *
+     * @return the journal
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean(IpRecordJournal.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.journal", name = "enabled", havingValue = "true")
+    public IpRecordJournal ipRecordJournal() {
+        final IpManagementProperties.Journal journalConfig = properties.getJournal();
+        log.debug("Opening IP record journal in {} (mode {})", journalConfig.getDirectory(), journalConfig.getMode());
+        return new IpRecordJournal(
+                journalConfig.getDirectory(),
+                journalConfig.getSegmentSize().toBytes(),
+                journalConfig.getMaxSize().toBytes(),
+                journalConfig.getMode() == IpManagementProperties.JournalMode.ALWAYS
+        );
+    }
+
+    /**
+     * Creates the replayer that drains the journal into the database.
+     *
+     * @param journal        the journal
+     * @param storageService the IP address storage service
+     * @return the journal replayer
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpRecordJournalReplayer.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.journal", name = "enabled", havingValue = "true")
+    public IpRecordJournalReplayer ipRecordJournalReplayer(IpRecordJournal journal,
+                                                           IpAddressStorageService storageService) {
+        final IpManagementProperties.Journal journalConfig = properties.getJournal();
+        return new IpRecordJournalReplayer(
+                journal,
+                storageService,
+                journalConfig.getReplayBatchSize(),
+                journalConfig.getReplayInterval(),
+                properties.getAsync().getThreadNamePrefix() + "journal"
+        );
+    }
+
+    /**
+     * Creates the per-IP capture throttle when {@code alchemy.ip.throttle.enabled=true}.
+     *
+     * @return the capture throttle
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpCaptureThrottle.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.throttle", name = "enabled", havingValue = "true")
+    public IpCaptureThrottle ipCaptureThrottle() {
+        final IpManagementProperties.Throttle throttleConfig = properties.getThrottle();
+        log.debug("Creating IP capture throttle at {}/s per IP (burst {})",
+                throttleConfig.getRatePerSecond(), throttleConfig.getBurst());
+        return new IpCaptureThrottle(
+                throttleConfig.getRatePerSecond(),
+                throttleConfig.getBurst(),
+                throttleConfig.getStripes(),
+                throttleConfig.getMaxTrackedIps()
+        );
+    }
+
+    /**
+     * Creates the dispatcher that hands captured records to storage according
+     * to {@code alchemy.ip.sync-mode} and {@code alchemy.ip.async.mode}.
+     *
+     * @param storageService the IP address storage service
+     * @param writer         the record writer, present with {@code alchemy.ip.async.mode=writer}
+     * @param throttle       the optional per-IP capture throttle
+     * @param journal        the optional journal for captures that cannot be stored
+     * @return the capture dispatcher
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpCaptureDispatcher.class)
+    public IpCaptureDispatcher ipCaptureDispatcher(IpAddressStorageService storageService,
+                                                   ObjectProvider<IpRecordWriter> writer,
+                                                   ObjectProvider<IpCaptureThrottle> throttle,
+                                                   ObjectProvider<IpRecordJournal> journal) {
+        final boolean useWriter = properties.getAsync().getMode() == IpManagementProperties.AsyncMode.WRITER;
+        log.debug("Creating IP capture dispatcher (async via {})", useWriter ? "writer" : "executor");
+        return new IpCaptureDispatcher(storageService, properties.getSyncMode(),
+                useWriter ? writer.getIfAvailable() : null, throttle.getIfAvailable(), journal.getIfAvailable());
     }
 
     /**
      * Creates the IP address storage aspect that intercepts annotated methods.
+     * Not created when {@code alchemy.ip.capture.mode=filter}.
      *
-     * @param storageService     the IP address storage service
+     * @param dispatcher         the capture dispatcher
      * @param ipAddressExtractor the IP address extractor
      * @param userIdResolver     the user ID resolver
      * @param beanFactory        the bean factory for SpEL evaluation
@@ -142,17 +562,19 @@ public class IpManagementAutoConfiguration {
      */
     @Bean
     @ConditionalOnMissingBean(IpAddressStorageAspect.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.capture", name = "mode", havingValue = "aspect", matchIfMissing = true)
     public IpAddressStorageAspect ipAddressStorageAspect(
-            IpAddressStorageService storageService,
+            IpCaptureDispatcher dispatcher,
             IpAddressExtractor ipAddressExtractor,
             UserIdResolver userIdResolver,
             BeanFactory beanFactory) {
         log.debug("Creating IP address storage aspect");
         return new IpAddressStorageAspect(
-                storageService,
-                ipAddressExtractor,
+                dispatcher,
+                new IpRecordFactory(ipAddressExtractor),
                 userIdResolver,
-                beanFactory
+                beanFactory,
+                properties.getSampleRate()
         );
     }
 
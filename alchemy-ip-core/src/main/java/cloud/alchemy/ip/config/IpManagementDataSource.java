@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The data source used by the library's JDBC paths: capture writes with
+ * {@code alchemy.ip.storage-mode=jdbc}, the background flushers of sightings,
+ * rollups, sketches and heavy hitters with their rebuild and backfill, and the
+ * record count estimate. JPA storage and the stats queries of the repositories
+ * always run on the application's primary data source.
+ *
+ * <p>Either the application's primary {@link DataSource}, or - with
+ * {@code alchemy.ip.datasource.enabled=true} and HikariCP on the classpath - a
+ * small pool of its own that keeps those paths from competing with the
+ * application's transactions for connections. The pool is deliberately not exposed as a
+ * {@code DataSource} bean, which would make Spring Boot's own data source
+ * auto-configuration back off and break injection by type in the application.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class IpManagementDataSource implements Closeable {
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean dedicated;
+
+    /**
+     * Creates a new holder.
+     *
+     * @param dataSource the data source
+     * @param dedicated  whether the data source is owned by the library and closed with it
+     */
+    public IpManagementDataSource(DataSource dataSource, boolean dedicated) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dedicated = dedicated;
+    }
+
+    /**
+     * Returns the data source.
+     *
+     * @return the data source
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Returns a JDBC template backed by the data source.
+     *
+     * @return the JDBC template
+     */
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * Returns whether the data source is a pool owned by the library rather than
+     * the application's primary data source.
+     *
+     * @return {@code true} if dedicated
+     */
+    public boolean isDedicated() {
+        return dedicated;
+    }
+
+    /**
+     * Closes the data source if it is dedicated. The primary data source is left alone.
+     */
+    @Override
+    public void close() throws IOException {
+        if (dedicated && dataSource instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -16,7 +16,10 @@
 package cloud.alchemy.ip.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -29,6 +32,7 @@ import java.util.List;
  * <p>Example configuration:
  * <pre>{@code
  * alchemy.ip.enabled=true
+ * alchemy.ip.sync-mode=after-completion
  * alchemy.ip.async.enabled=true
  * alchemy.ip.async.core-pool-size=2
  * alchemy.ip.async.max-pool-size=10
@@ -60,69 +64,1122 @@ public class IpManagementProperties {
      */
     private List<String> trustedProxies = new ArrayList<>();
 
+    /**
+     * When synchronous ({@code async = false}) captures are persisted.
+     * {@link SyncMode#AFTER_COMPLETION} defers the insert until the handler has
+     * written and flushed the response; see there for what the client still waits for.
+     */
+    private SyncMode syncMode = SyncMode.IMMEDIATE;
+
+    /**
+     * How the default storage service writes records. {@link StorageMode#JDBC}
+     * batches inserts with plain JDBC through the {@code alchemy.ip.datasource} pool.
+     */
+    private StorageMode storageMode = StorageMode.JPA;
+
+    /**
+     * Default fraction of requests captured, between 0.0 and 1.0. Applies to filter
+     * capture and to {@code @StoreIPAddress} methods that do not set a sample rate.
+     */
+    private double sampleRate = 1.0;
+
+    /**
+     * Capture configuration.
+     */
+    private Capture capture = new Capture();
+
+    /**
+     * Per-IP capture throttling configuration.
+     */
+    private Throttle throttle = new Throttle();
+
+    /**
+     * Duplicate suppression configuration.
+     */
+    private Dedup dedup = new Dedup();
+
+    /**
+     * Sighting aggregation configuration.
+     */
+    private Sightings sightings = new Sightings();
+
+    /**
+     * Hourly and daily rollup configuration.
+     */
+    private Rollups rollups = new Rollups();
+
+    /**
+     * Distinct-count sketch configuration.
+     */
+    private Sketches sketches = new Sketches();
+
+    /**
+     * Most-frequent-IP tracking configuration.
+     */
+    private HeavyHitters heavyHitters = new HeavyHitters();
+
+    /**
+     * Local capture journal configuration.
+     */
+    private Journal journal = new Journal();
+
+    /**
+     * Storage circuit breaker configuration.
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
     /**
      * Async processing configuration.
      */
     private Async async = new Async();
 
-    /**
-     * Table configuration.
-     */
-    private Table table = new Table();
+    /**
+     * Dedicated connection pool configuration.
+     */
+    private Datasource datasource = new Datasource();
+
+    /**
+     * Record ID configuration.
+     */
+    private Id id = new Id();
+
+    /**
+     * Table configuration.
+     */
+    private Table table = new Table();
+
+    /**
+     * Schema configuration.
+     */
+    private Schema schema = new Schema();
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isTrustAllProxies() {
+        return trustAllProxies;
+    }
+
+    public void setTrustAllProxies(boolean trustAllProxies) {
+        this.trustAllProxies = trustAllProxies;
+    }
+
+    public List<String> getTrustedProxies() {
+        return trustedProxies;
+    }
+
+    public void setTrustedProxies(List<String> trustedProxies) {
+        this.trustedProxies = trustedProxies;
+    }
+
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    public void setSyncMode(SyncMode syncMode) {
+        this.syncMode = syncMode;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public void setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Capture getCapture() {
+        return capture;
+    }
+
+    public void setCapture(Capture capture) {
+        this.capture = capture;
+    }
+
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    public void setThrottle(Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    public Dedup getDedup() {
+        return dedup;
+    }
+
+    public void setDedup(Dedup dedup) {
+        this.dedup = dedup;
+    }
+
+    public Sightings getSightings() {
+        return sightings;
+    }
+
+    public void setSightings(Sightings sightings) {
+        this.sightings = sightings;
+    }
+
+    public Rollups getRollups() {
+        return rollups;
+    }
+
+    public void setRollups(Rollups rollups) {
+        this.rollups = rollups;
+    }
+
+    public Sketches getSketches() {
+        return sketches;
+    }
+
+    public void setSketches(Sketches sketches) {
+        this.sketches = sketches;
+    }
+
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    public void setHeavyHitters(HeavyHitters heavyHitters) {
+        this.heavyHitters = heavyHitters;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public void setAsync(Async async) {
+        this.async = async;
+    }
+
+    public Datasource getDatasource() {
+        return datasource;
+    }
+
+    public void setDatasource(Datasource datasource) {
+        this.datasource = datasource;
+    }
+
+    public Id getId() {
+        return id;
+    }
+
+    public void setId(Id id) {
+        this.id = id;
+    }
+
+    public Table getTable() {
+        return table;
+    }
+
+    public void setTable(Table table) {
+        this.table = table;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public void setSchema(Schema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Persistence timing for synchronous captures.
+     */
+    public enum SyncMode {
+
+        /**
+         * Store on the request thread right after the controller method returns,
+         * before the response is written.
+         */
+        IMMEDIATE,
+
+        /**
+         * Store on the request thread once the handler has written the response and
+         * it has been flushed to the client.
+         *
+         * <p>The store still runs before the servlet returns, so the container only
+         * completes the response afterwards: the client receives the status, headers
+         * and body early, but a client reading to the end of a chunked or
+         * connection-delimited response, and the next request on a keep-alive
+         * connection, still wait for the database. Use async captures to keep the
+         * insert off the response entirely.
+         */
+        AFTER_COMPLETION
+    }
+
+    /**
+     * How the default storage service writes records.
+     */
+    public enum StorageMode {
+
+        /**
+         * Save each record through the JPA repository.
+         */
+        JPA,
+
+        /**
+         * Insert records with JDBC prepared statements, batching whole writer batches
+         * into one round trip.
+         */
+        JDBC
+    }
+
+    /**
+     * How record IDs are assigned.
+     */
+    public enum IdStrategy {
+
+        /**
+         * The database assigns IDs from an identity column. Every insert runs on its own.
+         */
+        IDENTITY,
+
+        /**
+         * The application assigns time-sortable 64-bit IDs before the insert, so
+         * inserts can be batched.
+         */
+        TSID
+    }
+
+    /**
+     * How requests are intercepted for IP capture.
+     */
+    public enum CaptureMode {
+
+        /**
+         * Intercept controller methods annotated with
+         * {@link cloud.alchemy.ip.annotation.StoreIPAddress} via AOP.
+         */
+        ASPECT,
+
+        /**
+         * Intercept every request matching {@link Capture#getIncludePatterns()}
+         * with a servlet filter (or a WebFlux {@code WebFilter} in reactive
+         * applications), including requests that fail before reaching a controller.
+         */
+        FILTER
+    }
+
+    /**
+     * How duplicate IP + user combinations are suppressed.
+     */
+    public enum DedupMode {
+
+        /**
+         * Store each combination once, checked against the database.
+         */
+        FOREVER,
+
+        /**
+         * Store each combination at most once per {@link Dedup#getWindow()}, checked
+         * in memory without a database read.
+         */
+        WINDOW
+    }
+
+    /**
+     * Which async captures are written to the local journal.
+     */
+    public enum JournalMode {
+
+        /**
+         * Journal only captures that failed to store or that the writer had no room
+         * for, e.g. while the database is down.
+         */
+        ON_FAILURE,
+
+        /**
+         * Journal every async servlet capture before it is stored; the journal
+         * replayer is then their only path to the database. Reactive captures keep
+         * going through the writer, whose failed batches are journaled.
+         */
+        ALWAYS
+    }
+
+    /**
+     * Where captures go while the storage circuit breaker is open.
+     */
+    public enum SpillMode {
+
+        /**
+         * Hold captures in a bounded in-memory ring and store them once the breaker closes.
+         */
+        MEMORY,
+
+        /**
+         * Append captures to the local journal, which replays them once the database
+         * recovers. Requires {@code alchemy.ip.journal.enabled=true}.
+         */
+        JOURNAL
+    }
+
+    /**
+     * How asynchronous captures are handed to storage.
+     */
+    public enum AsyncMode {
+
+        /**
+         * Submit each capture to the async executor as its own task.
+         */
+        EXECUTOR,
+
+        /**
+         * Append captures to a bounded in-memory buffer drained in batches by a
+         * single virtual writer thread. Always used by reactive capture.
+         */
+        WRITER
+    }
+
+    /**
+     * Capture configuration.
+     */
+    public static class Capture {
+
+        /**
+         * Capture mode. Defaults to {@link CaptureMode#ASPECT}.
+         */
+        private CaptureMode mode = CaptureMode.ASPECT;
+
+        /**
+         * Path patterns captured in filter mode (Spring PathPattern syntax).
+         */
+        private List<String> includePatterns = new ArrayList<>();
+
+        /**
+         * Order of the capture filter in the servlet filter chain. The default
+         * runs after Spring Security so the authenticated user can be resolved.
+         */
+        private int filterOrder = 0;
+
+        /**
+         * Whether to store the User-Agent header in filter mode.
+         */
+        private boolean storeUserAgent = false;
+
+        /**
+         * Whether to store the request path in filter mode.
+         */
+        private boolean storeRequestPath = true;
+
+        /**
+         * Whether to store the HTTP method in filter mode.
+         */
+        private boolean storeHttpMethod = true;
+
+        /**
+         * Tag applied to records captured in filter mode.
+         */
+        private String tag = "";
+
+        /**
+         * Whether records captured in filter mode are stored asynchronously.
+         */
+        private boolean async = true;
+
+        public CaptureMode getMode() {
+            return mode;
+        }
+
+        public void setMode(CaptureMode mode) {
+            this.mode = mode;
+        }
+
+        public List<String> getIncludePatterns() {
+            return includePatterns;
+        }
+
+        public void setIncludePatterns(List<String> includePatterns) {
+            this.includePatterns = includePatterns;
+        }
+
+        public int getFilterOrder() {
+            return filterOrder;
+        }
+
+        public void setFilterOrder(int filterOrder) {
+            this.filterOrder = filterOrder;
+        }
+
+        public boolean isStoreUserAgent() {
+            return storeUserAgent;
+        }
+
+        public void setStoreUserAgent(boolean storeUserAgent) {
+            this.storeUserAgent = storeUserAgent;
+        }
+
+        public boolean isStoreRequestPath() {
+            return storeRequestPath;
+        }
+
+        public void setStoreRequestPath(boolean storeRequestPath) {
+            this.storeRequestPath = storeRequestPath;
+        }
+
+        public boolean isStoreHttpMethod() {
+            return storeHttpMethod;
+        }
+
+        public void setStoreHttpMethod(boolean storeHttpMethod) {
+            this.storeHttpMethod = storeHttpMethod;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public void setTag(String tag) {
+            this.tag = tag;
+        }
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+    }
+
+    /**
+     * Per-IP capture throttling configuration.
+     */
+    public static class Throttle {
+
+        /**
+         * Whether captures beyond the configured per-IP rate are dropped. Defaults to false.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Sustained captures allowed per IP and second.
+         */
+        private double ratePerSecond = 10;
+
+        /**
+         * Captures an idle IP may make back to back before the rate applies.
+         */
+        private int burst = 20;
+
+        /**
+         * Number of token buckets IPs are hashed into, rounded up to a power of two.
+         */
+        private int stripes = 4096;
+
+        /**
+         * Maximum number of recently throttled IPs with an individual throttled-captures count.
+         */
+        private int maxTrackedIps = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getRatePerSecond() {
+            return ratePerSecond;
+        }
+
+        public void setRatePerSecond(double ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        public int getStripes() {
+            return stripes;
+        }
+
+        public void setStripes(int stripes) {
+            this.stripes = stripes;
+        }
+
+        public int getMaxTrackedIps() {
+            return maxTrackedIps;
+        }
+
+        public void setMaxTrackedIps(int maxTrackedIps) {
+            this.maxTrackedIps = maxTrackedIps;
+        }
+    }
+
+    /**
+     * Duplicate suppression configuration.
+     */
+    public static class Dedup {
+
+        /**
+         * Dedup mode. Defaults to {@link DedupMode#FOREVER}.
+         */
+        private DedupMode mode = DedupMode.FOREVER;
+
+        /**
+         * Window length in {@link DedupMode#WINDOW} mode.
+         */
+        private Duration window = Duration.ofMinutes(5);
+
+        /**
+         * Maximum number of IP + user keys tracked in {@link DedupMode#WINDOW} mode.
+         */
+        private int maxKeys = 100_000;
+
+        public DedupMode getMode() {
+            return mode;
+        }
+
+        public void setMode(DedupMode mode) {
+            this.mode = mode;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+
+    /**
+     * Sighting aggregation configuration.
+     */
+    public static class Sightings {
+
+        /**
+         * Whether to count every capture in the ip_sightings table.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How often accumulated hits are flushed to the database.
+         */
+        private Duration flushInterval = Duration.ofSeconds(10);
+
+        /**
+         * Number of accumulated IP + user keys that triggers an early flush.
+         */
+        private int maxKeys = 100_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+
+    /**
+     * Hourly and daily rollup configuration.
+     */
+    public static class Rollups {
+
+        /**
+         * Whether to maintain hourly and daily rollups of stored records in the ip_rollups table.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Whether the stats API reads from the rollups instead of aggregating raw records.
+         */
+        private boolean serveStats = true;
+
+        /**
+         * How often accumulated rollups are flushed to the database.
+         */
+        private Duration flushInterval = Duration.ofSeconds(10);
+
+        /**
+         * Number of accumulated rollup rows that triggers an early flush.
+         */
+        private int maxKeys = 100_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isServeStats() {
+            return serveStats;
+        }
+
+        public void setServeStats(boolean serveStats) {
+            this.serveStats = serveStats;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+
+    /**
+     * Distinct-count sketch configuration.
+     */
+    public static class Sketches {
+
+        /**
+         * Whether to maintain HyperLogLog sketches of distinct IP addresses and users in the ip_sketches table.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Relative standard error of the distinct counts estimated from new sketches.
+         */
+        private double relativeError = 0.01;
+
+        /**
+         * How often accumulated sketches are merged into the database.
+         */
+        private Duration flushInterval = Duration.ofSeconds(10);
+
+        /**
+         * Number of accumulated sketches that triggers an early flush.
+         */
+        private int maxKeys = 10_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getRelativeError() {
+            return relativeError;
+        }
+
+        public void setRelativeError(double relativeError) {
+            this.relativeError = relativeError;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+
+    /**
+     * Most-frequent-IP tracking configuration.
+     */
+    public static class HeavyHitters {
+
+        /**
+         * Whether to track the most frequent IP addresses with Space-Saving summaries in the ip_sketches table.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of IP addresses each summary tracks. Counts overestimate by at most the record count divided by the capacity.
+         */
+        private int capacity = 1000;
+
+        /**
+         * Length of the sliding window for recent heavy hitters.
+         */
+        private Duration window = Duration.ofHours(24);
+
+        /**
+         * Number of buckets the sliding window is divided into.
+         */
+        private int windowBuckets = 24;
+
+        /**
+         * How often accumulated counts are merged into the database.
+         */
+        private Duration flushInterval = Duration.ofSeconds(10);
+
+        /**
+         * Number of IP addresses with pending counts that triggers an early flush.
+         */
+        private int maxKeys = 100_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getWindowBuckets() {
+            return windowBuckets;
+        }
+
+        public void setWindowBuckets(int windowBuckets) {
+            this.windowBuckets = windowBuckets;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+
+    /**
+     * Local capture journal configuration.
+     */
+    public static class Journal {
+
+        /**
+         * Whether to keep captures that cannot be stored in a journal on local disk.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Which async captures are journaled.
+         */
+        private JournalMode mode = JournalMode.ON_FAILURE;
+
+        /**
+         * Directory holding the journal segment files. Every instance needs its own directory: the journal locks it, and startup fails if another process holds the lock.
+         */
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "alchemy-ip-journal");
+
+        /**
+         * Size of each memory-mapped segment file.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Maximum total size of the journal. Captures beyond this are dropped.
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+
+        /**
+         * Time between attempts to replay the journal into the database.
+         */
+        private Duration replayInterval = Duration.ofSeconds(5);
+
+        /**
+         * Maximum records per replayed batch.
+         */
+        private int replayBatchSize = 500;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public JournalMode getMode() {
+            return mode;
+        }
+
+        public void setMode(JournalMode mode) {
+            this.mode = mode;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(Path directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getReplayInterval() {
+            return replayInterval;
+        }
+
+        public void setReplayInterval(Duration replayInterval) {
+            this.replayInterval = replayInterval;
+        }
+
+        public int getReplayBatchSize() {
+            return replayBatchSize;
+        }
+
+        public void setReplayBatchSize(int replayBatchSize) {
+            this.replayBatchSize = replayBatchSize;
+        }
+    }
+
+    /**
+     * Storage circuit breaker configuration.
+     */
+    public static class CircuitBreaker {
+
+        /**
+         * Whether to stop sending captures to a slow or failing database.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of recent storage calls the failure and slow call rates are computed over.
+         */
+        private int windowSize = 100;
+
+        /**
+         * Calls required in the window before the breaker may open.
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * Share of failed calls (0 to 1) that opens the breaker.
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * Duration above which a storage call counts as slow.
+         */
+        private Duration slowCallThreshold = Duration.ofSeconds(2);
+
+        /**
+         * Share of slow calls (0 to 1) that opens the breaker.
+         */
+        private double slowCallRateThreshold = 0.8;
+
+        /**
+         * How long the breaker stays open before letting probe calls through.
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * Successful probe calls required to close a half-open breaker.
+         */
+        private int halfOpenProbes = 5;
+
+        /**
+         * Where captures go while the breaker is open.
+         */
+        private SpillMode spill = SpillMode.MEMORY;
+
+        /**
+         * Maximum captures held in memory while the breaker is open. The oldest are dropped first.
+         */
+        private int spillCapacity = 10_000;
+
+        /**
+         * Maximum estimated heap size of the captures held in memory while the breaker
+         * is open. The oldest are dropped first.
+         */
+        private DataSize spillMaxSize = DataSize.ofMegabytes(16);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
 
-    /**
-     * Schema configuration.
-     */
-    private Schema schema = new Schema();
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
 
-    // Getters and Setters
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
 
-    public boolean isEnabled() {
-        return enabled;
-    }
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
 
-    public void setEnabled(boolean enabled) {
-        this.enabled = enabled;
-    }
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
 
-    public boolean isTrustAllProxies() {
-        return trustAllProxies;
-    }
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
 
-    public void setTrustAllProxies(boolean trustAllProxies) {
-        this.trustAllProxies = trustAllProxies;
-    }
+        public Duration getSlowCallThreshold() {
+            return slowCallThreshold;
+        }
 
-    public List<String> getTrustedProxies() {
-        return trustedProxies;
-    }
+        public void setSlowCallThreshold(Duration slowCallThreshold) {
+            this.slowCallThreshold = slowCallThreshold;
+        }
 
-    public void setTrustedProxies(List<String> trustedProxies) {
-        this.trustedProxies = trustedProxies;
-    }
+        public double getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
 
-    public Async getAsync() {
-        return async;
-    }
+        public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
 
-    public void setAsync(Async async) {
-        this.async = async;
-    }
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
 
-    public Table getTable() {
-        return table;
-    }
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
 
-    public void setTable(Table table) {
-        this.table = table;
-    }
+        public int getHalfOpenProbes() {
+            return halfOpenProbes;
+        }
 
-    public Schema getSchema() {
-        return schema;
-    }
+        public void setHalfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+        }
 
-    public void setSchema(Schema schema) {
-        this.schema = schema;
+        public SpillMode getSpill() {
+            return spill;
+        }
+
+        public void setSpill(SpillMode spill) {
+            this.spill = spill;
+        }
+
+        public int getSpillCapacity() {
+            return spillCapacity;
+        }
+
+        public void setSpillCapacity(int spillCapacity) {
+            this.spillCapacity = spillCapacity;
+        }
+
+        public DataSize getSpillMaxSize() {
+            return spillMaxSize;
+        }
+
+        public void setSpillMaxSize(DataSize spillMaxSize) {
+            this.spillMaxSize = spillMaxSize;
+        }
     }
 
     /**
@@ -146,7 +1203,9 @@ public class IpManagementProperties {
         private int maxPoolSize = 10;
 
         /**
-         * Queue capacity for the async executor.
+         * Queue capacity for the async executor. Bounded by task count only: each queued
+         * task holds one capture, and there are too few for a byte bound to matter. Use
+         * {@code mode=writer} to buffer many captures under {@code writer-max-buffered-size}.
          */
         private int queueCapacity = 100;
 
@@ -155,6 +1214,70 @@ public class IpManagementProperties {
          */
         private String threadNamePrefix = "ip-storage-";
 
+        /**
+         * How async captures are handed to storage. Defaults to {@link AsyncMode#EXECUTOR}.
+         */
+        private AsyncMode mode = AsyncMode.EXECUTOR;
+
+        /**
+         * Maximum number of records the writer stores per batch.
+         */
+        private int batchSize = 100;
+
+        /**
+         * Maximum time a buffered record waits before the writer flushes a partial batch.
+         */
+        private Duration flushInterval = Duration.ofMillis(500);
+
+        /**
+         * Maximum number of records buffered by the writer. Captures beyond this are dropped.
+         */
+        private int writerQueueCapacity = 10_000;
+
+        /**
+         * Number of writer lanes. Records are routed to a lane by IP hash; each lane
+         * flushes on its own thread and connection.
+         */
+        private int writerLanes = 1;
+
+        /**
+         * Maximum estimated heap size of records buffered by the writer, across all
+         * lanes. Captures beyond this are dropped.
+         */
+        private DataSize writerMaxBufferedSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Whether the writer adapts its batch size and flush interval to the observed
+         * flush latency and queue depth. {@code batchSize} and {@code flushInterval}
+         * are then the starting values.
+         */
+        private boolean adaptive = false;
+
+        /**
+         * Lower bound for the adaptive batch size, also the step it grows by.
+         */
+        private int minBatchSize = 10;
+
+        /**
+         * Upper bound for the adaptive batch size.
+         */
+        private int maxBatchSize = 1000;
+
+        /**
+         * Lower bound for the adaptive flush interval, also the step it shrinks by.
+         */
+        private Duration minFlushInterval = Duration.ofMillis(50);
+
+        /**
+         * Upper bound for the adaptive flush interval.
+         */
+        private Duration maxFlushInterval = Duration.ofSeconds(5);
+
+        /**
+         * Flush latency above which the adaptive writer halves its batch size.
+         */
+        private Duration targetFlushLatency = Duration.ofMillis(100);
+
         public boolean isEnabled() {
             return enabled;
         }
@@ -194,6 +1317,281 @@ public class IpManagementProperties {
         public void setThreadNamePrefix(String threadNamePrefix) {
             this.threadNamePrefix = threadNamePrefix;
         }
+
+        public AsyncMode getMode() {
+            return mode;
+        }
+
+        public void setMode(AsyncMode mode) {
+            this.mode = mode;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getWriterQueueCapacity() {
+            return writerQueueCapacity;
+        }
+
+        public void setWriterQueueCapacity(int writerQueueCapacity) {
+            this.writerQueueCapacity = writerQueueCapacity;
+        }
+
+        public int getWriterLanes() {
+            return writerLanes;
+        }
+
+        public void setWriterLanes(int writerLanes) {
+            this.writerLanes = writerLanes;
+        }
+
+        public DataSize getWriterMaxBufferedSize() {
+            return writerMaxBufferedSize;
+        }
+
+        public void setWriterMaxBufferedSize(DataSize writerMaxBufferedSize) {
+            this.writerMaxBufferedSize = writerMaxBufferedSize;
+        }
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public int getMinBatchSize() {
+            return minBatchSize;
+        }
+
+        public void setMinBatchSize(int minBatchSize) {
+            this.minBatchSize = minBatchSize;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public Duration getMinFlushInterval() {
+            return minFlushInterval;
+        }
+
+        public void setMinFlushInterval(Duration minFlushInterval) {
+            this.minFlushInterval = minFlushInterval;
+        }
+
+        public Duration getMaxFlushInterval() {
+            return maxFlushInterval;
+        }
+
+        public void setMaxFlushInterval(Duration maxFlushInterval) {
+            this.maxFlushInterval = maxFlushInterval;
+        }
+
+        public Duration getTargetFlushLatency() {
+            return targetFlushLatency;
+        }
+
+        public void setTargetFlushLatency(Duration targetFlushLatency) {
+            this.targetFlushLatency = targetFlushLatency;
+        }
+    }
+
+    /**
+     * Dedicated connection pool configuration.
+     */
+    public static class Datasource {
+
+        /**
+         * Whether the library's JDBC paths use a HikariCP pool of their own instead of
+         * the application's primary data source: capture writes with
+         * {@code storage-mode=jdbc} and the background flushers. JPA storage and the
+         * stats queries always use the primary data source; a warning is logged when
+         * the pool is enabled with {@code storage-mode=jpa}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * JDBC URL of the pool. Defaults to {@code spring.datasource.url}. Must reach the
+         * same database as the primary data source, which still holds the JPA-managed table.
+         */
+        private String url;
+
+        /**
+         * Database user. Defaults to {@code spring.datasource.username}.
+         */
+        private String username;
+
+        /**
+         * Database password. Defaults to {@code spring.datasource.password}.
+         */
+        private String password;
+
+        /**
+         * JDBC driver class. Defaults to {@code spring.datasource.driver-class-name},
+         * or is derived from the URL.
+         */
+        private String driverClassName;
+
+        /**
+         * Maximum connections in the pool.
+         */
+        private int maximumPoolSize = 4;
+
+        /**
+         * Idle connections the pool keeps open.
+         */
+        private int minimumIdle = 1;
+
+        /**
+         * Maximum wait for a connection before a capture write or stats query fails.
+         */
+        private Duration connectionTimeout = Duration.ofSeconds(2);
+
+        /**
+         * Name of the pool, shown in pool metrics and thread names.
+         */
+        private String poolName = "alchemy-ip";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public String getDriverClassName() {
+            return driverClassName;
+        }
+
+        public void setDriverClassName(String driverClassName) {
+            this.driverClassName = driverClassName;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+
+        public int getMinimumIdle() {
+            return minimumIdle;
+        }
+
+        public void setMinimumIdle(int minimumIdle) {
+            this.minimumIdle = minimumIdle;
+        }
+
+        public Duration getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        public void setConnectionTimeout(Duration connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+        }
+
+        public String getPoolName() {
+            return poolName;
+        }
+
+        public void setPoolName(String poolName) {
+            this.poolName = poolName;
+        }
+    }
+
+    /**
+     * Record ID configuration.
+     */
+    public static class Id {
+
+        /**
+         * How record IDs are assigned. Changing it on an existing table requires the
+         * ID column to accept the other kind of value.
+         */
+        private IdStrategy strategy = IdStrategy.IDENTITY;
+
+        /**
+         * Node ID between 0 and 1023 for the {@code tsid} strategy. Must be unique per
+         * application instance writing to the table; defaults to a random value per JVM.
+         */
+        private Integer node;
+
+        /**
+         * Whether to batch JPA inserts with the {@code tsid} strategy, by defaulting
+         * {@code hibernate.jdbc.batch_size} to {@code async.batch-size} and setting
+         * {@code hibernate.order_inserts}. These settings apply to every entity in the
+         * persistence unit, not only IP records.
+         */
+        private boolean batchInserts = false;
+
+        public IdStrategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(IdStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public Integer getNode() {
+            return node;
+        }
+
+        public void setNode(Integer node) {
+            this.node = node;
+        }
+
+        public boolean isBatchInserts() {
+            return batchInserts;
+        }
+
+        public void setBatchInserts(boolean batchInserts) {
+            this.batchInserts = batchInserts;
+        }
     }
 
     /**
@@ -239,6 +1637,13 @@ public class IpManagementProperties {
          */
         private boolean useHibernateDdl = true;
 
+        /**
+         * Whether custom schema initialization creates indexes added in later versions
+         * on an existing table at startup. Off by default, since building an index on a
+         * large table can block writes to it; the statement is logged instead.
+         */
+        private boolean upgradeIndexes = false;
+
         public boolean isUseHibernateDdl() {
             return useHibernateDdl;
         }
@@ -246,5 +1651,13 @@ public class IpManagementProperties {
         public void setUseHibernateDdl(boolean useHibernateDdl) {
             this.useHibernateDdl = useHibernateDdl;
         }
+
+        public boolean isUpgradeIndexes() {
+            return upgradeIndexes;
+        }
+
+        public void setUpgradeIndexes(boolean upgradeIndexes) {
+            this.upgradeIndexes = upgradeIndexes;
+        }
     }
 }
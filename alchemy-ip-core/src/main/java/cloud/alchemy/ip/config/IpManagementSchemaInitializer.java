@@ -25,6 +25,11 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Initializes the database schema for IP address storage.
@@ -44,6 +49,10 @@ public final class IpManagementSchemaInitializer {
 
     private static final Logger log = LoggerFactory.getLogger(IpManagementSchemaInitializer.class);
 
+    private static final String SIGHTINGS_TABLE = "ip_sightings";
+    private static final String ROLLUPS_TABLE = "ip_rollups";
+    private static final String SKETCHES_TABLE = "ip_sketches";
+
     private final DataSource dataSource;
     private final JdbcTemplate jdbcTemplate;
     private final IpManagementProperties properties;
@@ -86,6 +95,21 @@ public final class IpManagementSchemaInitializer {
                 createIpAddressesTable(dbInfo);
             } else {
                 log.debug("Table '{}' already exists", tableName);
+                addMissingColumns(tableName);
+                addKeysetIndex(dbInfo, tableName);
+            }
+
+            if (properties.getSightings().isEnabled() && !tableExists(SIGHTINGS_TABLE)) {
+                createSightingsTable(dbInfo);
+            }
+
+            if (properties.getRollups().isEnabled() && !tableExists(ROLLUPS_TABLE)) {
+                createRollupsTable(dbInfo);
+            }
+
+            if ((properties.getSketches().isEnabled() || properties.getHeavyHitters().isEnabled())
+                    && !tableExists(SKETCHES_TABLE)) {
+                createSketchesTable(dbInfo);
             }
 
         } catch (Exception e) {
@@ -125,6 +149,136 @@ public final class IpManagementSchemaInitializer {
         }
     }
 
+    private boolean columnExists(String tableName, String columnName) {
+        try (Connection conn = dataSource.getConnection()) {
+            final DatabaseMetaData metaData = conn.getMetaData();
+            final String[] tableNameVariants = {tableName, tableName.toUpperCase(), tableName.toLowerCase()};
+
+            for (String variant : tableNameVariants) {
+                try (ResultSet rs = metaData.getColumns(null, null, variant, null)) {
+                    while (rs.next()) {
+                        if (columnName.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            log.warn("Error checking if column '{}.{}' exists: {}", tableName, columnName, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Adds columns introduced after the table was first created.
+     */
+    private void addMissingColumns(String tableName) {
+        if (!columnExists(tableName, "sample_rate")) {
+            log.info("Adding column 'sample_rate' to table '{}'", tableName);
+            jdbcTemplate.execute(String.format("ALTER TABLE %s ADD sample_rate DOUBLE PRECISION", tableName));
+        }
+    }
+
+    /**
+     * Checks tables created before 1.1.0, whose {@code created_at} index lacks
+     * {@code id}, for the {@code (created_at, id)} index that keyset pagination reads
+     * from. Building an index on a large table can block writes to it for minutes,
+     * so unless {@code alchemy.ip.schema.upgrade-indexes} is set the DDL is only
+     * logged for an operator to run.
+     */
+    private void addKeysetIndex(DatabaseInfo dbInfo, String tableName) {
+        if (indexStartsWith(tableName, "created_at", "id")) {
+            return;
+        }
+        final String ddl = keysetIndexDdl(dbInfo.productName(), tableName);
+        if (!properties.getSchema().isUpgradeIndexes()) {
+            log.warn("Table '{}' has no index on (created_at, id), which keyset pagination reads from; "
+                    + "create it with: {}", tableName, ddl);
+            return;
+        }
+        log.info("Adding index on (created_at, id) to table '{}'; the index on (created_at) alone is no longer "
+                + "needed", tableName);
+        try {
+            jdbcTemplate.execute(ddl);
+        } catch (Exception e) {
+            log.warn("Failed to create index on (created_at, id), create it with: {} ({})", ddl, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the statement creating the {@code (created_at, id)} index, built
+     * online where the database supports it.
+     */
+    static String keysetIndexDdl(String productName, String tableName) {
+        final String indexName = "idx_" + tableName.substring(tableName.lastIndexOf('.') + 1) + "_created_at_id";
+        final String product = productName.toLowerCase();
+        if (product.contains("postgresql")) {
+            return String.format("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s (created_at, id)",
+                    indexName, tableName);
+        }
+        final String ddl = String.format("CREATE INDEX %s ON %s (created_at, id)", indexName, tableName);
+        if (product.contains("mysql") || product.contains("mariadb")) {
+            return ddl + " ALGORITHM=INPLACE LOCK=NONE";
+        } else if (product.contains("oracle")) {
+            return ddl + " ONLINE";
+        } else if (product.contains("microsoft") || product.contains("sql server")) {
+            return ddl + " WITH (ONLINE = ON)";
+        }
+        return ddl;
+    }
+
+    /**
+     * Returns whether the table has an index whose leading columns are the given
+     * ones. A schema-qualified table name is looked up in its schema.
+     */
+    boolean indexStartsWith(String tableName, String... columnNames) {
+        final int dot = tableName.lastIndexOf('.');
+        final String schema = dot < 0 ? null : tableName.substring(0, dot);
+        final String table = tableName.substring(dot + 1);
+        try (Connection conn = dataSource.getConnection()) {
+            final DatabaseMetaData metaData = conn.getMetaData();
+            final String[] tableNameVariants = {table, table.toUpperCase(), table.toLowerCase()};
+            final String[] schemaVariants = schema == null ? new String[]{null, null, null}
+                    : new String[]{schema, schema.toUpperCase(), schema.toLowerCase()};
+
+            for (int v = 0; v < tableNameVariants.length; v++) {
+                final Map<String, List<String>> columnsByIndex = new HashMap<>();
+                try (ResultSet rs = metaData.getIndexInfo(null, schemaVariants[v], tableNameVariants[v], false, true)) {
+                    while (rs.next()) {
+                        final String indexName = rs.getString("INDEX_NAME");
+                        final String columnName = rs.getString("COLUMN_NAME");
+                        final int position = rs.getShort("ORDINAL_POSITION");
+                        if (indexName == null || columnName == null || position > columnNames.length) {
+                            continue;
+                        }
+                        final List<String> columns = columnsByIndex.computeIfAbsent(indexName,
+                                name -> new ArrayList<>(Collections.nCopies(columnNames.length, "")));
+                        columns.set(position - 1, columnName);
+                    }
+                }
+                for (List<String> columns : columnsByIndex.values()) {
+                    if (matchesIgnoreCase(columns, columnNames)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            log.warn("Error reading the indexes of table '{}': {}", tableName, e.getMessage());
+            return true;
+        }
+    }
+
+    private static boolean matchesIgnoreCase(List<String> columns, String[] columnNames) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (!columnNames[i].equalsIgnoreCase(columns.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void createIpAddressesTable(DatabaseInfo dbInfo) {
         final String tableName = properties.getTable().getName();
         log.info("Creating table '{}'", tableName);
@@ -138,42 +292,10 @@ public final class IpManagementSchemaInitializer {
     }
 
     private String generateCreateTableDdl(DatabaseInfo dbInfo, String tableName) {
-        final String productName = dbInfo.productName().toLowerCase();
-
-        final String idColumn;
-        final String textType;
-        final String timestampType;
-
-        if (productName.contains("postgresql")) {
-            idColumn = "id BIGSERIAL PRIMARY KEY";
-            textType = "TEXT";
-            timestampType = "TIMESTAMP WITH TIME ZONE";
-        } else if (productName.contains("mysql") || productName.contains("mariadb")) {
-            idColumn = "id BIGINT AUTO_INCREMENT PRIMARY KEY";
-            textType = "TEXT";
-            timestampType = "TIMESTAMP(6)";
-        } else if (productName.contains("oracle")) {
-            idColumn = "id NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY";
-            textType = "CLOB";
-            timestampType = "TIMESTAMP WITH TIME ZONE";
-        } else if (productName.contains("microsoft") || productName.contains("sql server")) {
-            idColumn = "id BIGINT IDENTITY(1,1) PRIMARY KEY";
-            textType = "NVARCHAR(MAX)";
-            timestampType = "DATETIMEOFFSET";
-        } else if (productName.contains("h2")) {
-            idColumn = "id BIGINT AUTO_INCREMENT PRIMARY KEY";
-            textType = "TEXT";
-            timestampType = "TIMESTAMP WITH TIME ZONE";
-        } else if (productName.contains("sqlite")) {
-            idColumn = "id INTEGER PRIMARY KEY AUTOINCREMENT";
-            textType = "TEXT";
-            timestampType = "TEXT";
-        } else {
-            idColumn = "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY";
-            textType = "TEXT";
-            timestampType = "TIMESTAMP";
-        }
-
+        final ColumnTypes types = columnTypes(dbInfo);
+        // Application-assigned IDs need no identity column
+        final String idColumn = properties.getId().getStrategy() == IpManagementProperties.IdStrategy.TSID
+                ? types.assignedIdColumn() : types.idColumn();
         return String.format("""
                 CREATE TABLE %s (
                     %s,
@@ -189,10 +311,105 @@ public final class IpManagementSchemaInitializer {
                     latitude DOUBLE PRECISION,
                     longitude DOUBLE PRECISION,
                     source_header VARCHAR(50),
+                    sample_rate DOUBLE PRECISION,
                     created_at %s NOT NULL,
                     metadata %s
                 )
-                """, tableName, idColumn, timestampType, textType);
+                """, tableName, idColumn, types.timestampType(), types.textType());
+    }
+
+    private void createSightingsTable(DatabaseInfo dbInfo) {
+        log.info("Creating table '{}'", SIGHTINGS_TABLE);
+        final ColumnTypes types = columnTypes(dbInfo);
+        jdbcTemplate.execute(String.format("""
+                CREATE TABLE %s (
+                    %s,
+                    ip_address VARCHAR(45) NOT NULL,
+                    user_id VARCHAR(255) NOT NULL,
+                    first_seen %s NOT NULL,
+                    last_seen %s NOT NULL,
+                    hit_count BIGINT NOT NULL,
+                    CONSTRAINT uk_ip_sightings_ip_user UNIQUE (ip_address, user_id)
+                )
+                """, SIGHTINGS_TABLE, types.idColumn(), types.timestampType(), types.timestampType()));
+        try {
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX idx_%s_user_id ON %s (user_id)", SIGHTINGS_TABLE, SIGHTINGS_TABLE));
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX idx_%s_last_seen ON %s (last_seen)", SIGHTINGS_TABLE, SIGHTINGS_TABLE));
+        } catch (Exception e) {
+            log.warn("Failed to create some indexes: {}", e.getMessage());
+        }
+        log.info("Successfully created table '{}'", SIGHTINGS_TABLE);
+    }
+
+    private void createRollupsTable(DatabaseInfo dbInfo) {
+        log.info("Creating table '{}'", ROLLUPS_TABLE);
+        final ColumnTypes types = columnTypes(dbInfo);
+        jdbcTemplate.execute(String.format("""
+                CREATE TABLE %s (
+                    %s,
+                    granularity VARCHAR(5) NOT NULL,
+                    bucket_start %s NOT NULL,
+                    dimension VARCHAR(10) NOT NULL,
+                    dimension_value VARCHAR(255) NOT NULL,
+                    hits DOUBLE PRECISION NOT NULL,
+                    CONSTRAINT uk_ip_rollups_row UNIQUE (granularity, bucket_start, dimension, dimension_value)
+                )
+                """, ROLLUPS_TABLE, types.idColumn(), types.timestampType()));
+        try {
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX idx_%s_dimension ON %s (granularity, dimension, bucket_start)",
+                    ROLLUPS_TABLE, ROLLUPS_TABLE));
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX idx_%s_value ON %s (dimension, dimension_value)", ROLLUPS_TABLE, ROLLUPS_TABLE));
+        } catch (Exception e) {
+            log.warn("Failed to create some indexes: {}", e.getMessage());
+        }
+        log.info("Successfully created table '{}'", ROLLUPS_TABLE);
+    }
+
+    private void createSketchesTable(DatabaseInfo dbInfo) {
+        log.info("Creating table '{}'", SKETCHES_TABLE);
+        final ColumnTypes types = columnTypes(dbInfo);
+        jdbcTemplate.execute(String.format("""
+                CREATE TABLE %s (
+                    %s,
+                    sketch_type VARCHAR(20) NOT NULL,
+                    scope VARCHAR(10) NOT NULL,
+                    scope_key VARCHAR(255) NOT NULL,
+                    sketch_data %s NOT NULL,
+                    version BIGINT NOT NULL,
+                    CONSTRAINT uk_ip_sketches_key UNIQUE (sketch_type, scope, scope_key)
+                )
+                """, SKETCHES_TABLE, types.idColumn(), types.binaryType()));
+        log.info("Successfully created table '{}'", SKETCHES_TABLE);
+    }
+
+    private static ColumnTypes columnTypes(DatabaseInfo dbInfo) {
+        final String productName = dbInfo.productName().toLowerCase();
+
+        if (productName.contains("postgresql")) {
+            return new ColumnTypes("id BIGSERIAL PRIMARY KEY", "id BIGINT PRIMARY KEY", "TEXT",
+                    "TIMESTAMP WITH TIME ZONE", "BYTEA");
+        } else if (productName.contains("mysql") || productName.contains("mariadb")) {
+            return new ColumnTypes("id BIGINT AUTO_INCREMENT PRIMARY KEY", "id BIGINT PRIMARY KEY", "TEXT",
+                    "TIMESTAMP(6)", "MEDIUMBLOB");
+        } else if (productName.contains("oracle")) {
+            return new ColumnTypes("id NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY",
+                    "id NUMBER(19) PRIMARY KEY", "CLOB", "TIMESTAMP WITH TIME ZONE", "BLOB");
+        } else if (productName.contains("microsoft") || productName.contains("sql server")) {
+            return new ColumnTypes("id BIGINT IDENTITY(1,1) PRIMARY KEY", "id BIGINT PRIMARY KEY",
+                    "NVARCHAR(MAX)", "DATETIMEOFFSET", "VARBINARY(MAX)");
+        } else if (productName.contains("h2")) {
+            return new ColumnTypes("id BIGINT AUTO_INCREMENT PRIMARY KEY", "id BIGINT PRIMARY KEY", "TEXT",
+                    "TIMESTAMP WITH TIME ZONE", "VARBINARY(262144)");
+        } else if (productName.contains("sqlite")) {
+            return new ColumnTypes("id INTEGER PRIMARY KEY AUTOINCREMENT", "id INTEGER PRIMARY KEY", "TEXT", "TEXT",
+                    "BLOB");
+        }
+        return new ColumnTypes("id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY", "id BIGINT PRIMARY KEY",
+                "TEXT", "TIMESTAMP", "BLOB");
     }
 
     private void createIndexes(String tableName) {
@@ -202,7 +419,7 @@ public final class IpManagementSchemaInitializer {
             jdbcTemplate.execute(String.format(
                     "CREATE INDEX idx_%s_user_id ON %s (user_id)", tableName, tableName));
             jdbcTemplate.execute(String.format(
-                    "CREATE INDEX idx_%s_created_at ON %s (created_at)", tableName, tableName));
+                    "CREATE INDEX idx_%s_created_at ON %s (created_at, id)", tableName, tableName));
             jdbcTemplate.execute(String.format(
                     "CREATE INDEX idx_%s_ip_user ON %s (ip_address, user_id)", tableName, tableName));
             log.debug("Created indexes for table '{}'", tableName);
@@ -211,6 +428,17 @@ public final class IpManagementSchemaInitializer {
         }
     }
 
+    /**
+     * Vendor-specific column definitions.
+     */
+    private record ColumnTypes(
+            String idColumn,
+            String assignedIdColumn,
+            String textType,
+            String timestampType,
+            String binaryType
+    ) {}
+
     /**
      * Immutable record containing database information.
      */
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import cloud.alchemy.ip.breaker.CircuitBreakingIpAddressStorageService;
+import cloud.alchemy.ip.breaker.StorageCircuitBreaker;
+import cloud.alchemy.ip.capture.IpCaptureThrottle;
+import cloud.alchemy.ip.metrics.IpCaptureThrottleMetrics;
+import cloud.alchemy.ip.metrics.IpRecordWriterMetrics;
+import cloud.alchemy.ip.metrics.IpStorageCircuitBreakerMetrics;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers Micrometer meter binders for the IP management components when
+ * Micrometer is on the classpath. The binders are picked up by any
+ * {@code MeterRegistry} the application configures, e.g. through Spring Boot Actuator.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(MeterBinder.class)
+public class IpMetricsConfiguration {
+
+    /**
+     * Creates the throttled-captures metrics binder.
+     *
+     * @param throttle the capture throttle
+     * @return the meter binder
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpCaptureThrottleMetrics.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.throttle", name = "enabled", havingValue = "true")
+    public IpCaptureThrottleMetrics ipCaptureThrottleMetrics(IpCaptureThrottle throttle) {
+        return new IpCaptureThrottleMetrics(throttle);
+    }
+
+    /**
+     * Creates the record writer metrics binder.
+     *
+     * @param writer the record writer
+     * @return the meter binder
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpRecordWriterMetrics.class)
+    @Conditional(OnIpRecordWriterCondition.class)
+    public IpRecordWriterMetrics ipRecordWriterMetrics(IpRecordWriter writer) {
+        return new IpRecordWriterMetrics(writer);
+    }
+
+    /**
+     * Creates the storage circuit breaker metrics binder.
+     *
+     * @param breaker        the circuit breaker
+     * @param storageService the IP address storage service
+     * @return the meter binder
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpStorageCircuitBreakerMetrics.class)
+    @ConditionalOnProperty(prefix = "alchemy.ip.circuit-breaker", name = "enabled", havingValue = "true")
+    public IpStorageCircuitBreakerMetrics ipStorageCircuitBreakerMetrics(StorageCircuitBreaker breaker,
+                                                                         IpAddressStorageService storageService) {
+        return new IpStorageCircuitBreakerMetrics(breaker,
+                storageService instanceof CircuitBreakingIpAddressStorageService decorator ? decorator : null);
+    }
+}
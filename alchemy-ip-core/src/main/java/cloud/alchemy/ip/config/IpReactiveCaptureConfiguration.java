@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import cloud.alchemy.ip.capture.CaptureOptions;
+import cloud.alchemy.ip.capture.IpCaptureThrottle;
+import cloud.alchemy.ip.capture.PathPatternTrie;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import cloud.alchemy.ip.reactive.DefaultReactiveIpAddressExtractor;
+import cloud.alchemy.ip.reactive.DefaultReactiveUserIdResolver;
+import cloud.alchemy.ip.reactive.IpCaptureWebFilter;
+import cloud.alchemy.ip.reactive.ReactiveIpAddressExtractor;
+import cloud.alchemy.ip.reactive.ReactiveUserIdResolver;
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.WebFilter;
+
+/**
+ * Registers the {@link IpCaptureWebFilter} in reactive applications when
+ * {@code alchemy.ip.capture.mode=filter}.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(WebFilter.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(prefix = "alchemy.ip.capture", name = "mode", havingValue = "filter")
+public class IpReactiveCaptureConfiguration {
+
+    private static final Logger log = LoggerFactory.getLogger(IpReactiveCaptureConfiguration.class);
+
+    /**
+     * Creates the default reactive IP address extractor, applying the same proxy
+     * trust settings as the servlet extractor.
+     * Can be overridden by providing a custom {@link ReactiveIpAddressExtractor} bean.
+     *
+     * @param properties the IP management properties
+     * @return the reactive IP address extractor
+     */
+    @Bean
+    @ConditionalOnMissingBean(ReactiveIpAddressExtractor.class)
+    public ReactiveIpAddressExtractor reactiveIpAddressExtractor(IpManagementProperties properties) {
+        log.debug("Creating default reactive IP address extractor");
+        return new DefaultReactiveIpAddressExtractor(new DefaultIpAddressExtractor(
+                properties.isTrustAllProxies(),
+                properties.getTrustedProxies()
+        ));
+    }
+
+    /**
+     * Creates the default reactive user ID resolver.
+     * Can be overridden by providing a custom {@link ReactiveUserIdResolver} bean.
+     *
+     * @return the reactive user ID resolver
+     */
+    @Bean
+    @ConditionalOnMissingBean(ReactiveUserIdResolver.class)
+    public ReactiveUserIdResolver reactiveUserIdResolver() {
+        log.debug("Creating default reactive user ID resolver");
+        return new DefaultReactiveUserIdResolver();
+    }
+
+    /**
+     * Creates the capture web filter. Path patterns are compiled once here.
+     *
+     * @param properties         the IP management properties
+     * @param writer             the record writer
+     * @param ipAddressExtractor the reactive IP address extractor
+     * @param userIdResolver     the reactive user ID resolver
+     * @param throttle           the optional per-IP capture throttle
+     * @return the capture web filter
+     */
+    @Bean
+    @ConditionalOnMissingBean(IpCaptureWebFilter.class)
+    public IpCaptureWebFilter ipCaptureWebFilter(
+            IpManagementProperties properties,
+            IpRecordWriter writer,
+            ReactiveIpAddressExtractor ipAddressExtractor,
+            ReactiveUserIdResolver userIdResolver,
+            ObjectProvider<IpCaptureThrottle> throttle) {
+        final IpManagementProperties.Capture capture = properties.getCapture();
+        final PathPatternTrie includePatterns = new PathPatternTrie(capture.getIncludePatterns());
+        if (includePatterns.isEmpty()) {
+            log.warn("Capture mode is 'filter' but alchemy.ip.capture.include-patterns is empty; no requests will be captured");
+        }
+
+        log.debug("Creating reactive IP capture filter for patterns {}", capture.getIncludePatterns());
+        return new IpCaptureWebFilter(
+                writer,
+                ipAddressExtractor,
+                userIdResolver,
+                includePatterns,
+                CaptureOptions.of(properties),
+                capture.getFilterOrder(),
+                throttle.getIfAvailable()
+        );
+    }
+}
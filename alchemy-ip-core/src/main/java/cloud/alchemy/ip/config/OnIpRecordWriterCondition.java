@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+
+/**
+ * Matches when something hands captures to the {@link cloud.alchemy.ip.writer.IpRecordWriter}:
+ * servlet captures with {@code alchemy.ip.async.mode=writer}, or reactive capture with
+ * {@code alchemy.ip.capture.mode=filter}. Otherwise no writer, and no idle writer
+ * threads, are created.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+class OnIpRecordWriterCondition extends AnyNestedCondition {
+
+    OnIpRecordWriterCondition() {
+        super(ConfigurationPhase.REGISTER_BEAN);
+    }
+
+    @ConditionalOnProperty(prefix = "alchemy.ip.async", name = "mode", havingValue = "writer")
+    static class WriterAsyncMode {
+    }
+
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    @ConditionalOnProperty(prefix = "alchemy.ip.capture", name = "mode", havingValue = "filter")
+    static class ReactiveCapture {
+    }
+}
@@ -83,9 +83,36 @@ public final class DefaultUserIdResolver implements UserIdResolver {
         return Optional.empty();
     }
 
+    /**
+     * Resolves the user's email from a principal that was obtained without a
+     * servlet request, such as {@code ServerWebExchange#getPrincipal()}.
+     * {@link Authentication} principals are inspected like the security context.
+     *
+     * @param principal the principal (may be null)
+     * @return the user email, or empty if none could be resolved
+     * @since 1.1.0
+     */
+    public Optional<String> resolveUserIdFromPrincipal(Principal principal) {
+        if (principal instanceof Authentication authentication) {
+            return extractFromAuthentication(authentication);
+        }
+        if (principal != null && isValidEmail(principal.getName())) {
+            return Optional.of(principal.getName());
+        }
+        return Optional.empty();
+    }
+
     private Optional<String> extractFromSecurityContext() {
         try {
-            final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            return extractFromAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        } catch (Exception e) {
+            log.debug("Error extracting email from security context: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Optional<String> extractFromAuthentication(Authentication authentication) {
+        try {
             if (authentication == null || !authentication.isAuthenticated()) {
                 return Optional.empty();
             }
@@ -133,7 +160,7 @@ public final class DefaultUserIdResolver implements UserIdResolver {
 
             return Optional.empty();
         } catch (Exception e) {
-            log.debug("Error extracting email from security context: {}", e.getMessage());
+            log.debug("Error extracting email from authentication: {}", e.getMessage());
             return Optional.empty();
         }
     }
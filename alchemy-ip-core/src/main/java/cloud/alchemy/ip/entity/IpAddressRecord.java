@@ -15,12 +15,11 @@
  */
 package cloud.alchemy.ip.entity;
 
+import cloud.alchemy.ip.id.IpRecordId;
 import jakarta.persistence.Access;
 import jakarta.persistence.AccessType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
@@ -38,6 +37,10 @@ import java.util.Objects;
  * <p>The entity is designed to be extensible. Users can extend this class
  * to add custom columns or override persistence behavior.
  *
+ * <p>The ID is assigned by a database identity column, or - with
+ * {@code alchemy.ip.id.strategy=tsid} - generated in the application as a
+ * time-sortable 64-bit value (see {@link IpRecordId}).
+ *
  * <p>Note: Due to JPA requirements, this entity cannot be fully immutable.
  * Use the {@link Builder} to create instances with all fields set.
  *
@@ -65,14 +68,14 @@ import java.util.Objects;
         indexes = {
                 @Index(name = "idx_ip_address", columnList = "ip_address"),
                 @Index(name = "idx_user_id", columnList = "user_id"),
-                @Index(name = "idx_created_at", columnList = "created_at"),
+                @Index(name = "idx_created_at", columnList = "created_at, id"),
                 @Index(name = "idx_ip_user", columnList = "ip_address, user_id")
         }
 )
 public class IpAddressRecord {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IpRecordId
     @Column(name = "id")
     private Long id;
 
@@ -112,6 +115,9 @@ public class IpAddressRecord {
     @Column(name = "source_header", length = 50)
     private String sourceHeader;
 
+    @Column(name = "sample_rate")
+    private Double sampleRate;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
@@ -128,6 +134,7 @@ public class IpAddressRecord {
      * Private constructor used by the Builder.
      */
     private IpAddressRecord(Builder builder) {
+        this.id = builder.id;
         this.ipAddress = builder.ipAddress;
         this.userId = builder.userId;
         this.userAgent = builder.userAgent;
@@ -140,6 +147,7 @@ public class IpAddressRecord {
         this.latitude = builder.latitude;
         this.longitude = builder.longitude;
         this.sourceHeader = builder.sourceHeader;
+        this.sampleRate = builder.sampleRate;
         this.createdAt = builder.createdAt;
         this.metadata = builder.metadata;
     }
@@ -205,6 +213,27 @@ public class IpAddressRecord {
         return sourceHeader;
     }
 
+    /**
+     * Returns the sampling rate this record was captured with.
+     *
+     * @return the sample rate in {@code (0, 1)}, or {@code null} if every request was captured
+     */
+    public Double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns how many requests the capture of this record stands for, i.e. the
+     * inverse of its sample rate. Sighting hit counts add this for every capture;
+     * stored records count once in stats, since deduplication keeps a single record
+     * per IP address and user however many requests were captured.
+     *
+     * @return the record's weight, {@code 1.0} for unsampled records
+     */
+    public double getSampleWeight() {
+        return sampleRate != null && sampleRate > 0 ? 1.0 / sampleRate : 1.0;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -233,6 +262,7 @@ public class IpAddressRecord {
                 .latitude(this.latitude)
                 .longitude(this.longitude)
                 .sourceHeader(this.sourceHeader)
+                .sampleRate(this.sampleRate)
                 .createdAt(this.createdAt)
                 .metadata(this.metadata);
     }
@@ -276,6 +306,7 @@ public class IpAddressRecord {
      * This is the preferred way to create new records.
      */
     public static final class Builder {
+        private Long id;
         private String ipAddress;
         private String userId;
         private String userAgent;
@@ -288,12 +319,26 @@ public class IpAddressRecord {
         private Double latitude;
         private Double longitude;
         private String sourceHeader;
+        private Double sampleRate;
         private Instant createdAt;
         private String metadata;
 
         private Builder() {
         }
 
+        /**
+         * Sets an ID assigned by the application. Leave unset when the record is
+         * saved through JPA, which assigns the ID itself.
+         *
+         * @param id the ID
+         * @return this builder
+         * @since 1.1.0
+         */
+        public Builder id(Long id) {
+            this.id = id;
+            return this;
+        }
+
         public Builder ipAddress(String ipAddress) {
             this.ipAddress = ipAddress;
             return this;
@@ -354,6 +399,11 @@ public class IpAddressRecord {
             return this;
         }
 
+        public Builder sampleRate(Double sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
         public Builder createdAt(Instant createdAt) {
             this.createdAt = createdAt;
             return this;
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.entity;
+
+import cloud.alchemy.ip.rollup.IpRollupDimension;
+import cloud.alchemy.ip.rollup.IpRollupGranularity;
+import jakarta.persistence.Access;
+import jakarta.persistence.AccessType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * JPA entity holding one row of the hourly and daily rollups of stored records.
+ *
+ * <p>This entity maps to the {@code ip_rollups} table, which holds per bucket the
+ * number of records in total and per country, city, tag, HTTP method, IP
+ * address and user. {@link IpRollupDimension#IP} and {@link IpRollupDimension#USER}
+ * rows are only kept for daily buckets.
+ *
+ * <p>Rows are written in batches by
+ * {@link cloud.alchemy.ip.rollup.IpRollupAggregator}; this entity is for reading.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see cloud.alchemy.ip.repository.IpRollupRepository
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(
+        name = "ip_rollups",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ip_rollups_row",
+                columnNames = {"granularity", "bucket_start", "dimension", "dimension_value"}),
+        indexes = {
+                @Index(name = "idx_ip_rollups_dimension", columnList = "granularity, dimension, bucket_start"),
+                @Index(name = "idx_ip_rollups_value", columnList = "dimension, dimension_value")
+        }
+)
+public class IpRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(name = "granularity", nullable = false, length = 5)
+    private IpRollupGranularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private Instant bucketStart;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(name = "dimension", nullable = false, length = 10)
+    private IpRollupDimension dimension;
+
+    @Column(name = "dimension_value", nullable = false, length = 255)
+    private String dimensionValue;
+
+    @Column(name = "hits", nullable = false)
+    private double hits;
+
+    /**
+     * Default constructor required by JPA.
+     */
+    protected IpRollup() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public IpRollupGranularity getGranularity() {
+        return granularity;
+    }
+
+    public Instant getBucketStart() {
+        return bucketStart;
+    }
+
+    public IpRollupDimension getDimension() {
+        return dimension;
+    }
+
+    public String getDimensionValue() {
+        return dimensionValue;
+    }
+
+    /**
+     * Returns the number of records in the bucket.
+     *
+     * @return the record count
+     */
+    public double getHits() {
+        return hits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IpRollup that = (IpRollup) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "IpRollup{" +
+                "id=" + id +
+                ", granularity=" + granularity +
+                ", bucketStart=" + bucketStart +
+                ", dimension=" + dimension +
+                ", dimensionValue='" + dimensionValue + '\'' +
+                ", hits=" + hits +
+                '}';
+    }
+}
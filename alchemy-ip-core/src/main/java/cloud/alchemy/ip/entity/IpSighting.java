@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.entity;
+
+import jakarta.persistence.Access;
+import jakarta.persistence.AccessType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * JPA entity aggregating all sightings of an IP address for a user.
+ *
+ * <p>This entity maps to the {@code ip_sightings} table, which holds one row per
+ * IP + user combination with the first and last time it was seen and the number
+ * of hits in between. Unlike {@link IpAddressRecord}, which stores a combination
+ * only once, sightings are updated on every capture.
+ *
+ * <p>Rows are written in batches by
+ * {@link cloud.alchemy.ip.sighting.IpSightingAggregator}; this entity is for reading.
+ * Anonymous sightings are stored with an empty user ID so that the
+ * (ip_address, user_id) pair can be unique.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see cloud.alchemy.ip.repository.IpSightingRepository
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(
+        name = "ip_sightings",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ip_sightings_ip_user", columnNames = {"ip_address", "user_id"}),
+        indexes = {
+                @Index(name = "idx_ip_sightings_user_id", columnList = "user_id"),
+                @Index(name = "idx_ip_sightings_last_seen", columnList = "last_seen")
+        }
+)
+public class IpSighting {
+
+    /**
+     * User ID stored for anonymous sightings.
+     */
+    public static final String ANONYMOUS_USER_ID = "";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "ip_address", nullable = false, length = 45)
+    private String ipAddress;
+
+    @Column(name = "user_id", nullable = false, length = 255)
+    private String userId;
+
+    @Column(name = "first_seen", nullable = false)
+    private Instant firstSeen;
+
+    @Column(name = "last_seen", nullable = false)
+    private Instant lastSeen;
+
+    @Column(name = "hit_count", nullable = false)
+    private long hitCount;
+
+    /**
+     * Default constructor required by JPA.
+     */
+    protected IpSighting() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    /**
+     * Returns the user ID.
+     *
+     * @return the user ID, or {@code null} for anonymous sightings
+     */
+    public String getUserId() {
+        return ANONYMOUS_USER_ID.equals(userId) ? null : userId;
+    }
+
+    public Instant getFirstSeen() {
+        return firstSeen;
+    }
+
+    public Instant getLastSeen() {
+        return lastSeen;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IpSighting that = (IpSighting) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "IpSighting{" +
+                "id=" + id +
+                ", ipAddress='" + ipAddress + '\'' +
+                ", userId='" + userId + '\'' +
+                ", firstSeen=" + firstSeen +
+                ", lastSeen=" + lastSeen +
+                ", hitCount=" + hitCount +
+                '}';
+    }
+}
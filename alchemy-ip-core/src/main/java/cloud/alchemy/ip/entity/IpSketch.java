@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.entity;
+
+import cloud.alchemy.ip.sketch.HyperLogLog;
+import cloud.alchemy.ip.sketch.IpSketchScope;
+import cloud.alchemy.ip.sketch.IpSketchType;
+import jakarta.persistence.Access;
+import jakarta.persistence.AccessType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.util.Objects;
+
+/**
+ * JPA entity holding one persisted sketch.
+ *
+ * <p>This entity maps to the {@code ip_sketches} table, which holds one encoded
+ * sketch per type, scope and scope key - a {@link HyperLogLog} for distinct counts or
+ * a {@link cloud.alchemy.ip.sketch.SpaceSaving} summary for the most frequent IP
+ * addresses - and a version number incremented by every update.
+ *
+ * <p>Rows are written and read by {@link cloud.alchemy.ip.sketch.JdbcIpSketchStore};
+ * this entity maps the table for Hibernate schema generation and ad-hoc reads.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(
+        name = "ip_sketches",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ip_sketches_key",
+                columnNames = {"sketch_type", "scope", "scope_key"})
+)
+public class IpSketch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(name = "sketch_type", nullable = false, length = 20)
+    private IpSketchType sketchType;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(name = "scope", nullable = false, length = 10)
+    private IpSketchScope scope;
+
+    @Column(name = "scope_key", nullable = false, length = 255)
+    private String scopeKey;
+
+    @JdbcTypeCode(SqlTypes.VARBINARY)
+    @Column(name = "sketch_data", nullable = false, length = 262144)
+    private byte[] sketchData;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    /**
+     * Default constructor required by JPA.
+     */
+    protected IpSketch() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public IpSketchType getSketchType() {
+        return sketchType;
+    }
+
+    public IpSketchScope getScope() {
+        return scope;
+    }
+
+    public String getScopeKey() {
+        return scopeKey;
+    }
+
+    /**
+     * Decodes the stored sketch.
+     *
+     * @return the sketch
+     */
+    public HyperLogLog getSketch() {
+        return HyperLogLog.fromBytes(sketchData);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IpSketch that = (IpSketch) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "IpSketch{" +
+                "id=" + id +
+                ", sketchType=" + sketchType +
+                ", scope=" + scope +
+                ", scopeKey='" + scopeKey + '\'' +
+                ", version=" + version +
+                '}';
+    }
+}
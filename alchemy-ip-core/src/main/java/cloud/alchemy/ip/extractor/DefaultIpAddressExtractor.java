@@ -23,6 +23,7 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
@@ -133,8 +134,23 @@ public final class DefaultIpAddressExtractor implements IpAddressExtractor {
             return Optional.empty();
         }
 
+        return extractIpAddress(request::getHeader, request.getRemoteAddr());
+    }
+
+    /**
+     * Extracts the client IP address from request headers and the remote address.
+     *
+     * <p>This is the request-type agnostic variant used by capture paths that do not
+     * operate on a {@link HttpServletRequest}, such as the reactive web filter.
+     *
+     * @param headerLookup  returns the first value of the given header, or {@code null}
+     * @param remoteAddress the remote address of the connection (may be null)
+     * @return an {@link Optional} containing the extracted IP address,
+     *         or {@link Optional#empty()} if the IP address cannot be determined
+     */
+    public Optional<String> extractIpAddress(Function<String, String> headerLookup, String remoteAddress) {
         for (String header : IP_HEADERS) {
-            final String headerValue = request.getHeader(header);
+            final String headerValue = headerLookup.apply(header);
             if (isValidHeaderValue(headerValue)) {
                 final Optional<String> ip = parseIpFromHeader(header, headerValue);
                 if (ip.isPresent()) {
@@ -144,10 +160,9 @@ public final class DefaultIpAddressExtractor implements IpAddressExtractor {
             }
         }
 
-        final String remoteAddr = request.getRemoteAddr();
-        if (isValidIpAddress(remoteAddr)) {
-            log.debug("Using remote address as IP: {}", remoteAddr);
-            return Optional.of(normalizeIpAddress(remoteAddr));
+        if (isValidIpAddress(remoteAddress)) {
+            log.debug("Using remote address as IP: {}", remoteAddress);
+            return Optional.of(normalizeIpAddress(remoteAddress));
         }
 
         log.warn("Could not extract IP address from request");
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.flush;
+
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Base class of the aggregators that accumulate in memory and periodically flush to
+ * the database.
+ *
+ * <p>{@link #start()} schedules {@link #flush()} every {@code flushInterval} on a
+ * single daemon thread, and {@link #stop()} waits for a running flush and then
+ * flushes one last time on the calling thread. Subclasses call
+ * {@link #requestEarlyFlush()} when too much has accumulated; at most one early
+ * flush is queued at a time.
+ *
+ * <p>Flushers run in {@link #PHASE}, below {@link IpRecordWriter#PHASE}: they start
+ * before the writer and stop after it, so the records of the writer's final drain
+ * are included in the final flush. Both stop before the data source is closed.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public abstract class PeriodicFlusher implements SmartLifecycle {
+
+    /**
+     * The lifecycle phase of every flusher.
+     */
+    public static final int PHASE = IpRecordWriter.PHASE - 1;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Duration flushInterval;
+    private final String threadName;
+    private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a new flusher.
+     *
+     * @param flushInterval how often to flush
+     * @param threadName    name of the flush thread
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    protected PeriodicFlusher(Duration flushInterval, String threadName) {
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval must be positive");
+        }
+        this.flushInterval = flushInterval;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Writes everything accumulated so far. Called from the flush thread, from
+     * {@link #stop()} and by applications; implementations must not run two
+     * flushes at once.
+     */
+    public abstract void flush();
+
+    /**
+     * Returns how often the flusher flushes.
+     *
+     * @return the flush interval
+     */
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    @Override
+    public void start() {
+        if (scheduler != null) {
+            return;
+        }
+        onStart();
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name(threadName).daemon().factory());
+        final long intervalMillis = flushInterval.toMillis();
+        executor.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = executor;
+        log.debug("Started {} (flushInterval={})", threadName, flushInterval);
+    }
+
+    @Override
+    public void stop() {
+        final ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            return;
+        }
+        scheduler = null;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("{} flush did not finish within {}s", threadName, SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * Called by {@link #start()} before the first flush is scheduled. Does nothing
+     * by default.
+     */
+    protected void onStart() {
+    }
+
+    /**
+     * Queues a flush on the flush thread, unless one is already queued or the
+     * flusher is not running.
+     */
+    protected void requestEarlyFlush() {
+        final ScheduledExecutorService executor = scheduler;
+        if (executor == null || !earlyFlushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                earlyFlushScheduled.set(false);
+                flushQuietly();
+            });
+        } catch (RuntimeException e) {
+            earlyFlushScheduled.set(false);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Unexpected error in {} flush", threadName, e);
+        }
+    }
+}
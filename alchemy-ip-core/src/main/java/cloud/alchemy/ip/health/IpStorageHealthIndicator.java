@@ -0,0 +1,70 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.health;
+
+import cloud.alchemy.ip.breaker.CircuitBreakingIpAddressStorageService;
+import cloud.alchemy.ip.breaker.StorageCircuitBreaker;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+/**
+ * Reports the state of the IP storage circuit breaker.
+ *
+ * <p>The indicator is {@code UP} while the breaker is closed and {@code UNKNOWN}
+ * while it is open or half-open. It never reports {@code DOWN}: captures are spilled
+ * while the database is unavailable, so an open breaker should not take the host
+ * application out of rotation.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpStorageHealthIndicator extends AbstractHealthIndicator {
+
+    private final StorageCircuitBreaker breaker;
+    private final CircuitBreakingIpAddressStorageService storageService;
+
+    /**
+     * Creates a new health indicator.
+     *
+     * @param breaker        the circuit breaker
+     * @param storageService the decorator using the breaker, or {@code null} to omit
+     *                       spill details
+     */
+    public IpStorageHealthIndicator(StorageCircuitBreaker breaker,
+                                    CircuitBreakingIpAddressStorageService storageService) {
+        super("IP storage health check failed");
+        this.breaker = breaker;
+        this.storageService = storageService;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        final StorageCircuitBreaker.State state = breaker.getState();
+        if (state == StorageCircuitBreaker.State.CLOSED) {
+            builder.up();
+        } else {
+            builder.unknown();
+        }
+        builder.withDetail("state", state)
+                .withDetail("failureRate", breaker.getFailureRate())
+                .withDetail("slowCallRate", breaker.getSlowCallRate())
+                .withDetail("rejectedCalls", breaker.getRejectedCount());
+        if (storageService != null) {
+            builder.withDetail("spilledRecords", storageService.getSpilledCount())
+                    .withDetail("spillPending", storageService.getSpillPendingCount());
+        }
+    }
+}
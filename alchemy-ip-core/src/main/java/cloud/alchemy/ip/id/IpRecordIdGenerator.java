@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.id;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.id.IdentityGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.mapping.Column;
+
+import java.lang.reflect.Member;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Hibernate identifier generator for {@link cloud.alchemy.ip.entity.IpAddressRecord}.
+ *
+ * <p>The strategy is read from the Hibernate setting {@value #STRATEGY_SETTING},
+ * which the auto-configuration copies from {@code alchemy.ip.id.strategy}:
+ * <ul>
+ *   <li>{@code identity} (default) - the database assigns the ID on insert, exactly
+ *       like {@code @GeneratedValue(strategy = IDENTITY)}. Hibernate has to execute
+ *       every insert on its own to read the key back.</li>
+ *   <li>{@code tsid} - the ID is a {@link TsidGenerator} value assigned before the
+ *       insert, so Hibernate can batch inserts with {@code hibernate.jdbc.batch_size}
+ *       and the primary key orders records by creation time. The node ID is read
+ *       from {@value #NODE_SETTING}.</li>
+ * </ul>
+ *
+ * <p>In {@code identity} mode the generator marks the ID column as an identity
+ * column itself, since Hibernate only does so for generators it creates from
+ * {@code @GeneratedValue}. In {@code tsid} mode the column is a plain primary key.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpRecordIdGenerator extends IdentityGenerator implements BeforeExecutionGenerator {
+
+    /**
+     * Hibernate setting selecting the ID strategy, {@code identity} or {@code tsid}.
+     */
+    public static final String STRATEGY_SETTING = "alchemy.ip.id.strategy";
+
+    /**
+     * Hibernate setting holding the node ID for the {@code tsid} strategy.
+     */
+    public static final String NODE_SETTING = "alchemy.ip.id.node";
+
+    private final transient TsidGenerator tsid;
+
+    /**
+     * Creates the generator. Called by Hibernate for fields annotated with {@link IpRecordId}.
+     *
+     * @param annotation the annotation
+     * @param member     the annotated member
+     * @param context    the generator creation context
+     */
+    public IpRecordIdGenerator(IpRecordId annotation, Member member, CustomIdGeneratorCreationContext context) {
+        final Map<String, Object> settings =
+                context.getServiceRegistry().requireService(ConfigurationService.class).getSettings();
+        final Object strategy = settings.get(STRATEGY_SETTING);
+        if (strategy != null && "tsid".equals(strategy.toString().toLowerCase(Locale.ROOT))) {
+            final Object node = settings.get(NODE_SETTING);
+            this.tsid = TsidGenerator.forNode(node == null ? null : Integer.valueOf(node.toString()));
+        } else {
+            this.tsid = null;
+            for (Column column : context.getRootClass().getIdentifier().getColumns()) {
+                column.setIdentity(true);
+            }
+        }
+    }
+
+    @Override
+    public boolean generatedOnExecution() {
+        return tsid == null;
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session,
+                           Object owner,
+                           Object currentValue,
+                           EventType eventType) {
+        return tsid.nextId();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds deltas to the rows of a table with plain SQL, so the same code works on
+ * every supported database without a vendor-specific {@code MERGE} or
+ * {@code ON CONFLICT}.
+ *
+ * <p>Each delta is first added to its existing row with a batched {@code UPDATE};
+ * the deltas whose update matched no row are then inserted with a batched
+ * {@code INSERT}. Deltas are sent in batches of at most {@code batchSize}
+ * statements. Drivers that report {@link java.sql.Statement#SUCCESS_NO_INFO} for
+ * batched updates are treated as having updated the row.
+ *
+ * <p>An upsert runs in a single transaction, so it is applied completely or not at
+ * all and a caller may retry all of its deltas after a failure. Each insert batch
+ * runs under a savepoint: if another instance inserted one of its rows first, the
+ * batch is rolled back to the savepoint - including the rows it did insert on
+ * drivers that carry on after a failed statement - and its deltas are applied one
+ * by one, updating the rows that now exist.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @param <T> the delta type
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class JdbcUpsert<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcUpsert.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String updateSql;
+    private final String insertSql;
+    private final ParameterizedPreparedStatementSetter<T> updateBinder;
+    private final ParameterizedPreparedStatementSetter<T> insertBinder;
+    private final int batchSize;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate savepoint;
+
+    /**
+     * Creates a new upsert.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param updateSql    the statement adding a delta to its row; must report the
+     *                     number of rows it matched
+     * @param insertSql    the statement inserting the row of a delta
+     * @param updateBinder binds a delta to the update statement
+     * @param insertBinder binds a delta to the insert statement
+     * @param batchSize    the maximum number of statements per batch
+     */
+    public JdbcUpsert(JdbcTemplate jdbcTemplate,
+                      String updateSql,
+                      String insertSql,
+                      ParameterizedPreparedStatementSetter<T> updateBinder,
+                      ParameterizedPreparedStatementSetter<T> insertBinder,
+                      int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.updateSql = updateSql;
+        this.insertSql = insertSql;
+        this.updateBinder = updateBinder;
+        this.insertBinder = insertBinder;
+        this.batchSize = batchSize;
+        this.transaction = transactionTemplate(jdbcTemplate, TransactionDefinition.PROPAGATION_REQUIRED);
+        this.savepoint = transactionTemplate(jdbcTemplate, TransactionDefinition.PROPAGATION_NESTED);
+    }
+
+    /**
+     * Applies deltas in one transaction.
+     *
+     * @param deltas the deltas, at most one per row
+     */
+    public void upsert(List<T> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        transaction.executeWithoutResult(status -> {
+            for (int from = 0; from < deltas.size(); from += batchSize) {
+                upsertBatch(deltas.subList(from, Math.min(from + batchSize, deltas.size())));
+            }
+        });
+    }
+
+    /**
+     * Returns a transaction template on the data source of a JDBC template.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param propagation  the propagation behavior
+     * @return the transaction template
+     */
+    public static TransactionTemplate transactionTemplate(JdbcTemplate jdbcTemplate, int propagation) {
+        final TransactionTemplate template =
+                new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        template.setPropagationBehavior(propagation);
+        return template;
+    }
+
+    private void upsertBatch(List<T> deltas) {
+        final int[] updated = jdbcTemplate.batchUpdate(updateSql, deltas, deltas.size(), updateBinder)[0];
+        final List<T> missing = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                missing.add(deltas.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        try {
+            savepoint.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(insertSql, missing, missing.size(), insertBinder));
+        } catch (DuplicateKeyException e) {
+            log.debug("Concurrent insert detected, retrying {} rows individually", missing.size());
+            missing.forEach(this::upsertOne);
+        }
+    }
+
+    private void upsertOne(T delta) {
+        if (jdbcTemplate.update(updateSql, ps -> updateBinder.setValues(ps, delta)) > 0) {
+            return;
+        }
+        try {
+            savepoint.executeWithoutResult(status ->
+                    jdbcTemplate.update(insertSql, ps -> insertBinder.setValues(ps, delta)));
+        } catch (DuplicateKeyException e) {
+            jdbcTemplate.update(updateSql, ps -> updateBinder.setValues(ps, delta));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.journal;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Binary encoding of {@link IpAddressRecord}s for the journal.
+ *
+ * <p>The payload starts with a format version byte followed by every persistent
+ * field except the ID. Strings are stored as length-prefixed UTF-8, with a length of
+ * {@code -1} for {@code null}; numbers are prefixed with a presence flag. A record without a creation time is stamped with the
+ * current time on encoding, so a replayed record keeps its capture time.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+final class IpRecordCodec {
+
+    private static final byte VERSION = 1;
+
+    private IpRecordCodec() {
+    }
+
+    static byte[] encode(IpAddressRecord record) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeString(out, record.getIpAddress());
+            writeString(out, record.getUserId());
+            writeString(out, record.getUserAgent());
+            writeString(out, record.getRequestPath());
+            writeString(out, record.getHttpMethod());
+            writeString(out, record.getTag());
+            writeString(out, record.getCountryCode());
+            writeString(out, record.getCity());
+            writeString(out, record.getRegion());
+            writeDouble(out, record.getLatitude());
+            writeDouble(out, record.getLongitude());
+            writeString(out, record.getSourceHeader());
+            writeDouble(out, record.getSampleRate());
+            final Instant createdAt = record.getCreatedAt() != null ? record.getCreatedAt() : Instant.now();
+            out.writeLong(createdAt.getEpochSecond());
+            out.writeInt(createdAt.getNano());
+            writeString(out, record.getMetadata());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static IpAddressRecord decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported journal record version: " + version);
+            }
+            return IpAddressRecord.builder()
+                    .ipAddress(readString(in))
+                    .userId(readString(in))
+                    .userAgent(readString(in))
+                    .requestPath(readString(in))
+                    .httpMethod(readString(in))
+                    .tag(readString(in))
+                    .countryCode(readString(in))
+                    .city(readString(in))
+                    .region(readString(in))
+                    .latitude(readDouble(in))
+                    .longitude(readDouble(in))
+                    .sourceHeader(readString(in))
+                    .sampleRate(readDouble(in))
+                    .createdAt(Instant.ofEpochSecond(in.readLong(), in.readInt()))
+                    .metadata(readString(in))
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+}
@@ -0,0 +1,613 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.journal;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of captured records on local disk, used to keep captures
+ * while the database is unavailable.
+ *
+ * <p>The journal is a sequence of fixed-size segment files
+ * ({@code segment-<index>.journal}) in one directory. Each segment is memory-mapped,
+ * so an append is a copy into the page cache: it survives a crash of the JVM, and is
+ * written to the device by the OS or on {@link #force()}. Every entry is framed as
+ * {@code [length][CRC32C][payload]}; a zero length marks the end of the written
+ * data, and a checksum mismatch (a torn write) is treated the same way.
+ *
+ * <p>Entries are consumed in append order by {@link #replay(int, Consumer)}. A
+ * segment is deleted once it has been sealed and fully replayed. The read position
+ * is checkpointed after every consumed batch to {@code checkpoint.journal}, a
+ * memory-mapped {@code [segment index][offset][CRC32C]} record, so a restart resumes
+ * where replay stopped. Only a batch consumed but not yet checkpointed, or a
+ * checkpoint lost with the page cache, is replayed again: delivery is at-least-once.
+ *
+ * <p>Segments found in the directory on startup are recovered and replayed first.
+ * When the total size reaches {@code maxSize}, further appends are dropped and
+ * counted.
+ *
+ * <p>Records that can never be stored are moved out of the replay path with
+ * {@link #quarantine(List)}: they are appended, in the same frame format, to
+ * {@code quarantine.journal} in the journal directory, which is kept for inspection
+ * and never replayed.
+ *
+ * <p>The journal holds an exclusive lock on {@code journal.lock} in its directory
+ * until it is closed. A second journal on the same directory, in this or another
+ * process, fails to open instead of replaying and deleting the first one's segments.
+ *
+ * <p>This class is thread-safe. Appends and reads are serialized on the journal;
+ * the sink passed to {@code replay} runs without holding the lock.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpRecordJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IpRecordJournal.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int FRAME_HEADER_BYTES = Integer.BYTES * 2;
+    private static final String LOCK_FILE = "journal.lock";
+    private static final String QUARANTINE_FILE = "quarantine.journal";
+    private static final String CHECKPOINT_FILE = "checkpoint.journal";
+    private static final int CHECKPOINT_BYTES = Long.BYTES + Integer.BYTES * 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final boolean writeAhead;
+
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder quarantined = new LongAdder();
+
+    private final FileChannel lockChannel;
+    private FileChannel checkpointChannel;
+    private MappedByteBuffer checkpoint;
+    private Segment active;
+    private int readPosition;
+    private boolean closed;
+
+    /**
+     * Opens the journal in the given directory, recovering existing segments.
+     *
+     * @param directory   the journal directory, created if missing
+     * @param segmentSize size of each segment file in bytes
+     * @param maxSize     maximum total size of all segments in bytes
+     * @param writeAhead  whether every async capture is journaled before being stored,
+     *                    rather than only captures that failed to store
+     * @throws UncheckedIOException if the directory cannot be opened
+     * @throws IllegalStateException if another journal holds the directory's lock
+     */
+    public IpRecordJournal(Path directory, long segmentSize, long maxSize, boolean writeAhead) {
+        if (segmentSize < 1024 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentSize must be between 1KB and 2GB");
+        }
+        if (maxSize < segmentSize) {
+            throw new IllegalArgumentException("maxSize must be at least segmentSize");
+        }
+        this.directory = directory;
+        this.segmentSize = (int) segmentSize;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxSize / segmentSize);
+        this.writeAhead = writeAhead;
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open IP record journal in " + directory, e);
+        }
+        try {
+            if (tryLock(lockChannel) == null) {
+                throw new IllegalStateException("IP record journal in " + directory + " is in use by another process");
+            }
+            recover();
+            active = openSegment(nextIndex());
+            checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_BYTES);
+            writeCheckpoint();
+        } catch (IOException e) {
+            closeQuietly(lockChannel);
+            throw new UncheckedIOException("Cannot open IP record journal in " + directory, e);
+        } catch (RuntimeException e) {
+            closeQuietly(lockChannel);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether every async capture is journaled before being stored.
+     *
+     * @return {@code true} in write-ahead mode
+     */
+    public boolean isWriteAhead() {
+        return writeAhead;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param record the record
+     * @return {@code true} if the record was journaled, {@code false} if it was
+     *         dropped because the journal is full or closed
+     */
+    public boolean append(IpAddressRecord record) {
+        final byte[] payload = IpRecordCodec.encode(record);
+        final int frameSize = FRAME_HEADER_BYTES + payload.length;
+        if (frameSize + Integer.BYTES > segmentSize) {
+            log.warn("IP record of {} bytes does not fit in a journal segment, dropping it", payload.length);
+            dropped.increment();
+            return false;
+        }
+        final CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        synchronized (this) {
+            if (closed || !ensureCapacity(frameSize)) {
+                dropped.increment();
+                return false;
+            }
+            final MappedByteBuffer buffer = active.buffer;
+            final int position = active.writePosition;
+            // The length is written last, so a reader never sees a frame with partial contents
+            buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+            buffer.put(position + FRAME_HEADER_BYTES, payload);
+            buffer.putInt(position, payload.length);
+            active.writePosition = position + frameSize;
+        }
+        appended.increment();
+        return true;
+    }
+
+    /**
+     * Appends records, stopping at the first one that does not fit.
+     *
+     * @param records the records
+     * @return the number of records journaled
+     */
+    public int appendAll(List<IpAddressRecord> records) {
+        int count = 0;
+        for (IpAddressRecord record : records) {
+            if (!append(record)) {
+                dropped.add(records.size() - count - 1L);
+                log.warn("IP record journal full, {} records dropped", records.size() - count);
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Hands journaled records to the sink in batches, in append order, until the
+     * journal is drained or the sink throws. A batch is consumed only once the sink
+     * returns normally; if it throws, the same batch is offered again next time.
+     *
+     * @param batchSize maximum records per batch
+     * @param sink      receives each batch
+     * @return the number of records consumed
+     * @throws RuntimeException the exception thrown by the sink
+     */
+    public int replay(int batchSize, Consumer<List<IpAddressRecord>> sink) {
+        int total = 0;
+        while (true) {
+            final Batch batch = readBatch(batchSize);
+            if (batch == null) {
+                return total;
+            }
+            sink.accept(batch.records());
+            commit(batch);
+            total += batch.records().size();
+            replayed.add(batch.records().size());
+        }
+    }
+
+    /**
+     * Appends records that can never be stored to the quarantine file and forces it
+     * to disk. Quarantined records are not replayed.
+     *
+     * @param records the records
+     * @throws UncheckedIOException if the quarantine file cannot be written
+     */
+    public synchronized void quarantine(List<IpAddressRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(QUARANTINE_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (IpAddressRecord record : records) {
+                final byte[] payload = IpRecordCodec.encode(record);
+                final CRC32C crc = new CRC32C();
+                crc.update(payload);
+                final ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + payload.length)
+                        .putInt(payload.length)
+                        .putInt((int) crc.getValue())
+                        .put(payload)
+                        .flip();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write IP record journal quarantine in " + directory, e);
+        }
+        quarantined.add(records.size());
+        log.warn("Quarantined {} IP records that cannot be stored in {}", records.size(),
+                directory.resolve(QUARANTINE_FILE));
+    }
+
+    /**
+     * Returns whether the journal holds records not yet replayed.
+     *
+     * @return {@code true} if records are pending
+     */
+    public synchronized boolean hasPending() {
+        return !sealed.isEmpty() || (active != null && readPosition < active.writePosition);
+    }
+
+    /**
+     * Writes appended data in the active segment to the storage device.
+     */
+    public synchronized void force() {
+        if (!closed) {
+            active.buffer.force();
+        }
+    }
+
+    /**
+     * Returns the number of segment files, including the active one.
+     *
+     * @return the segment count
+     */
+    public synchronized int getSegmentCount() {
+        return sealed.size() + (active != null ? 1 : 0);
+    }
+
+    /**
+     * Returns the number of records appended since startup.
+     *
+     * @return the appended record count
+     */
+    public long getAppendedCount() {
+        return appended.sum();
+    }
+
+    /**
+     * Returns the number of records replayed since startup.
+     *
+     * @return the replayed record count
+     */
+    public long getReplayedCount() {
+        return replayed.sum();
+    }
+
+    /**
+     * Returns the number of records dropped because the journal was full.
+     *
+     * @return the dropped record count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of records quarantined since startup.
+     *
+     * @return the quarantined record count
+     */
+    public long getQuarantinedCount() {
+        return quarantined.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        active.buffer.force();
+        closeQuietly(active);
+        sealed.forEach(IpRecordJournal::closeQuietly);
+        if (active.writePosition == 0 && sealed.isEmpty()) {
+            deleteQuietly(active);
+        }
+        checkpoint.force();
+        closeQuietly(checkpointChannel);
+        closeQuietly(lockChannel);
+    }
+
+    private boolean ensureCapacity(int frameSize) {
+        if (active.writePosition + frameSize + Integer.BYTES <= segmentSize) {
+            return true;
+        }
+        if (sealed.size() + 1 >= maxSegments) {
+            log.warn("IP record journal reached its maximum of {} segments, dropping captures", maxSegments);
+            return false;
+        }
+        try {
+            active.buffer.force();
+            sealed.addLast(active);
+            active = openSegment(active.index + 1);
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to roll IP record journal segment", e);
+            return false;
+        }
+    }
+
+    private synchronized Batch readBatch(int batchSize) {
+        if (closed) {
+            return null;
+        }
+        final Segment segment = sealed.isEmpty() ? active : sealed.peekFirst();
+        final List<IpAddressRecord> records = new ArrayList<>(Math.min(batchSize, 64));
+        int position = readPosition;
+        while (records.size() < batchSize && position + FRAME_HEADER_BYTES <= segment.writePosition) {
+            final int length = segment.buffer.getInt(position);
+            final byte[] payload = new byte[length];
+            segment.buffer.get(position + FRAME_HEADER_BYTES, payload);
+            position += FRAME_HEADER_BYTES + length;
+            try {
+                records.add(IpRecordCodec.decode(payload));
+            } catch (RuntimeException e) {
+                log.warn("Skipping unreadable journal entry in {}: {}", segment.path.getFileName(), e.getMessage());
+            }
+        }
+        if (records.isEmpty() && position == readPosition) {
+            if (segment == active) {
+                return null;
+            }
+            // Sealed segment fully read
+            retire(segment);
+            return readBatch(batchSize);
+        }
+        return new Batch(segment, position, records);
+    }
+
+    private synchronized void commit(Batch batch) {
+        if (closed) {
+            return;
+        }
+        final Segment segment = sealed.isEmpty() ? active : sealed.peekFirst();
+        if (segment != batch.segment()) {
+            return;
+        }
+        readPosition = batch.endPosition();
+        if (segment != active && readPosition >= segment.writePosition) {
+            retire(segment);
+        } else {
+            writeCheckpoint();
+        }
+    }
+
+    private void retire(Segment segment) {
+        sealed.removeFirst();
+        readPosition = 0;
+        writeCheckpoint();
+        closeQuietly(segment);
+        deleteQuietly(segment);
+    }
+
+    /**
+     * Records the segment being read and the read position within it. Segments
+     * before it have been fully replayed.
+     */
+    private void writeCheckpoint() {
+        final long index = sealed.isEmpty() ? active.index : sealed.peekFirst().index;
+        final ByteBuffer entry = ByteBuffer.allocate(Long.BYTES + Integer.BYTES)
+                .putLong(index)
+                .putInt(readPosition);
+        final CRC32C crc = new CRC32C();
+        crc.update(entry.array());
+        checkpoint.put(0, entry.array());
+        checkpoint.putInt(Long.BYTES + Integer.BYTES, (int) crc.getValue());
+    }
+
+    /**
+     * Returns the checkpointed {@code [segment index, offset]}, or {@code null} if
+     * there is none or it is torn.
+     */
+    private long[] readCheckpoint() throws IOException {
+        final Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file) || Files.size(file) < CHECKPOINT_BYTES) {
+            return null;
+        }
+        final ByteBuffer entry = ByteBuffer.wrap(Files.readAllBytes(file));
+        final CRC32C crc = new CRC32C();
+        crc.update(entry.array(), 0, Long.BYTES + Integer.BYTES);
+        if ((int) crc.getValue() != entry.getInt(Long.BYTES + Integer.BYTES)) {
+            log.warn("IP record journal checkpoint in {} is torn, replaying all segments", directory);
+            return null;
+        }
+        return new long[]{entry.getLong(0), entry.getInt(Long.BYTES)};
+    }
+
+    private void recover() throws IOException {
+        final List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(IpRecordJournal::isSegmentFile)
+                    .sorted((a, b) -> Long.compare(indexOf(a), indexOf(b)))
+                    .toList();
+        }
+        final long[] checkpointed = readCheckpoint();
+        for (Path file : files) {
+            final long index = indexOf(file);
+            if (checkpointed != null && index < checkpointed[0]) {
+                // Replayed before the restart, but not yet deleted
+                Files.deleteIfExists(file);
+                continue;
+            }
+            final Segment segment = mapSegment(file, index, Files.size(file));
+            segment.writePosition = scan(segment);
+            final int start = checkpointed != null && index == checkpointed[0]
+                    ? (int) Math.min(checkpointed[1], segment.writePosition) : 0;
+            if (segment.writePosition == start) {
+                closeQuietly(segment);
+                deleteQuietly(segment);
+            } else {
+                if (sealed.isEmpty()) {
+                    readPosition = start;
+                }
+                sealed.addLast(segment);
+            }
+        }
+        if (!sealed.isEmpty()) {
+            log.info("Recovered {} IP record journal segment(s) from {}", sealed.size(), directory);
+        }
+    }
+
+    /**
+     * Returns the end of the valid frames in a recovered segment.
+     */
+    private static int scan(Segment segment) {
+        final MappedByteBuffer buffer = segment.buffer;
+        final int limit = buffer.capacity();
+        int position = 0;
+        while (position + FRAME_HEADER_BYTES <= limit) {
+            final int length = buffer.getInt(position);
+            if (length <= 0 || position + FRAME_HEADER_BYTES + length > limit) {
+                break;
+            }
+            final byte[] payload = new byte[length];
+            buffer.get(position + FRAME_HEADER_BYTES, payload);
+            final CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                log.warn("Journal segment {} has a torn entry at offset {}, ignoring the rest",
+                        segment.path.getFileName(), position);
+                break;
+            }
+            position += FRAME_HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private long nextIndex() {
+        return sealed.isEmpty() ? 0 : sealed.peekLast().index + 1;
+    }
+
+    private Segment openSegment(long index) throws IOException {
+        final Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        return mapSegment(path, index, segmentSize);
+    }
+
+    private static Segment mapSegment(Path path, long index, long size) throws IOException {
+        final FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new Segment(index, path, channel, buffer);
+    }
+
+    private static boolean isSegmentFile(Path path) {
+        final String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && indexOf(path) >= 0;
+    }
+
+    private static long indexOf(Path path) {
+        final String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Takes the directory lock, or returns {@code null} if another journal holds it.
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close journal lock: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close journal segment {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("Failed to delete journal segment {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+        private final long index;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        Segment(long index, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Records read from one segment, ending at {@code endPosition}.
+     */
+    private record Batch(Segment segment, int endPosition, List<IpAddressRecord> records) {
+    }
+}
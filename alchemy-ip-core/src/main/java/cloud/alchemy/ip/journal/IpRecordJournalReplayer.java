@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.journal;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically drains an {@link IpRecordJournal} into the database.
+ *
+ * <p>Every {@code interval} the replayer syncs the journal to disk and, if records
+ * are pending, hands them to {@link IpAddressStorageService#storeAll(java.util.List)}
+ * in batches. A failing batch ends the run and is retried on the next one, so
+ * replay resumes by itself once the database has recovered.
+ *
+ * <p>A batch that fails {@link IpAddressStorageService#isPermanentFailure(Throwable)
+ * permanently} would fail again on every run and block the records behind it. It is
+ * retried record by record instead, and the records that still fail permanently on
+ * their own are {@link IpRecordJournal#quarantine(List) quarantined}.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpRecordJournalReplayer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(IpRecordJournalReplayer.class);
+
+    /**
+     * Stopped together with {@link cloud.alchemy.ip.writer.IpRecordWriter}: after the
+     * web server, before the data source is closed.
+     */
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final IpRecordJournal journal;
+    private final IpAddressStorageService storageService;
+    private final int batchSize;
+    private final Duration interval;
+    private final String threadName;
+
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a new replayer.
+     *
+     * @param journal        the journal to drain
+     * @param storageService the storage service records are replayed into
+     * @param batchSize      maximum records per storeAll call
+     * @param interval       time between replay runs
+     * @param threadName     name of the replay thread
+     */
+    public IpRecordJournalReplayer(IpRecordJournal journal,
+                                   IpAddressStorageService storageService,
+                                   int batchSize,
+                                   Duration interval,
+                                   String threadName) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.journal = journal;
+        this.storageService = storageService;
+        this.batchSize = batchSize;
+        this.interval = interval;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Replays all pending records.
+     *
+     * @return the number of records replayed
+     */
+    public int replay() {
+        journal.force();
+        if (!journal.hasPending()) {
+            return 0;
+        }
+        try {
+            final int replayed = journal.replay(batchSize, this::store);
+            if (replayed > 0) {
+                log.info("Replayed {} IP records from the journal", replayed);
+            }
+            return replayed;
+        } catch (Exception e) {
+            log.warn("IP record journal replay failed, retrying in {}: {}", interval, e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public void start() {
+        if (scheduler != null) {
+            return;
+        }
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name(threadName).daemon().factory());
+        final long intervalMillis = interval.toMillis();
+        executor.scheduleWithFixedDelay(this::replayQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = executor;
+        log.debug("Started IP record journal replayer (interval={}, batchSize={})", interval, batchSize);
+    }
+
+    @Override
+    public void stop() {
+        final ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            return;
+        }
+        scheduler = null;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("IP record journal replay did not finish within {}s", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.force();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void store(List<IpAddressRecord> batch) {
+        try {
+            storageService.storeAll(batch);
+            return;
+        } catch (RuntimeException e) {
+            if (!IpAddressStorageService.isPermanentFailure(e)) {
+                throw e;
+            }
+            log.debug("Journaled batch of {} IP records failed permanently, replaying it record by record: {}",
+                    batch.size(), e.getMessage());
+        }
+        final List<IpAddressRecord> rejected = new ArrayList<>();
+        for (IpAddressRecord record : batch) {
+            try {
+                storageService.storeAll(List.of(record));
+            } catch (RuntimeException e) {
+                if (!IpAddressStorageService.isPermanentFailure(e)) {
+                    throw e;
+                }
+                rejected.add(record);
+            }
+        }
+        journal.quarantine(rejected);
+    }
+
+    private void replayQuietly() {
+        try {
+            replay();
+        } catch (Exception e) {
+            log.error("Unexpected error replaying the IP record journal", e);
+        }
+    }
+}
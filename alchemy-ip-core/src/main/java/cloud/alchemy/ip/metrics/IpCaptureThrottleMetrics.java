@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.metrics;
+
+import cloud.alchemy.ip.capture.IpCaptureThrottle;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes {@link IpCaptureThrottle} counters to Micrometer.
+ *
+ * <ul>
+ *   <li>{@code alchemy.ip.capture.throttled} - throttled captures across all IPs</li>
+ *   <li>{@code alchemy.ip.capture.throttled.ips} - IPs throttled within the last
+ *       minute, up to {@code alchemy.ip.throttle.max-tracked-ips}</li>
+ * </ul>
+ *
+ * <p>IP addresses are deliberately not used as tags: every tag value is a separate
+ * time series, so attack traffic from many addresses would flood the registry. The
+ * individual addresses are logged when first throttled and available from
+ * {@link IpCaptureThrottle#getThrottledIps()}.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpCaptureThrottleMetrics implements MeterBinder {
+
+    /**
+     * Name of the total throttled-captures counter.
+     */
+    public static final String THROTTLED = "alchemy.ip.capture.throttled";
+
+    /**
+     * Name of the throttled-IPs gauge.
+     */
+    public static final String THROTTLED_IPS = "alchemy.ip.capture.throttled.ips";
+
+    private final IpCaptureThrottle throttle;
+
+    /**
+     * Creates a new binder.
+     *
+     * @param throttle the capture throttle
+     */
+    public IpCaptureThrottleMetrics(IpCaptureThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(THROTTLED, throttle, IpCaptureThrottle::getThrottledCount)
+                .description("Captures dropped by the per-IP throttle")
+                .register(registry);
+
+        Gauge.builder(THROTTLED_IPS, throttle, IpCaptureThrottle::getThrottledIpCount)
+                .description("IP addresses recently throttled")
+                .register(registry);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.metrics;
+
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes {@link IpRecordWriter} state to Micrometer.
+ *
+ * <ul>
+ *   <li>{@code alchemy.ip.writer.batch.size} - current maximum records per flush, tagged with {@code lane}</li>
+ *   <li>{@code alchemy.ip.writer.flush.interval} - current maximum wait before a partial batch
+ *       is flushed, tagged with {@code lane}</li>
+ *   <li>{@code alchemy.ip.writer.pending} - buffered records not yet flushed</li>
+ *   <li>{@code alchemy.ip.writer.buffered.bytes} - estimated heap held by buffered records</li>
+ *   <li>{@code alchemy.ip.writer.records} - records handled, tagged with
+ *       {@code outcome} {@code written}, {@code dropped} or {@code failed}</li>
+ * </ul>
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpRecordWriterMetrics implements MeterBinder {
+
+    /**
+     * Name of the batch size gauge.
+     */
+    public static final String BATCH_SIZE = "alchemy.ip.writer.batch.size";
+
+    /**
+     * Name of the flush interval gauge.
+     */
+    public static final String FLUSH_INTERVAL = "alchemy.ip.writer.flush.interval";
+
+    /**
+     * Name of the pending records gauge.
+     */
+    public static final String PENDING = "alchemy.ip.writer.pending";
+
+    /**
+     * Name of the buffered bytes gauge.
+     */
+    public static final String BUFFERED_BYTES = "alchemy.ip.writer.buffered.bytes";
+
+    /**
+     * Name of the handled records counter.
+     */
+    public static final String RECORDS = "alchemy.ip.writer.records";
+
+    private final IpRecordWriter writer;
+
+    /**
+     * Creates a new binder.
+     *
+     * @param writer the record writer
+     */
+    public IpRecordWriterMetrics(IpRecordWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (int i = 0; i < writer.getLaneCount(); i++) {
+            final int lane = i;
+            Gauge.builder(BATCH_SIZE, writer, w -> w.getBatchSize(lane))
+                    .description("Current maximum number of IP records per writer flush")
+                    .tag("lane", String.valueOf(lane))
+                    .register(registry);
+            TimeGauge.builder(FLUSH_INTERVAL, writer, TimeUnit.MILLISECONDS, w -> w.getFlushInterval(lane).toMillis())
+                    .description("Current maximum wait before a partial batch of IP records is flushed")
+                    .tag("lane", String.valueOf(lane))
+                    .register(registry);
+        }
+        Gauge.builder(PENDING, writer, IpRecordWriter::getPendingCount)
+                .description("IP records buffered by the writer and not yet flushed")
+                .register(registry);
+        Gauge.builder(BUFFERED_BYTES, writer, IpRecordWriter::getBufferedBytes)
+                .description("Estimated heap held by IP records buffered by the writer")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        FunctionCounter.builder(RECORDS, writer, IpRecordWriter::getWrittenCount)
+                .description("IP records handled by the writer")
+                .tag("outcome", "written")
+                .register(registry);
+        FunctionCounter.builder(RECORDS, writer, IpRecordWriter::getDroppedCount)
+                .description("IP records handled by the writer")
+                .tag("outcome", "dropped")
+                .register(registry);
+        FunctionCounter.builder(RECORDS, writer, IpRecordWriter::getFailedCount)
+                .description("IP records handled by the writer")
+                .tag("outcome", "failed")
+                .register(registry);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.metrics;
+
+import cloud.alchemy.ip.breaker.CircuitBreakingIpAddressStorageService;
+import cloud.alchemy.ip.breaker.StorageCircuitBreaker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Locale;
+
+/**
+ * Publishes {@link StorageCircuitBreaker} state to Micrometer.
+ *
+ * <ul>
+ *   <li>{@code alchemy.ip.storage.circuit.state} - 1 for the current state and 0 for the
+ *       others, tagged with {@code state} {@code closed}, {@code open} or {@code half_open}</li>
+ *   <li>{@code alchemy.ip.storage.circuit.calls} - storage calls, tagged with {@code outcome}
+ *       {@code success}, {@code failure} or {@code rejected}; slow calls are also counted
+ *       under {@code slow}</li>
+ *   <li>{@code alchemy.ip.storage.circuit.spilled} - records spilled instead of stored</li>
+ *   <li>{@code alchemy.ip.storage.circuit.spill.pending} - records held in the in-memory spill ring</li>
+ *   <li>{@code alchemy.ip.storage.circuit.spill.bytes} - estimated heap held by the in-memory spill ring</li>
+ *   <li>{@code alchemy.ip.storage.circuit.spill.dropped} - records dropped because the ring was full</li>
+ *   <li>{@code alchemy.ip.storage.circuit.spill.discarded} - spilled records discarded because they
+ *       failed permanently while draining</li>
+ * </ul>
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpStorageCircuitBreakerMetrics implements MeterBinder {
+
+    /**
+     * Name of the state gauge.
+     */
+    public static final String STATE = "alchemy.ip.storage.circuit.state";
+
+    /**
+     * Name of the calls counter.
+     */
+    public static final String CALLS = "alchemy.ip.storage.circuit.calls";
+
+    /**
+     * Name of the spilled records counter.
+     */
+    public static final String SPILLED = "alchemy.ip.storage.circuit.spilled";
+
+    /**
+     * Name of the pending spilled records gauge.
+     */
+    public static final String SPILL_PENDING = "alchemy.ip.storage.circuit.spill.pending";
+
+    /**
+     * Name of the pending spilled bytes gauge.
+     */
+    public static final String SPILL_BYTES = "alchemy.ip.storage.circuit.spill.bytes";
+
+    /**
+     * Name of the dropped spilled records counter.
+     */
+    public static final String SPILL_DROPPED = "alchemy.ip.storage.circuit.spill.dropped";
+
+    /**
+     * Name of the discarded spilled records counter.
+     */
+    public static final String SPILL_DISCARDED = "alchemy.ip.storage.circuit.spill.discarded";
+
+    private final StorageCircuitBreaker breaker;
+    private final CircuitBreakingIpAddressStorageService storageService;
+
+    /**
+     * Creates a new binder.
+     *
+     * @param breaker        the circuit breaker
+     * @param storageService the decorator using the breaker, or {@code null} to publish
+     *                       only the breaker meters
+     */
+    public IpStorageCircuitBreakerMetrics(StorageCircuitBreaker breaker,
+                                          CircuitBreakingIpAddressStorageService storageService) {
+        this.breaker = breaker;
+        this.storageService = storageService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (StorageCircuitBreaker.State state : StorageCircuitBreaker.State.values()) {
+            Gauge.builder(STATE, breaker, b -> b.getState() == state ? 1 : 0)
+                    .description("Whether the IP storage circuit breaker is in the given state")
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        FunctionCounter.builder(CALLS, breaker, StorageCircuitBreaker::getSuccessCount)
+                .description("IP storage calls seen by the circuit breaker")
+                .tag("outcome", "success")
+                .register(registry);
+        FunctionCounter.builder(CALLS, breaker, StorageCircuitBreaker::getFailureCount)
+                .description("IP storage calls seen by the circuit breaker")
+                .tag("outcome", "failure")
+                .register(registry);
+        FunctionCounter.builder(CALLS, breaker, StorageCircuitBreaker::getSlowCount)
+                .description("IP storage calls seen by the circuit breaker")
+                .tag("outcome", "slow")
+                .register(registry);
+        FunctionCounter.builder(CALLS, breaker, StorageCircuitBreaker::getRejectedCount)
+                .description("IP storage calls seen by the circuit breaker")
+                .tag("outcome", "rejected")
+                .register(registry);
+        if (storageService == null) {
+            return;
+        }
+        FunctionCounter.builder(SPILLED, storageService, CircuitBreakingIpAddressStorageService::getSpilledCount)
+                .description("IP records spilled instead of stored")
+                .register(registry);
+        Gauge.builder(SPILL_PENDING, storageService, CircuitBreakingIpAddressStorageService::getSpillPendingCount)
+                .description("IP records held in the in-memory spill ring")
+                .register(registry);
+        Gauge.builder(SPILL_BYTES, storageService, CircuitBreakingIpAddressStorageService::getSpillPendingBytes)
+                .description("Estimated heap held by IP records in the in-memory spill ring")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        FunctionCounter.builder(SPILL_DROPPED, storageService, CircuitBreakingIpAddressStorageService::getSpillDroppedCount)
+                .description("IP records dropped because the spill ring was full")
+                .register(registry);
+        FunctionCounter.builder(SPILL_DISCARDED, storageService,
+                        CircuitBreakingIpAddressStorageService::getSpillDiscardedCount)
+                .description("Spilled IP records discarded because they failed permanently")
+                .register(registry);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.reactive;
+
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.Optional;
+
+/**
+ * Default implementation of {@link ReactiveIpAddressExtractor}.
+ *
+ * <p>Applies exactly the same header precedence and proxy trust rules as
+ * {@link DefaultIpAddressExtractor}, reading headers from the
+ * {@link ServerHttpRequest} instead of a servlet request. The remote address is
+ * taken from the connection without any DNS lookup.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class DefaultReactiveIpAddressExtractor implements ReactiveIpAddressExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(DefaultReactiveIpAddressExtractor.class);
+
+    private final DefaultIpAddressExtractor delegate;
+
+    /**
+     * Creates a new extractor using the given header parsing rules.
+     *
+     * @param delegate the servlet extractor whose rules are applied
+     */
+    public DefaultReactiveIpAddressExtractor(DefaultIpAddressExtractor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Optional<String> extractIpAddress(ServerHttpRequest request) {
+        if (request == null) {
+            log.warn("Cannot extract IP address from null request");
+            return Optional.empty();
+        }
+        return delegate.extractIpAddress(request.getHeaders()::getFirst, remoteAddress(request));
+    }
+
+    private static String remoteAddress(ServerHttpRequest request) {
+        final InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null) {
+            return null;
+        }
+        if (remoteAddress.getAddress() != null) {
+            return remoteAddress.getAddress().getHostAddress();
+        }
+        return remoteAddress.getHostString();
+    }
+}
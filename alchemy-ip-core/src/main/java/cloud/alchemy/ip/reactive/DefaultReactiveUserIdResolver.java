@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.reactive;
+
+import cloud.alchemy.ip.customization.DefaultUserIdResolver;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Default implementation of {@link ReactiveUserIdResolver} that resolves the user's
+ * email from {@link ServerWebExchange#getPrincipal()}.
+ *
+ * <p>The principal is inspected with the same rules as {@link DefaultUserIdResolver}.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class DefaultReactiveUserIdResolver implements ReactiveUserIdResolver {
+
+    private final DefaultUserIdResolver delegate;
+
+    /**
+     * Creates a new resolver.
+     */
+    public DefaultReactiveUserIdResolver() {
+        this.delegate = new DefaultUserIdResolver();
+    }
+
+    @Override
+    public Mono<String> resolveUserId(ServerWebExchange exchange) {
+        return exchange.getPrincipal()
+                .flatMap(principal -> Mono.justOrEmpty(delegate.resolveUserIdFromPrincipal(principal)));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.reactive;
+
+import cloud.alchemy.ip.capture.CaptureOptions;
+import cloud.alchemy.ip.capture.IpCaptureThrottle;
+import cloud.alchemy.ip.capture.IpRecordFactory;
+import cloud.alchemy.ip.capture.PathPatternTrie;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * WebFlux filter that captures client IP addresses for every request whose path
+ * matches one of the configured patterns.
+ *
+ * <p>The reactive counterpart of {@link cloud.alchemy.ip.capture.IpCaptureFilter},
+ * selected with {@code alchemy.ip.capture.mode=filter} in a reactive application.
+ * Nothing on the request path blocks: the IP address is read from headers and the
+ * connection, the user is resolved from the exchange principal, and the finished
+ * record is handed to the {@link IpRecordWriter}, whose virtual writer thread
+ * performs the blocking JPA insert.
+ *
+ * <p>The capture runs after the rest of the chain has completed, successfully or not.
+ * Capture failures are logged and never affect the response.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class IpCaptureWebFilter implements WebFilter, Ordered {
+
+    private static final Logger log = LoggerFactory.getLogger(IpCaptureWebFilter.class);
+
+    private final IpRecordWriter writer;
+    private final ReactiveIpAddressExtractor ipAddressExtractor;
+    private final ReactiveUserIdResolver userIdResolver;
+    private final PathPatternTrie includePatterns;
+    private final CaptureOptions options;
+    private final int order;
+    private final IpCaptureThrottle throttle;
+
+    /**
+     * Creates a new capture filter without throttling.
+     *
+     * @param writer             the writer that persists captured records
+     * @param ipAddressExtractor the reactive IP address extractor
+     * @param userIdResolver     the reactive user ID resolver
+     * @param includePatterns    the compiled path patterns to capture
+     * @param options            the capture options applied to every record
+     * @param order              the filter order
+     */
+    public IpCaptureWebFilter(IpRecordWriter writer,
+                              ReactiveIpAddressExtractor ipAddressExtractor,
+                              ReactiveUserIdResolver userIdResolver,
+                              PathPatternTrie includePatterns,
+                              CaptureOptions options,
+                              int order) {
+        this(writer, ipAddressExtractor, userIdResolver, includePatterns, options, order, null);
+    }
+
+    /**
+     * Creates a new capture filter.
+     *
+     * @param writer             the writer that persists captured records
+     * @param ipAddressExtractor the reactive IP address extractor
+     * @param userIdResolver     the reactive user ID resolver
+     * @param includePatterns    the compiled path patterns to capture
+     * @param options            the capture options applied to every record
+     * @param order              the filter order
+     * @param throttle           the per-IP throttle, or {@code null} for none
+     */
+    public IpCaptureWebFilter(IpRecordWriter writer,
+                              ReactiveIpAddressExtractor ipAddressExtractor,
+                              ReactiveUserIdResolver userIdResolver,
+                              PathPatternTrie includePatterns,
+                              CaptureOptions options,
+                              int order,
+                              IpCaptureThrottle throttle) {
+        this.writer = writer;
+        this.ipAddressExtractor = ipAddressExtractor;
+        this.userIdResolver = userIdResolver;
+        this.includePatterns = includePatterns;
+        this.options = options;
+        this.order = order;
+        this.throttle = throttle;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        final ServerHttpRequest request = exchange.getRequest();
+        if (!includePatterns.matches(request.getPath().pathWithinApplication().value()) || !options.sample()) {
+            return chain.filter(exchange);
+        }
+
+        return chain.filter(exchange)
+                .onErrorResume(error -> capture(exchange).then(Mono.error(error)))
+                .then(Mono.defer(() -> capture(exchange)));
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    private Mono<Void> capture(ServerWebExchange exchange) {
+        final ServerHttpRequest request = exchange.getRequest();
+        final Optional<String> ipAddress;
+        try {
+            ipAddress = ipAddressExtractor.extractIpAddress(request);
+        } catch (Exception e) {
+            log.error("Failed to store IP address, but not affecting the request processing", e);
+            return Mono.empty();
+        }
+        if (ipAddress.isEmpty()) {
+            log.warn("Could not extract IP address from request");
+            return Mono.empty();
+        }
+        if (throttle != null && !throttle.tryAcquire(ipAddress.get())) {
+            log.debug("IP capture throttled: {}", ipAddress.get());
+            return Mono.empty();
+        }
+
+        return userIdResolver.resolveUserId(exchange)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .doOnNext(userId -> submit(createRecord(request, ipAddress.get(), userId.orElse(null))))
+                .onErrorResume(error -> {
+                    log.error("Failed to store IP address, but not affecting the request processing", error);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private IpAddressRecord createRecord(ServerHttpRequest request, String ipAddress, String userId) {
+        return IpRecordFactory.create(
+                ipAddress,
+                userId,
+                options,
+                request.getHeaders().getFirst(HttpHeaders.USER_AGENT),
+                request.getURI().getRawPath(),
+                request.getMethod().name()
+        );
+    }
+
+    private void submit(IpAddressRecord record) {
+        if (!writer.submit(record)) {
+            log.warn("IP storage buffer full, capture dropped for IP: {}", record.getIpAddress());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.reactive;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.util.Optional;
+
+/**
+ * Strategy interface for extracting client IP addresses from reactive HTTP requests.
+ *
+ * <p>This is the WebFlux counterpart of {@link cloud.alchemy.ip.extractor.IpAddressExtractor}.
+ * Implementations must not block, as they are invoked on the event loop.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see DefaultReactiveIpAddressExtractor
+ */
+@FunctionalInterface
+public interface ReactiveIpAddressExtractor {
+
+    /**
+     * Extracts the client IP address from the given reactive HTTP request.
+     *
+     * @param request the reactive server HTTP request
+     * @return an {@link Optional} containing the extracted IP address,
+     *         or {@link Optional#empty()} if the IP address cannot be determined
+     */
+    Optional<String> extractIpAddress(ServerHttpRequest request);
+}
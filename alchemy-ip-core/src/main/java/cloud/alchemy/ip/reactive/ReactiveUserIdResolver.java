@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.reactive;
+
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Strategy interface for resolving the user ID in reactive applications.
+ *
+ * <p>The reactive counterpart of {@link cloud.alchemy.ip.customization.UserIdResolver}.
+ * Implementations must not block; an empty {@link Mono} means the request is anonymous.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@FunctionalInterface
+public interface ReactiveUserIdResolver {
+
+    /**
+     * Resolves the user ID for the given exchange.
+     *
+     * @param exchange the current server exchange
+     * @return the user ID, or an empty Mono if none could be resolved
+     */
+    Mono<String> resolveUserId(ServerWebExchange exchange);
+}
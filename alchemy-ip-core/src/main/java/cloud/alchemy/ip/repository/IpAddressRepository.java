@@ -18,6 +18,11 @@ package cloud.alchemy.ip.repository;
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -33,7 +38,8 @@ import java.util.Optional;
  *
  * <p>Provides standard CRUD operations as well as custom query methods
  * for IP address records. This repository can be injected into user code
- * for custom queries and operations.
+ * for custom queries and operations. Listings that only need a few columns can
+ * read them into a record type with the {@link IpRecordProjectionRepository} queries.
  *
  * <p>Example usage:
  * <pre>{@code
@@ -57,7 +63,7 @@ import java.util.Optional;
  */
 @Repository
 public interface IpAddressRepository extends JpaRepository<IpAddressRecord, Long>,
-        JpaSpecificationExecutor<IpAddressRecord> {
+        JpaSpecificationExecutor<IpAddressRecord>, IpRecordProjectionRepository {
 
     /**
      * Finds all IP address records for a given IP address.
@@ -161,6 +167,52 @@ public interface IpAddressRepository extends JpaRepository<IpAddressRecord, Long
      */
     long countByUserId(String userId);
 
+    /**
+     * Counts the records created within a time range.
+     *
+     * @param start the start of the time range (inclusive)
+     * @param end   the end of the time range (inclusive)
+     * @return the count of records
+     * @since 1.1.0
+     */
+    long countByCreatedAtBetween(Instant start, Instant end);
+
+    /**
+     * Counts distinct IP addresses over all records.
+     *
+     * @return the count of distinct IP addresses
+     * @since 1.1.0
+     */
+    @Query("SELECT COUNT(DISTINCT r.ipAddress) FROM IpAddressRecord r")
+    long countDistinctIpAddresses();
+
+    /**
+     * Counts distinct users over all records. Anonymous records are not counted.
+     *
+     * @return the count of distinct user IDs
+     * @since 1.1.0
+     */
+    @Query("SELECT COUNT(DISTINCT r.userId) FROM IpAddressRecord r")
+    long countDistinctUsers();
+
+    /**
+     * Finds the creation time of the oldest record.
+     *
+     * @return the oldest creation time, empty if there are no records
+     * @since 1.1.0
+     */
+    @Query("SELECT MIN(r.createdAt) FROM IpAddressRecord r")
+    Optional<Instant> findOldestCreatedAt();
+
+    /**
+     * Finds the creation time of the newest record.
+     *
+     * @return the newest creation time, empty if there are no records
+     * @since 1.1.0
+     */
+    @Query("SELECT MAX(r.createdAt) FROM IpAddressRecord r")
+    Optional<Instant> findNewestCreatedAt();
+
     /**
      * Counts distinct IP addresses for a user.
      *
@@ -188,6 +240,17 @@ public interface IpAddressRepository extends JpaRepository<IpAddressRecord, Long
     @Query("SELECT DISTINCT r.ipAddress FROM IpAddressRecord r WHERE r.userId = :userId")
     List<String> findDistinctIpAddressesByUserId(@Param("userId") String userId);
 
+    /**
+     * Finds one page of the distinct IP addresses used by a user, in address order.
+     *
+     * @param userId   the user ID
+     * @param pageable the page to return; sorting is ignored
+     * @return the page's distinct IP addresses
+     * @since 1.1.0
+     */
+    @Query("SELECT DISTINCT r.ipAddress FROM IpAddressRecord r WHERE r.userId = :userId ORDER BY r.ipAddress")
+    List<String> findDistinctIpAddressesByUserId(@Param("userId") String userId, Pageable pageable);
+
     /**
      * Finds records by country code.
      *
@@ -225,6 +288,48 @@ public interface IpAddressRepository extends JpaRepository<IpAddressRecord, Long
             "GROUP BY r.ipAddress HAVING COUNT(r) >= :threshold ORDER BY cnt DESC")
     Page<Object[]> findFrequentIpAddresses(@Param("threshold") long threshold, Pageable pageable);
 
+    /**
+     * Finds the countries with the most records. Records without a country are
+     * ignored.
+     *
+     * @param pageable the number of countries to return; sorting is ignored
+     * @return country codes with their counts, highest count first
+     * @since 1.1.0
+     */
+    @Query("SELECT r.countryCode, COUNT(r) as cnt FROM IpAddressRecord r " +
+            "WHERE r.countryCode IS NOT NULL AND TRIM(r.countryCode) <> '' " +
+            "GROUP BY r.countryCode ORDER BY cnt DESC")
+    List<Object[]> findTopCountries(Pageable pageable);
+
+    /**
+     * Finds the cities with the most records. Records without a city are ignored.
+     *
+     * @param pageable the number of cities to return; sorting is ignored
+     * @return city names with their counts, highest count first
+     * @since 1.1.0
+     */
+    @Query("SELECT r.city, COUNT(r) as cnt FROM IpAddressRecord r " +
+            "WHERE r.city IS NOT NULL AND TRIM(r.city) <> '' " +
+            "GROUP BY r.city ORDER BY cnt DESC")
+    List<Object[]> findTopCities(Pageable pageable);
+
+    /**
+     * Counts the records created within a time range per time bucket, in one query.
+     * Bucket {@code n} covers the epoch seconds {@code [n * bucketSeconds,
+     * (n + 1) * bucketSeconds)}; buckets without records are not returned.
+     *
+     * @param start         the start of the time range (inclusive)
+     * @param end           the end of the time range (exclusive)
+     * @param bucketSeconds the bucket width in seconds
+     * @return bucket numbers with their counts, in no particular order
+     * @since 1.1.0
+     */
+    @Query("SELECT FLOOR(EXTRACT(EPOCH FROM r.createdAt) / :bucketSeconds) AS bucket, COUNT(r) " +
+            "FROM IpAddressRecord r WHERE r.createdAt >= :start AND r.createdAt < :end GROUP BY bucket")
+    List<Object[]> countByCreatedAtBuckets(@Param("start") Instant start,
+                                           @Param("end") Instant end,
+                                           @Param("bucketSeconds") long bucketSeconds);
+
     /**
      * Finds IP address records matching the request path pattern.
      *
@@ -233,4 +338,46 @@ public interface IpAddressRepository extends JpaRepository<IpAddressRecord, Long
      * @return page of matching records
      */
     Page<IpAddressRecord> findByRequestPathLike(String pathPattern, Pageable pageable);
+
+    /**
+     * Finds the records matching a specification that follow a cursor, in the order of
+     * {@link IpRecordCursor#sort(Sort.Direction)}. Unlike a page request, this neither
+     * skips records with an offset nor counts the matching records.
+     *
+     * @param spec      the specification to match, or {@code null} to match all records
+     * @param after     the cursor, or {@code null} to start with the first record
+     * @param direction the direction of the order
+     * @param limit     the maximum number of records
+     * @return the records following the cursor
+     * @since 1.1.0
+     */
+    default List<IpAddressRecord> findAfter(Specification<IpAddressRecord> spec,
+                                            IpRecordCursor after,
+                                            Sort.Direction direction,
+                                            int limit) {
+        Specification<IpAddressRecord> where = Specification.where(spec);
+        if (after != null) {
+            where = where.and(after.seek(direction));
+        }
+        return findBy(where, query -> query.sortBy(IpRecordCursor.sort(direction)).limit(limit).all());
+    }
+
+    /**
+     * Finds a slice of the records matching a specification. Unlike
+     * {@link #findAll(Specification, Pageable)}, this does not count the matching
+     * records: it reads one record more than the page size to tell whether there is a
+     * next slice.
+     *
+     * @param spec     the specification to match, or {@code null} to match all records
+     * @param pageable pagination and sorting parameters
+     * @return the slice of matching records
+     * @since 1.1.0
+     */
+    default Slice<IpAddressRecord> findSlice(Specification<IpAddressRecord> spec, Pageable pageable) {
+        Window<IpAddressRecord> window = findBy(Specification.where(spec), query -> query
+                .sortBy(pageable.getSort())
+                .limit(pageable.getPageSize())
+                .scroll(pageable.toScrollPosition()));
+        return new SliceImpl<>(window.getContent(), pageable, window.hasNext());
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalLong;
+import java.util.regex.Pattern;
+
+/**
+ * Estimates the number of records in the records table from the statistics the
+ * database keeps about it, without counting them.
+ *
+ * <p>{@code SELECT COUNT(*)} reads the whole table or one of its indexes, while the
+ * estimate is a single catalog lookup. The estimate is as fresh as the statistics:
+ * PostgreSQL updates {@code pg_class.reltuples} on {@code VACUUM} and
+ * {@code ANALYZE}, MySQL and MariaDB sample InnoDB tables for
+ * {@code information_schema.tables.table_rows}, Oracle reads {@code num_rows} from
+ * the last statistics gathering and SQL Server and H2 maintain the row count as they
+ * go. On other databases, or when the statistics are missing, there is no estimate.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpRecordCountEstimator {
+
+    private static final Logger log = LoggerFactory.getLogger(IpRecordCountEstimator.class);
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+    private volatile Statistics statistics;
+
+    /**
+     * Creates a new estimator.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param tableName    the IP address table name
+     * @throws IllegalArgumentException if the table name is not a plain SQL identifier
+     */
+    public IpRecordCountEstimator(JdbcTemplate jdbcTemplate, String tableName) {
+        if (tableName == null || !TABLE_NAME.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("Invalid table name: " + tableName);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Returns the estimated number of records.
+     *
+     * @return the estimate, empty if the database keeps no statistics for the table or
+     *         they cannot be read
+     */
+    public OptionalLong estimate() {
+        try {
+            final Statistics source = statistics();
+            if (source == null) {
+                return OptionalLong.empty();
+            }
+            final List<Number> rows = jdbcTemplate.queryForList(source.sql(), Number.class, source.args());
+            if (rows.isEmpty() || rows.get(0) == null || rows.get(0).longValue() < 0) {
+                return OptionalLong.empty();
+            }
+            return OptionalLong.of(rows.get(0).longValue());
+        } catch (DataAccessException e) {
+            log.debug("Could not read the row count estimate of {}: {}", tableName, e.getMessage());
+            return OptionalLong.empty();
+        }
+    }
+
+    private Statistics statistics() {
+        Statistics source = statistics;
+        if (source == null) {
+            final String product = jdbcTemplate.execute(
+                    (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+            source = Statistics.forProduct(product == null ? "" : product, tableName);
+            statistics = source;
+        }
+        return source == Statistics.NONE ? null : source;
+    }
+
+    /**
+     * The catalog query holding the row count estimate of a table.
+     */
+    private record Statistics(String sql, Object... args) {
+
+        static final Statistics NONE = new Statistics("");
+
+        static Statistics forProduct(String product, String tableName) {
+            final String name = product.toLowerCase(Locale.ROOT);
+            final int dot = tableName.indexOf('.');
+            final String table = dot < 0 ? tableName : tableName.substring(dot + 1);
+            if (name.contains("postgresql")) {
+                // reltuples is -1 until the table is first vacuumed or analyzed
+                return new Statistics("SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = to_regclass(?)",
+                        tableName.toLowerCase(Locale.ROOT));
+            }
+            if (name.contains("mysql") || name.contains("mariadb")) {
+                return new Statistics("SELECT table_rows FROM information_schema.tables"
+                        + " WHERE table_schema = " + (dot < 0 ? "DATABASE()" : "?") + " AND table_name = ?",
+                        dot < 0 ? new Object[]{table} : new Object[]{tableName.substring(0, dot), table});
+            }
+            if (name.contains("h2")) {
+                return new Statistics("SELECT row_count_estimate FROM information_schema.tables"
+                        + " WHERE table_schema = " + (dot < 0 ? "SCHEMA()" : "UPPER(?)") + " AND table_name = UPPER(?)",
+                        dot < 0 ? new Object[]{table} : new Object[]{tableName.substring(0, dot), table});
+            }
+            if (name.contains("oracle")) {
+                return new Statistics("SELECT num_rows FROM all_tables WHERE owner = "
+                        + (dot < 0 ? "USER" : "UPPER(?)") + " AND table_name = UPPER(?)",
+                        dot < 0 ? new Object[]{table} : new Object[]{tableName.substring(0, dot), table});
+            }
+            if (name.contains("microsoft sql server")) {
+                return new Statistics("SELECT SUM(row_count) FROM sys.dm_db_partition_stats"
+                        + " WHERE object_id = OBJECT_ID(?) AND index_id IN (0, 1)", tableName);
+            }
+            return NONE;
+        }
+    }
+}
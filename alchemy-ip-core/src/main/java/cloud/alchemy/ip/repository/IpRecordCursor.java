@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.repository;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position of a record in the {@code (createdAt, id)} order, for keyset pagination.
+ *
+ * <p>Offset pagination makes the database read and discard every record before the
+ * requested page, so deep pages get slower the deeper they are. A cursor instead names
+ * the last record of the previous page, and {@link #seek(Sort.Direction)} selects the
+ * records after it, which an index on {@code created_at} finds directly. The ID breaks
+ * ties between records created at the same instant, so no record is skipped or repeated.
+ *
+ * <p>{@link #encode()} turns a cursor into an opaque URL-safe token for API clients.
+ *
+ * @param createdAt the creation time of the record
+ * @param id        the ID of the record
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see IpAddressRepository#findAfter(Specification, IpRecordCursor, Sort.Direction, int)
+ */
+public record IpRecordCursor(Instant createdAt, long id) {
+
+    private static final int ENCODED_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    /**
+     * Creates a new cursor.
+     *
+     * @throws IllegalArgumentException if the creation time is {@code null}
+     */
+    public IpRecordCursor {
+        if (createdAt == null) {
+            throw new IllegalArgumentException("createdAt cannot be null");
+        }
+    }
+
+    /**
+     * Returns the cursor positioned at a stored record.
+     *
+     * @param record a stored record
+     * @return the cursor
+     */
+    public static IpRecordCursor of(IpAddressRecord record) {
+        return new IpRecordCursor(record.getCreatedAt(), record.getId());
+    }
+
+    /**
+     * Returns the order cursors follow.
+     *
+     * @param direction the direction of both keys
+     * @return the sort by creation time, then ID
+     */
+    public static Sort sort(Sort.Direction direction) {
+        return Sort.by(direction, "createdAt").and(Sort.by(direction, "id"));
+    }
+
+    /**
+     * Returns a specification matching the records after this cursor.
+     *
+     * @param direction the direction of the order, see {@link #sort(Sort.Direction)}
+     * @return the specification
+     */
+    public Specification<IpAddressRecord> seek(Sort.Direction direction) {
+        return (root, query, cb) -> direction.isDescending()
+                ? cb.or(cb.lessThan(root.get("createdAt"), createdAt),
+                        cb.and(cb.equal(root.get("createdAt"), createdAt), cb.lessThan(root.get("id"), id)))
+                : cb.or(cb.greaterThan(root.get("createdAt"), createdAt),
+                        cb.and(cb.equal(root.get("createdAt"), createdAt), cb.greaterThan(root.get("id"), id)));
+    }
+
+    /**
+     * Encodes the cursor as an opaque token.
+     *
+     * @return a URL-safe token
+     * @see #decode(String)
+     */
+    public String encode() {
+        final ByteBuffer bytes = ByteBuffer.allocate(ENCODED_BYTES)
+                .putLong(createdAt.getEpochSecond())
+                .putInt(createdAt.getNano())
+                .putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}.
+     *
+     * @param token the token
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is not a valid cursor
+     */
+    public static IpRecordCursor decode(String token) {
+        final byte[] decoded;
+        try {
+            decoded = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+        if (decoded.length != ENCODED_BYTES) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        final ByteBuffer bytes = ByteBuffer.wrap(decoded);
+        try {
+            return new IpRecordCursor(Instant.ofEpochSecond(bytes.getLong(), bytes.getInt()), bytes.getLong());
+        } catch (DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.repository;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * Queries that read {@link IpAddressRecord} columns directly into a record type
+ * instead of loading entities.
+ *
+ * <p>Listings usually show a few columns of each record. Loading entities reads every
+ * column, including the long {@code user_agent}, {@code request_path} and
+ * {@code metadata} ones, and keeps each entity with a snapshot of its state in the
+ * persistence context for dirty checking until the transaction ends. These queries
+ * select only the columns named by the components of the projection type and
+ * construct it from them; the results are plain objects the persistence context does
+ * not track.
+ *
+ * <p>The projection type must be a record whose component names are
+ * {@link IpAddressRecord} properties and whose component types match theirs, for
+ * example:
+ * <pre>{@code
+ * public record RecentAccess(String ipAddress, String userId, Instant createdAt) {
+ * }
+ *
+ * Page<RecentAccess> page = repository.findAll(spec, PageRequest.of(0, 20), RecentAccess.class);
+ * }</pre>
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public interface IpRecordProjectionRepository {
+
+    /**
+     * Finds a page of the records matching a specification, projected onto a record
+     * type. Like {@link org.springframework.data.jpa.repository.JpaSpecificationExecutor#findAll(Specification, Pageable)},
+     * this counts the matching records unless the page shows that there are no more.
+     *
+     * @param spec     the specification to match, or {@code null} to match all records
+     * @param pageable pagination and sorting parameters
+     * @param type     the projection type
+     * @param <T>      the projection type
+     * @return the page of projections
+     * @throws IllegalArgumentException if the type is not a record of record properties
+     */
+    <T> Page<T> findAll(Specification<IpAddressRecord> spec, Pageable pageable, Class<T> type);
+
+    /**
+     * Finds a slice of the records matching a specification, projected onto a record
+     * type, without counting them.
+     *
+     * @param spec     the specification to match, or {@code null} to match all records
+     * @param pageable pagination and sorting parameters
+     * @param type     the projection type
+     * @param <T>      the projection type
+     * @return the slice of projections
+     * @throws IllegalArgumentException if the type is not a record of record properties
+     * @see IpAddressRepository#findSlice(Specification, Pageable)
+     */
+    <T> Slice<T> findSlice(Specification<IpAddressRecord> spec, Pageable pageable, Class<T> type);
+
+    /**
+     * Finds the records matching a specification that follow a cursor, projected onto a
+     * record type, in the order of {@link IpRecordCursor#sort(Sort.Direction)}.
+     *
+     * @param spec      the specification to match, or {@code null} to match all records
+     * @param after     the cursor, or {@code null} to start with the first record
+     * @param direction the direction of the order
+     * @param limit     the maximum number of records
+     * @param type      the projection type
+     * @param <T>       the projection type
+     * @return the projections of the records following the cursor
+     * @throws IllegalArgumentException if the type is not a record of record properties
+     * @see IpAddressRepository#findAfter(Specification, IpRecordCursor, Sort.Direction, int)
+     */
+    <T> List<T> findAfter(Specification<IpAddressRecord> spec,
+                          IpRecordCursor after,
+                          Sort.Direction direction,
+                          int limit,
+                          Class<T> type);
+}
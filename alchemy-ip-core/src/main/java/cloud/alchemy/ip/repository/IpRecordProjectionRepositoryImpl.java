@@ -0,0 +1,122 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.repository;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.RecordComponent;
+import java.util.List;
+
+/**
+ * Criteria API implementation of {@link IpRecordProjectionRepository}.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Transactional(readOnly = true)
+class IpRecordProjectionRepositoryImpl implements IpRecordProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public <T> Page<T> findAll(Specification<IpAddressRecord> spec, Pageable pageable, Class<T> type) {
+        final List<T> content = select(spec, pageable.getSort(), pageable.getOffset(), pageable.getPageSize(), type);
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(spec));
+    }
+
+    @Override
+    public <T> Slice<T> findSlice(Specification<IpAddressRecord> spec, Pageable pageable, Class<T> type) {
+        // One extra record tells whether there is a next slice
+        final List<T> content = select(spec, pageable.getSort(), pageable.getOffset(), pageable.getPageSize() + 1, type);
+        final boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    @Override
+    public <T> List<T> findAfter(Specification<IpAddressRecord> spec,
+                                 IpRecordCursor after,
+                                 Sort.Direction direction,
+                                 int limit,
+                                 Class<T> type) {
+        Specification<IpAddressRecord> where = Specification.where(spec);
+        if (after != null) {
+            where = where.and(after.seek(direction));
+        }
+        return select(where, IpRecordCursor.sort(direction), 0, limit, type);
+    }
+
+    private <T> List<T> select(Specification<IpAddressRecord> spec, Sort sort, long offset, int limit, Class<T> type) {
+        final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<T> query = cb.createQuery(type);
+        final Root<IpAddressRecord> root = query.from(IpAddressRecord.class);
+        query.select(cb.construct(type, selections(root, type)));
+        final Predicate predicate = spec == null ? null : spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+        final TypedQuery<T> typedQuery = entityManager.createQuery(query);
+        typedQuery.setFirstResult(Math.toIntExact(offset));
+        typedQuery.setMaxResults(limit);
+        return typedQuery.getResultList();
+    }
+
+    private long count(Specification<IpAddressRecord> spec) {
+        final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        final Root<IpAddressRecord> root = query.from(IpAddressRecord.class);
+        query.select(cb.count(root));
+        final Predicate predicate = spec == null ? null : spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static Selection<?>[] selections(Root<IpAddressRecord> root, Class<?> type) {
+        if (!type.isRecord()) {
+            throw new IllegalArgumentException("Projection type must be a record: " + type.getName());
+        }
+        final RecordComponent[] components = type.getRecordComponents();
+        final Selection<?>[] selections = new Selection<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            selections[i] = root.get(components[i].getName());
+        }
+        return selections;
+    }
+}
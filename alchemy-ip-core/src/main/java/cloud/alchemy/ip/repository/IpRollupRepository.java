@@ -0,0 +1,136 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.repository;
+
+import cloud.alchemy.ip.entity.IpRollup;
+import cloud.alchemy.ip.rollup.IpRollupDimension;
+import cloud.alchemy.ip.rollup.IpRollupGranularity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository interface for {@link IpRollup} entity.
+ *
+ * <p>Rollups are written by {@link cloud.alchemy.ip.rollup.IpRollupAggregator};
+ * this repository aggregates them. Every query selects one granularity and
+ * dimension and the buckets starting within {@code [start, end)}.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Repository
+public interface IpRollupRepository extends JpaRepository<IpRollup, Long> {
+
+    /**
+     * JPQL condition selecting the rows of a granularity, dimension and time range.
+     */
+    String ROWS = "r.granularity = :granularity AND r.dimension = :dimension " +
+            "AND r.bucketStart >= :start AND r.bucketStart < :end";
+
+    /**
+     * Sums the weighted record counts of the selected rows.
+     *
+     * @param granularity the bucket granularity
+     * @param dimension   the dimension
+     * @param start       the earliest bucket start (inclusive)
+     * @param end         the latest bucket start (exclusive)
+     * @return the weighted record count
+     */
+    @Query("SELECT COALESCE(SUM(r.hits), 0) FROM IpRollup r WHERE " + ROWS)
+    double sumHits(@Param("granularity") IpRollupGranularity granularity,
+                   @Param("dimension") IpRollupDimension dimension,
+                   @Param("start") Instant start,
+                   @Param("end") Instant end);
+
+    /**
+     * Sums the weighted record counts of one dimension value.
+     *
+     * @param granularity the bucket granularity
+     * @param dimension   the dimension
+     * @param value       the dimension value
+     * @param start       the earliest bucket start (inclusive)
+     * @param end         the latest bucket start (exclusive)
+     * @return the weighted record count
+     */
+    @Query("SELECT COALESCE(SUM(r.hits), 0) FROM IpRollup r WHERE " + ROWS + " AND r.dimensionValue = :value")
+    double sumHitsByValue(@Param("granularity") IpRollupGranularity granularity,
+                          @Param("dimension") IpRollupDimension dimension,
+                          @Param("value") String value,
+                          @Param("start") Instant start,
+                          @Param("end") Instant end);
+
+    /**
+     * Finds the values with the highest weighted record counts.
+     *
+     * @param granularity the bucket granularity
+     * @param dimension   the dimension
+     * @param start       the earliest bucket start (inclusive)
+     * @param end         the latest bucket start (exclusive)
+     * @param pageable    pagination parameters limiting the number of values
+     * @return rows of value and weighted record count, highest count first
+     */
+    @Query("SELECT r.dimensionValue, SUM(r.hits) AS cnt FROM IpRollup r WHERE " + ROWS +
+            " GROUP BY r.dimensionValue ORDER BY cnt DESC")
+    List<Object[]> findTopValues(@Param("granularity") IpRollupGranularity granularity,
+                                 @Param("dimension") IpRollupDimension dimension,
+                                 @Param("start") Instant start,
+                                 @Param("end") Instant end,
+                                 Pageable pageable);
+
+    /**
+     * Finds the values whose weighted record count reaches a threshold.
+     *
+     * @param granularity the bucket granularity
+     * @param dimension   the dimension
+     * @param start       the earliest bucket start (inclusive)
+     * @param end         the latest bucket start (exclusive)
+     * @param threshold   the minimum weighted record count
+     * @param pageable    pagination parameters
+     * @return page of rows of value and weighted record count, highest count first
+     */
+    @Query(value = "SELECT r.dimensionValue, SUM(r.hits) AS cnt FROM IpRollup r WHERE " + ROWS +
+            " GROUP BY r.dimensionValue HAVING SUM(r.hits) >= :threshold ORDER BY cnt DESC",
+            countQuery = "SELECT COUNT(*) FROM (SELECT r.dimensionValue AS v FROM IpRollup r WHERE " + ROWS +
+                    " GROUP BY r.dimensionValue HAVING SUM(r.hits) >= :threshold)")
+    Page<Object[]> findFrequentValues(@Param("granularity") IpRollupGranularity granularity,
+                                      @Param("dimension") IpRollupDimension dimension,
+                                      @Param("start") Instant start,
+                                      @Param("end") Instant end,
+                                      @Param("threshold") double threshold,
+                                      Pageable pageable);
+
+    /**
+     * Sums the weighted record counts of the selected rows per bucket.
+     *
+     * @param granularity the bucket granularity
+     * @param dimension   the dimension
+     * @param start       the earliest bucket start (inclusive)
+     * @param end         the latest bucket start (exclusive)
+     * @return rows of bucket start and weighted record count; empty buckets are omitted
+     */
+    @Query("SELECT r.bucketStart, SUM(r.hits) FROM IpRollup r WHERE " + ROWS + " GROUP BY r.bucketStart")
+    List<Object[]> sumHitsByBucket(@Param("granularity") IpRollupGranularity granularity,
+                                   @Param("dimension") IpRollupDimension dimension,
+                                   @Param("start") Instant start,
+                                   @Param("end") Instant end);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.repository;
+
+import cloud.alchemy.ip.entity.IpSighting;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for {@link IpSighting} entity.
+ *
+ * <p>Sightings are written by {@link cloud.alchemy.ip.sighting.IpSightingAggregator};
+ * this repository is for querying them.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+@Repository
+public interface IpSightingRepository extends JpaRepository<IpSighting, Long> {
+
+    /**
+     * Finds the sighting for an IP address and user.
+     *
+     * @param ipAddress the IP address
+     * @param userId    the user ID, or {@link IpSighting#ANONYMOUS_USER_ID} for anonymous sightings
+     * @return the sighting, if any
+     */
+    Optional<IpSighting> findByIpAddressAndUserId(String ipAddress, String userId);
+
+    /**
+     * Finds all sightings of an IP address, most recent first.
+     *
+     * @param ipAddress the IP address
+     * @return list of sightings
+     */
+    List<IpSighting> findByIpAddressOrderByLastSeenDesc(String ipAddress);
+
+    /**
+     * Finds all sightings for a user, most recent first.
+     *
+     * @param userId the user ID
+     * @return list of sightings
+     */
+    List<IpSighting> findByUserIdOrderByLastSeenDesc(String userId);
+
+    /**
+     * Finds sightings ordered by hit count, highest first.
+     *
+     * @param pageable pagination parameters
+     * @return page of sightings
+     */
+    Page<IpSighting> findAllByOrderByHitCountDesc(Pageable pageable);
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.rollup;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.flush.PeriodicFlusher;
+import cloud.alchemy.ip.service.IpRecordStoredListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Maintains the hourly and daily rollups of stored records incrementally.
+ *
+ * <p>As an {@link IpRecordStoredListener}, it is passed every record the storage services
+ * store. Each record adds one to one row per granularity and dimension: the
+ * bucket total and, when the record has them, its country, city, tag and HTTP method.
+ * Its IP address and user are counted in the daily rows only. Sampled records count once too, since a stored record stands
+ * for a deduplicated IP address and user, not for a number of requests. Like
+ * {@link cloud.alchemy.ip.sighting.IpSightingAggregator}, the counts accumulate in
+ * memory in one {@link DoubleAdder} per row and are flushed to an
+ * {@link IpRollupStore} every {@code flushInterval}, in batched upserts. Rows that
+ * received nothing during an interval are evicted. If a flush fails, the drained
+ * deltas are merged back and retried on the next flush; the store applies a flush
+ * atomically, so none of them has been counted yet.
+ *
+ * <p>When more than {@code maxKeys} rows are pending an early flush is triggered.
+ * A final flush runs on {@link #stop()}.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see IpRollupRebuilder
+ */
+public class IpRollupAggregator extends PeriodicFlusher implements IpRecordStoredListener {
+
+    private static final Logger log = LoggerFactory.getLogger(IpRollupAggregator.class);
+
+    private final IpRollupStore store;
+    private final int maxKeys;
+    private final LongSupplier clock;
+
+    private final Map<Key, DoubleAdder> accumulators = new ConcurrentHashMap<>();
+    private final LongAdder recordedCount = new LongAdder();
+
+    /**
+     * Creates a new aggregator.
+     *
+     * @param store         the store rollups are flushed to
+     * @param flushInterval how often to flush
+     * @param maxKeys       number of pending rows that triggers an early flush
+     * @param threadName    name of the flush thread
+     */
+    public IpRollupAggregator(IpRollupStore store, Duration flushInterval, int maxKeys, String threadName) {
+        this(store, flushInterval, maxKeys, threadName, System::currentTimeMillis);
+    }
+
+    IpRollupAggregator(IpRollupStore store, Duration flushInterval, int maxKeys,
+                       String threadName, LongSupplier clock) {
+        super(flushInterval, threadName);
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be positive");
+        }
+        this.store = store;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a stored record to the rollups of its creation time.
+     *
+     * @param record the stored record
+     */
+    @Override
+    public void record(IpAddressRecord record) {
+        final Instant createdAt = record.getCreatedAt() != null
+                ? record.getCreatedAt() : Instant.ofEpochMilli(clock.getAsLong());
+        expand(record, createdAt, this::add);
+        recordedCount.increment();
+    }
+
+    /**
+     * Writes all accumulated rollups to the store.
+     */
+    @Override
+    public synchronized void flush() {
+        final List<IpRollupDelta> deltas = new ArrayList<>();
+        for (Map.Entry<Key, DoubleAdder> entry : accumulators.entrySet()) {
+            final Key key = entry.getKey();
+            final DoubleAdder accumulator = entry.getValue();
+            double hits = accumulator.sumThenReset();
+            if (hits == 0) {
+                accumulators.remove(key, accumulator);
+                // A record may have raced with the removal; collect it with this flush
+                hits = accumulator.sumThenReset();
+                if (hits == 0) {
+                    continue;
+                }
+            }
+            deltas.add(key.toDelta(hits));
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            store.upsert(deltas);
+            log.debug("Flushed {} IP rollup rows", deltas.size());
+        } catch (Exception e) {
+            log.error("Failed to flush {} IP rollup rows, retrying on next flush", deltas.size(), e);
+            deltas.forEach(delta -> add(Key.of(delta), delta.hits()));
+        }
+    }
+
+    /**
+     * Returns the number of rollup rows currently accumulated.
+     *
+     * @return the pending row count
+     */
+    public int getPendingKeyCount() {
+        return accumulators.size();
+    }
+
+    /**
+     * Returns the number of records added to the rollups.
+     *
+     * @return the recorded record count
+     */
+    public long getRecordedCount() {
+        return recordedCount.sum();
+    }
+
+    /**
+     * Passes every rollup row a record counts towards, with the count it adds, to a consumer.
+     * Shared with {@link IpRollupRebuilder} so both paths produce the same rows.
+     */
+    static void expand(IpAddressRecord record, Instant createdAt, ObjDoubleConsumer<Key> consumer) {
+        for (IpRollupGranularity granularity : IpRollupGranularity.values()) {
+            final Instant bucketStart = granularity.bucketStart(createdAt);
+            consumer.accept(new Key(granularity, bucketStart, IpRollupDimension.TOTAL, ""), 1);
+            expand(granularity, bucketStart, IpRollupDimension.COUNTRY, record.getCountryCode(), consumer);
+            expand(granularity, bucketStart, IpRollupDimension.CITY, record.getCity(), consumer);
+            expand(granularity, bucketStart, IpRollupDimension.TAG, record.getTag(), consumer);
+            expand(granularity, bucketStart, IpRollupDimension.METHOD, record.getHttpMethod(), consumer);
+            if (granularity == IpRollupGranularity.DAY) {
+                // Hourly rows per IP address and user would multiply the table for no reader
+                expand(granularity, bucketStart, IpRollupDimension.IP, record.getIpAddress(), consumer);
+                expand(granularity, bucketStart, IpRollupDimension.USER, record.getUserId(), consumer);
+            }
+        }
+    }
+
+    private static void expand(IpRollupGranularity granularity, Instant bucketStart, IpRollupDimension dimension,
+                               String value, ObjDoubleConsumer<Key> consumer) {
+        if (value != null && !value.isBlank()) {
+            consumer.accept(new Key(granularity, bucketStart, dimension, value.trim()), 1);
+        }
+    }
+
+    private void add(Key key, double hits) {
+        DoubleAdder accumulator = accumulators.get(key);
+        if (accumulator == null) {
+            accumulator = accumulators.computeIfAbsent(key, k -> new DoubleAdder());
+            if (accumulators.size() > maxKeys) {
+                requestEarlyFlush();
+            }
+        }
+        accumulator.add(hits);
+    }
+
+    /**
+     * Identifies one rollup row.
+     */
+    record Key(IpRollupGranularity granularity, Instant bucketStart, IpRollupDimension dimension, String value) {
+
+        static Key of(IpRollupDelta delta) {
+            return new Key(delta.granularity(), delta.bucketStart(), delta.dimension(), delta.value());
+        }
+
+        IpRollupDelta toDelta(double hits) {
+            return new IpRollupDelta(granularity, bucketStart, dimension, value, hits);
+        }
+    }
+}
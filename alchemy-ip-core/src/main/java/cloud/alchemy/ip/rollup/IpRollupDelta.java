@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.rollup;
+
+import java.time.Instant;
+
+/**
+ * Record count accumulated for one rollup row since the last flush.
+ *
+ * @param granularity the bucket width
+ * @param bucketStart the start of the bucket
+ * @param dimension   the dimension
+ * @param value       the dimension value, empty for {@link IpRollupDimension#TOTAL}
+ * @param hits        the number of records
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public record IpRollupDelta(
+        IpRollupGranularity granularity,
+        Instant bucketStart,
+        IpRollupDimension dimension,
+        String value,
+        double hits
+) {
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.rollup;
+
+/**
+ * What a rollup row counts within its bucket.
+ *
+ * <p>{@link #TOTAL} has a single row per bucket. The other dimensions have one row
+ * per distinct value seen in the bucket. {@link #IP} and {@link #USER} rows are only
+ * kept for {@link IpRollupGranularity#DAY} buckets.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public enum IpRollupDimension {
+
+    /**
+     * All records, stored with an empty value.
+     */
+    TOTAL,
+
+    /**
+     * Records per country code.
+     */
+    COUNTRY,
+
+    /**
+     * Records per city.
+     */
+    CITY,
+
+    /**
+     * Records per tag.
+     */
+    TAG,
+
+    /**
+     * Records per HTTP method.
+     */
+    METHOD,
+
+    /**
+     * Records per IP address.
+     */
+    IP,
+
+    /**
+     * Records per user. Anonymous records are not counted.
+     */
+    USER
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.rollup;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.jdbc.JdbcUpsert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Recomputes the rollups of a time range from the records table.
+ *
+ * <p>The range is widened to whole UTC days and rebuilt one day at a time: the
+ * day's rollup rows are deleted, the day's records are streamed and aggregated in
+ * memory, and the result is written with {@link JdbcIpRollupStore#upsert(List)}.
+ * Each day is rebuilt in one transaction, so readers never see its rows deleted but
+ * not yet rewritten, and a day that fails keeps its previous rows. Memory use is
+ * bounded by the number of rollup rows of a single day.
+ *
+ * <p>Use it to fill the rollups for records stored before rollups were enabled, or
+ * to correct them after records were deleted or imported directly. Pending
+ * increments of the {@link IpRollupAggregator} are flushed first, so they are not
+ * added on top of the rebuilt rows. Records stored for a day while that day is being
+ * rebuilt may be counted twice; rebuild ranges that no longer receive records for
+ * exact results.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpRollupRebuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(IpRollupRebuilder.class);
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcIpRollupStore store;
+    private final IpRollupAggregator aggregator;
+    private final TransactionTemplate transaction;
+    private final String selectSql;
+
+    /**
+     * Creates a new rebuilder.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param tableName    the IP address table name
+     * @param store        the rollup store
+     * @param aggregator   the aggregator maintaining the rollups, or {@code null}
+     * @throws IllegalArgumentException if the table name is not a plain SQL identifier
+     */
+    public IpRollupRebuilder(JdbcTemplate jdbcTemplate,
+                             String tableName,
+                             JdbcIpRollupStore store,
+                             IpRollupAggregator aggregator) {
+        if (tableName == null || !TABLE_NAME.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("Invalid table name: " + tableName);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.store = store;
+        this.aggregator = aggregator;
+        this.transaction = JdbcUpsert.transactionTemplate(jdbcTemplate, TransactionDefinition.PROPAGATION_REQUIRED);
+        this.selectSql = "SELECT ip_address, user_id, http_method, tag, country_code, city, created_at" +
+                " FROM " + tableName + " WHERE created_at >= ? AND created_at < ?";
+    }
+
+    /**
+     * Rebuilds the rollups of all days overlapping a time range.
+     *
+     * @param from the start of the range (inclusive)
+     * @param to   the end of the range (exclusive)
+     * @return the number of records aggregated
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public long rebuild(Instant from, Instant to) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        if (aggregator != null) {
+            aggregator.flush();
+        }
+
+        final Instant start = IpRollupGranularity.DAY.bucketStart(from);
+        final Instant end = IpRollupGranularity.DAY.bucketStart(to).equals(to)
+                ? to : IpRollupGranularity.DAY.bucketStart(to).plus(1, ChronoUnit.DAYS);
+        long records = 0;
+        for (Instant day = start; day.isBefore(end); day = day.plus(1, ChronoUnit.DAYS)) {
+            final Instant dayStart = day;
+            records += transaction.execute(status -> rebuildDay(dayStart, dayStart.plus(1, ChronoUnit.DAYS)));
+        }
+        log.info("Rebuilt IP rollups from {} to {} from {} records", start, end, records);
+        return records;
+    }
+
+    private long rebuildDay(Instant dayStart, Instant dayEnd) {
+        final Map<IpRollupAggregator.Key, Double> rows = new HashMap<>();
+        final long[] records = {0};
+        store.delete(dayStart, dayEnd);
+        jdbcTemplate.query(selectSql, rs -> {
+            final IpAddressRecord record = toRecord(rs);
+            IpRollupAggregator.expand(record, record.getCreatedAt(), (key, hits) -> rows.merge(key, hits, Double::sum));
+            records[0]++;
+        }, Timestamp.from(dayStart), Timestamp.from(dayEnd));
+
+        final List<IpRollupDelta> deltas = new ArrayList<>(rows.size());
+        rows.forEach((key, hits) -> deltas.add(key.toDelta(hits)));
+        store.upsert(deltas);
+        log.debug("Rebuilt {} IP rollup rows for {} from {} records", deltas.size(), dayStart, records[0]);
+        return records[0];
+    }
+
+    private static IpAddressRecord toRecord(ResultSet rs) throws SQLException {
+        return IpAddressRecord.builder()
+                .ipAddress(rs.getString("ip_address"))
+                .userId(rs.getString("user_id"))
+                .httpMethod(rs.getString("http_method"))
+                .tag(rs.getString("tag"))
+                .countryCode(rs.getString("country_code"))
+                .city(rs.getString("city"))
+                .createdAt(rs.getTimestamp("created_at").toInstant())
+                .build();
+    }
+}
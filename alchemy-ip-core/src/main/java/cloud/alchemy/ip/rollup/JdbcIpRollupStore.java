@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.rollup;
+
+import cloud.alchemy.ip.jdbc.JdbcUpsert;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * {@link IpRollupStore} that applies deltas with a {@link JdbcUpsert}: a batched
+ * {@code UPDATE} adds each delta to its existing row and a batched {@code INSERT}
+ * creates the missing ones, in batches of at most {@value #BATCH_SIZE} statements.
+ *
+ * <p>All batches of an upsert commit together, so when a flush fails and the
+ * {@link IpRollupAggregator} retries its deltas, none of them has been applied yet.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class JdbcIpRollupStore implements IpRollupStore {
+
+    static final String TABLE_NAME = "ip_rollups";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String UPDATE_SQL = "UPDATE " + TABLE_NAME + " SET hits = hits + ? " +
+            "WHERE granularity = ? AND bucket_start = ? AND dimension = ? AND dimension_value = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE_NAME +
+            " (granularity, bucket_start, dimension, dimension_value, hits) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL = "DELETE FROM " + TABLE_NAME +
+            " WHERE bucket_start >= ? AND bucket_start < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcUpsert<IpRollupDelta> upsert;
+
+    /**
+     * Creates a new store.
+     *
+     * @param jdbcTemplate the JDBC template
+     */
+    public JdbcIpRollupStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.upsert = new JdbcUpsert<>(jdbcTemplate, UPDATE_SQL, INSERT_SQL,
+                JdbcIpRollupStore::bindUpdate, JdbcIpRollupStore::bindInsert, BATCH_SIZE);
+    }
+
+    @Override
+    public void upsert(List<IpRollupDelta> deltas) {
+        upsert.upsert(deltas);
+    }
+
+    /**
+     * Deletes the rollup rows of all granularities whose bucket starts within a range.
+     *
+     * @param from the start of the range (inclusive)
+     * @param to   the end of the range (exclusive)
+     * @return the number of rows deleted
+     */
+    public int delete(Instant from, Instant to) {
+        return jdbcTemplate.update(DELETE_SQL, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    private static void bindUpdate(PreparedStatement ps, IpRollupDelta delta) throws SQLException {
+        ps.setDouble(1, delta.hits());
+        ps.setString(2, delta.granularity().name());
+        ps.setTimestamp(3, Timestamp.from(delta.bucketStart()));
+        ps.setString(4, delta.dimension().name());
+        ps.setString(5, delta.value());
+    }
+
+    private static void bindInsert(PreparedStatement ps, IpRollupDelta delta) throws SQLException {
+        ps.setString(1, delta.granularity().name());
+        ps.setTimestamp(2, Timestamp.from(delta.bucketStart()));
+        ps.setString(3, delta.dimension().name());
+        ps.setString(4, delta.value());
+        ps.setDouble(5, delta.hits());
+    }
+}
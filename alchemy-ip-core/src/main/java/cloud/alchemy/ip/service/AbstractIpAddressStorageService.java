@@ -0,0 +1,347 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.service;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.IpAddressExtractor;
+import cloud.alchemy.ip.sighting.IpSightingAggregator;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Async;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Base class of the storage services, holding what they share: duplicate
+ * handling, request coalescing, sighting counting and stored-record listeners.
+ * Subclasses only provide the duplicate lookups and the writes.
+ *
+ * <p>Duplicate IP addresses (same IP + user combination) are not stored. By default
+ * a combination is stored once ever, checked against the database. With a
+ * {@link WindowedDeduplicator} it is stored once per time window instead, checked
+ * in memory without a database read.
+ *
+ * <p>Concurrent stores of the same IP + user combination - typically the parallel
+ * requests of a single page load racing through the async executor - are coalesced:
+ * one of them performs the duplicate check and save, the others wait for it and
+ * return its result.
+ *
+ * <p>With an {@link IpSightingAggregator}, every capture - including duplicates -
+ * is also counted in the sightings table, once the call storing it has succeeded,
+ * so a capture retried after a failed write is counted once. Every stored record
+ * is passed to the {@link IpRecordStoredListener}s, which maintain the rollups,
+ * sketches and heavy-hitter summaries.
+ *
+ * <p>Subclasses are created with a builder extending {@link Builder}, and can only
+ * be declared in this package.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public abstract class AbstractIpAddressStorageService implements IpAddressStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractIpAddressStorageService.class);
+
+    private final IpAddressExtractor ipAddressExtractor;
+    private final WindowedDeduplicator windowedDeduplicator;
+    private final IpSightingAggregator sightingAggregator;
+    private final List<IpRecordStoredListener> storedListeners;
+    private final SingleFlight<DedupKey, Optional<IpAddressRecord>> inFlightStores = new SingleFlight<>();
+
+    AbstractIpAddressStorageService(Builder<?, ?> builder) {
+        this.ipAddressExtractor = builder.ipAddressExtractor;
+        this.windowedDeduplicator = builder.windowedDeduplicator;
+        this.sightingAggregator = builder.sightingAggregator;
+        this.storedListeners = List.copyOf(builder.storedListeners);
+    }
+
+    @Override
+    public Optional<IpAddressRecord> store(IpAddressRecord record) {
+        validate(record);
+
+        final Optional<IpAddressRecord> saved = inFlightStores.execute(
+                new DedupKey(record.getIpAddress(), record.getUserId()), () -> storeIfNew(record));
+        recordSighting(record);
+        return saved;
+    }
+
+    @Override
+    @Async("ipManagementTaskExecutor")
+    public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+        try {
+            return CompletableFuture.completedFuture(store(record));
+        } catch (Exception e) {
+            log.error("Failed to store IP address record asynchronously", e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public List<IpAddressRecord> storeAll(List<IpAddressRecord> records) {
+        if (records.isEmpty()) {
+            return List.of();
+        }
+        final Map<DedupKey, IpAddressRecord> candidates = new LinkedHashMap<>();
+        for (IpAddressRecord record : records) {
+            validate(record);
+            candidates.putIfAbsent(new DedupKey(record.getIpAddress(), record.getUserId()), record);
+        }
+
+        final List<IpAddressRecord> toSave = new ArrayList<>(candidates.size());
+        if (windowedDeduplicator != null) {
+            candidates.forEach((key, record) -> {
+                if (windowedDeduplicator.tryAdmit(key.ipAddress(), key.userId())) {
+                    toSave.add(record);
+                }
+            });
+        } else {
+            final Set<DedupKey> existing = findExisting(candidates.keySet());
+            candidates.forEach((key, record) -> {
+                if (!existing.contains(key)) {
+                    toSave.add(record);
+                }
+            });
+        }
+        if (toSave.isEmpty()) {
+            records.forEach(this::recordSighting);
+            return List.of();
+        }
+
+        final List<IpAddressRecord> saved;
+        try {
+            saved = insertAll(toSave);
+        } catch (RuntimeException e) {
+            forget(toSave);
+            throw e;
+        }
+        records.forEach(this::recordSighting);
+        saved.forEach(this::recordStored);
+        log.debug("Stored {} of {} IP address records in one batch", saved.size(), records.size());
+        return saved;
+    }
+
+    @Override
+    public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+        if (request == null) {
+            throw new IllegalArgumentException("HttpServletRequest cannot be null");
+        }
+
+        final String ipAddress = ipAddressExtractor.extractIpAddress(request)
+                .orElseThrow(() -> new IllegalStateException("Could not extract IP address from request"));
+
+        return store(IpAddressRecord.builder()
+                .ipAddress(ipAddress)
+                .userId(userId)
+                .userAgent(request.getHeader("User-Agent"))
+                .requestPath(request.getRequestURI())
+                .httpMethod(request.getMethod())
+                .build());
+    }
+
+    @Override
+    @Async("ipManagementTaskExecutor")
+    public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request, String userId) {
+        try {
+            return CompletableFuture.completedFuture(storeFromRequest(request, userId));
+        } catch (Exception e) {
+            log.error("Failed to store IP address record from request asynchronously", e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Returns whether the table already holds the IP + user combination.
+     *
+     * @param ipAddress the IP address
+     * @param userId    the user ID, or {@code null} for anonymous records
+     * @return {@code true} if the combination is stored
+     */
+    abstract boolean exists(String ipAddress, String userId);
+
+    /**
+     * Returns the combinations among {@code keys} the table already holds. The
+     * default checks each with {@link #exists(String, String)}.
+     *
+     * @param keys the combinations to look up
+     * @return the stored combinations
+     */
+    Set<DedupKey> findExisting(Set<DedupKey> keys) {
+        final Set<DedupKey> existing = new HashSet<>();
+        for (DedupKey key : keys) {
+            if (exists(key.ipAddress(), key.userId())) {
+                existing.add(key);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Writes a new record.
+     *
+     * @param record the record
+     * @return the stored record
+     */
+    abstract IpAddressRecord insert(IpAddressRecord record);
+
+    /**
+     * Writes new records, as one batch where the store allows it.
+     *
+     * @param records the records
+     * @return the stored records
+     */
+    abstract List<IpAddressRecord> insertAll(List<IpAddressRecord> records);
+
+    private Optional<IpAddressRecord> storeIfNew(IpAddressRecord record) {
+        if (isDuplicate(record.getIpAddress(), record.getUserId())) {
+            log.debug("Skipping duplicate IP address record: ip={}, userId={}",
+                    record.getIpAddress(), record.getUserId());
+            return Optional.empty();
+        }
+
+        log.debug("Storing IP address record: {}", record);
+        final IpAddressRecord saved;
+        try {
+            saved = insert(record);
+        } catch (RuntimeException e) {
+            forget(List.of(record));
+            throw e;
+        }
+        recordStored(saved);
+        return Optional.of(saved);
+    }
+
+    private boolean isDuplicate(String ipAddress, String userId) {
+        if (windowedDeduplicator != null) {
+            return !windowedDeduplicator.tryAdmit(ipAddress, userId);
+        }
+        return exists(ipAddress, userId);
+    }
+
+    private void forget(List<IpAddressRecord> records) {
+        if (windowedDeduplicator == null) {
+            return;
+        }
+        for (IpAddressRecord record : records) {
+            windowedDeduplicator.forget(record.getIpAddress(), record.getUserId());
+        }
+    }
+
+    private void recordSighting(IpAddressRecord record) {
+        if (sightingAggregator != null) {
+            sightingAggregator.record(record.getIpAddress(), record.getUserId(),
+                    Math.round(record.getSampleWeight()));
+        }
+    }
+
+    private void recordStored(IpAddressRecord record) {
+        for (IpRecordStoredListener listener : storedListeners) {
+            listener.record(record);
+        }
+    }
+
+    private static void validate(IpAddressRecord record) {
+        if (record == null) {
+            throw new IllegalArgumentException("IpAddressRecord cannot be null");
+        }
+        if (record.getIpAddress() == null || record.getIpAddress().isBlank()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+    }
+
+    record DedupKey(String ipAddress, String userId) {
+    }
+
+    /**
+     * Builder of the settings shared by the storage services.
+     *
+     * @param <S> the service type
+     * @param <B> the builder type
+     */
+    public abstract static class Builder<S extends AbstractIpAddressStorageService, B extends Builder<S, B>> {
+
+        private final IpAddressExtractor ipAddressExtractor;
+        private WindowedDeduplicator windowedDeduplicator;
+        private IpSightingAggregator sightingAggregator;
+        private final List<IpRecordStoredListener> storedListeners = new ArrayList<>();
+
+        Builder(IpAddressExtractor ipAddressExtractor) {
+            this.ipAddressExtractor = ipAddressExtractor;
+        }
+
+        /**
+         * Stores each IP + user combination once per window of the deduplicator
+         * instead of once ever.
+         *
+         * @param windowedDeduplicator the windowed deduplicator, or {@code null} to
+         *                             store each IP + user combination once
+         * @return this builder
+         */
+        public B windowedDeduplicator(WindowedDeduplicator windowedDeduplicator) {
+            this.windowedDeduplicator = windowedDeduplicator;
+            return self();
+        }
+
+        /**
+         * Counts every capture, including duplicates, with the aggregator.
+         *
+         * @param sightingAggregator the sighting aggregator, or {@code null} to not
+         *                           count sightings
+         * @return this builder
+         */
+        public B sightingAggregator(IpSightingAggregator sightingAggregator) {
+            this.sightingAggregator = sightingAggregator;
+            return self();
+        }
+
+        /**
+         * Adds a listener notified of every stored record, after the listeners
+         * added before it.
+         *
+         * @param listener the listener
+         * @return this builder
+         * @throws IllegalArgumentException if the listener is {@code null}
+         */
+        public B storedListener(IpRecordStoredListener listener) {
+            if (listener == null) {
+                throw new IllegalArgumentException("IpRecordStoredListener cannot be null");
+            }
+            storedListeners.add(listener);
+            return self();
+        }
+
+        /**
+         * Builds the storage service.
+         *
+         * @return the storage service
+         */
+        public abstract S build();
+
+        @SuppressWarnings("unchecked")
+        private B self() {
+            return (B) this;
+        }
+    }
+}
@@ -18,118 +18,98 @@ package cloud.alchemy.ip.service;
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.extractor.IpAddressExtractor;
 import cloud.alchemy.ip.repository.IpAddressRepository;
-import jakarta.servlet.http.HttpServletRequest;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
 
-import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.List;
 
 /**
  * Default implementation of {@link IpAddressStorageService}.
  *
  * <p>This service handles the persistence of IP address records using
- * the configured repository and IP address extractor.
+ * the configured repository and IP address extractor. Duplicate handling, request
+ * coalescing, sighting counting and stored-record listeners are described in
+ * {@link AbstractIpAddressStorageService}; without a {@link WindowedDeduplicator}
+ * duplicates are checked against the repository.
  *
- * <p>Duplicate IP addresses (same IP + user combination) are not stored.
+ * <p>{@link #storeAll(List)} saves the new records of a batch with a single
+ * {@code saveAll} call, so with application-assigned IDs
+ * ({@code alchemy.ip.id.strategy=tsid}) Hibernate can send them as JDBC batches.
  *
  * <p>This class is immutable and thread-safe.
  *
  * @author Alchemy Team
  * @since 1.0.0
  */
-public class DefaultIpAddressStorageService implements IpAddressStorageService {
-
-    private static final Logger log = LoggerFactory.getLogger(DefaultIpAddressStorageService.class);
+public class DefaultIpAddressStorageService extends AbstractIpAddressStorageService {
 
     private final IpAddressRepository repository;
-    private final IpAddressExtractor ipAddressExtractor;
 
     /**
-     * Creates a new storage service with the specified dependencies.
+     * Creates a new storage service with the specified dependencies that stores
+     * each IP + user combination once.
      *
      * @param repository         the IP address repository
      * @param ipAddressExtractor the IP address extractor
      */
     public DefaultIpAddressStorageService(IpAddressRepository repository,
                                           IpAddressExtractor ipAddressExtractor) {
-        this.repository = repository;
-        this.ipAddressExtractor = ipAddressExtractor;
+        this(builder(repository, ipAddressExtractor));
     }
 
-    @Override
-    public Optional<IpAddressRecord> store(IpAddressRecord record) {
-        if (record == null) {
-            throw new IllegalArgumentException("IpAddressRecord cannot be null");
-        }
-        if (record.getIpAddress() == null || record.getIpAddress().isBlank()) {
-            throw new IllegalArgumentException("IP address cannot be null or empty");
-        }
-
-        // Check for duplicate: same IP + user combination
-        if (isDuplicate(record.getIpAddress(), record.getUserId())) {
-            log.debug("Skipping duplicate IP address record: ip={}, userId={}",
-                    record.getIpAddress(), record.getUserId());
-            return Optional.empty();
-        }
+    private DefaultIpAddressStorageService(Builder builder) {
+        super(builder);
+        this.repository = builder.repository;
+    }
 
-        log.debug("Storing IP address record: {}", record);
-        final IpAddressRecord saved = repository.save(record);
-        log.debug("Successfully stored IP address record with ID: {}", saved.getId());
-        return Optional.of(saved);
+    /**
+     * Returns a builder of a storage service.
+     *
+     * @param repository         the IP address repository
+     * @param ipAddressExtractor the IP address extractor
+     * @return a new builder
+     * @since 1.1.0
+     */
+    public static Builder builder(IpAddressRepository repository, IpAddressExtractor ipAddressExtractor) {
+        return new Builder(repository, ipAddressExtractor);
     }
 
     @Override
-    @Async("ipManagementTaskExecutor")
-    public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
-        try {
-            final Optional<IpAddressRecord> saved = store(record);
-            return CompletableFuture.completedFuture(saved);
-        } catch (Exception e) {
-            log.error("Failed to store IP address record asynchronously", e);
-            return CompletableFuture.failedFuture(e);
+    boolean exists(String ipAddress, String userId) {
+        if (userId == null) {
+            // For anonymous users, check if IP already exists without user
+            return repository.findByIpAddress(ipAddress).stream()
+                    .anyMatch(record -> record.getUserId() == null);
         }
+        return repository.existsByIpAddressAndUserId(ipAddress, userId);
     }
 
     @Override
-    public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
-        if (request == null) {
-            throw new IllegalArgumentException("HttpServletRequest cannot be null");
-        }
+    IpAddressRecord insert(IpAddressRecord record) {
+        return repository.save(record);
+    }
 
-        final String ipAddress = ipAddressExtractor.extractIpAddress(request)
-                .orElseThrow(() -> new IllegalStateException("Could not extract IP address from request"));
+    @Override
+    List<IpAddressRecord> insertAll(List<IpAddressRecord> records) {
+        return repository.saveAll(records);
+    }
 
-        final IpAddressRecord record = IpAddressRecord.builder()
-                .ipAddress(ipAddress)
-                .userId(userId)
-                .userAgent(request.getHeader("User-Agent"))
-                .requestPath(request.getRequestURI())
-                .httpMethod(request.getMethod())
-                .build();
+    /**
+     * Builder of {@link DefaultIpAddressStorageService}.
+     *
+     * @since 1.1.0
+     */
+    public static final class Builder
+            extends AbstractIpAddressStorageService.Builder<DefaultIpAddressStorageService, Builder> {
 
-        return store(record);
-    }
+        private final IpAddressRepository repository;
 
-    @Override
-    @Async("ipManagementTaskExecutor")
-    public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request, String userId) {
-        try {
-            final Optional<IpAddressRecord> saved = storeFromRequest(request, userId);
-            return CompletableFuture.completedFuture(saved);
-        } catch (Exception e) {
-            log.error("Failed to store IP address record from request asynchronously", e);
-            return CompletableFuture.failedFuture(e);
+        private Builder(IpAddressRepository repository, IpAddressExtractor ipAddressExtractor) {
+            super(ipAddressExtractor);
+            this.repository = repository;
         }
-    }
 
-    private boolean isDuplicate(String ipAddress, String userId) {
-        if (userId == null) {
-            // For anonymous users, check if IP already exists without user
-            return repository.findByIpAddress(ipAddress).stream()
-                    .anyMatch(record -> record.getUserId() == null);
+        @Override
+        public DefaultIpAddressStorageService build() {
+            return new DefaultIpAddressStorageService(this);
         }
-        return repository.existsByIpAddressAndUserId(ipAddress, userId);
     }
 }
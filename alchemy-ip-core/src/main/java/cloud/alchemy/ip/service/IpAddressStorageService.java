@@ -17,7 +17,10 @@ package cloud.alchemy.ip.service;
 
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -82,6 +85,25 @@ public interface IpAddressStorageService {
      */
     CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record);
 
+    /**
+     * Stores a batch of IP address records synchronously.
+     *
+     * <p>Used by {@link cloud.alchemy.ip.writer.IpRecordWriter} to flush buffered
+     * captures. Duplicates are skipped exactly as in {@link #store(IpAddressRecord)}.
+     * The default implementation stores the records one by one; implementations
+     * backed by a batching-capable store should override it.
+     *
+     * @param records the records to store
+     * @return the records that were stored, excluding skipped duplicates
+     */
+    default List<IpAddressRecord> storeAll(List<IpAddressRecord> records) {
+        final List<IpAddressRecord> stored = new ArrayList<>(records.size());
+        for (IpAddressRecord record : records) {
+            store(record).ifPresent(stored::add);
+        }
+        return stored;
+    }
+
     /**
      * Creates and stores an IP address record from the HTTP request.
      *
@@ -106,4 +128,18 @@ public interface IpAddressStorageService {
      *         or empty if duplicate
      */
     CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request, String userId);
+
+    /**
+     * Returns whether a storage failure would recur however often the same records
+     * are retried: an {@link IllegalArgumentException} for an invalid record, or a
+     * {@link DataIntegrityViolationException} for a record the database rejects.
+     * Such failures say nothing about the database's health.
+     *
+     * @param error the failure
+     * @return {@code true} if retrying the same records cannot succeed
+     * @since 1.1.0
+     */
+    static boolean isPermanentFailure(Throwable error) {
+        return error instanceof IllegalArgumentException || error instanceof DataIntegrityViolationException;
+    }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.service;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+
+/**
+ * Callback notified of every record a storage service has newly stored.
+ *
+ * <p>Duplicates skipped by the service are not passed on; writes that fail are
+ * not either. Storage services call their listeners on the storing thread, after
+ * the write has succeeded, so implementations should only buffer the record.
+ *
+ * <p>The rollup aggregator, the distinct counter and the heavy-hitter tracker are
+ * listeners; the auto-configuration registers every listener bean with the
+ * storage service.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see AbstractIpAddressStorageService.Builder#storedListener(IpRecordStoredListener)
+ */
+@FunctionalInterface
+public interface IpRecordStoredListener {
+
+    /**
+     * Called with a record that has just been stored.
+     *
+     * @param record the stored record
+     */
+    void record(IpAddressRecord record);
+}
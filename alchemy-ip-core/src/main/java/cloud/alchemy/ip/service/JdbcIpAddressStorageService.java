@@ -0,0 +1,243 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.service;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.IpAddressExtractor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * {@link IpAddressStorageService} that writes with plain JDBC instead of JPA.
+ *
+ * <p>Selected with {@code alchemy.ip.storage-mode=jdbc}. Records are inserted with
+ * prepared statements, bypassing Hibernate's persistence context and its
+ * {@code IDENTITY} key retrieval, so {@link #storeAll(List)} sends a whole batch
+ * with one {@link JdbcTemplate#batchUpdate} round trip. Duplicate checks for a batch
+ * are likewise made with one query per 500 distinct IP addresses rather than one
+ * per record.
+ *
+ * <p>Duplicate handling, request coalescing, sighting counting and stored-record
+ * listeners are described in {@link AbstractIpAddressStorageService}. When built
+ * with an {@link Builder#idGenerator(LongSupplier) ID generator} the
+ * service writes the {@code id} column itself and returned records carry their ID;
+ * otherwise the database assigns it and returned records carry none, since batched
+ * key retrieval is not portable across drivers.
+ *
+ * <p>The SQL for a table is built once and shared by every instance writing to it.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class JdbcIpAddressStorageService extends AbstractIpAddressStorageService {
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+    private static final Map<String, Sql> SQL_BY_TABLE = new ConcurrentHashMap<>();
+    private static final int MAX_IN_LIST = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Sql sql;
+    private final LongSupplier idGenerator;
+
+    private JdbcIpAddressStorageService(Builder builder) {
+        super(builder);
+        if (builder.tableName == null || !TABLE_NAME.matcher(builder.tableName).matches()) {
+            throw new IllegalArgumentException("Invalid table name: " + builder.tableName);
+        }
+        this.jdbcTemplate = builder.jdbcTemplate;
+        this.sql = SQL_BY_TABLE.computeIfAbsent(builder.tableName, Sql::forTable);
+        this.idGenerator = builder.idGenerator;
+    }
+
+    /**
+     * Returns a builder of a storage service.
+     *
+     * @param jdbcTemplate       the JDBC template
+     * @param tableName          the IP address table name
+     * @param ipAddressExtractor the IP address extractor
+     * @return a new builder
+     */
+    public static Builder builder(JdbcTemplate jdbcTemplate, String tableName,
+                                  IpAddressExtractor ipAddressExtractor) {
+        return new Builder(jdbcTemplate, tableName, ipAddressExtractor);
+    }
+
+    @Override
+    boolean exists(String ipAddress, String userId) {
+        final List<Integer> found = userId == null
+                ? jdbcTemplate.queryForList(sql.existsAnonymous(), Integer.class, ipAddress)
+                : jdbcTemplate.queryForList(sql.existsForUser(), Integer.class, ipAddress, userId);
+        return !found.isEmpty();
+    }
+
+    @Override
+    IpAddressRecord insert(IpAddressRecord record) {
+        final IpAddressRecord stamped = stamp(record);
+        jdbcTemplate.update(insertSql(), ps -> bindInsert(ps, stamped));
+        return stamped;
+    }
+
+    @Override
+    List<IpAddressRecord> insertAll(List<IpAddressRecord> records) {
+        final List<IpAddressRecord> stamped = stamp(records);
+        jdbcTemplate.batchUpdate(insertSql(), stamped, stamped.size(), this::bindInsert);
+        return stamped;
+    }
+
+    @Override
+    Set<DedupKey> findExisting(Set<DedupKey> keys) {
+        final List<String> ipAddresses = new ArrayList<>(new LinkedHashSet<>(
+                keys.stream().map(DedupKey::ipAddress).toList()));
+        final Set<DedupKey> existing = new HashSet<>();
+        for (int from = 0; from < ipAddresses.size(); from += MAX_IN_LIST) {
+            final List<String> chunk = ipAddresses.subList(from, Math.min(from + MAX_IN_LIST, ipAddresses.size()));
+            final String query = sql.selectKeysPrefix()
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            jdbcTemplate.query(query, rs -> {
+                existing.add(new DedupKey(rs.getString(1), rs.getString(2)));
+            }, chunk.toArray());
+        }
+        return existing;
+    }
+
+    private String insertSql() {
+        return idGenerator != null ? sql.insertWithId() : sql.insert();
+    }
+
+    private List<IpAddressRecord> stamp(List<IpAddressRecord> records) {
+        final List<IpAddressRecord> stamped = new ArrayList<>(records.size());
+        for (IpAddressRecord record : records) {
+            stamped.add(stamp(record));
+        }
+        return stamped;
+    }
+
+    /**
+     * Sets the creation time the entity's {@code @PrePersist} callback would have set,
+     * and the ID when the service assigns IDs.
+     */
+    private IpAddressRecord stamp(IpAddressRecord record) {
+        if (idGenerator == null) {
+            return record.getCreatedAt() != null ? record : record.toBuilder().createdAt(Instant.now()).build();
+        }
+        final IpAddressRecord.Builder builder = record.toBuilder().id(idGenerator.getAsLong());
+        if (record.getCreatedAt() == null) {
+            builder.createdAt(Instant.now());
+        }
+        return builder.build();
+    }
+
+    private void bindInsert(PreparedStatement ps, IpAddressRecord record) throws SQLException {
+        ps.setString(1, record.getIpAddress());
+        ps.setString(2, record.getUserId());
+        ps.setString(3, record.getUserAgent());
+        ps.setString(4, record.getRequestPath());
+        ps.setString(5, record.getHttpMethod());
+        ps.setString(6, record.getTag());
+        ps.setString(7, record.getCountryCode());
+        ps.setString(8, record.getCity());
+        ps.setString(9, record.getRegion());
+        setDouble(ps, 10, record.getLatitude());
+        setDouble(ps, 11, record.getLongitude());
+        ps.setString(12, record.getSourceHeader());
+        setDouble(ps, 13, record.getSampleRate());
+        ps.setTimestamp(14, Timestamp.from(record.getCreatedAt()));
+        ps.setString(15, record.getMetadata());
+        if (idGenerator != null) {
+            ps.setLong(16, record.getId());
+        }
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+
+    /**
+     * Builder of {@link JdbcIpAddressStorageService}.
+     */
+    public static final class Builder
+            extends AbstractIpAddressStorageService.Builder<JdbcIpAddressStorageService, Builder> {
+
+        private final JdbcTemplate jdbcTemplate;
+        private final String tableName;
+        private LongSupplier idGenerator;
+
+        private Builder(JdbcTemplate jdbcTemplate, String tableName, IpAddressExtractor ipAddressExtractor) {
+            super(ipAddressExtractor);
+            this.jdbcTemplate = jdbcTemplate;
+            this.tableName = tableName;
+        }
+
+        /**
+         * Makes the service write the {@code id} column itself.
+         *
+         * @param idGenerator supplies the ID of each inserted record, or
+         *                    {@code null} to let the database assign it
+         * @return this builder
+         */
+        public Builder idGenerator(LongSupplier idGenerator) {
+            this.idGenerator = idGenerator;
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws IllegalArgumentException if the table name is not a plain SQL identifier
+         */
+        @Override
+        public JdbcIpAddressStorageService build() {
+            return new JdbcIpAddressStorageService(this);
+        }
+    }
+
+    private record Sql(String insert, String insertWithId, String existsForUser, String existsAnonymous,
+                       String selectKeysPrefix) {
+
+        private static final String COLUMNS = "ip_address, user_id, user_agent, request_path, http_method, tag, "
+                + "country_code, city, region, latitude, longitude, source_header, sample_rate, created_at, metadata";
+
+        static Sql forTable(String table) {
+            return new Sql(
+                    "INSERT INTO " + table + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    "INSERT INTO " + table + " (" + COLUMNS + ", id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    "SELECT 1 FROM " + table + " WHERE ip_address = ? AND user_id = ?",
+                    "SELECT 1 FROM " + table + " WHERE ip_address = ? AND user_id IS NULL",
+                    "SELECT DISTINCT ip_address, user_id FROM " + table + " WHERE ip_address IN (");
+        }
+    }
+}
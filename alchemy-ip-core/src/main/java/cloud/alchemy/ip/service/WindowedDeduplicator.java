@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory deduplication that admits at most one record per IP + user
+ * combination per time window.
+ *
+ * <p>Time is divided into fixed windows of the configured length. The set holds
+ * the window in which each (ip, user) key was last admitted; a key is admitted
+ * again once a new window has started. Checking a key never touches the database.
+ *
+ * <p>Memory is bounded: keys from past windows are swept out once per window, and
+ * when the set holds {@code maxKeys} keys, further new keys are admitted without
+ * being tracked. The bound trades a few extra rows for never growing without limit.
+ *
+ * <p>The state is local to this instance; with several application instances,
+ * each may store one record per key and window.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class WindowedDeduplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(WindowedDeduplicator.class);
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final ConcurrentHashMap<String, Long> admittedWindows = new ConcurrentHashMap<>();
+    private final AtomicLong sweptWindow = new AtomicLong(Long.MIN_VALUE);
+    private final long windowMillis;
+    private final int maxKeys;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a new deduplicator.
+     *
+     * @param window  the window length
+     * @param maxKeys the maximum number of tracked keys
+     */
+    public WindowedDeduplicator(Duration window, int maxKeys) {
+        this(window, maxKeys, System::currentTimeMillis);
+    }
+
+    WindowedDeduplicator(Duration window, int maxKeys, LongSupplier clock) {
+        if (window.isNegative() || window.isZero() || maxKeys < 1) {
+            throw new IllegalArgumentException("window and maxKeys must be positive");
+        }
+        this.windowMillis = window.toMillis();
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Admits the key for the current window.
+     *
+     * @param ipAddress the IP address
+     * @param userId    the user ID (may be null)
+     * @return {@code true} if this is the first occurrence of the key in the
+     *         current window and a record should be stored
+     */
+    public boolean tryAdmit(String ipAddress, String userId) {
+        final long window = Math.floorDiv(clock.getAsLong(), windowMillis);
+        sweepIfNeeded(window);
+
+        final String key = key(ipAddress, userId);
+        final Long current = window;
+        while (true) {
+            final Long previous = admittedWindows.get(key);
+            if (previous == null) {
+                if (admittedWindows.size() >= maxKeys) {
+                    log.debug("Dedup window full ({} keys), admitting untracked key", maxKeys);
+                    return true;
+                }
+                if (admittedWindows.putIfAbsent(key, current) == null) {
+                    return true;
+                }
+            } else if (previous >= window) {
+                return false;
+            } else if (admittedWindows.replace(key, previous, current)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Forgets the key so that it is admitted again in the current window,
+     * e.g. because storing the admitted record failed.
+     *
+     * @param ipAddress the IP address
+     * @param userId    the user ID (may be null)
+     */
+    public void forget(String ipAddress, String userId) {
+        admittedWindows.remove(key(ipAddress, userId));
+    }
+
+    /**
+     * Returns the number of tracked keys.
+     *
+     * @return the tracked key count
+     */
+    public int size() {
+        return admittedWindows.size();
+    }
+
+    private void sweepIfNeeded(long window) {
+        final long swept = sweptWindow.get();
+        if (swept < window && sweptWindow.compareAndSet(swept, window)) {
+            final int before = admittedWindows.size();
+            admittedWindows.values().removeIf(admitted -> admitted < window);
+            log.debug("Swept dedup window: {} -> {} keys", before, admittedWindows.size());
+        }
+    }
+
+    private static String key(String ipAddress, String userId) {
+        return userId == null ? ipAddress : ipAddress + KEY_SEPARATOR + userId;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sighting;
+
+import cloud.alchemy.ip.entity.IpSighting;
+import cloud.alchemy.ip.flush.PeriodicFlusher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts captures per IP + user in memory and periodically flushes the totals to
+ * an {@link IpSightingStore}.
+ *
+ * <p>{@link #record(String, String, long)} touches only the accumulator of its own
+ * key: a {@link LongAdder} for the hit count, so concurrent hits on a hot key do not
+ * contend on a single counter, and two {@link AtomicLong}s for the first and last
+ * timestamps. No database access happens on the capture path.
+ *
+ * <p>Every {@code flushInterval} the accumulated hits are drained with
+ * {@link LongAdder#sumThenReset()} and written in one batch. Keys that received no
+ * hits during an interval are evicted. Eviction re-checks the counter after removing
+ * the entry, so a hit racing with eviction is normally still flushed; a hit landing
+ * in the few instructions between that re-check and the end of the flush can
+ * be lost. If a flush fails, the drained deltas are merged back and retried on
+ * the next flush; the store applies a flush atomically, so none of them has been
+ * counted yet.
+ *
+ * <p>When more than {@code maxKeys} keys are pending an early flush is triggered.
+ * A final flush runs on {@link #stop()}.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpSightingAggregator extends PeriodicFlusher {
+
+    private static final Logger log = LoggerFactory.getLogger(IpSightingAggregator.class);
+
+    private final IpSightingStore store;
+    private final int maxKeys;
+    private final LongSupplier clock;
+
+    private final Map<Key, Accumulator> accumulators = new ConcurrentHashMap<>();
+    private final LongAdder flushedHits = new LongAdder();
+
+    /**
+     * Creates a new aggregator.
+     *
+     * @param store         the store totals are flushed to
+     * @param flushInterval how often to flush
+     * @param maxKeys       number of pending keys that triggers an early flush
+     * @param threadName    name of the flush thread
+     */
+    public IpSightingAggregator(IpSightingStore store, Duration flushInterval, int maxKeys, String threadName) {
+        this(store, flushInterval, maxKeys, threadName, System::currentTimeMillis);
+    }
+
+    IpSightingAggregator(IpSightingStore store, Duration flushInterval, int maxKeys,
+                         String threadName, LongSupplier clock) {
+        super(flushInterval, threadName);
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be positive");
+        }
+        this.store = store;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Counts hits for an IP + user combination.
+     *
+     * @param ipAddress the IP address
+     * @param userId    the user ID, or {@code null} for anonymous
+     * @param hits      the number of hits to add
+     */
+    public void record(String ipAddress, String userId, long hits) {
+        if (hits <= 0) {
+            return;
+        }
+        final Key key = new Key(ipAddress, userId == null ? IpSighting.ANONYMOUS_USER_ID : userId);
+        Accumulator accumulator = accumulators.get(key);
+        if (accumulator == null) {
+            accumulator = accumulators.computeIfAbsent(key, k -> new Accumulator());
+            if (accumulators.size() > maxKeys) {
+                requestEarlyFlush();
+            }
+        }
+        accumulator.add(hits, clock.getAsLong());
+    }
+
+    /**
+     * Writes all accumulated hits to the store.
+     */
+    @Override
+    public synchronized void flush() {
+        final List<IpSightingDelta> deltas = new ArrayList<>();
+        for (Map.Entry<Key, Accumulator> entry : accumulators.entrySet()) {
+            final Key key = entry.getKey();
+            final Accumulator accumulator = entry.getValue();
+            long hits = accumulator.hits.sumThenReset();
+            if (hits == 0) {
+                accumulators.remove(key, accumulator);
+                // A hit may have raced with the removal; collect it with this flush
+                hits = accumulator.hits.sumThenReset();
+                if (hits == 0) {
+                    continue;
+                }
+            }
+            deltas.add(accumulator.drain(key, hits, clock.getAsLong()));
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            store.upsert(deltas);
+            deltas.forEach(delta -> flushedHits.add(delta.hits()));
+            log.debug("Flushed {} IP sightings", deltas.size());
+        } catch (Exception e) {
+            log.error("Failed to flush {} IP sightings, retrying on next flush", deltas.size(), e);
+            deltas.forEach(this::merge);
+        }
+    }
+
+    /**
+     * Returns the number of IP + user keys currently accumulated.
+     *
+     * @return the pending key count
+     */
+    public int getPendingKeyCount() {
+        return accumulators.size();
+    }
+
+    /**
+     * Returns the number of hits successfully flushed to the store.
+     *
+     * @return the flushed hit count
+     */
+    public long getFlushedHitCount() {
+        return flushedHits.sum();
+    }
+
+    private void merge(IpSightingDelta delta) {
+        final Accumulator accumulator = accumulators.computeIfAbsent(
+                new Key(delta.ipAddress(), delta.userId()), k -> new Accumulator());
+        accumulator.add(delta.hits(), delta.firstSeen().toEpochMilli());
+        accumulator.add(0, delta.lastSeen().toEpochMilli());
+    }
+
+    private record Key(String ipAddress, String userId) {
+    }
+
+    private static final class Accumulator {
+        private final LongAdder hits = new LongAdder();
+        private final AtomicLong firstSeen = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong lastSeen = new AtomicLong(Long.MIN_VALUE);
+
+        void add(long count, long now) {
+            hits.add(count);
+            // Plain reads first: on a hot key the timestamps rarely need a CAS
+            if (now < firstSeen.get()) {
+                firstSeen.accumulateAndGet(now, Math::min);
+            }
+            if (now > lastSeen.get()) {
+                lastSeen.accumulateAndGet(now, Math::max);
+            }
+        }
+
+        IpSightingDelta drain(Key key, long hits, long now) {
+            long last = lastSeen.getAndSet(Long.MIN_VALUE);
+            long first = firstSeen.getAndSet(Long.MAX_VALUE);
+            if (last == Long.MIN_VALUE) {
+                last = now;
+            }
+            if (first == Long.MAX_VALUE || first > last) {
+                first = last;
+            }
+            return new IpSightingDelta(key.ipAddress(), key.userId(),
+                    Instant.ofEpochMilli(first), Instant.ofEpochMilli(last), hits);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sighting;
+
+import java.time.Instant;
+
+/**
+ * Hits accumulated for one IP + user combination since the last flush.
+ *
+ * @param ipAddress the IP address
+ * @param userId    the user ID, {@link cloud.alchemy.ip.entity.IpSighting#ANONYMOUS_USER_ID} for anonymous
+ * @param firstSeen the earliest hit in this delta
+ * @param lastSeen  the latest hit in this delta
+ * @param hits      the number of hits
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public record IpSightingDelta(
+        String ipAddress,
+        String userId,
+        Instant firstSeen,
+        Instant lastSeen,
+        long hits
+) {
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sighting;
+
+import cloud.alchemy.ip.jdbc.JdbcUpsert;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * {@link IpSightingStore} that applies deltas with a {@link JdbcUpsert}: a batched
+ * {@code UPDATE} adds each delta to its existing row and a batched {@code INSERT}
+ * creates the missing ones, in batches of at most {@value #BATCH_SIZE} statements.
+ *
+ * <p>All batches of an upsert commit together, so when a flush fails and the
+ * {@link IpSightingAggregator} retries its deltas, none of them has been applied yet.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class JdbcIpSightingStore implements IpSightingStore {
+
+    static final String TABLE_NAME = "ip_sightings";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String UPDATE_SQL = "UPDATE " + TABLE_NAME + " SET " +
+            "hit_count = hit_count + ?, " +
+            "first_seen = CASE WHEN first_seen > ? THEN ? ELSE first_seen END, " +
+            "last_seen = CASE WHEN last_seen < ? THEN ? ELSE last_seen END " +
+            "WHERE ip_address = ? AND user_id = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE_NAME +
+            " (ip_address, user_id, first_seen, last_seen, hit_count) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcUpsert<IpSightingDelta> upsert;
+
+    /**
+     * Creates a new store.
+     *
+     * @param jdbcTemplate the JDBC template
+     */
+    public JdbcIpSightingStore(JdbcTemplate jdbcTemplate) {
+        this.upsert = new JdbcUpsert<>(jdbcTemplate, UPDATE_SQL, INSERT_SQL,
+                JdbcIpSightingStore::bindUpdate, JdbcIpSightingStore::bindInsert, BATCH_SIZE);
+    }
+
+    @Override
+    public void upsert(List<IpSightingDelta> deltas) {
+        upsert.upsert(deltas);
+    }
+    private static void bindUpdate(PreparedStatement ps, IpSightingDelta delta) throws SQLException {
+        final Timestamp firstSeen = Timestamp.from(delta.firstSeen());
+        final Timestamp lastSeen = Timestamp.from(delta.lastSeen());
+        ps.setLong(1, delta.hits());
+        ps.setTimestamp(2, firstSeen);
+        ps.setTimestamp(3, firstSeen);
+        ps.setTimestamp(4, lastSeen);
+        ps.setTimestamp(5, lastSeen);
+        ps.setString(6, delta.ipAddress());
+        ps.setString(7, delta.userId());
+    }
+
+    private static void bindInsert(PreparedStatement ps, IpSightingDelta delta) throws SQLException {
+        ps.setString(1, delta.ipAddress());
+        ps.setString(2, delta.userId());
+        ps.setTimestamp(3, Timestamp.from(delta.firstSeen()));
+        ps.setTimestamp(4, Timestamp.from(delta.lastSeen()));
+        ps.setLong(5, delta.hits());
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values added to it.
+ *
+ * <p>A sketch with precision {@code p} has {@code m = 2^p} registers and estimates
+ * with a relative standard error of about {@code 1.04 / sqrt(m)}: 0.8% for
+ * {@code p = 14}, in at most 12 KiB. Sketches are mergeable: the union of two
+ * sketches estimates the distinct values added to either, and adding a value twice
+ * or merging a sketch twice changes nothing.
+ *
+ * <p>Small sketches are kept sparse, as a sorted list of the registers that are set,
+ * and switch to a dense register array once that list would take more than half its
+ * size. {@link #toBytes()} encodes sparse sketches with 3 bytes per set register and
+ * dense sketches with 6 bits per register.
+ *
+ * <p>Values are hashed with a fixed 64-bit hash, so sketches built by different
+ * instances and releases can be merged.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class HyperLogLog {
+
+    /**
+     * Smallest supported precision.
+     */
+    public static final int MIN_PRECISION = 4;
+
+    /**
+     * Largest supported precision.
+     */
+    public static final int MAX_PRECISION = 18;
+
+    private static final byte DENSE = 1;
+    private static final byte SPARSE = 2;
+    private static final int HEADER_BYTES = 2;
+    private static final int REGISTER_BITS = 6;
+    private static final int RANK_MASK = (1 << REGISTER_BITS) - 1;
+
+    private final int precision;
+    private byte[] registers;
+    private int[] sparse;
+    private int sparseSize;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision the number of index bits, between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.sparse = new int[4];
+    }
+
+    /**
+     * Returns the smallest precision whose relative standard error does not exceed a bound.
+     *
+     * @param relativeError the relative standard error, for example {@code 0.01}
+     * @return the precision, at most {@link #MAX_PRECISION}
+     * @throws IllegalArgumentException if the error is not between 0 and 1
+     */
+    public static int precisionFor(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("relativeError must be between 0 and 1");
+        }
+        final double registers = Math.pow(1.04 / relativeError, 2);
+        final int precision = 64 - Long.numberOfLeadingZeros((long) Math.ceil(registers) - 1);
+        return Math.min(MAX_PRECISION, Math.max(MIN_PRECISION, precision));
+    }
+
+    /**
+     * Returns the relative standard error of sketches with a precision.
+     *
+     * @param precision the number of index bits
+     * @return the relative standard error
+     */
+    public static double relativeError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    /**
+     * Returns the 64-bit hash a value is added with.
+     *
+     * @param value the value
+     * @return the hash
+     */
+    public static long hash(String value) {
+        // FNV-1a over the UTF-16 code units, finished with the MurmurHash3 mixer
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value
+     */
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Adds a value by its {@link #hash(String)}.
+     *
+     * @param hash the hash of the value
+     */
+    public void addHash(long hash) {
+        final int index = (int) (hash >>> (64 - precision));
+        // The guard bit caps the rank at 64 - p + 1, which fits in a register
+        final int rank = Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1;
+        set(index, rank);
+    }
+
+    /**
+     * Adds every value of another sketch to this one.
+     *
+     * @param other a sketch with the same or a higher precision; a higher precision is
+     *              folded down to this sketch's precision
+     * @return this sketch
+     * @throws IllegalArgumentException if the other sketch has a lower precision
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision < precision) {
+            throw new IllegalArgumentException(
+                    "Cannot merge a sketch of precision " + other.precision + " into precision " + precision);
+        }
+        final int shift = other.precision - precision;
+        if (other.registers != null) {
+            for (int index = 0; index < other.registers.length; index++) {
+                if (other.registers[index] != 0) {
+                    setFolded(index, other.registers[index], shift);
+                }
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                setFolded(other.sparse[i] >>> REGISTER_BITS, other.sparse[i] & RANK_MASK, shift);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the union of two sketches as a new sketch, leaving both unchanged.
+     *
+     * @param first  a sketch
+     * @param second another sketch
+     * @return a sketch with the lower of both precisions
+     */
+    public static HyperLogLog union(HyperLogLog first, HyperLogLog second) {
+        return first.precision <= second.precision
+                ? first.copy().merge(second) : second.copy().merge(first);
+    }
+
+    /**
+     * Returns a copy of this sketch.
+     *
+     * @return the copy
+     */
+    public HyperLogLog copy() {
+        final HyperLogLog copy = new HyperLogLog(precision);
+        if (registers != null) {
+            copy.registers = registers.clone();
+            copy.sparse = null;
+        } else {
+            copy.sparse = Arrays.copyOf(sparse, Math.max(4, sparseSize));
+            copy.sparseSize = sparseSize;
+        }
+        return copy;
+    }
+
+    /**
+     * Estimates the number of distinct values added.
+     *
+     * @return the estimate
+     */
+    public long estimate() {
+        final int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+        if (registers != null) {
+            for (byte register : registers) {
+                sum += Math.scalb(1.0, -register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        } else {
+            zeros = m - sparseSize;
+            sum = zeros;
+            for (int i = 0; i < sparseSize; i++) {
+                sum += Math.scalb(1.0, -(sparse[i] & RANK_MASK));
+            }
+        }
+        final double raw = alpha(m) * m * m / sum;
+        if (raw <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(raw);
+    }
+
+    /**
+     * Returns whether no value was added.
+     *
+     * @return {@code true} if the sketch is empty
+     */
+    public boolean isEmpty() {
+        if (registers == null) {
+            return sparseSize == 0;
+        }
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the precision.
+     *
+     * @return the number of index bits
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the relative standard error of the estimates of this sketch.
+     *
+     * @return the relative standard error
+     */
+    public double getRelativeError() {
+        return relativeError(precision);
+    }
+
+    /**
+     * Encodes the sketch.
+     *
+     * @return the encoded sketch
+     * @see #fromBytes(byte[])
+     */
+    public byte[] toBytes() {
+        if (registers == null) {
+            final byte[] bytes = new byte[HEADER_BYTES + 4 + 3 * sparseSize];
+            bytes[0] = SPARSE;
+            bytes[1] = (byte) precision;
+            writeInt(bytes, HEADER_BYTES, sparseSize);
+            for (int i = 0; i < sparseSize; i++) {
+                final int offset = HEADER_BYTES + 4 + 3 * i;
+                bytes[offset] = (byte) (sparse[i] >>> 16);
+                bytes[offset + 1] = (byte) (sparse[i] >>> 8);
+                bytes[offset + 2] = (byte) sparse[i];
+            }
+            return bytes;
+        }
+        final byte[] bytes = new byte[HEADER_BYTES + registers.length * REGISTER_BITS / 8];
+        bytes[0] = DENSE;
+        bytes[1] = (byte) precision;
+        long buffer = 0;
+        int bits = 0;
+        int offset = HEADER_BYTES;
+        for (byte register : registers) {
+            buffer = buffer << REGISTER_BITS | register;
+            bits += REGISTER_BITS;
+            while (bits >= 8) {
+                bits -= 8;
+                bytes[offset++] = (byte) (buffer >>> bits);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Decodes a sketch encoded with {@link #toBytes()}.
+     *
+     * @param bytes the encoded sketch
+     * @return the sketch
+     * @throws IllegalArgumentException if the bytes are not an encoded sketch
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Truncated HyperLogLog sketch");
+        }
+        final HyperLogLog sketch = new HyperLogLog(bytes[1]);
+        final int m = 1 << sketch.precision;
+        if (bytes[0] == SPARSE) {
+            if (bytes.length < HEADER_BYTES + 4) {
+                throw new IllegalArgumentException("Truncated HyperLogLog sketch");
+            }
+            final int size = readInt(bytes, HEADER_BYTES);
+            if (size < 0 || size > m || bytes.length != HEADER_BYTES + 4 + 3 * size) {
+                throw new IllegalArgumentException("Malformed sparse HyperLogLog sketch");
+            }
+            for (int i = 0; i < size; i++) {
+                final int offset = HEADER_BYTES + 4 + 3 * i;
+                final int entry = (bytes[offset] & 0xff) << 16 | (bytes[offset + 1] & 0xff) << 8
+                        | bytes[offset + 2] & 0xff;
+                if (entry >>> REGISTER_BITS >= m) {
+                    throw new IllegalArgumentException("Malformed sparse HyperLogLog sketch");
+                }
+                sketch.set(entry >>> REGISTER_BITS, entry & RANK_MASK);
+            }
+            return sketch;
+        }
+        if (bytes[0] != DENSE || bytes.length != HEADER_BYTES + m * REGISTER_BITS / 8) {
+            throw new IllegalArgumentException("Malformed HyperLogLog sketch");
+        }
+        sketch.registers = new byte[m];
+        sketch.sparse = null;
+        long buffer = 0;
+        int bits = 0;
+        int index = 0;
+        for (int offset = HEADER_BYTES; offset < bytes.length; offset++) {
+            buffer = buffer << 8 | bytes[offset] & 0xff;
+            bits += 8;
+            while (bits >= REGISTER_BITS) {
+                bits -= REGISTER_BITS;
+                sketch.registers[index++] = (byte) (buffer >>> bits & RANK_MASK);
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * Sets a register of a sketch with {@code shift} more index bits in this sketch.
+     * The dropped low index bits become the leading bits of the remaining hash.
+     */
+    private void setFolded(int index, int rank, int shift) {
+        if (shift == 0) {
+            set(index, rank);
+            return;
+        }
+        final int dropped = index & ((1 << shift) - 1);
+        final int foldedRank = dropped == 0
+                ? rank + shift : Integer.numberOfLeadingZeros(dropped) - (32 - shift) + 1;
+        set(index >>> shift, foldedRank);
+    }
+
+    private void set(int index, int rank) {
+        if (registers != null) {
+            if (registers[index] < rank) {
+                registers[index] = (byte) rank;
+            }
+            return;
+        }
+        final int position = findSparse(index);
+        if (position >= 0) {
+            if ((sparse[position] & RANK_MASK) < rank) {
+                sparse[position] = index << REGISTER_BITS | rank;
+            }
+            return;
+        }
+        final int insertion = -position - 1;
+        if (sparseSize == sparse.length) {
+            if (sparseSize >= (1 << precision) / 8) {
+                toDense();
+                registers[index] = (byte) rank;
+                return;
+            }
+            sparse = Arrays.copyOf(sparse, sparseSize * 2);
+        }
+        System.arraycopy(sparse, insertion, sparse, insertion + 1, sparseSize - insertion);
+        sparse[insertion] = index << REGISTER_BITS | rank;
+        sparseSize++;
+    }
+
+    private int findSparse(int index) {
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midIndex = sparse[mid] >>> REGISTER_BITS;
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void toDense() {
+        registers = new byte[1 << precision];
+        for (int i = 0; i < sparseSize; i++) {
+            registers[sparse[i] >>> REGISTER_BITS] = (byte) (sparse[i] & RANK_MASK);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | bytes[offset + 3] & 0xff;
+    }
+}
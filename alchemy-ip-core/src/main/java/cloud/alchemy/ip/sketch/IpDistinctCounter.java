@@ -0,0 +1,331 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.flush.PeriodicFlusher;
+import cloud.alchemy.ip.service.IpRecordStoredListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Maintains {@link HyperLogLog} sketches of the distinct IP addresses and users of
+ * stored records, and answers approximate distinct counts from them.
+ *
+ * <p>As an {@link IpRecordStoredListener}, it is passed every record the storage services
+ * store. Each record adds its IP address to the distinct-IP sketches and its
+ * user to the distinct-user sketches of every scope it belongs to: globally, on its
+ * UTC day, for its tag and its country, and - for per-key lookups - the IP address
+ * to the sketch of its user and the user to the sketch of its IP address. Like
+ * {@link cloud.alchemy.ip.rollup.IpRollupAggregator}, the sketches accumulate in
+ * memory and are merged into an {@link IpSketchStore} every {@code flushInterval}.
+ * Pending sketches are split into stripes chosen by the recording thread, each with
+ * its own lock, so a record takes one mostly uncontended lock for all of its scopes
+ * and concurrent records never wait on the shared global or daily sketches; the
+ * stripes' sketches of a key are united at flush time.
+ * If a flush fails, the drained sketches are merged back and retried on the next
+ * flush. Since merging is idempotent, a retried or repeated merge never
+ * over-counts.
+ *
+ * <p>{@link #estimate(IpSketchType, IpSketchScope, String)} reads one stored sketch
+ * and merges the pending ones, so an estimate costs a single indexed read however
+ * many records it covers, and includes records not yet flushed.
+ *
+ * <p>When a stripe holds more than its share of {@code maxKeys} sketches an early
+ * flush is triggered. A final flush runs on {@link #stop()}.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see IpSketchBackfiller
+ */
+public class IpDistinctCounter extends PeriodicFlusher implements IpRecordStoredListener {
+
+    private static final Logger log = LoggerFactory.getLogger(IpDistinctCounter.class);
+
+    private static final int MAX_STRIPES = 64;
+
+    private final IpSketchStore<HyperLogLog> store;
+    private final int precision;
+    private final LongSupplier clock;
+
+    private final Stripe[] stripes;
+    private final int maxKeysPerStripe;
+    private final LongAdder recordedCount = new LongAdder();
+
+    /**
+     * Sketches being merged into the store, still included in estimates.
+     */
+    private volatile Map<IpSketchKey, HyperLogLog> flushing = Map.of();
+
+    /**
+     * Creates a new counter.
+     *
+     * @param store         the store sketches are merged into
+     * @param precision     the precision of new sketches, see {@link HyperLogLog#precisionFor(double)}
+     * @param flushInterval how often to flush
+     * @param maxKeys       number of pending sketches that triggers an early flush
+     * @param threadName    name of the flush thread
+     */
+    public IpDistinctCounter(IpSketchStore<HyperLogLog> store, int precision, Duration flushInterval, int maxKeys,
+                             String threadName) {
+        this(store, precision, flushInterval, maxKeys, threadName, System::currentTimeMillis);
+    }
+
+    IpDistinctCounter(IpSketchStore<HyperLogLog> store, int precision, Duration flushInterval, int maxKeys,
+                      String threadName, LongSupplier clock) {
+        super(flushInterval, threadName);
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be positive");
+        }
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between "
+                    + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION);
+        }
+        this.store = store;
+        this.precision = precision;
+        this.clock = clock;
+        this.stripes = new Stripe[Integer.highestOneBit(Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.maxKeysPerStripe = Math.max(1, maxKeys / stripes.length);
+    }
+
+    /**
+     * Adds a stored record to the sketches of its scopes.
+     *
+     * @param record the stored record
+     */
+    @Override
+    public void record(IpAddressRecord record) {
+        final Instant createdAt = record.getCreatedAt() != null
+                ? record.getCreatedAt() : Instant.ofEpochMilli(clock.getAsLong());
+        final String day = dayKey(LocalDate.ofInstant(createdAt, ZoneOffset.UTC));
+        final String ipAddress = record.getIpAddress();
+        final String userId = record.getUserId();
+
+        final long ipHash = HyperLogLog.hash(ipAddress);
+        final boolean hasUser = userId != null && !userId.isBlank();
+        final long userHash = hasUser ? HyperLogLog.hash(userId) : 0;
+        final Stripe stripe = stripeOf(Thread.currentThread());
+        final int size;
+        synchronized (stripe) {
+            stripe.add(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, "", ipHash, precision);
+            stripe.add(IpSketchType.DISTINCT_IPS, IpSketchScope.DAY, day, ipHash, precision);
+            stripe.add(IpSketchType.DISTINCT_IPS, IpSketchScope.TAG, record.getTag(), ipHash, precision);
+            stripe.add(IpSketchType.DISTINCT_IPS, IpSketchScope.COUNTRY, record.getCountryCode(), ipHash, precision);
+            stripe.add(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, userId, ipHash, precision);
+            if (hasUser) {
+                stripe.add(IpSketchType.DISTINCT_USERS, IpSketchScope.GLOBAL, "", userHash, precision);
+                stripe.add(IpSketchType.DISTINCT_USERS, IpSketchScope.DAY, day, userHash, precision);
+                stripe.add(IpSketchType.DISTINCT_USERS, IpSketchScope.TAG, record.getTag(), userHash, precision);
+                stripe.add(IpSketchType.DISTINCT_USERS, IpSketchScope.COUNTRY, record.getCountryCode(), userHash,
+                        precision);
+                stripe.add(IpSketchType.DISTINCT_USERS, IpSketchScope.IP, ipAddress, userHash, precision);
+            }
+            size = stripe.sketches.size();
+        }
+        recordedCount.increment();
+        if (size > maxKeysPerStripe) {
+            requestEarlyFlush();
+        }
+    }
+
+    /**
+     * Estimates a distinct count from one sketch.
+     *
+     * @param type  what to count
+     * @param scope which records to count
+     * @param key   the scope value, ignored for {@link IpSketchScope#GLOBAL}; use
+     *              {@link #dayKey(LocalDate)} for {@link IpSketchScope#DAY}
+     * @return the estimated distinct count, 0 if nothing was recorded
+     */
+    public long estimate(IpSketchType type, IpSketchScope scope, String key) {
+        return estimateUnion(type, scope, List.of(scope == IpSketchScope.GLOBAL ? "" : key));
+    }
+
+    /**
+     * Estimates the distinct count of the union of several sketches of one scope, for
+     * example the distinct IP addresses of a range of days.
+     *
+     * @param type  what to count
+     * @param scope which records to count
+     * @param keys  the scope values
+     * @return the estimated distinct count, 0 if nothing was recorded
+     */
+    public long estimateUnion(IpSketchType type, IpSketchScope scope, Collection<String> keys) {
+        final List<IpSketchKey> sketchKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (key != null && (scope == IpSketchScope.GLOBAL || !key.isBlank())) {
+                sketchKeys.add(new IpSketchKey(type, scope, key.trim()));
+            }
+        }
+        if (sketchKeys.isEmpty()) {
+            return 0;
+        }
+
+        final Map<IpSketchKey, HyperLogLog> inFlight = flushing;
+        HyperLogLog union = null;
+        for (HyperLogLog sketch : store.load(sketchKeys).values()) {
+            union = union == null ? sketch : HyperLogLog.union(union, sketch);
+        }
+        for (IpSketchKey key : sketchKeys) {
+            final HyperLogLog sketch = inFlight.get(key);
+            if (sketch != null) {
+                union = union == null ? sketch.copy() : HyperLogLog.union(union, sketch);
+            }
+        }
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (IpSketchKey key : sketchKeys) {
+                    final HyperLogLog sketch = stripe.sketches.get(key);
+                    if (sketch != null) {
+                        union = union == null ? sketch.copy() : HyperLogLog.union(union, sketch);
+                    }
+                }
+            }
+        }
+        return union == null ? 0 : union.estimate();
+    }
+
+    /**
+     * Estimates a distinct count over a range of UTC days.
+     *
+     * @param type what to count
+     * @param from the first day
+     * @param to   the last day (inclusive)
+     * @return the estimated distinct count, 0 if nothing was recorded
+     */
+    public long estimateDays(IpSketchType type, LocalDate from, LocalDate to) {
+        final List<String> days = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            days.add(dayKey(day));
+        }
+        return estimateUnion(type, IpSketchScope.DAY, days);
+    }
+
+    /**
+     * Returns the key of the {@link IpSketchScope#DAY} sketch of a UTC day.
+     *
+     * @param day the day
+     * @return the ISO date
+     */
+    public static String dayKey(LocalDate day) {
+        return day.toString();
+    }
+
+    /**
+     * Merges all pending sketches into the store.
+     */
+    @Override
+    public synchronized void flush() {
+        final Map<IpSketchKey, HyperLogLog> drained = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            final Map<IpSketchKey, HyperLogLog> sketches;
+            synchronized (stripe) {
+                sketches = stripe.sketches;
+                stripe.sketches = new HashMap<>();
+            }
+            sketches.forEach((key, sketch) -> drained.merge(key, sketch, HyperLogLog::merge));
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        flushing = drained;
+        try {
+            store.merge(drained);
+            log.debug("Flushed {} IP sketches", drained.size());
+        } catch (Exception e) {
+            log.error("Failed to flush {} IP sketches, retrying on next flush", drained.size(), e);
+            final Stripe stripe = stripes[0];
+            synchronized (stripe) {
+                drained.forEach((key, sketch) -> stripe.sketches.merge(key, sketch, HyperLogLog::union));
+            }
+        } finally {
+            flushing = Map.of();
+        }
+    }
+
+    /**
+     * Returns the relative standard error of new sketches.
+     *
+     * @return the relative standard error
+     */
+    public double getRelativeError() {
+        return HyperLogLog.relativeError(precision);
+    }
+
+    /**
+     * Returns the number of sketches currently pending. A key recorded by threads
+     * of several stripes counts once per stripe.
+     *
+     * @return the pending sketch count
+     */
+    public int getPendingKeyCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.sketches.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of records added to the sketches.
+     *
+     * @return the recorded record count
+     */
+    public long getRecordedCount() {
+        return recordedCount.sum();
+    }
+
+    private Stripe stripeOf(Thread thread) {
+        final long id = thread.threadId();
+        return stripes[(int) (id ^ (id >>> 32)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Pending sketches of the threads mapped to one stripe, guarded by the stripe's lock.
+     */
+    private static final class Stripe {
+
+        private Map<IpSketchKey, HyperLogLog> sketches = new HashMap<>();
+
+        private void add(IpSketchType type, IpSketchScope scope, String key, long hash, int precision) {
+            if (key == null || (scope != IpSketchScope.GLOBAL && key.isBlank())) {
+                return;
+            }
+            sketches.computeIfAbsent(new IpSketchKey(type, scope, key.trim()), k -> new HyperLogLog(precision))
+                    .addHash(hash);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.flush.PeriodicFlusher;
+import cloud.alchemy.ip.service.IpRecordStoredListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the IP addresses with the most stored records, all-time and over a sliding
+ * window, with {@link SpaceSaving} summaries.
+ *
+ * <p>As an {@link IpRecordStoredListener}, it is passed every record the storage services
+ * store; sampled records count once, like in the rollups.
+ * Each record is offered to the all-time summary and to the summary of the window
+ * bucket it was created in; the window is divided into {@code windowBuckets} buckets
+ * and covers the last {@code windowBuckets} of them, the current one included. Like
+ * {@link cloud.alchemy.ip.rollup.IpRollupAggregator}, the exact weights accumulate in
+ * one {@link DoubleAdder} per IP address and bucket, so recording never blocks on a
+ * flush or a read. Every {@code flushInterval}, or once more than {@code maxKeys}
+ * weights are pending, they are drained into summaries and merged into an
+ * {@link IpSketchStore}; if a flush fails, the drained summaries are retried on the
+ * next flush. The store merges a flush atomically, so a retry never counts twice.
+ *
+ * <p>After every flush the tracker reloads the stored all-time summary and the
+ * buckets of the window, which also picks up the records of other instances, and
+ * deletes the buckets that left the window. The stored summaries are loaded on
+ * {@link #start()}, so the counts survive restarts.
+ *
+ * <p>{@link #allTime()} and {@link #window()} merge the loaded summaries with the
+ * pending weights without locking; their cost depends on the capacity and the
+ * number of pending weights, not on the number of records. Counts never
+ * underestimate and overestimate by at most the record count divided by the capacity.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpHeavyHitterTracker extends PeriodicFlusher implements IpRecordStoredListener {
+
+    private static final Logger log = LoggerFactory.getLogger(IpHeavyHitterTracker.class);
+
+    private static final DateTimeFormatter BUCKET_FORMAT =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+    private static final String ALL_TIME = "";
+    private static final IpSketchKey ALL_TIME_KEY = new IpSketchKey(IpSketchType.TOP_IPS, IpSketchScope.GLOBAL, "");
+
+    private final IpSketchStore<SpaceSaving> store;
+    private final int capacity;
+    private final Duration window;
+    private final int windowBuckets;
+    private final long bucketSeconds;
+    private final int maxKeys;
+    private final LongSupplier clock;
+
+    private final Map<Key, DoubleAdder> pending = new ConcurrentHashMap<>();
+    private Summaries unflushed;
+    private String prunedBefore;
+
+    /**
+     * The stored summaries as of the last load, and those drained but not yet stored.
+     */
+    private volatile View view;
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param store         the store summaries are merged into
+     * @param capacity      the number of IP addresses each summary tracks
+     * @param window        the length of the sliding window
+     * @param windowBuckets the number of buckets the window is divided into
+     * @param flushInterval how often to flush
+     * @param maxKeys       number of pending weights that triggers an early flush
+     * @param threadName    name of the flush thread
+     */
+    public IpHeavyHitterTracker(IpSketchStore<SpaceSaving> store, int capacity, Duration window, int windowBuckets,
+                                Duration flushInterval, int maxKeys, String threadName) {
+        this(store, capacity, window, windowBuckets, flushInterval, maxKeys, threadName, System::currentTimeMillis);
+    }
+
+    IpHeavyHitterTracker(IpSketchStore<SpaceSaving> store, int capacity, Duration window, int windowBuckets,
+                         Duration flushInterval, int maxKeys, String threadName, LongSupplier clock) {
+        super(flushInterval, threadName);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (windowBuckets < 1) {
+            throw new IllegalArgumentException("windowBuckets must be positive");
+        }
+        if (window.toSeconds() / windowBuckets < 1) {
+            throw new IllegalArgumentException("window buckets must be at least one second long");
+        }
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be positive");
+        }
+        this.store = store;
+        this.capacity = capacity;
+        this.window = window;
+        this.windowBuckets = windowBuckets;
+        this.bucketSeconds = window.toSeconds() / windowBuckets;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        this.unflushed = new Summaries(capacity);
+        this.view = new View(new SpaceSaving(capacity), new SpaceSaving(capacity), new Summaries(capacity));
+    }
+
+    /**
+     * Adds a stored record to the summaries.
+     *
+     * @param record the stored record
+     */
+    @Override
+    public void record(IpAddressRecord record) {
+        final String ipAddress = record.getIpAddress();
+        if (ipAddress == null || ipAddress.isBlank()) {
+            return;
+        }
+        final Instant createdAt = record.getCreatedAt() != null
+                ? record.getCreatedAt() : Instant.ofEpochMilli(clock.getAsLong());
+        final String bucket = bucketKey(createdAt);
+        final boolean inWindow = bucket.compareTo(oldestBucketKey()) >= 0;
+        add(new Key(ALL_TIME, ipAddress.trim()), 1);
+        if (inWindow) {
+            add(new Key(bucket, ipAddress.trim()), 1);
+        }
+    }
+
+    /**
+     * Returns the IP addresses with the most records of all time.
+     *
+     * @return a new summary, which the caller may modify
+     */
+    public SpaceSaving allTime() {
+        final View current = view;
+        final SpaceSaving summary = current.allTime.copy().merge(current.flushing.allTime);
+        pending.forEach((key, weight) -> {
+            if (key.bucket().equals(ALL_TIME)) {
+                offer(summary, key.ipAddress(), weight.sum());
+            }
+        });
+        return summary;
+    }
+
+    /**
+     * Returns the IP addresses with the most records in the sliding window.
+     *
+     * @return a new summary, which the caller may modify
+     */
+    public SpaceSaving window() {
+        final String oldest = oldestBucketKey();
+        final View current = view;
+        final SpaceSaving summary = current.window.copy();
+        current.flushing.mergeBucketsInto(summary, oldest);
+        pending.forEach((key, weight) -> {
+            if (!key.bucket().equals(ALL_TIME) && key.bucket().compareTo(oldest) >= 0) {
+                offer(summary, key.ipAddress(), weight.sum());
+            }
+        });
+        return summary;
+    }
+
+    /**
+     * Merges the pending weights into the store and reloads the stored summaries.
+     */
+    @Override
+    public synchronized void flush() {
+        final Summaries drained = new Summaries(capacity);
+        drained.merge(unflushed);
+        for (Map.Entry<Key, DoubleAdder> entry : pending.entrySet()) {
+            final Key key = entry.getKey();
+            final DoubleAdder accumulator = entry.getValue();
+            double weight = accumulator.sumThenReset();
+            if (weight == 0) {
+                pending.remove(key, accumulator);
+                // A record may have raced with the removal; collect it with this flush
+                weight = accumulator.sumThenReset();
+                if (weight == 0) {
+                    continue;
+                }
+            }
+            drained.offer(key, weight);
+        }
+        view = new View(view.allTime, view.window, drained);
+        if (drained.isEmpty()) {
+            reloadQuietly();
+            return;
+        }
+
+        try {
+            final Map<IpSketchKey, SpaceSaving> summaries = new HashMap<>();
+            summaries.put(ALL_TIME_KEY, drained.allTime);
+            drained.buckets.forEach((bucket, summary) -> summaries.put(bucketSketchKey(bucket), summary));
+            store.merge(summaries);
+            log.debug("Flushed {} heavy-hitter summaries", summaries.size());
+        } catch (Exception e) {
+            log.error("Failed to flush heavy-hitter summaries, retrying on next flush", e);
+            unflushed = drained;
+            return;
+        }
+        unflushed = new Summaries(capacity);
+        reloadQuietly();
+    }
+
+    /**
+     * Returns the number of IP addresses each summary tracks.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the length of the sliding window.
+     *
+     * @return the window
+     */
+    public Duration getWindow() {
+        return window;
+    }
+
+    @Override
+    protected void onStart() {
+        reloadQuietly();
+    }
+
+    /**
+     * Loads the stored all-time summary and window buckets, and deletes expired buckets.
+     */
+    private void reloadQuietly() {
+        try {
+            final String oldest = oldestBucketKey();
+            final List<IpSketchKey> keys = new ArrayList<>(windowBuckets + 1);
+            keys.add(ALL_TIME_KEY);
+            final long oldestSecond = Instant.parse(oldest).getEpochSecond();
+            for (int i = 0; i < windowBuckets; i++) {
+                keys.add(bucketSketchKey(BUCKET_FORMAT.format(Instant.ofEpochSecond(oldestSecond + i * bucketSeconds))));
+            }
+            final Map<IpSketchKey, SpaceSaving> loaded = store.load(keys);
+
+            final SpaceSaving windowSummary = new SpaceSaving(capacity);
+            loaded.forEach((key, summary) -> {
+                if (key.scope() == IpSketchScope.BUCKET) {
+                    windowSummary.merge(summary);
+                }
+            });
+            view = new View(loaded.getOrDefault(ALL_TIME_KEY, new SpaceSaving(capacity)), windowSummary,
+                    unflushed);
+
+            if (!oldest.equals(prunedBefore)) {
+                final int deleted = store.deleteBefore(IpSketchType.TOP_IPS, IpSketchScope.BUCKET, oldest);
+                log.debug("Deleted {} expired heavy-hitter buckets", deleted);
+                prunedBefore = oldest;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load heavy-hitter summaries: {}", e.getMessage());
+            view = new View(view.allTime, view.window, unflushed);
+        }
+    }
+
+    /**
+     * Returns the key of the oldest bucket in the window.
+     */
+    private String oldestBucketKey() {
+        final long nowSecond = Math.floorDiv(clock.getAsLong(), 1000L);
+        final long currentBucket = nowSecond - Math.floorMod(nowSecond, bucketSeconds);
+        return BUCKET_FORMAT.format(Instant.ofEpochSecond(currentBucket - (windowBuckets - 1) * bucketSeconds));
+    }
+
+    private String bucketKey(Instant createdAt) {
+        final long second = createdAt.getEpochSecond();
+        return BUCKET_FORMAT.format(Instant.ofEpochSecond(second - Math.floorMod(second, bucketSeconds)));
+    }
+
+    private void add(Key key, double weight) {
+        DoubleAdder accumulator = pending.get(key);
+        if (accumulator == null) {
+            accumulator = pending.computeIfAbsent(key, k -> new DoubleAdder());
+            if (pending.size() > maxKeys) {
+                requestEarlyFlush();
+            }
+        }
+        accumulator.add(weight);
+    }
+
+    private static void offer(SpaceSaving summary, String ipAddress, double weight) {
+        if (weight > 0) {
+            summary.offer(ipAddress, weight);
+        }
+    }
+
+    private static IpSketchKey bucketSketchKey(String bucket) {
+        return new IpSketchKey(IpSketchType.TOP_IPS, IpSketchScope.BUCKET, bucket);
+    }
+
+    /**
+     * An all-time summary and per-bucket summaries.
+     */
+    private static final class Summaries {
+
+        private final SpaceSaving allTime;
+        private final Map<String, SpaceSaving> buckets = new HashMap<>();
+
+        private Summaries(int capacity) {
+            this.allTime = new SpaceSaving(capacity);
+        }
+
+        private boolean isEmpty() {
+            return allTime.size() == 0;
+        }
+
+        private void merge(Summaries other) {
+            allTime.merge(other.allTime);
+            other.buckets.forEach((bucket, summary) -> buckets.merge(bucket, summary.copy(), SpaceSaving::merge));
+        }
+
+        private void offer(Key key, double weight) {
+            if (key.bucket().equals(ALL_TIME)) {
+                allTime.offer(key.ipAddress(), weight);
+            } else {
+                buckets.computeIfAbsent(key.bucket(), bucket -> new SpaceSaving(allTime.getCapacity()))
+                        .offer(key.ipAddress(), weight);
+            }
+        }
+
+        private void mergeBucketsInto(SpaceSaving target, String oldestBucket) {
+            buckets.forEach((bucket, summary) -> {
+                if (bucket.compareTo(oldestBucket) >= 0) {
+                    target.merge(summary);
+                }
+            });
+        }
+    }
+
+    /**
+     * The IP address and window bucket a pending weight belongs to; the bucket is
+     * {@link #ALL_TIME} for the all-time summary.
+     */
+    private record Key(String bucket, String ipAddress) {
+    }
+
+    private record View(SpaceSaving allTime, SpaceSaving window, Summaries flushing) {
+    }
+}
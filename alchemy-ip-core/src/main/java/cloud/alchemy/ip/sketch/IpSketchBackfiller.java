@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Adds the records of a time range from the records table to the sketches of an
+ * {@link IpDistinctCounter}.
+ *
+ * <p>Use it to include records stored before sketches were enabled. Unlike rollups,
+ * sketches never count a value twice, so ranges can be backfilled repeatedly and
+ * while they still receive records, and nothing has to be deleted first. The range
+ * is streamed one UTC day at a time and the counter is flushed after each day, so
+ * memory use is bounded by the sketches of a single day.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpSketchBackfiller {
+
+    private static final Logger log = LoggerFactory.getLogger(IpSketchBackfiller.class);
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IpDistinctCounter counter;
+    private final String selectSql;
+
+    /**
+     * Creates a new backfiller.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param tableName    the IP address table name
+     * @param counter      the counter maintaining the sketches
+     * @throws IllegalArgumentException if the table name is not a plain SQL identifier
+     */
+    public IpSketchBackfiller(JdbcTemplate jdbcTemplate, String tableName, IpDistinctCounter counter) {
+        if (tableName == null || !TABLE_NAME.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("Invalid table name: " + tableName);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.counter = counter;
+        this.selectSql = "SELECT ip_address, user_id, tag, country_code, created_at" +
+                " FROM " + tableName + " WHERE created_at >= ? AND created_at < ?";
+    }
+
+    /**
+     * Adds the records of a time range to the sketches.
+     *
+     * @param from the start of the range (inclusive)
+     * @param to   the end of the range (exclusive)
+     * @return the number of records added
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public long backfill(Instant from, Instant to) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        long records = 0;
+        for (Instant start = from; start.isBefore(to); ) {
+            final Instant nextDay = start.truncatedTo(ChronoUnit.DAYS).plus(1, ChronoUnit.DAYS);
+            final Instant end = nextDay.isBefore(to) ? nextDay : to;
+            records += backfillDay(start, end);
+            start = end;
+        }
+        log.info("Backfilled IP sketches from {} to {} with {} records", from, to, records);
+        return records;
+    }
+
+    private long backfillDay(Instant start, Instant end) {
+        final long[] records = {0};
+        jdbcTemplate.query(selectSql, rs -> {
+            counter.record(IpAddressRecord.builder()
+                    .ipAddress(rs.getString("ip_address"))
+                    .userId(rs.getString("user_id"))
+                    .tag(rs.getString("tag"))
+                    .countryCode(rs.getString("country_code"))
+                    .createdAt(rs.getTimestamp("created_at").toInstant())
+                    .build());
+            records[0]++;
+        }, Timestamp.from(start), Timestamp.from(end));
+        counter.flush();
+        return records[0];
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+/**
+ * Identifies one stored sketch.
+ *
+ * @param type  what the sketch estimates
+ * @param scope which records it covers
+ * @param key   the scope value, empty for {@link IpSketchScope#GLOBAL}
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public record IpSketchKey(IpSketchType type, IpSketchScope scope, String key) {
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+/**
+ * Which records a stored sketch covers, narrowed down by its key.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public enum IpSketchScope {
+
+    /**
+     * All records, stored with an empty key.
+     */
+    GLOBAL,
+
+    /**
+     * Records created on one UTC day, keyed by the ISO date, for example {@code 2024-03-01}.
+     */
+    DAY,
+
+    /**
+     * Records per tag.
+     */
+    TAG,
+
+    /**
+     * Records per country code.
+     */
+    COUNTRY,
+
+    /**
+     * Records per user, for the distinct IP addresses of a user.
+     */
+    USER,
+
+    /**
+     * Records per IP address, for the distinct users of an IP address.
+     */
+    IP,
+
+    /**
+     * Records created in one time bucket of a sliding window, keyed by the start of the
+     * bucket as a UTC timestamp to the second, for example {@code 2024-03-01T13:00:00Z}.
+     */
+    BUCKET
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Persists mergeable sketches, such as {@link HyperLogLog} and {@link SpaceSaving}.
+ *
+ * @param <S> the sketch type
+ * @author Alchemy Team
+ * @since 1.1.0
+ * @see JdbcIpSketchStore
+ */
+public interface IpSketchStore<S> {
+
+    /**
+     * Merges sketches into the stored ones, creating missing sketches.
+     *
+     * @param sketches the sketches to merge, which are left unchanged
+     */
+    void merge(Map<IpSketchKey, S> sketches);
+
+    /**
+     * Loads stored sketches.
+     *
+     * @param keys the keys to load
+     * @return the stored sketches by key; keys without a stored sketch are absent
+     */
+    Map<IpSketchKey, S> load(Collection<IpSketchKey> keys);
+
+    /**
+     * Deletes the stored sketches of one type and scope whose key sorts before the given key.
+     *
+     * @param type      the sketch type
+     * @param scope     the scope
+     * @param keyBefore the exclusive upper bound of the deleted keys
+     * @return the number of deleted sketches
+     */
+    int deleteBefore(IpSketchType type, IpSketchScope scope, String keyBefore);
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import cloud.alchemy.ip.jdbc.JdbcUpsert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * {@link IpSketchStore} that keeps sketches in the {@code ip_sketches} table, one
+ * row per {@link IpSketchKey} holding the encoded sketch and a version number.
+ * {@link #forHyperLogLog(JdbcTemplate)} and {@link #forSpaceSaving(JdbcTemplate)}
+ * create stores for the sketch types of this package.
+ *
+ * <p>Merging reads the stored sketches, merges in memory and writes back with a
+ * batched {@code UPDATE} that only matches the version read, so concurrent merges
+ * from other instances are never lost: sketches whose update matched no row are
+ * re-read and merged one by one. Sketches the merge does not change are not
+ * written. Missing sketches are inserted with a batched {@code INSERT}, falling back
+ * to one-by-one merges if another instance inserted them first.
+ *
+ * <p>A merge runs in one transaction, so it is applied completely or not at all and
+ * can be retried without counting twice. Inserts run under a savepoint; an insert
+ * that loses a race with another instance is rolled back to it before the sketch is
+ * merged again, including the rows the same batch did insert.
+ *
+ * <p>Keys are read with {@code IN} lists of at most {@value #CHUNK_SIZE} keys.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @param <S> the sketch type
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class JdbcIpSketchStore<S> implements IpSketchStore<S> {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcIpSketchStore.class);
+
+    static final String TABLE_NAME = "ip_sketches";
+
+    private static final int CHUNK_SIZE = 500;
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static final String SELECT_SQL = "SELECT scope_key, sketch_data, version FROM " + TABLE_NAME +
+            " WHERE sketch_type = ? AND scope = ? AND scope_key IN (%s)";
+
+    private static final String UPDATE_SQL = "UPDATE " + TABLE_NAME + " SET sketch_data = ?, version = version + 1" +
+            " WHERE sketch_type = ? AND scope = ? AND scope_key = ? AND version = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE_NAME +
+            " (sketch_type, scope, scope_key, sketch_data, version) VALUES (?, ?, ?, ?, 0)";
+
+    private static final String DELETE_BEFORE_SQL = "DELETE FROM " + TABLE_NAME +
+            " WHERE sketch_type = ? AND scope = ? AND scope_key < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate savepoint;
+    private final Function<byte[], S> decoder;
+    private final Function<S, byte[]> encoder;
+    private final BinaryOperator<S> union;
+
+    /**
+     * Creates a new store.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param decoder      decodes a stored sketch
+     * @param encoder      encodes a sketch; equal sketches must have equal encodings
+     * @param union        returns the union of two sketches without changing either
+     */
+    public JdbcIpSketchStore(JdbcTemplate jdbcTemplate,
+                             Function<byte[], S> decoder,
+                             Function<S, byte[]> encoder,
+                             BinaryOperator<S> union) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = JdbcUpsert.transactionTemplate(jdbcTemplate, TransactionDefinition.PROPAGATION_REQUIRED);
+        this.savepoint = JdbcUpsert.transactionTemplate(jdbcTemplate, TransactionDefinition.PROPAGATION_NESTED);
+        this.decoder = decoder;
+        this.encoder = encoder;
+        this.union = union;
+    }
+
+    /**
+     * Creates a store for {@link HyperLogLog} sketches.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @return the store
+     */
+    public static JdbcIpSketchStore<HyperLogLog> forHyperLogLog(JdbcTemplate jdbcTemplate) {
+        return new JdbcIpSketchStore<>(jdbcTemplate, HyperLogLog::fromBytes, HyperLogLog::toBytes, HyperLogLog::union);
+    }
+
+    /**
+     * Creates a store for {@link SpaceSaving} summaries.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @return the store
+     */
+    public static JdbcIpSketchStore<SpaceSaving> forSpaceSaving(JdbcTemplate jdbcTemplate) {
+        return new JdbcIpSketchStore<>(jdbcTemplate, SpaceSaving::fromBytes, SpaceSaving::toBytes, SpaceSaving::union);
+    }
+
+    @Override
+    public void merge(Map<IpSketchKey, S> sketches) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        transaction.executeWithoutResult(status -> {
+            for (List<IpSketchKey> chunk : chunks(sketches.keySet())) {
+                mergeChunk(chunk, sketches);
+            }
+        });
+    }
+
+    @Override
+    public Map<IpSketchKey, S> load(Collection<IpSketchKey> keys) {
+        final Map<IpSketchKey, S> sketches = new HashMap<>();
+        for (List<IpSketchKey> chunk : chunks(keys)) {
+            select(chunk).forEach((key, row) -> sketches.put(key, row.sketch()));
+        }
+        return sketches;
+    }
+
+    @Override
+    public int deleteBefore(IpSketchType type, IpSketchScope scope, String keyBefore) {
+        return jdbcTemplate.update(DELETE_BEFORE_SQL, type.name(), scope.name(), keyBefore);
+    }
+
+    private void mergeChunk(List<IpSketchKey> keys, Map<IpSketchKey, S> sketches) {
+        final Map<IpSketchKey, StoredSketch<S>> stored = select(keys);
+        final List<Write> updates = new ArrayList<>();
+        final List<Write> inserts = new ArrayList<>();
+        for (IpSketchKey key : keys) {
+            final StoredSketch<S> existing = stored.get(key);
+            if (existing == null) {
+                inserts.add(new Write(key, encoder.apply(sketches.get(key)), 0));
+                continue;
+            }
+            final byte[] merged = encoder.apply(union.apply(existing.sketch(), sketches.get(key)));
+            if (!Arrays.equals(merged, existing.bytes())) {
+                updates.add(new Write(key, merged, existing.version()));
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            final int[] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, updates, updates.size(),
+                    JdbcIpSketchStore::bindUpdate)[0];
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    log.debug("Concurrent sketch update detected, retrying {}", updates.get(i).key());
+                    mergeOne(updates.get(i).key(), sketches.get(updates.get(i).key()));
+                }
+            }
+        }
+        if (!inserts.isEmpty()) {
+            try {
+                savepoint.executeWithoutResult(status ->
+                        jdbcTemplate.batchUpdate(INSERT_SQL, inserts, inserts.size(), JdbcIpSketchStore::bindInsert));
+            } catch (DuplicateKeyException e) {
+                log.debug("Concurrent sketch insert detected, retrying {} sketches individually", inserts.size());
+                inserts.forEach(write -> mergeOne(write.key(), sketches.get(write.key())));
+            }
+        }
+    }
+
+    private void mergeOne(IpSketchKey key, S sketch) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            final StoredSketch<S> existing = select(List.of(key)).get(key);
+            if (existing == null) {
+                try {
+                    savepoint.executeWithoutResult(status -> jdbcTemplate.update(INSERT_SQL,
+                            ps -> bindInsert(ps, new Write(key, encoder.apply(sketch), 0))));
+                    return;
+                } catch (DuplicateKeyException e) {
+                    continue;
+                }
+            }
+            final byte[] merged = encoder.apply(union.apply(existing.sketch(), sketch));
+            if (Arrays.equals(merged, existing.bytes())
+                    || jdbcTemplate.update(UPDATE_SQL, ps -> bindUpdate(ps, new Write(key, merged, existing.version()))) > 0) {
+                return;
+            }
+        }
+        throw new OptimisticLockingFailureException(
+                "Sketch " + key + " was modified concurrently " + MAX_ATTEMPTS + " times");
+    }
+
+    private Map<IpSketchKey, StoredSketch<S>> select(List<IpSketchKey> keys) {
+        final IpSketchKey first = keys.get(0);
+        final Object[] args = new Object[keys.size() + 2];
+        args[0] = first.type().name();
+        args[1] = first.scope().name();
+        for (int i = 0; i < keys.size(); i++) {
+            args[i + 2] = keys.get(i).key();
+        }
+        final String sql = String.format(SELECT_SQL, String.join(", ", Collections.nCopies(keys.size(), "?")));
+
+        final Map<IpSketchKey, StoredSketch<S>> stored = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            final byte[] bytes = rs.getBytes("sketch_data");
+            stored.put(new IpSketchKey(first.type(), first.scope(), rs.getString("scope_key")),
+                    new StoredSketch<>(decoder.apply(bytes), bytes, rs.getLong("version")));
+        }, args);
+        return stored;
+    }
+
+    /**
+     * Splits keys into chunks of one type and scope, as {@link #select(List)} expects.
+     */
+    private static List<List<IpSketchKey>> chunks(Collection<IpSketchKey> keys) {
+        final Map<List<Enum<?>>, List<IpSketchKey>> groups = new LinkedHashMap<>();
+        for (IpSketchKey key : keys) {
+            groups.computeIfAbsent(List.of(key.type(), key.scope()), group -> new ArrayList<>()).add(key);
+        }
+        final List<List<IpSketchKey>> chunks = new ArrayList<>();
+        for (List<IpSketchKey> group : groups.values()) {
+            for (int from = 0; from < group.size(); from += CHUNK_SIZE) {
+                chunks.add(group.subList(from, Math.min(from + CHUNK_SIZE, group.size())));
+            }
+        }
+        return chunks;
+    }
+
+    private static void bindUpdate(PreparedStatement ps, Write write) throws SQLException {
+        ps.setBytes(1, write.bytes());
+        ps.setString(2, write.key().type().name());
+        ps.setString(3, write.key().scope().name());
+        ps.setString(4, write.key().key());
+        ps.setLong(5, write.version());
+    }
+
+    private static void bindInsert(PreparedStatement ps, Write write) throws SQLException {
+        ps.setString(1, write.key().type().name());
+        ps.setString(2, write.key().scope().name());
+        ps.setString(3, write.key().key());
+        ps.setBytes(4, write.bytes());
+    }
+
+    private record StoredSketch<S>(S sketch, byte[] bytes, long version) {
+    }
+
+    private record Write(IpSketchKey key, byte[] bytes, long version) {
+    }
+}
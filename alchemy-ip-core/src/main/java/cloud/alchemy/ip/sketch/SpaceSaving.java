@@ -0,0 +1,282 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving summary of the most frequent values of a weighted stream.
+ *
+ * <p>The summary keeps at most {@code capacity} counters. A value that has a counter
+ * adds its weight to it; a new value takes over the smallest counter once all are in
+ * use, inheriting its count as the value's possible overestimate ({@link Entry#error()}).
+ * Every value whose total weight exceeds {@code totalWeight / capacity} is guaranteed
+ * to have a counter, and every count overestimates the true weight by at most the
+ * entry's error, which is at most {@code totalWeight / capacity}. Offering a value
+ * costs {@code O(log capacity)}, independent of the length of the stream.
+ *
+ * <p>Summaries are mergeable: {@link #merge(SpaceSaving)} combines two summaries
+ * with the same guarantees for the concatenated streams.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class SpaceSaving {
+
+    private static final byte FORMAT = 1;
+
+    private static final Comparator<Counter> BY_COUNT = Comparator.<Counter>comparingDouble(counter -> counter.count)
+            .thenComparing(counter -> counter.value);
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> byCount = new TreeSet<>(BY_COUNT);
+    private double totalWeight;
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param capacity the maximum number of counters
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a weighted occurrence of a value.
+     *
+     * @param value  the value
+     * @param weight the weight, for example the inverse sample rate of a record
+     */
+    public void offer(String value, double weight) {
+        totalWeight += weight;
+        final Counter counter = counters.get(value);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+            byCount.add(counter);
+        } else if (counters.size() < capacity) {
+            put(new Counter(value, weight, 0));
+        } else {
+            final Counter smallest = byCount.pollFirst();
+            counters.remove(smallest.value);
+            put(new Counter(value, smallest.count + weight, smallest.count));
+        }
+    }
+
+    /**
+     * Adds the stream summarized by another summary to this one.
+     *
+     * @param other the other summary, which is left unchanged
+     * @return this summary
+     */
+    public SpaceSaving merge(SpaceSaving other) {
+        // A value missing from a full summary may have occurred up to its smallest count
+        final double missingHere = counters.size() < capacity ? 0 : byCount.first().count;
+        final double missingThere = other.counters.size() < other.capacity ? 0 : other.byCount.first().count;
+
+        final Set<String> values = new HashSet<>(counters.keySet());
+        values.addAll(other.counters.keySet());
+        final List<Counter> merged = new ArrayList<>(values.size());
+        for (String value : values) {
+            final Counter here = counters.get(value);
+            final Counter there = other.counters.get(value);
+            merged.add(new Counter(value,
+                    (here != null ? here.count : missingHere) + (there != null ? there.count : missingThere),
+                    (here != null ? here.error : missingHere) + (there != null ? there.error : missingThere)));
+        }
+        merged.sort(BY_COUNT.reversed());
+
+        counters.clear();
+        byCount.clear();
+        for (Counter counter : merged.subList(0, Math.min(capacity, merged.size()))) {
+            put(counter);
+        }
+        totalWeight += other.totalWeight;
+        return this;
+    }
+
+    /**
+     * Returns the union of two summaries as a new summary, leaving both unchanged.
+     *
+     * @param first  a summary
+     * @param second another summary
+     * @return a summary with the larger of both capacities
+     */
+    public static SpaceSaving union(SpaceSaving first, SpaceSaving second) {
+        return first.capacity >= second.capacity
+                ? first.copy().merge(second) : second.copy().merge(first);
+    }
+
+    /**
+     * Returns a copy of this summary.
+     *
+     * @return the copy
+     */
+    public SpaceSaving copy() {
+        final SpaceSaving copy = new SpaceSaving(capacity);
+        for (Counter counter : counters.values()) {
+            copy.put(new Counter(counter.value, counter.count, counter.error));
+        }
+        copy.totalWeight = totalWeight;
+        return copy;
+    }
+
+    /**
+     * Returns the values with the largest counts.
+     *
+     * @param limit the maximum number of entries
+     * @return the entries by descending count
+     */
+    public List<Entry> top(int limit) {
+        final List<Entry> entries = new ArrayList<>(Math.min(limit, counters.size()));
+        for (Counter counter : byCount.descendingSet()) {
+            if (entries.size() >= limit) {
+                break;
+            }
+            entries.add(new Entry(counter.value, counter.count, counter.error));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the maximum number of counters.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of counters in use.
+     *
+     * @return the number of tracked values
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Returns the total weight offered.
+     *
+     * @return the total weight
+     */
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Encodes the summary.
+     *
+     * @return the encoded summary
+     * @see #fromBytes(byte[])
+     */
+    public byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + counters.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeInt(capacity);
+            out.writeDouble(totalWeight);
+            out.writeInt(counters.size());
+            for (Counter counter : byCount.descendingSet()) {
+                out.writeUTF(counter.value);
+                out.writeDouble(counter.count);
+                out.writeDouble(counter.error);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a summary encoded with {@link #toBytes()}.
+     *
+     * @param bytes the encoded summary
+     * @return the summary
+     * @throws IllegalArgumentException if the bytes are not an encoded summary
+     */
+    public static SpaceSaving fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != FORMAT) {
+                throw new IllegalArgumentException("Unknown Space-Saving summary format");
+            }
+            final SpaceSaving summary = new SpaceSaving(in.readInt());
+            summary.totalWeight = in.readDouble();
+            final int size = in.readInt();
+            if (size < 0 || size > summary.capacity) {
+                throw new IllegalArgumentException("Malformed Space-Saving summary");
+            }
+            for (int i = 0; i < size; i++) {
+                summary.put(new Counter(in.readUTF(), in.readDouble(), in.readDouble()));
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("Malformed Space-Saving summary");
+            }
+            return summary;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated Space-Saving summary", e);
+        }
+    }
+
+    private void put(Counter counter) {
+        counters.put(counter.value, counter);
+        byCount.add(counter);
+    }
+
+    /**
+     * A tracked value.
+     *
+     * @param value the value
+     * @param count the estimated total weight, never below the true weight
+     * @param error the maximum overestimate of the count
+     */
+    public record Entry(String value, double count, double error) {
+    }
+
+    private static final class Counter {
+
+        private final String value;
+        private double count;
+        private final double error;
+
+        private Counter(String value, double count, double error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.writer;
+
+import java.time.Duration;
+
+/**
+ * Adjusts the batch size and flush interval of an {@link IpRecordWriter} from the
+ * measured flush latency and queue depth, AIMD-style.
+ *
+ * <p>After each flush:
+ * <ul>
+ *   <li>if the flush took longer than the target latency (or failed), the batch size
+ *       is halved and the flush interval doubled, backing off the database;</li>
+ *   <li>otherwise, if at least a full batch is still queued, the batch size grows by
+ *       {@code minBatchSize} so that peaks are drained with fewer round trips;</li>
+ *   <li>and the flush interval shrinks by {@code minFlushInterval}, so that at low
+ *       traffic partial batches wait as little as possible.</li>
+ * </ul>
+ * Both values stay within the configured bounds. With equal lower and upper bounds
+ * the controller is static.
+ *
+ * <p>{@link #onFlush} and {@link #onFailure()} are called from the writer thread only;
+ * the current values can be read from any thread.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class AdaptiveBatchController {
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long minFlushIntervalNanos;
+    private final long maxFlushIntervalNanos;
+    private final long targetLatencyNanos;
+
+    private volatile int batchSize;
+    private volatile long flushIntervalNanos;
+
+    /**
+     * Creates a new controller.
+     *
+     * @param initialBatchSize     starting batch size, clamped to the bounds
+     * @param minBatchSize         lower bound for the batch size, also the additive step
+     * @param maxBatchSize         upper bound for the batch size
+     * @param initialFlushInterval starting flush interval, clamped to the bounds
+     * @param minFlushInterval     lower bound for the flush interval, also the additive step
+     * @param maxFlushInterval     upper bound for the flush interval
+     * @param targetLatency        flush latency above which the writer backs off
+     */
+    public AdaptiveBatchController(int initialBatchSize,
+                                   int minBatchSize,
+                                   int maxBatchSize,
+                                   Duration initialFlushInterval,
+                                   Duration minFlushInterval,
+                                   Duration maxFlushInterval,
+                                   Duration targetLatency) {
+        if (minBatchSize < 1 || minBatchSize > maxBatchSize) {
+            throw new IllegalArgumentException("batch size bounds must satisfy 1 <= min <= max");
+        }
+        if (minFlushInterval.isNegative() || minFlushInterval.isZero()
+                || minFlushInterval.compareTo(maxFlushInterval) > 0) {
+            throw new IllegalArgumentException("flush interval bounds must satisfy 0 < min <= max");
+        }
+        if (targetLatency.isNegative() || targetLatency.isZero()) {
+            throw new IllegalArgumentException("targetLatency must be positive");
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.minFlushIntervalNanos = minFlushInterval.toNanos();
+        this.maxFlushIntervalNanos = maxFlushInterval.toNanos();
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.batchSize = Math.clamp(initialBatchSize, minBatchSize, maxBatchSize);
+        this.flushIntervalNanos = Math.clamp(initialFlushInterval.toNanos(), minFlushIntervalNanos, maxFlushIntervalNanos);
+    }
+
+    /**
+     * Creates a controller that keeps the given batch size and flush interval.
+     *
+     * @param batchSize     the batch size
+     * @param flushInterval the flush interval
+     * @return a static controller
+     */
+    public static AdaptiveBatchController fixed(int batchSize, Duration flushInterval) {
+        return new AdaptiveBatchController(batchSize, batchSize, batchSize,
+                flushInterval, flushInterval, flushInterval, Duration.ofNanos(Long.MAX_VALUE));
+    }
+
+    /**
+     * Records a successful flush.
+     *
+     * @param latencyNanos how long the flush took
+     * @param backlog      records still queued after the flush
+     */
+    public void onFlush(long latencyNanos, int backlog) {
+        if (latencyNanos > targetLatencyNanos) {
+            backOff();
+            return;
+        }
+        final int current = batchSize;
+        if (backlog >= current) {
+            batchSize = (int) Math.min(maxBatchSize, (long) current + minBatchSize);
+        }
+        flushIntervalNanos = Math.max(minFlushIntervalNanos, flushIntervalNanos - minFlushIntervalNanos);
+    }
+
+    /**
+     * Records a failed flush.
+     */
+    public void onFailure() {
+        backOff();
+    }
+
+    /**
+     * Returns the current batch size.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the current flush interval in nanoseconds.
+     *
+     * @return the flush interval
+     */
+    public long getFlushIntervalNanos() {
+        return flushIntervalNanos;
+    }
+
+    private void backOff() {
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+        flushIntervalNanos = Math.min(maxFlushIntervalNanos, flushIntervalNanos * 2);
+    }
+}
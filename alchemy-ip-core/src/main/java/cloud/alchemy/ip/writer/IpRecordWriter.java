@@ -0,0 +1,494 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.writer;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Buffers captured records in bounded in-memory queues and persists them in
+ * batches from dedicated virtual threads.
+ *
+ * <p>{@link #submit(IpAddressRecord)} never blocks: it is a lock-free enqueue that
+ * returns {@code false} (and counts the record as dropped) when the buffer is full
+ * or the writer is not running, so that callers can journal the record instead.
+ * This makes the writer safe to call from reactive event-loop threads as well as
+ * from servlet request threads.
+ *
+ * <p>The buffer is bounded twice: by record count and by estimated heap size
+ * ({@link RecordSizeEstimator}). The byte bound is shared by all lanes, so the
+ * memory held while the database is unavailable stays below it regardless of how
+ * large individual records are.
+ *
+ * <p>The writer is split into one or more lanes, each with its own queue, thread and
+ * {@link AdaptiveBatchController}. Records are routed to a lane by the hash of their
+ * IP address, so all records of an IP are stored by the same thread in submission
+ * order: the duplicate check for an IP never races with another lane, and lanes
+ * touch disjoint keys, so they scale across connections without contending on the
+ * same rows.
+ *
+ * <p>Each lane flushes whenever {@code batchSize} records are pending or
+ * {@code flushInterval} has elapsed since its previous flush, whichever comes first.
+ * Batches are handed to {@link IpAddressStorageService#storeAll(List)}. Both values
+ * are taken from the lane's controller, which can adapt them to the observed flush
+ * latency.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public class IpRecordWriter implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(IpRecordWriter.class);
+
+    /**
+     * The lifecycle phase of the writer: stopped after the web server so in-flight
+     * requests can still submit captures, and before the data source is closed.
+     */
+    public static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final IpAddressStorageService storageService;
+    private final long maxBufferedBytes;
+    private final Lane[] lanes;
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean running;
+    private volatile Consumer<List<IpAddressRecord>> failedBatchHandler;
+
+    /**
+     * Creates a new single-lane writer with a fixed batch size and flush interval.
+     *
+     * @param storageService the storage service batches are handed to
+     * @param capacity       maximum number of buffered records
+     * @param batchSize      maximum number of records per flush
+     * @param flushInterval  maximum time a record waits before being flushed
+     * @param threadName     name of the writer thread
+     */
+    public IpRecordWriter(IpAddressStorageService storageService,
+                          int capacity,
+                          int batchSize,
+                          Duration flushInterval,
+                          String threadName) {
+        this(storageService, capacity, AdaptiveBatchController.fixed(batchSize, flushInterval), threadName);
+    }
+
+    /**
+     * Creates a new single-lane writer.
+     *
+     * @param storageService  the storage service batches are handed to
+     * @param capacity        maximum number of buffered records
+     * @param batchController controls the batch size and flush interval
+     * @param threadName      name of the writer thread
+     */
+    public IpRecordWriter(IpAddressStorageService storageService,
+                          int capacity,
+                          AdaptiveBatchController batchController,
+                          String threadName) {
+        this(storageService, capacity, 1, () -> batchController, threadName);
+    }
+
+    /**
+     * Creates a new writer.
+     *
+     * @param storageService   the storage service batches are handed to
+     * @param capacity         maximum number of buffered records, split evenly across lanes
+     * @param laneCount        number of lanes, each with its own writer thread
+     * @param batchControllers creates the batch controller of each lane
+     * @param threadName       name of the writer thread, suffixed with the lane
+     *                         index when there is more than one lane
+     */
+    public IpRecordWriter(IpAddressStorageService storageService,
+                          int capacity,
+                          int laneCount,
+                          Supplier<AdaptiveBatchController> batchControllers,
+                          String threadName) {
+        this(storageService, capacity, Long.MAX_VALUE, laneCount, batchControllers, threadName);
+    }
+
+    /**
+     * Creates a new writer.
+     *
+     * @param storageService   the storage service batches are handed to
+     * @param capacity         maximum number of buffered records, split evenly across lanes
+     * @param maxBufferedBytes maximum estimated heap size of buffered records, shared by all lanes
+     * @param laneCount        number of lanes, each with its own writer thread
+     * @param batchControllers creates the batch controller of each lane
+     * @param threadName       name of the writer thread, suffixed with the lane
+     *                         index when there is more than one lane
+     */
+    public IpRecordWriter(IpAddressStorageService storageService,
+                          int capacity,
+                          long maxBufferedBytes,
+                          int laneCount,
+                          Supplier<AdaptiveBatchController> batchControllers,
+                          String threadName) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (maxBufferedBytes < 1) {
+            throw new IllegalArgumentException("maxBufferedBytes must be positive");
+        }
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("laneCount must be positive");
+        }
+        this.storageService = storageService;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.lanes = new Lane[laneCount];
+        final int laneCapacity = Math.max(1, capacity / laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            final String name = laneCount == 1 ? threadName : threadName + "-" + i;
+            lanes[i] = new Lane(name, laneCapacity, batchControllers.get());
+        }
+    }
+
+    /**
+     * Enqueues a record for persistence without blocking.
+     *
+     * @param record the record to store
+     * @return {@code true} if the record was buffered, {@code false} if it was
+     *         dropped because the buffer is full or the writer is not running
+     */
+    public boolean submit(IpAddressRecord record) {
+        if (!running) {
+            // No lane thread would ever store it
+            dropped.increment();
+            log.debug("IP record writer not running, dropping capture for IP: {}", record.getIpAddress());
+            return false;
+        }
+        return laneFor(record.getIpAddress()).submit(record);
+    }
+
+    /**
+     * Sets a handler that receives batches whose flush failed, e.g. to journal them
+     * for later replay. Without a handler such batches are lost.
+     *
+     * @param failedBatchHandler the handler, or {@code null} for none
+     */
+    public void setFailedBatchHandler(Consumer<List<IpAddressRecord>> failedBatchHandler) {
+        this.failedBatchHandler = failedBatchHandler;
+    }
+
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Lane lane : lanes) {
+            lane.start();
+        }
+        log.debug("Started IP record writer with {} lane(s)", lanes.length);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Lane lane : lanes) {
+            LockSupport.unpark(lane.thread);
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        for (Lane lane : lanes) {
+            lane.join(deadline);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * Returns the number of lanes.
+     *
+     * @return the lane count
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the current maximum number of records per flush of the first lane.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return getBatchSize(0);
+    }
+
+    /**
+     * Returns the current maximum number of records per flush of a lane.
+     *
+     * @param lane the lane index
+     * @return the batch size
+     */
+    public int getBatchSize(int lane) {
+        return lanes[lane].batchController.getBatchSize();
+    }
+
+    /**
+     * Returns the current maximum time a record waits before being flushed in the first lane.
+     *
+     * @return the flush interval
+     */
+    public Duration getFlushInterval() {
+        return getFlushInterval(0);
+    }
+
+    /**
+     * Returns the current maximum time a record waits before being flushed in a lane.
+     *
+     * @param lane the lane index
+     * @return the flush interval
+     */
+    public Duration getFlushInterval(int lane) {
+        return Duration.ofNanos(lanes[lane].batchController.getFlushIntervalNanos());
+    }
+
+    /**
+     * Returns the number of buffered records not yet flushed.
+     *
+     * @return the pending record count
+     */
+    public int getPendingCount() {
+        int total = 0;
+        for (Lane lane : lanes) {
+            total += lane.pending.get();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the estimated heap size of buffered records not yet flushed.
+     *
+     * @return the buffered size in bytes
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * Returns the maximum estimated heap size of buffered records.
+     *
+     * @return the byte bound
+     */
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    /**
+     * Returns the number of records handed to the storage service.
+     *
+     * @return the written record count
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Returns the number of records dropped because the buffer was full, by count or by
+     * bytes, or because the writer was not running.
+     *
+     * @return the dropped record count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of records whose flush failed.
+     *
+     * @return the failed record count
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    private void handleFailedBatch(List<IpAddressRecord> batch, Exception cause) {
+        final Consumer<List<IpAddressRecord>> handler = failedBatchHandler;
+        if (handler == null) {
+            log.error("Failed to store batch of {} IP records", batch.size(), cause);
+            return;
+        }
+        log.warn("Failed to store batch of {} IP records, handing it to the failed batch handler: {}",
+                batch.size(), cause.getMessage());
+        try {
+            handler.accept(batch);
+        } catch (Exception e) {
+            log.error("Failed batch handler rejected {} IP records", batch.size(), e);
+        }
+    }
+
+    private Lane laneFor(String ipAddress) {
+        if (lanes.length == 1 || ipAddress == null) {
+            return lanes[0];
+        }
+        final int h = ipAddress.hashCode();
+        return lanes[Math.floorMod(h ^ (h >>> 16), lanes.length)];
+    }
+
+    /**
+     * A queue drained by its own writer thread.
+     */
+    private final class Lane {
+
+        private final String threadName;
+        private final int capacity;
+        private final AdaptiveBatchController batchController;
+        private final ConcurrentLinkedQueue<Buffered> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile Thread thread;
+
+        Lane(String threadName, int capacity, AdaptiveBatchController batchController) {
+            this.threadName = threadName;
+            this.capacity = capacity;
+            this.batchController = batchController;
+        }
+
+        boolean submit(IpAddressRecord record) {
+            final int size = pending.incrementAndGet();
+            if (size > capacity) {
+                pending.decrementAndGet();
+                dropped.increment();
+                log.debug("IP record buffer full, dropping capture for IP: {}", record.getIpAddress());
+                return false;
+            }
+            final long bytes = RecordSizeEstimator.estimate(record);
+            if (bufferedBytes.addAndGet(bytes) > maxBufferedBytes) {
+                bufferedBytes.addAndGet(-bytes);
+                pending.decrementAndGet();
+                dropped.increment();
+                log.debug("IP record buffer byte limit reached, dropping capture for IP: {}", record.getIpAddress());
+                return false;
+            }
+            queue.offer(new Buffered(record, bytes));
+            if (size >= batchController.getBatchSize()) {
+                final Thread current = thread;
+                if (current != null) {
+                    LockSupport.unpark(current);
+                }
+            }
+            return true;
+        }
+
+        void start() {
+            thread = Thread.ofVirtual().name(threadName).start(this::run);
+        }
+
+        void join(long deadlineNanos) {
+            final Thread current = thread;
+            if (current == null) {
+                return;
+            }
+            try {
+                final long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+                if (!current.join(Duration.ofNanos(remaining))) {
+                    log.warn("IP record writer '{}' did not drain within {}s, {} records lost",
+                            threadName, SHUTDOWN_TIMEOUT_SECONDS, pending.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+
+        private void run() {
+            long lastFlush = System.nanoTime();
+            boolean active = true;
+            while ((active && running) || pending.get() > 0) {
+                final int size = pending.get();
+                final int batchSize = batchController.getBatchSize();
+                final long flushIntervalNanos = batchController.getFlushIntervalNanos();
+                final long waited = System.nanoTime() - lastFlush;
+                if (size == 0 || (active && running && size < batchSize && waited < flushIntervalNanos)) {
+                    LockSupport.parkNanos(this, size == 0 ? flushIntervalNanos : flushIntervalNanos - waited);
+                    if (Thread.interrupted()) {
+                        active = false;
+                    }
+                    continue;
+                }
+                flushBatch(batchSize);
+                lastFlush = System.nanoTime();
+            }
+            log.debug("IP record writer '{}' stopped", threadName);
+        }
+
+        private void flushBatch(int batchSize) {
+            final List<IpAddressRecord> batch = new ArrayList<>(Math.min(batchSize, pending.get()));
+            long batchBytes = 0;
+            Buffered buffered;
+            while (batch.size() < batchSize && (buffered = queue.poll()) != null) {
+                batch.add(buffered.record());
+                batchBytes += buffered.bytes();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            pending.addAndGet(-batch.size());
+
+            final long start = System.nanoTime();
+            try {
+                storageService.storeAll(batch);
+                final long latency = System.nanoTime() - start;
+                written.add(batch.size());
+                batchController.onFlush(latency, pending.get());
+                log.debug("Flushed {} IP records in {} ms", batch.size(), TimeUnit.NANOSECONDS.toMillis(latency));
+            } catch (Exception e) {
+                failed.add(batch.size());
+                batchController.onFailure();
+                handleFailedBatch(batch, e);
+            } finally {
+                // Released only now so that the batch being stored still counts against the bound
+                bufferedBytes.addAndGet(-batchBytes);
+            }
+        }
+    }
+
+    /**
+     * A buffered record with its estimated size.
+     */
+    private record Buffered(IpAddressRecord record, long bytes) {
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.writer;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+
+/**
+ * Estimates the heap retained by a buffered {@link IpAddressRecord}.
+ *
+ * <p>The estimate assumes a 64-bit JVM with compressed references: a fixed cost for
+ * the record, its boxed numeric fields, its timestamp and the queue node holding it,
+ * plus for every string field a header and two bytes per character. Two bytes per
+ * character over-counts Latin-1 strings stored compactly, so the estimate errs on the
+ * side of a tighter bound.
+ *
+ * @author Alchemy Team
+ * @since 1.1.0
+ */
+public final class RecordSizeEstimator {
+
+    /**
+     * Record object (16 fields), three boxed doubles, an {@code Instant}, the buffer
+     * entry and its queue node.
+     */
+    static final long FIXED_BYTES = 88 + 3 * 16 + 24 + 24 + 24;
+
+    /**
+     * {@code String} object plus its backing array header.
+     */
+    static final long STRING_OVERHEAD_BYTES = 24 + 16;
+
+    private RecordSizeEstimator() {
+    }
+
+    /**
+     * Returns the estimated heap size of a record.
+     *
+     * @param record the record
+     * @return the estimated size in bytes
+     */
+    public static long estimate(IpAddressRecord record) {
+        return FIXED_BYTES
+                + sizeOf(record.getIpAddress())
+                + sizeOf(record.getUserId())
+                + sizeOf(record.getUserAgent())
+                + sizeOf(record.getRequestPath())
+                + sizeOf(record.getHttpMethod())
+                + sizeOf(record.getTag())
+                + sizeOf(record.getCountryCode())
+                + sizeOf(record.getCity())
+                + sizeOf(record.getRegion())
+                + sizeOf(record.getSourceHeader())
+                + sizeOf(record.getMetadata());
+    }
+
+    private static long sizeOf(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + 2L * value.length();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.aspect;
+
+import cloud.alchemy.ip.annotation.StoreIPAddress;
+import cloud.alchemy.ip.capture.IpCaptureDispatcher;
+import cloud.alchemy.ip.capture.IpRecordFactory;
+import cloud.alchemy.ip.config.IpManagementProperties.SyncMode;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpAddressStorageAspect}.
+ */
+@DisplayName("IpAddressStorageAspect")
+class IpAddressStorageAspectTest {
+
+    private RecordingStorageService storageService;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private ServletRequestAttributes attributes;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new RecordingStorageService();
+        request = new MockHttpServletRequest("GET", "/sync");
+        request.addHeader("X-Forwarded-For", "203.0.113.195");
+        response = new MockHttpServletResponse();
+        attributes = new ServletRequestAttributes(request, response);
+        RequestContextHolder.setRequestAttributes(attributes);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Nested
+    @DisplayName("sync mode IMMEDIATE")
+    class Immediate {
+
+        @Test
+        @DisplayName("should store before the controller call returns")
+        void shouldStoreBeforeReturning() {
+            final SampleController controller = proxy(SyncMode.IMMEDIATE);
+
+            controller.sync();
+
+            assertEquals(1, storageService.stored.size());
+            assertEquals("203.0.113.195", storageService.stored.getFirst().getIpAddress());
+        }
+    }
+
+    @Nested
+    @DisplayName("sync mode AFTER_COMPLETION")
+    class AfterCompletion {
+
+        @Test
+        @DisplayName("should defer storage until the request is completed")
+        void shouldDeferStorageUntilRequestCompleted() {
+            final SampleController controller = proxy(SyncMode.AFTER_COMPLETION);
+
+            controller.sync();
+            assertTrue(storageService.stored.isEmpty());
+            assertFalse(response.isCommitted());
+
+            attributes.requestCompleted();
+
+            assertEquals(1, storageService.stored.size());
+            assertTrue(response.isCommitted());
+        }
+
+        @Test
+        @DisplayName("should register one callback per capture")
+        void shouldRegisterOneCallbackPerCapture() {
+            final SampleController controller = proxy(SyncMode.AFTER_COMPLETION);
+
+            controller.sync();
+            controller.sync();
+            attributes.requestCompleted();
+
+            assertEquals(2, storageService.stored.size());
+        }
+
+        @Test
+        @DisplayName("should not defer async captures")
+        void shouldNotDeferAsyncCaptures() {
+            final SampleController controller = proxy(SyncMode.AFTER_COMPLETION);
+
+            controller.async();
+
+            assertEquals(1, storageService.storedAsync.size());
+        }
+
+        @Test
+        @DisplayName("should swallow storage failures during completion")
+        void shouldSwallowStorageFailuresDuringCompletion() {
+            storageService.failing = true;
+            final SampleController controller = proxy(SyncMode.AFTER_COMPLETION);
+
+            controller.sync();
+
+            assertDoesNotThrow(() -> attributes.requestCompleted());
+        }
+    }
+
+    private SampleController proxy(SyncMode syncMode) {
+        final IpAddressStorageAspect aspect = new IpAddressStorageAspect(
+                new IpCaptureDispatcher(storageService, syncMode, null),
+                new IpRecordFactory(new DefaultIpAddressExtractor()),
+                req -> Optional.empty(),
+                new DefaultListableBeanFactory(),
+                1.0
+        );
+        final AspectJProxyFactory factory = new AspectJProxyFactory(new SampleController());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    @RestController
+    static class SampleController {
+
+        @StoreIPAddress(async = false)
+        public String sync() {
+            return "OK";
+        }
+
+        @StoreIPAddress
+        public String async() {
+            return "OK";
+        }
+    }
+
+    private static class RecordingStorageService implements IpAddressStorageService {
+        final List<IpAddressRecord> stored = new ArrayList<>();
+        final List<IpAddressRecord> storedAsync = new ArrayList<>();
+        boolean failing;
+
+        @Override
+        public Optional<IpAddressRecord> store(IpAddressRecord record) {
+            if (failing) {
+                throw new IllegalStateException("database unavailable");
+            }
+            stored.add(record);
+            return Optional.of(record);
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+            storedAsync.add(record);
+            return CompletableFuture.completedFuture(Optional.of(record));
+        }
+
+        @Override
+        public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request,
+                                                                                  String userId) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.benchmark;
+
+import cloud.alchemy.ip.annotation.StoreIPAddress;
+import cloud.alchemy.ip.aspect.IpAddressStorageAspect;
+import cloud.alchemy.ip.capture.CaptureOptions;
+import cloud.alchemy.ip.capture.IpCaptureDispatcher;
+import cloud.alchemy.ip.capture.IpCaptureFilter;
+import cloud.alchemy.ip.capture.IpRecordFactory;
+import cloud.alchemy.ip.capture.PathPatternTrie;
+import cloud.alchemy.ip.config.IpManagementProperties.SyncMode;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the per-request capture overhead of the aspect and filter capture modes.
+ *
+ * <p>Storage is a no-op so only interception, extraction and record building are
+ * measured. Run with {@code mvn test -P benchmark -pl alchemy-ip-core}.
+ */
+@Tag("benchmark")
+@DisplayName("Capture mode benchmark")
+class CaptureModeBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURED_ITERATIONS = 1_000_000;
+
+    @Test
+    @DisplayName("aspect vs filter per-request overhead")
+    void compareCaptureModes() throws Exception {
+        final CountingStorageService storageService = new CountingStorageService();
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/orders");
+        request.addHeader("X-Forwarded-For", "203.0.113.195");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        final SampleController plainController = new SampleController();
+        final SampleController proxiedController = aspectProxy(storageService);
+        final IpCaptureFilter filter = new IpCaptureFilter(
+                new IpCaptureDispatcher(storageService, SyncMode.IMMEDIATE, null),
+                new IpRecordFactory(new DefaultIpAddressExtractor()),
+                req -> Optional.empty(),
+                new PathPatternTrie(List.of("/api/**", "/admin/**", "/auth/login")),
+                new CaptureOptions(false, true, true, "", false)
+        );
+        final HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                plainController.orders();
+            }
+        };
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        try {
+            final Runnable baseline = plainController::orders;
+            final Runnable aspect = proxiedController::orders;
+            final Runnable filterMode = () -> {
+                try {
+                    filter.doFilter(request, response, new MockFilterChain(servlet));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+
+            run(baseline, WARMUP_ITERATIONS);
+            run(aspect, WARMUP_ITERATIONS);
+            run(filterMode, WARMUP_ITERATIONS);
+
+            final double baselineNs = run(baseline, MEASURED_ITERATIONS);
+            final double aspectNs = run(aspect, MEASURED_ITERATIONS);
+            final double filterNs = run(filterMode, MEASURED_ITERATIONS);
+
+            System.out.printf("Capture overhead per request (ns/op): baseline=%.1f aspect=%.1f filter=%.1f%n",
+                    baselineNs, aspectNs - baselineNs, filterNs - baselineNs);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        assertEquals(2L * (WARMUP_ITERATIONS + MEASURED_ITERATIONS), storageService.stores.sum());
+    }
+
+    private static double run(Runnable task, int iterations) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (double) (System.nanoTime() - start) / iterations;
+    }
+
+    private static SampleController aspectProxy(IpAddressStorageService storageService) {
+        final AspectJProxyFactory factory = new AspectJProxyFactory(new SampleController());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new IpAddressStorageAspect(
+                storageService,
+                new DefaultIpAddressExtractor(),
+                req -> Optional.empty(),
+                new DefaultListableBeanFactory()
+        ));
+        return factory.getProxy();
+    }
+
+    @RestController
+    static class SampleController {
+
+        @StoreIPAddress(async = false)
+        public String orders() {
+            return "OK";
+        }
+    }
+
+    private static class CountingStorageService implements IpAddressStorageService {
+        final LongAdder stores = new LongAdder();
+
+        @Override
+        public Optional<IpAddressRecord> store(IpAddressRecord record) {
+            stores.increment();
+            return Optional.of(record);
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+            return CompletableFuture.completedFuture(store(record));
+        }
+
+        @Override
+        public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request,
+                                                                                  String userId) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+}
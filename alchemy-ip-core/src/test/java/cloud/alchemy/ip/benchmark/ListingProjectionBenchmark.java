@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.benchmark;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import cloud.alchemy.ip.integration.TestApplication;
+import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRecordCursor;
+import cloud.alchemy.ip.service.JdbcIpAddressStorageService;
+import cloud.alchemy.ip.service.WindowedDeduplicator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares reading listing pages as entities and as record projections on H2.
+ *
+ * <p>Both paths read the same slices of records that carry a browser user agent and
+ * a kilobyte of metadata, and turn them into the eight list columns, as the list
+ * endpoints do. For each page it reports the bytes of column data the query returns
+ * and the bytes the reading thread allocates. Run with
+ * {@code mvn test -P benchmark -pl alchemy-ip-core}.
+ */
+@Tag("benchmark")
+@SpringBootTest(
+        classes = TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"spring.jpa.show-sql=false", "logging.level.cloud.alchemy.ip=INFO"}
+)
+@ActiveProfiles("test")
+@DisplayName("Listing projection benchmark")
+class ListingProjectionBenchmark {
+
+    private static final int RECORDS = 20_000;
+    private static final int PAGE_SIZE = 100;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final Sort SORT = IpRecordCursor.sort(Sort.Direction.DESC);
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36"
+            + " (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+    private static final String METADATA = "{\"headers\":{" + "\"x-header\":\"value\",".repeat(50) + "\"end\":true}}";
+
+    private static final String ENTITY_SQL = "SELECT * FROM ip_addresses ORDER BY created_at DESC, id DESC"
+            + " LIMIT " + PAGE_SIZE + " OFFSET ?";
+    private static final String PROJECTION_SQL = "SELECT id, ip_address, user_id, http_method, request_path, tag,"
+            + " country_code, created_at FROM ip_addresses ORDER BY created_at DESC, id DESC"
+            + " LIMIT " + PAGE_SIZE + " OFFSET ?";
+
+    @Autowired
+    private IpAddressRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("entity vs projection bytes per page")
+    void compareListingReads() {
+        insertRecords();
+        final int pages = RECORDS / PAGE_SIZE;
+
+        final Function<Pageable, List<Listing>> entities = pageable -> repository.findSlice(null, pageable)
+                .getContent().stream().map(Listing::of).toList();
+        final Function<Pageable, List<Listing>> projections = pageable -> repository.findSlice(null, pageable,
+                Listing.class).getContent();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            allocatedPerPage(entities, pages);
+            allocatedPerPage(projections, pages);
+        }
+        final long entityAllocated = allocatedPerPage(entities, pages);
+        final long projectionAllocated = allocatedPerPage(projections, pages);
+        final long entityBytes = columnBytesPerPage(ENTITY_SQL, pages);
+        final long projectionBytes = columnBytesPerPage(PROJECTION_SQL, pages);
+
+        assertEquals(entities.apply(PageRequest.of(3, PAGE_SIZE, SORT)),
+                projections.apply(PageRequest.of(3, PAGE_SIZE, SORT)));
+        System.out.printf("Per page of %d on H2: column bytes entity=%d projection=%d (%.1fx),"
+                        + " allocated bytes entity=%d projection=%d (%.1fx)%n",
+                PAGE_SIZE, entityBytes, projectionBytes, (double) entityBytes / projectionBytes,
+                entityAllocated, projectionAllocated, (double) entityAllocated / projectionAllocated);
+    }
+
+    private void insertRecords() {
+        jdbcTemplate.update("DELETE FROM ip_addresses");
+        final JdbcIpAddressStorageService storage = JdbcIpAddressStorageService.builder(
+                        jdbcTemplate, "ip_addresses", new DefaultIpAddressExtractor())
+                .windowedDeduplicator(new WindowedDeduplicator(Duration.ofMinutes(5), RECORDS))
+                .build();
+        final Instant start = Instant.parse("2024-03-01T00:00:00Z");
+        final List<IpAddressRecord> batch = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            batch.add(IpAddressRecord.builder()
+                    .ipAddress("10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff))
+                    .userId("user" + (i % 97) + "@example.com")
+                    .userAgent(USER_AGENT)
+                    .requestPath("/api/orders/" + i)
+                    .httpMethod("GET")
+                    .countryCode("US")
+                    .city("New York")
+                    .region("NY")
+                    .sourceHeader("X-Forwarded-For")
+                    .metadata(METADATA)
+                    .createdAt(start.plusSeconds(i))
+                    .build());
+        }
+        storage.storeAll(batch);
+    }
+
+    private static long allocatedPerPage(Function<Pageable, List<Listing>> read, int pages) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().threadId();
+        long rows = 0;
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int page = 0; page < pages; page++) {
+            rows += read.apply(PageRequest.of(page, PAGE_SIZE, SORT)).size();
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(RECORDS, rows);
+        return allocated / pages;
+    }
+
+    private long columnBytesPerPage(String sql, int pages) {
+        long bytes = 0;
+        for (int page = 0; page < pages; page++) {
+            bytes += jdbcTemplate.query(sql, rs -> {
+                final ResultSetMetaData metaData = rs.getMetaData();
+                long pageBytes = 0;
+                while (rs.next()) {
+                    for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                        final Object value = rs.getObject(column);
+                        pageBytes += value == null ? 0 : value instanceof String text
+                                ? text.getBytes(StandardCharsets.UTF_8).length
+                                : Long.BYTES;
+                    }
+                }
+                return pageBytes;
+            }, page * PAGE_SIZE);
+        }
+        return bytes / pages;
+    }
+
+    /**
+     * The list columns, as in the API's {@code IpRecordDto}.
+     */
+    private record Listing(Long id, String ipAddress, String userId, String httpMethod, String requestPath,
+                           String tag, String countryCode, Instant createdAt) {
+
+        static Listing of(IpAddressRecord record) {
+            return new Listing(record.getId(), record.getIpAddress(), record.getUserId(), record.getHttpMethod(),
+                    record.getRequestPath(), record.getTag(), record.getCountryCode(), record.getCreatedAt());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.benchmark;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import cloud.alchemy.ip.integration.TestApplication;
+import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.service.DefaultIpAddressStorageService;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import cloud.alchemy.ip.service.JdbcIpAddressStorageService;
+import cloud.alchemy.ip.service.WindowedDeduplicator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares insert throughput of the JPA and JDBC storage paths on H2.
+ *
+ * <p>Both services receive the same writer-sized batches of distinct records and use
+ * windowed (in-memory) dedup, so only the write path is measured. Run with
+ * {@code mvn test -P benchmark -pl alchemy-ip-core}.
+ */
+@Tag("benchmark")
+@SpringBootTest(
+        classes = TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"spring.jpa.show-sql=false", "logging.level.cloud.alchemy.ip=INFO"}
+)
+@ActiveProfiles("test")
+@DisplayName("Storage path benchmark")
+class StoragePathBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int WARMUP_RECORDS = 10_000;
+    private static final int MEASURED_RECORDS = 50_000;
+
+    @Autowired
+    private IpAddressRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("JPA vs JDBC inserts per second")
+    void compareStoragePaths() {
+        final Supplier<IpAddressStorageService> jpa = () -> DefaultIpAddressStorageService.builder(
+                repository, new DefaultIpAddressExtractor()).windowedDeduplicator(deduplicator()).build();
+        final Supplier<IpAddressStorageService> jdbc = () -> JdbcIpAddressStorageService.builder(
+                jdbcTemplate, "ip_addresses", new DefaultIpAddressExtractor()).windowedDeduplicator(deduplicator()).build();
+
+        run(jpa.get(), WARMUP_RECORDS);
+        run(jdbc.get(), WARMUP_RECORDS);
+
+        final double jpaPerSecond = run(jpa.get(), MEASURED_RECORDS);
+        final double jdbcPerSecond = run(jdbc.get(), MEASURED_RECORDS);
+
+        System.out.printf("Inserts/s on H2 (batch size %d): jpa=%.0f jdbc=%.0f (%.1fx)%n",
+                BATCH_SIZE, jpaPerSecond, jdbcPerSecond, jdbcPerSecond / jpaPerSecond);
+    }
+
+    private double run(IpAddressStorageService service, int records) {
+        jdbcTemplate.update("DELETE FROM ip_addresses");
+        final List<List<IpAddressRecord>> batches = batches(records);
+
+        final long start = System.nanoTime();
+        for (List<IpAddressRecord> batch : batches) {
+            service.storeAll(batch);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        assertEquals(records, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ip_addresses", Integer.class));
+        return records * 1e9 / elapsed;
+    }
+
+    private static List<List<IpAddressRecord>> batches(int records) {
+        final List<List<IpAddressRecord>> batches = new ArrayList<>();
+        List<IpAddressRecord> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < records; i++) {
+            batch.add(IpAddressRecord.builder()
+                    .ipAddress("10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff))
+                    .userId("user" + (i % 97) + "@example.com")
+                    .requestPath("/api/orders")
+                    .httpMethod("GET")
+                    .build());
+            if (batch.size() == BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static WindowedDeduplicator deduplicator() {
+        return new WindowedDeduplicator(Duration.ofMinutes(5), MEASURED_RECORDS);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.breaker;
+
+import cloud.alchemy.ip.breaker.StorageCircuitBreaker.State;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import cloud.alchemy.ip.writer.RecordSizeEstimator;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CircuitBreakingIpAddressStorageService}.
+ */
+@DisplayName("CircuitBreakingIpAddressStorageService")
+class CircuitBreakingIpAddressStorageServiceTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private FlakyStorageService delegate;
+    private StorageCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new FlakyStorageService();
+        breaker = new StorageCircuitBreaker(10, 2, 0.5, Duration.ofSeconds(1), 1.0,
+                Duration.ofSeconds(30), 1, now::get);
+    }
+
+    @Test
+    @DisplayName("should spill failed and rejected records and drain them once the breaker closes")
+    void shouldSpillToMemoryAndDrain() {
+        final CircuitBreakingIpAddressStorageService service =
+                new CircuitBreakingIpAddressStorageService(delegate, breaker, null, 100, 1_000_000, 10, "test-drain");
+        delegate.down = true;
+
+        assertTrue(service.store(record(1)).isEmpty());
+        assertTrue(service.store(record(2)).isEmpty());
+        assertEquals(State.OPEN, breaker.getState());
+        final int callsWhenOpened = delegate.calls;
+
+        assertTrue(service.store(record(3)).isEmpty());
+        assertEquals(callsWhenOpened, delegate.calls, "open breaker must not reach the delegate");
+        assertEquals(3, service.getSpillPendingCount());
+
+        delegate.down = false;
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertTrue(service.store(record(4)).isPresent());
+        assertEquals(State.CLOSED, breaker.getState());
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.getSpillPendingCount() == 0);
+        assertEquals(List.of("203.0.113.4", "203.0.113.1", "203.0.113.2", "203.0.113.3"),
+                delegate.stored.stream().map(IpAddressRecord::getIpAddress).toList());
+        assertEquals(3, service.getSpilledCount());
+    }
+
+    @Test
+    @DisplayName("should drop the oldest spilled records beyond the byte bound")
+    void shouldBoundSpilledBytes() {
+        final long recordBytes = RecordSizeEstimator.estimate(record(1));
+        final CircuitBreakingIpAddressStorageService service =
+                new CircuitBreakingIpAddressStorageService(delegate, breaker, null, 100, recordBytes * 2, 10,
+                        "test-drain");
+        delegate.down = true;
+
+        service.store(record(1));
+        service.store(record(2));
+        service.store(record(3));
+
+        assertEquals(2, service.getSpillPendingCount());
+        assertEquals(recordBytes * 2, service.getSpillPendingBytes());
+        assertEquals(1, service.getSpillDroppedCount());
+
+        delegate.down = false;
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        service.store(record(4));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.getSpillPendingCount() == 0);
+        assertEquals(0, service.getSpillPendingBytes());
+        assertEquals(List.of("203.0.113.4", "203.0.113.2", "203.0.113.3"),
+                delegate.stored.stream().map(IpAddressRecord::getIpAddress).toList());
+    }
+
+    @Test
+    @DisplayName("should hand spilled records to an external target")
+    void shouldSpillToExternalTarget() {
+        final List<IpAddressRecord> spilled = new ArrayList<>();
+        final CircuitBreakingIpAddressStorageService service =
+                new CircuitBreakingIpAddressStorageService(delegate, breaker, null, spilled::addAll);
+        delegate.down = true;
+
+        service.store(record(1));
+        service.storeAsync(record(2)).join();
+
+        assertEquals(2, spilled.size());
+        assertEquals(0, service.getSpillPendingCount());
+    }
+
+    @Test
+    @DisplayName("should fail batches fast while open instead of spilling them")
+    void shouldFailBatchesFast() {
+        final List<IpAddressRecord> spilled = new ArrayList<>();
+        final CircuitBreakingIpAddressStorageService service =
+                new CircuitBreakingIpAddressStorageService(delegate, breaker, null, spilled::addAll);
+        delegate.down = true;
+        assertThrows(IllegalStateException.class, () -> service.storeAll(List.of(record(1))));
+        assertThrows(IllegalStateException.class, () -> service.storeAll(List.of(record(2))));
+        assertEquals(State.OPEN, breaker.getState());
+        final int callsWhenOpened = delegate.calls;
+
+        assertThrows(StorageCircuitOpenException.class, () -> service.storeAll(List.of(record(3))));
+
+        assertEquals(callsWhenOpened, delegate.calls);
+        assertTrue(spilled.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should rethrow invalid records without spilling them or counting a failure")
+    void shouldRethrowInvalidRecords() {
+        final CircuitBreakingIpAddressStorageService service =
+                new CircuitBreakingIpAddressStorageService(delegate, breaker, null, 100, 1_000_000, 10, "test-drain");
+        assertThrows(IllegalArgumentException.class, () -> service.store(null));
+        assertThrows(IllegalArgumentException.class, () -> service.store(null));
+        assertThrows(IllegalArgumentException.class, () -> service.storeAll(Collections.singletonList(null)));
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureCount());
+        assertEquals(0, service.getSpilledCount());
+        assertEquals(0, service.getSpillPendingCount());
+    }
+
+    @Test
+    @DisplayName("should discard spilled records that fail permanently while draining the rest")
+    void shouldDiscardPermanentFailuresWhileDraining() {
+        final CircuitBreakingIpAddressStorageService service =
+                new CircuitBreakingIpAddressStorageService(delegate, breaker, null, 100, 1_000_000, 10, "test-drain");
+        delegate.down = true;
+        service.store(record(1));
+        service.store(IpAddressRecord.builder().ipAddress(FlakyStorageService.REJECTED_IP).build());
+        service.store(record(3));
+        assertEquals(State.OPEN, breaker.getState());
+
+        delegate.down = false;
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertTrue(service.store(record(4)).isPresent());
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.getSpillPendingCount() == 0);
+        assertEquals(List.of("203.0.113.4", "203.0.113.1", "203.0.113.3"),
+                delegate.stored.stream().map(IpAddressRecord::getIpAddress).toList());
+        assertEquals(1, service.getSpillDiscardedCount());
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    private static IpAddressRecord record(int host) {
+        return IpAddressRecord.builder().ipAddress("203.0.113." + host).build();
+    }
+
+    private static class FlakyStorageService implements IpAddressStorageService {
+        static final String REJECTED_IP = "203.0.113.255";
+
+        final List<IpAddressRecord> stored = new CopyOnWriteArrayList<>();
+        volatile boolean down;
+        volatile int calls;
+
+        @Override
+        public Optional<IpAddressRecord> store(IpAddressRecord record) {
+            calls++;
+            if (record == null) {
+                throw new IllegalArgumentException("IpAddressRecord cannot be null");
+            }
+            if (down) {
+                throw new IllegalStateException("database unavailable");
+            }
+            stored.add(record);
+            return Optional.of(record);
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+            try {
+                return CompletableFuture.completedFuture(store(record));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        @Override
+        public List<IpAddressRecord> storeAll(List<IpAddressRecord> records) {
+            calls++;
+            if (records.stream().anyMatch(Objects::isNull)) {
+                throw new IllegalArgumentException("IpAddressRecord cannot be null");
+            }
+            if (down) {
+                throw new IllegalStateException("database unavailable");
+            }
+            if (records.stream().anyMatch(record -> REJECTED_IP.equals(record.getIpAddress()))) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            stored.addAll(records);
+            return records;
+        }
+
+        @Override
+        public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request,
+                                                                                  String userId) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+}
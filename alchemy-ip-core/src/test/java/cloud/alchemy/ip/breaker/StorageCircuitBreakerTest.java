@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.breaker;
+
+import cloud.alchemy.ip.breaker.StorageCircuitBreaker.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link StorageCircuitBreaker}.
+ */
+@DisplayName("StorageCircuitBreaker")
+class StorageCircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(3).toNanos();
+
+    private final AtomicLong now = new AtomicLong();
+    private StorageCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        breaker = new StorageCircuitBreaker(10, 4, 0.5, Duration.ofSeconds(1), 0.75,
+                Duration.ofSeconds(30), 2, now::get);
+    }
+
+    @Test
+    @DisplayName("should stay closed until the minimum number of calls is recorded")
+    void shouldRequireMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(breaker.acquirePermission(), FAST);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+    }
+
+    @Test
+    @DisplayName("should open when the failure rate reaches the threshold")
+    void shouldOpenOnFailureRate() {
+        succeed(2);
+        breaker.onFailure(breaker.acquirePermission(), FAST);
+        breaker.onFailure(breaker.acquirePermission(), FAST);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(StorageCircuitBreaker.NO_PERMIT, breaker.acquirePermission());
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    @DisplayName("should open when the slow call rate reaches the threshold")
+    void shouldOpenOnSlowCallRate() {
+        succeed(1);
+        for (int i = 0; i < 3; i++) {
+            breaker.onSuccess(breaker.acquirePermission(), SLOW);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(3, breaker.getSlowCount());
+    }
+
+    @Test
+    @DisplayName("should forget outcomes that fall out of the window")
+    void shouldSlideWindow() {
+        succeed(3);
+        breaker.onFailure(breaker.acquirePermission(), FAST);
+        succeed(6);
+        assertEquals(0.1, breaker.getFailureRate(), 1e-9);
+
+        succeed(4);
+
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("should close after enough successful probes")
+    void shouldCloseAfterProbes() {
+        open();
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        final long first = breaker.acquirePermission();
+        final long second = breaker.acquirePermission();
+        assertEquals(StorageCircuitBreaker.NO_PERMIT, breaker.acquirePermission());
+
+        breaker.onSuccess(first, FAST);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(second, FAST);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("should re-open when a probe fails or is slow")
+    void shouldReopenOnBadProbe() {
+        open();
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        breaker.onFailure(breaker.acquirePermission(), FAST);
+        assertEquals(State.OPEN, breaker.getState());
+
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        breaker.onSuccess(breaker.acquirePermission(), SLOW);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("should hand back an ignored probe without recording an outcome")
+    void shouldReleaseIgnoredProbe() {
+        open();
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        final long first = breaker.acquirePermission();
+        final long second = breaker.acquirePermission();
+
+        breaker.onIgnored(first);
+        breaker.onSuccess(second, FAST);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(breaker.acquirePermission(), FAST);
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(4, breaker.getFailureCount());
+    }
+
+    @Test
+    @DisplayName("should ignore outcomes of calls permitted before a transition")
+    void shouldIgnoreStalePermits() {
+        final long stale = breaker.acquirePermission();
+        open();
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        breaker.onFailure(stale, FAST);
+
+        assertEquals(State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("should reject invalid configuration")
+    void shouldRejectInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new StorageCircuitBreaker(
+                10, 11, 0.5, Duration.ofSeconds(1), 0.5, Duration.ofSeconds(1), 1));
+        assertThrows(IllegalArgumentException.class, () -> new StorageCircuitBreaker(
+                10, 5, 0, Duration.ofSeconds(1), 0.5, Duration.ofSeconds(1), 1));
+        assertThrows(IllegalArgumentException.class, () -> new StorageCircuitBreaker(
+                10, 5, 0.5, Duration.ZERO, 0.5, Duration.ofSeconds(1), 1));
+    }
+
+    private void succeed(int calls) {
+        for (int i = 0; i < calls; i++) {
+            breaker.onSuccess(breaker.acquirePermission(), FAST);
+        }
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(breaker.acquirePermission(), FAST);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+    }
+}
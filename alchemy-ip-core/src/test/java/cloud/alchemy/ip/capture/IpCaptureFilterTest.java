@@ -0,0 +1,196 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import cloud.alchemy.ip.config.IpManagementProperties.SyncMode;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpCaptureFilter}.
+ */
+@DisplayName("IpCaptureFilter")
+class IpCaptureFilterTest {
+
+    private RecordingStorageService storageService;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new RecordingStorageService();
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    @DisplayName("should capture matching request with configured metadata")
+    void shouldCaptureMatchingRequest() throws Exception {
+        final IpCaptureFilter filter = filter(new CaptureOptions(true, true, true, "login", false));
+        final MockHttpServletRequest request = request("POST", "/api/login");
+        request.addHeader("User-Agent", "Mozilla/5.0");
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertEquals(1, storageService.stored.size());
+        final IpAddressRecord record = storageService.stored.getFirst();
+        assertEquals("203.0.113.195", record.getIpAddress());
+        assertEquals("user@example.com", record.getUserId());
+        assertEquals("Mozilla/5.0", record.getUserAgent());
+        assertEquals("/api/login", record.getRequestPath());
+        assertEquals("POST", record.getHttpMethod());
+        assertEquals("login", record.getTag());
+    }
+
+    @Test
+    @DisplayName("should not capture requests outside the include patterns")
+    void shouldNotCaptureNonMatchingRequest() throws Exception {
+        final IpCaptureFilter filter = filter(new CaptureOptions(false, true, true, "", false));
+
+        filter.doFilter(request("GET", "/static/app.js"), response, new MockFilterChain());
+
+        assertTrue(storageService.stored.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should capture requests that fail inside the chain")
+    void shouldCaptureFailingRequests() {
+        final IpCaptureFilter filter = filter(new CaptureOptions(false, true, true, "", false));
+        final MockFilterChain failingChain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, jakarta.servlet.http.HttpServletResponse resp)
+                    throws ServletException {
+                throw new ServletException("boom");
+            }
+        });
+
+        assertThrows(ServletException.class,
+                () -> filter.doFilter(request("GET", "/api/orders"), response, failingChain));
+        assertEquals(1, storageService.stored.size());
+    }
+
+    @Test
+    @DisplayName("should store asynchronously when configured")
+    void shouldStoreAsynchronously() throws Exception {
+        final IpCaptureFilter filter = filter(new CaptureOptions(false, true, true, "", true));
+
+        filter.doFilter(request("GET", "/api/orders"), response, new MockFilterChain());
+
+        assertTrue(storageService.stored.isEmpty());
+        assertEquals(1, storageService.storedAsync.size());
+    }
+
+    @Test
+    @DisplayName("should produce the same record as the aspect capture path")
+    void shouldProduceSameRecordAsAspect() throws Exception {
+        final CaptureOptions options = new CaptureOptions(true, true, true, "api", false);
+        final IpCaptureFilter filter = filter(options);
+        final MockHttpServletRequest request = request("GET", "/api/orders");
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        final IpAddressRecord expected = new IpRecordFactory(new DefaultIpAddressExtractor())
+                .create(request, "user@example.com", options)
+                .orElseThrow();
+        final IpAddressRecord actual = storageService.stored.getFirst();
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.getTag(), actual.getTag());
+        assertEquals(expected.getUserAgent(), actual.getUserAgent());
+    }
+
+    @Test
+    @DisplayName("should drop throttled captures before resolving the user")
+    void shouldThrottleBeforeResolvingUser() throws Exception {
+        final AtomicInteger resolved = new AtomicInteger();
+        final IpCaptureFilter filter = new IpCaptureFilter(
+                new IpCaptureDispatcher(storageService, SyncMode.IMMEDIATE, null,
+                        new IpCaptureThrottle(0.001, 1, 64, 10)),
+                new IpRecordFactory(new DefaultIpAddressExtractor()),
+                request -> {
+                    resolved.incrementAndGet();
+                    return Optional.of("user@example.com");
+                },
+                new PathPatternTrie(List.of("/api/**")),
+                new CaptureOptions(false, true, true, "", false)
+        );
+
+        filter.doFilter(request("GET", "/api/orders"), response, new MockFilterChain());
+        filter.doFilter(request("GET", "/api/orders"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertEquals(1, storageService.stored.size());
+        assertEquals(1, resolved.get());
+    }
+
+    private IpCaptureFilter filter(CaptureOptions options) {
+        return new IpCaptureFilter(
+                new IpCaptureDispatcher(storageService, SyncMode.IMMEDIATE, null),
+                new IpRecordFactory(new DefaultIpAddressExtractor()),
+                request -> Optional.of("user@example.com"),
+                new PathPatternTrie(List.of("/api/**")),
+                options
+        );
+    }
+
+    private static MockHttpServletRequest request(String method, String uri) {
+        final MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.addHeader("X-Forwarded-For", "203.0.113.195");
+        return request;
+    }
+
+    private static class RecordingStorageService implements IpAddressStorageService {
+        final List<IpAddressRecord> stored = new ArrayList<>();
+        final List<IpAddressRecord> storedAsync = new ArrayList<>();
+
+        @Override
+        public Optional<IpAddressRecord> store(IpAddressRecord record) {
+            stored.add(record);
+            return Optional.of(record);
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+            storedAsync.add(record);
+            return CompletableFuture.completedFuture(Optional.of(record));
+        }
+
+        @Override
+        public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request,
+                                                                                  String userId) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+}
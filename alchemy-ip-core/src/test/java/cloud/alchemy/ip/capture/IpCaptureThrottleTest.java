@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpCaptureThrottle}.
+ */
+@DisplayName("IpCaptureThrottle")
+class IpCaptureThrottleTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    @DisplayName("should allow a burst and then throttle")
+    void shouldAllowBurstThenThrottle() {
+        final IpCaptureThrottle throttle = new IpCaptureThrottle(1, 3, 64, 10, clock::get);
+
+        assertTrue(throttle.tryAcquire("203.0.113.1"));
+        assertTrue(throttle.tryAcquire("203.0.113.1"));
+        assertTrue(throttle.tryAcquire("203.0.113.1"));
+        assertFalse(throttle.tryAcquire("203.0.113.1"));
+        assertFalse(throttle.tryAcquire("203.0.113.1"));
+
+        assertEquals(2, throttle.getThrottledCount());
+        assertEquals(2, throttle.getThrottledCount("203.0.113.1"));
+    }
+
+    @Test
+    @DisplayName("should refill at the configured rate")
+    void shouldRefillAtRate() {
+        final IpCaptureThrottle throttle = new IpCaptureThrottle(10, 1, 64, 10, clock::get);
+
+        assertTrue(throttle.tryAcquire("203.0.113.1"));
+        assertFalse(throttle.tryAcquire("203.0.113.1"));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(throttle.tryAcquire("203.0.113.1"));
+        assertFalse(throttle.tryAcquire("203.0.113.1"));
+    }
+
+    @Test
+    @DisplayName("should keep separate buckets per IP")
+    void shouldIsolateIps() {
+        final IpCaptureThrottle throttle = new IpCaptureThrottle(1, 1, 4096, 10, clock::get);
+
+        assertTrue(throttle.tryAcquire("203.0.113.1"));
+        assertFalse(throttle.tryAcquire("203.0.113.1"));
+        assertTrue(throttle.tryAcquire("198.51.100.2"));
+        assertEquals(0, throttle.getThrottledCount("198.51.100.2"));
+    }
+
+    @Test
+    @DisplayName("should stop tracking new IPs beyond the limit but keep the total")
+    void shouldCapTrackedIps() {
+        final IpCaptureThrottle throttle = new IpCaptureThrottle(1, 1, 4096, 1, clock::get);
+
+        throttle.tryAcquire("203.0.113.1");
+        throttle.tryAcquire("203.0.113.1");
+        throttle.tryAcquire("198.51.100.2");
+        throttle.tryAcquire("198.51.100.2");
+
+        assertEquals(2, throttle.getThrottledCount());
+        assertEquals(Set.of("203.0.113.1"), throttle.getThrottledIps());
+        assertEquals(0, throttle.getThrottledCount("198.51.100.2"));
+    }
+
+    @Test
+    @DisplayName("should make room for new IPs once tracked ones are idle")
+    void shouldEvictIdleTrackedIps() {
+        final IpCaptureThrottle throttle = new IpCaptureThrottle(1, 1, 4096, 1, clock::get);
+        throttle.tryAcquire("203.0.113.1");
+        throttle.tryAcquire("203.0.113.1");
+
+        clock.addAndGet(IpCaptureThrottle.TRACKING_IDLE_NANOS);
+        throttle.tryAcquire("198.51.100.2");
+        throttle.tryAcquire("198.51.100.2");
+
+        assertEquals(Set.of("198.51.100.2"), throttle.getThrottledIps());
+        assertEquals(1, throttle.getThrottledCount("198.51.100.2"));
+        assertEquals(0, throttle.getThrottledCount("203.0.113.1"));
+        assertEquals(2, throttle.getThrottledCount());
+    }
+
+    @Test
+    @DisplayName("should admit exactly the burst under concurrent access")
+    void shouldAdmitBurstConcurrently() throws Exception {
+        final IpCaptureThrottle throttle = new IpCaptureThrottle(1, 50, 64, 10, clock::get);
+        final AtomicInteger admitted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < 100; i++) {
+                    if (throttle.tryAcquire("203.0.113.1")) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(50, admitted.get());
+        assertEquals(750, throttle.getThrottledCount());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.capture;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.pattern.PatternParseException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PathPatternTrie}.
+ */
+@DisplayName("PathPatternTrie")
+class PathPatternTrieTest {
+
+    @Test
+    @DisplayName("should match literal patterns exactly")
+    void shouldMatchLiteralPatterns() {
+        final PathPatternTrie trie = new PathPatternTrie(List.of("/api/login"));
+
+        assertTrue(trie.matches("/api/login"));
+        assertFalse(trie.matches("/api/logout"));
+        assertFalse(trie.matches("/api"));
+    }
+
+    @Test
+    @DisplayName("should match wildcard and variable patterns")
+    void shouldMatchWildcardAndVariablePatterns() {
+        final PathPatternTrie trie = new PathPatternTrie(List.of("/api/users/{id}", "/admin/**"));
+
+        assertTrue(trie.matches("/api/users/42"));
+        assertFalse(trie.matches("/api/users/42/orders"));
+        assertTrue(trie.matches("/admin"));
+        assertTrue(trie.matches("/admin/settings/security"));
+        assertFalse(trie.matches("/public/index.html"));
+    }
+
+    @Test
+    @DisplayName("should match root catch-all pattern")
+    void shouldMatchRootCatchAll() {
+        final PathPatternTrie trie = new PathPatternTrie(List.of("/**"));
+
+        assertTrue(trie.matches("/"));
+        assertTrue(trie.matches("/anything/at/all"));
+    }
+
+    @Test
+    @DisplayName("should ignore blank patterns and match nothing when empty")
+    void shouldMatchNothingWhenEmpty() {
+        final PathPatternTrie trie = new PathPatternTrie(List.of(" ", ""));
+
+        assertTrue(trie.isEmpty());
+        assertFalse(trie.matches("/api/login"));
+        assertFalse(trie.matches(null));
+    }
+
+    @Test
+    @DisplayName("should reject invalid patterns at construction")
+    void shouldRejectInvalidPatterns() {
+        assertThrows(PatternParseException.class, () -> new PathPatternTrie(List.of("/api/{unclosed")));
+    }
+}
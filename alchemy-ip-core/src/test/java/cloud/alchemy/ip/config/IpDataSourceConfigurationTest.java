@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.FilteredClassLoader;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link IpDataSourceConfiguration}.
+ */
+@DisplayName("IpDataSourceConfiguration")
+@ExtendWith(OutputCaptureExtension.class)
+class IpDataSourceConfigurationTest {
+
+    private final DataSource primary = primary();
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withUserConfiguration(PropertiesConfiguration.class, IpDataSourceConfiguration.class)
+            .withBean("dataSource", DataSource.class, () -> primary);
+
+    @Test
+    @DisplayName("should use the primary data source by default")
+    void shouldUsePrimaryByDefault() {
+        runner.run(context -> {
+            final IpManagementDataSource dataSource = context.getBean(IpManagementDataSource.class);
+
+            assertSame(primary, dataSource.getDataSource());
+            assertFalse(dataSource.isDedicated());
+        });
+    }
+
+    @Test
+    @DisplayName("should create a dedicated pool when enabled")
+    void shouldCreateDedicatedPool() {
+        runner.withPropertyValues(
+                        "alchemy.ip.datasource.enabled=true",
+                        "alchemy.ip.datasource.url=jdbc:h2:mem:ip-pool;DB_CLOSE_DELAY=-1",
+                        "alchemy.ip.datasource.username=sa",
+                        "alchemy.ip.datasource.maximum-pool-size=2",
+                        "alchemy.ip.datasource.pool-name=test-pool",
+                        "alchemy.ip.storage-mode=jdbc")
+                .run(context -> {
+                    final IpManagementDataSource dataSource = context.getBean(IpManagementDataSource.class);
+
+                    assertTrue(dataSource.isDedicated());
+                    final HikariDataSource pool = assertInstanceOf(HikariDataSource.class, dataSource.getDataSource());
+                    assertEquals("test-pool", pool.getPoolName());
+                    assertEquals(2, pool.getMaximumPoolSize());
+                    assertEquals(1, dataSource.getJdbcTemplate().queryForObject("SELECT 1", Integer.class));
+
+                    context.close();
+                    assertTrue(pool.isClosed(), "the pool is closed with the context");
+                });
+    }
+
+    @Test
+    @DisplayName("should warn when the pool is enabled with JPA storage")
+    void shouldWarnWithJpaStorage(CapturedOutput output) {
+        runner.withPropertyValues(
+                        "alchemy.ip.datasource.enabled=true",
+                        "alchemy.ip.datasource.url=jdbc:h2:mem:ip-pool-jpa;DB_CLOSE_DELAY=-1",
+                        "alchemy.ip.datasource.username=sa")
+                .run(context -> {
+                    assertTrue(context.getBean(IpManagementDataSource.class).isDedicated());
+                    assertTrue(output.getOut().contains("alchemy.ip.storage-mode=jpa"));
+                });
+    }
+
+    @Test
+    @DisplayName("should fail when the pool is enabled without HikariCP")
+    void shouldFailWithoutHikari() {
+        runner.withClassLoader(new FilteredClassLoader(HikariDataSource.class))
+                .withPropertyValues("alchemy.ip.datasource.enabled=true")
+                .run(context -> {
+                    assertNotNull(context.getStartupFailure());
+                    Throwable cause = context.getStartupFailure();
+                    while (cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    assertInstanceOf(IllegalStateException.class, cause);
+                    assertTrue(cause.getMessage().contains("HikariCP"));
+                });
+    }
+
+    @Test
+    @DisplayName("should back off when the application defines its own")
+    void shouldBackOffForUserBean() {
+        final IpManagementDataSource custom = new IpManagementDataSource(primary, false);
+        runner.withBean(IpManagementDataSource.class, () -> custom)
+                .withPropertyValues("alchemy.ip.datasource.enabled=true")
+                .run(context -> assertSame(custom, context.getBean(IpManagementDataSource.class)));
+    }
+
+    private static DataSource primary() {
+        final JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ip-primary;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableConfigurationProperties(IpManagementProperties.class)
+    static class PropertiesConfiguration {
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import cloud.alchemy.ip.id.IpRecordIdGenerator;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link IpManagementAutoConfiguration}.
+ */
+@DisplayName("IpManagementAutoConfiguration")
+class IpManagementAutoConfigurationTest {
+
+    @Nested
+    @DisplayName("Hibernate properties")
+    class HibernateProperties {
+
+        private final IpManagementProperties properties = new IpManagementProperties();
+
+        private Map<String, Object> customize() {
+            final Map<String, Object> hibernateProperties = new HashMap<>();
+            new IpManagementAutoConfiguration(properties).ipRecordIdHibernatePropertiesCustomizer()
+                    .customize(hibernateProperties);
+            return hibernateProperties;
+        }
+
+        @Test
+        @DisplayName("should leave batching alone with the tsid strategy by default")
+        void shouldNotBatchByDefault() {
+            properties.getId().setStrategy(IpManagementProperties.IdStrategy.TSID);
+
+            final Map<String, Object> hibernateProperties = customize();
+
+            assertEquals("TSID", hibernateProperties.get(IpRecordIdGenerator.STRATEGY_SETTING));
+            assertFalse(hibernateProperties.containsKey(AvailableSettings.STATEMENT_BATCH_SIZE));
+            assertFalse(hibernateProperties.containsKey(AvailableSettings.ORDER_INSERTS));
+        }
+
+        @Test
+        @DisplayName("should batch inserts with the tsid strategy when opted in")
+        void shouldBatchWhenOptedIn() {
+            properties.getId().setStrategy(IpManagementProperties.IdStrategy.TSID);
+            properties.getId().setBatchInserts(true);
+
+            final Map<String, Object> hibernateProperties = customize();
+
+            assertEquals(properties.getAsync().getBatchSize(),
+                    hibernateProperties.get(AvailableSettings.STATEMENT_BATCH_SIZE));
+            assertEquals(true, hibernateProperties.get(AvailableSettings.ORDER_INSERTS));
+        }
+
+        @Test
+        @DisplayName("should not batch inserts with the identity strategy")
+        void shouldNotBatchIdentity() {
+            properties.getId().setBatchInserts(true);
+
+            assertFalse(customize().containsKey(AvailableSettings.STATEMENT_BATCH_SIZE));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.config;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link IpManagementSchemaInitializer}.
+ */
+@DisplayName("IpManagementSchemaInitializer")
+@ExtendWith(OutputCaptureExtension.class)
+class IpManagementSchemaInitializerTest {
+
+    private static final String TABLE = "ip_legacy";
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private IpManagementProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " (id BIGINT PRIMARY KEY, ip_address VARCHAR(45), "
+                + "created_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE INDEX idx_" + TABLE + "_created_at ON " + TABLE + " (created_at)");
+
+        properties = new IpManagementProperties();
+        properties.getTable().setName(TABLE);
+        properties.getSchema().setUseHibernateDdl(false);
+    }
+
+    private IpManagementSchemaInitializer initializer() {
+        return new IpManagementSchemaInitializer(dataSource, properties);
+    }
+
+    @Nested
+    @DisplayName("keyset index check")
+    class IndexCheck {
+
+        @Test
+        @DisplayName("should not count an index on created_at alone")
+        void shouldNotCountCreatedAtAlone() {
+            assertFalse(initializer().indexStartsWith(TABLE, "created_at", "id"));
+        }
+
+        @Test
+        @DisplayName("should find an index on (created_at, id)")
+        void shouldFindKeysetIndex() {
+            jdbcTemplate.execute("CREATE INDEX idx_keyset ON " + TABLE + " (created_at, id)");
+
+            assertTrue(initializer().indexStartsWith(TABLE, "created_at", "id"));
+        }
+
+        @Test
+        @DisplayName("should look up a schema-qualified table in its schema")
+        void shouldLookUpQualifiedTable() {
+            jdbcTemplate.execute("CREATE INDEX idx_keyset ON " + TABLE + " (created_at, id)");
+            jdbcTemplate.execute("CREATE SCHEMA other");
+            jdbcTemplate.execute("CREATE TABLE other." + TABLE + " (id BIGINT PRIMARY KEY, created_at TIMESTAMP)");
+
+            assertTrue(initializer().indexStartsWith("public." + TABLE, "created_at", "id"));
+            assertFalse(initializer().indexStartsWith("other." + TABLE, "created_at", "id"));
+        }
+    }
+
+    @Nested
+    @DisplayName("keyset index DDL")
+    class IndexDdl {
+
+        @Test
+        @DisplayName("should name the index after the unqualified table name")
+        void shouldUseUnqualifiedName() {
+            assertEquals("CREATE INDEX idx_ip_addresses_created_at_id ON public.ip_addresses (created_at, id)",
+                    IpManagementSchemaInitializer.keysetIndexDdl("H2", "public.ip_addresses"));
+        }
+
+        @Test
+        @DisplayName("should build the index online where supported")
+        void shouldBuildOnline() {
+            assertEquals("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_t_created_at_id ON t (created_at, id)",
+                    IpManagementSchemaInitializer.keysetIndexDdl("PostgreSQL", "t"));
+            assertEquals("CREATE INDEX idx_t_created_at_id ON t (created_at, id) ALGORITHM=INPLACE LOCK=NONE",
+                    IpManagementSchemaInitializer.keysetIndexDdl("MySQL", "t"));
+            assertEquals("CREATE INDEX idx_t_created_at_id ON t (created_at, id) ONLINE",
+                    IpManagementSchemaInitializer.keysetIndexDdl("Oracle", "t"));
+            assertEquals("CREATE INDEX idx_t_created_at_id ON t (created_at, id) WITH (ONLINE = ON)",
+                    IpManagementSchemaInitializer.keysetIndexDdl("Microsoft SQL Server", "t"));
+        }
+    }
+
+    @Nested
+    @DisplayName("existing table")
+    class ExistingTable {
+
+        @Test
+        @DisplayName("should only log the missing index by default")
+        void shouldOnlyLogByDefault(CapturedOutput output) {
+            initializer().initializeSchema();
+
+            assertFalse(initializer().indexStartsWith(TABLE, "created_at", "id"));
+            assertTrue(output.getOut().contains("CREATE INDEX idx_" + TABLE + "_created_at_id ON " + TABLE
+                    + " (created_at, id)"));
+        }
+
+        @Test
+        @DisplayName("should create the missing index when opted in")
+        void shouldCreateWhenOptedIn() {
+            properties.getSchema().setUpgradeIndexes(true);
+
+            initializer().initializeSchema();
+
+            assertTrue(initializer().indexStartsWith(TABLE, "created_at", "id"));
+        }
+    }
+}
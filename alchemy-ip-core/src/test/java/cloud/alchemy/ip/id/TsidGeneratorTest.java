@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.id;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TsidGenerator}.
+ */
+@DisplayName("TsidGenerator")
+class TsidGeneratorTest {
+
+    private static final long START = Instant.parse("2024-06-01T12:00:00Z").toEpochMilli();
+
+    private final AtomicLong now = new AtomicLong(START);
+
+    @Test
+    @DisplayName("should encode the creation time and node")
+    void shouldEncodeTimeAndNode() {
+        final TsidGenerator generator = new TsidGenerator(42, now::get);
+
+        final long id = generator.nextId();
+
+        assertTrue(id > 0);
+        assertEquals(Instant.ofEpochMilli(START), TsidGenerator.toInstant(id));
+        assertEquals(42, (id >>> 12) & TsidGenerator.MAX_NODE);
+    }
+
+    @Test
+    @DisplayName("should order IDs by creation time across nodes")
+    void shouldOrderAcrossNodes() {
+        final long early = new TsidGenerator(TsidGenerator.MAX_NODE, now::get).nextId();
+        now.incrementAndGet();
+        final long late = new TsidGenerator(0, now::get).nextId();
+
+        assertTrue(early < late);
+    }
+
+    @Test
+    @DisplayName("should borrow from the next millisecond when the sequence is exhausted")
+    void shouldRollOverSequence() {
+        final TsidGenerator generator = new TsidGenerator(1, now::get);
+
+        long previous = generator.nextId();
+        for (int i = 1; i < 5000; i++) {
+            final long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+
+        assertEquals(Instant.ofEpochMilli(START + 1), TsidGenerator.toInstant(previous));
+    }
+
+    @Test
+    @DisplayName("should stay monotonic when the clock moves backwards")
+    void shouldSurviveClockRegression() {
+        final TsidGenerator generator = new TsidGenerator(1, now::get);
+        final long before = generator.nextId();
+
+        now.addAndGet(-10_000);
+        final long after = generator.nextId();
+
+        assertTrue(after > before);
+        assertEquals(Instant.ofEpochMilli(START), TsidGenerator.toInstant(after));
+    }
+
+    @Test
+    @DisplayName("should share one generator per node")
+    void shouldShareGeneratorPerNode() {
+        assertSame(TsidGenerator.forNode(7), TsidGenerator.forNode(7));
+        assertSame(TsidGenerator.forNode(null), TsidGenerator.forNode(null));
+        assertEquals(7, TsidGenerator.forNode(7).getNode());
+    }
+
+    @Test
+    @DisplayName("should reject node IDs out of range")
+    void shouldRejectInvalidNode() {
+        assertThrows(IllegalArgumentException.class, () -> TsidGenerator.forNode(TsidGenerator.MAX_NODE + 1));
+        assertThrows(IllegalArgumentException.class, () -> TsidGenerator.forNode(-1));
+    }
+}
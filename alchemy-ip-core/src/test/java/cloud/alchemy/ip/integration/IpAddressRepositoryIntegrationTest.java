@@ -0,0 +1,247 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.integration;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRecordCountEstimator;
+import cloud.alchemy.ip.repository.IpRecordCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the aggregate queries of {@link IpAddressRepository}.
+ */
+@SpringBootTest(
+        classes = TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE
+)
+@ActiveProfiles("test")
+@DisplayName("IpAddressRepository aggregate queries")
+class IpAddressRepositoryIntegrationTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-01T10:00:00Z");
+
+    @Autowired
+    private IpAddressRepository repository;
+
+    @Autowired
+    private IpRecordCountEstimator countEstimator;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("should count distinct IP addresses and users")
+    void shouldCountDistinct() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", "alice", "US", T0),
+                record("203.0.113.1", "bob", "US", T0),
+                record("203.0.113.2", null, "DE", T0),
+                record("203.0.113.3", "alice", null, T0)));
+
+        assertEquals(3, repository.countDistinctIpAddresses());
+        assertEquals(2, repository.countDistinctUsers());
+    }
+
+    @Test
+    @DisplayName("should rank countries by count, ignoring blank countries")
+    void shouldRankCountries() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", null, "US", T0),
+                record("203.0.113.2", null, "US", T0),
+                record("203.0.113.3", null, "DE", T0),
+                record("203.0.113.6", null, "DE", T0),
+                record("203.0.113.7", null, "DE", T0),
+                record("203.0.113.4", null, "FR", T0),
+                record("203.0.113.5", null, " ", T0)));
+
+        final List<Object[]> top = repository.findTopCountries(PageRequest.of(0, 2));
+
+        assertEquals(2, top.size());
+        assertEquals("DE", top.get(0)[0]);
+        assertEquals(3L, ((Number) top.get(0)[1]).longValue());
+        assertEquals("US", top.get(1)[0]);
+    }
+
+    @Test
+    @DisplayName("should rank cities by count, ignoring records without a city")
+    void shouldRankCities() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", null, "DE", T0).toBuilder().city("Berlin").build(),
+                record("203.0.113.2", null, "DE", T0).toBuilder().city("Berlin").build(),
+                record("203.0.113.3", null, "DE", T0).toBuilder().city("Hamburg").build(),
+                record("203.0.113.4", null, "DE", T0)));
+
+        final List<Object[]> top = repository.findTopCities(PageRequest.of(0, 20));
+
+        assertEquals(2, top.size());
+        assertEquals("Berlin", top.get(0)[0]);
+        assertEquals(2.0, ((Number) top.get(0)[1]).doubleValue(), 1e-9);
+        assertEquals("Hamburg", top.get(1)[0]);
+    }
+
+    @Test
+    @DisplayName("should page by cursor through records created at the same instant")
+    void shouldSeekByCursor() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", null, "US", T0),
+                record("203.0.113.2", null, "US", T0),
+                record("203.0.113.3", null, "DE", T0),
+                record("203.0.113.4", null, "US", T0.plusSeconds(60)),
+                record("203.0.113.5", null, "US", T0.minusSeconds(60))));
+        final Specification<IpAddressRecord> us = (root, query, cb) -> cb.equal(root.get("countryCode"), "US");
+
+        final List<String> seen = new ArrayList<>();
+        IpRecordCursor cursor = null;
+        List<IpAddressRecord> page;
+        do {
+            page = repository.findAfter(us, cursor, Sort.Direction.DESC, 2);
+            page.forEach(record -> seen.add(record.getIpAddress()));
+            cursor = page.isEmpty() ? null : IpRecordCursor.of(page.get(page.size() - 1));
+        } while (page.size() == 2);
+
+        assertEquals(List.of("203.0.113.4", "203.0.113.2", "203.0.113.1", "203.0.113.5"), seen);
+        assertEquals(List.of("203.0.113.5", "203.0.113.1"), repository.findAfter(null, null, Sort.Direction.ASC, 2)
+                .stream().map(IpAddressRecord::getIpAddress).toList());
+    }
+
+    @Test
+    @DisplayName("should read slices by offset without counting")
+    void shouldReadSlices() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", null, "US", T0),
+                record("203.0.113.2", null, "US", T0.plusSeconds(60)),
+                record("203.0.113.3", null, "DE", T0.plusSeconds(120)),
+                record("203.0.113.4", null, "US", T0.plusSeconds(180))));
+        final Specification<IpAddressRecord> us = (root, query, cb) -> cb.equal(root.get("countryCode"), "US");
+        final Sort sort = IpRecordCursor.sort(Sort.Direction.DESC);
+
+        final Slice<IpAddressRecord> first = repository.findSlice(us, PageRequest.of(0, 2, sort));
+        final Slice<IpAddressRecord> second = repository.findSlice(us, PageRequest.of(1, 2, sort));
+
+        assertEquals(List.of("203.0.113.4", "203.0.113.2"),
+                first.getContent().stream().map(IpAddressRecord::getIpAddress).toList());
+        assertTrue(first.hasNext());
+        assertEquals(List.of("203.0.113.1"), second.getContent().stream().map(IpAddressRecord::getIpAddress).toList());
+        assertFalse(second.hasNext());
+        assertEquals(4, repository.findSlice(null, PageRequest.of(0, 4, sort)).getNumberOfElements());
+    }
+
+    @Test
+    @DisplayName("should read pages, slices and cursor pages into record projections")
+    void shouldProjectOntoRecords() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", "alice", "US", T0).toBuilder().userAgent("Mozilla/5.0").build(),
+                record("203.0.113.2", "bob", "US", T0.plusSeconds(60)),
+                record("203.0.113.3", null, "DE", T0.plusSeconds(120)),
+                record("203.0.113.4", "alice", "US", T0.plusSeconds(180))));
+        final Specification<IpAddressRecord> us = (root, query, cb) -> cb.equal(root.get("countryCode"), "US");
+        final Sort sort = IpRecordCursor.sort(Sort.Direction.DESC);
+
+        final Page<Access> page = repository.findAll(us, PageRequest.of(0, 2, sort), Access.class);
+        final Slice<Access> slice = repository.findSlice(us, PageRequest.of(1, 2, sort), Access.class);
+        final List<Access> after = repository.findAfter(null,
+                new IpRecordCursor(T0.plusSeconds(120), Long.MAX_VALUE), Sort.Direction.DESC, 2, Access.class);
+
+        assertEquals(3, page.getTotalElements());
+        assertEquals(List.of("203.0.113.4", "203.0.113.2"), page.getContent().stream().map(Access::ipAddress).toList());
+        assertEquals("alice", page.getContent().get(0).userId());
+        assertEquals(T0.plusSeconds(180), page.getContent().get(0).createdAt());
+        assertEquals(List.of("203.0.113.1"), slice.getContent().stream().map(Access::ipAddress).toList());
+        assertFalse(slice.hasNext());
+        assertEquals(List.of("203.0.113.3", "203.0.113.2"), after.stream().map(Access::ipAddress).toList());
+        final Exception notARecord = assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> repository.findSlice(null, PageRequest.of(0, 2), String.class));
+        assertInstanceOf(IllegalArgumentException.class, notARecord.getCause());
+    }
+
+    @Test
+    @DisplayName("should estimate the record count from database statistics")
+    void shouldEstimateCount() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", null, null, T0),
+                record("203.0.113.2", null, null, T0),
+                record("203.0.113.3", null, null, T0)));
+
+        assertEquals(3, countEstimator.estimate().orElseThrow());
+    }
+
+    @Test
+    @DisplayName("should find the oldest and newest creation times")
+    void shouldFindCreatedAtRange() {
+        assertTrue(repository.findOldestCreatedAt().isEmpty());
+
+        repository.saveAll(List.of(
+                record("203.0.113.1", null, null, T0),
+                record("203.0.113.2", null, null, T0.plusSeconds(3600)),
+                record("203.0.113.3", null, null, T0.minusSeconds(60))));
+
+        assertEquals(T0.minusSeconds(60), repository.findOldestCreatedAt().orElseThrow());
+        assertEquals(T0.plusSeconds(3600), repository.findNewestCreatedAt().orElseThrow());
+        assertEquals(2, repository.countByCreatedAtBetween(T0.minusSeconds(60), T0));
+    }
+
+    @Test
+    @DisplayName("should count records per time bucket in one query")
+    void shouldCountPerBucket() {
+        repository.saveAll(List.of(
+                record("203.0.113.1", null, null, T0),
+                record("203.0.113.2", null, null, T0.plusSeconds(3599)),
+                record("203.0.113.3", null, null, T0.plusSeconds(3600)),
+                record("203.0.113.4", null, null, T0.plusSeconds(7200))));
+
+        final Map<Long, Double> buckets = new HashMap<>();
+        for (Object[] row : repository.countByCreatedAtBuckets(T0, T0.plusSeconds(7200), 3600)) {
+            buckets.put(((Number) row[0]).longValue(), ((Number) row[1]).doubleValue());
+        }
+
+        final long first = T0.getEpochSecond() / 3600;
+        assertEquals(Map.of(first, 2.0, first + 1, 1.0), buckets);
+    }
+
+    private static IpAddressRecord record(String ipAddress, String userId, String countryCode, Instant createdAt) {
+        return IpAddressRecord.builder()
+                .ipAddress(ipAddress)
+                .userId(userId)
+                .countryCode(countryCode)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private record Access(Long id, String ipAddress, String userId, Instant createdAt) {
+    }
+}
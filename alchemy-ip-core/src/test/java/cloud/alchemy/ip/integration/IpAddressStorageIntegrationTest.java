@@ -23,6 +23,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
@@ -277,4 +278,47 @@ class IpAddressStorageIntegrationTest {
         assertEquals(1, records.size());
         assertEquals("::1", records.getFirst().getIpAddress());
     }
+
+    @Test
+    @DisplayName("should skip capture when not sampled")
+    void shouldSkipCaptureWhenNotSampled() {
+        webTestClient.get()
+                .uri("/test/never-sampled")
+                .header("X-Forwarded-For", "203.0.113.195")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("OK never sampled");
+
+        assertTrue(repository.findAll().isEmpty());
+    }
+
+    @Test
+    @DisplayName("should flag sampled records with their sample rate")
+    void shouldFlagSampledRecords() {
+        webTestClient.get()
+                .uri("/test/sampled")
+                .header("X-Forwarded-For", "203.0.113.195")
+                .exchange()
+                .expectStatus().isOk();
+
+        final List<IpAddressRecord> records = repository.findAll();
+        assertEquals(1, records.size());
+        assertEquals(0.999999, records.getFirst().getSampleRate());
+    }
+
+    @Test
+    @DisplayName("should count sampled records once")
+    void shouldCountSampledRecordsOnce() {
+        repository.saveAll(List.of(
+                IpAddressRecord.builder().ipAddress("203.0.113.1").userId("a@example.com").sampleRate(0.25).build(),
+                IpAddressRecord.builder().ipAddress("203.0.113.1").userId("a@example.com").sampleRate(0.5).build(),
+                IpAddressRecord.builder().ipAddress("203.0.113.2").build()
+        ));
+
+        final List<Object[]> frequent = repository.findFrequentIpAddresses(2,
+                PageRequest.of(0, 10)).getContent();
+        assertEquals(1, frequent.size());
+        assertEquals("203.0.113.1", frequent.getFirst()[0]);
+        assertEquals(2L, ((Number) frequent.getFirst()[1]).longValue());
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.integration;
+
+import cloud.alchemy.ip.breaker.CircuitBreakingIpAddressStorageService;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import cloud.alchemy.ip.service.IpRecordStoredListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the auto-configured storage service wrapped in a circuit breaker.
+ */
+@SpringBootTest(
+        classes = TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "alchemy.ip.circuit-breaker.enabled=true"
+)
+@ActiveProfiles("test")
+@Import(IpCircuitBreakerIntegrationTest.ListenerConfiguration.class)
+@DisplayName("IP storage circuit breaker")
+class IpCircuitBreakerIntegrationTest {
+
+    @Autowired
+    private IpAddressStorageService storageService;
+
+    @Autowired
+    private IpAddressRepository repository;
+
+    @Autowired
+    private BlockingListener listener;
+
+    @AfterEach
+    void tearDown() {
+        listener.release();
+        repository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("should store asynchronously off the caller thread")
+    void shouldStoreAsyncOffCallerThread() throws Exception {
+        assertInstanceOf(CircuitBreakingIpAddressStorageService.class, storageService);
+        listener.block();
+
+        final CompletableFuture<Optional<IpAddressRecord>> future = storageService.storeAsync(
+                IpAddressRecord.builder().ipAddress("203.0.113.7").userId("alice").build());
+
+        assertFalse(future.isDone(), "storeAsync must return before the store completes");
+        listener.release();
+        assertTrue(future.get(5, TimeUnit.SECONDS).isPresent());
+        assertNotNull(listener.storingThread);
+        assertNotSame(Thread.currentThread(), listener.storingThread);
+        assertTrue(repository.existsByIpAddressAndUserId("203.0.113.7", "alice"));
+    }
+
+    @TestConfiguration
+    static class ListenerConfiguration {
+
+        @Bean
+        BlockingListener blockingListener() {
+            return new BlockingListener();
+        }
+    }
+
+    /**
+     * Holds the storing thread after the insert until released.
+     */
+    static final class BlockingListener implements IpRecordStoredListener {
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        private volatile Thread storingThread;
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        public void record(IpAddressRecord record) {
+            storingThread = Thread.currentThread();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
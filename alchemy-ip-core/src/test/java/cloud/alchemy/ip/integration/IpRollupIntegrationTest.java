@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.integration;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRollupRepository;
+import cloud.alchemy.ip.rollup.IpRollupAggregator;
+import cloud.alchemy.ip.rollup.IpRollupDimension;
+import cloud.alchemy.ip.rollup.IpRollupGranularity;
+import cloud.alchemy.ip.rollup.IpRollupRebuilder;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for rollups maintained from the storage service and read
+ * through {@link IpRollupRepository}.
+ */
+@SpringBootTest(
+        classes = TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "alchemy.ip.rollups.enabled=true"
+)
+@ActiveProfiles("test")
+@DisplayName("IP rollups")
+class IpRollupIntegrationTest {
+
+    private static final Instant DAY = Instant.parse("2024-03-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2024-03-03T00:00:00Z");
+
+    @Autowired
+    private IpAddressStorageService storageService;
+
+    @Autowired
+    private IpAddressRepository repository;
+
+    @Autowired
+    private IpRollupRepository rollups;
+
+    @Autowired
+    private IpRollupAggregator aggregator;
+
+    @Autowired
+    private IpRollupRebuilder rebuilder;
+
+    @BeforeEach
+    void setUp() {
+        aggregator.flush();
+        repository.deleteAll();
+        rollups.deleteAll();
+        storageService.storeAll(List.of(
+                record("203.0.113.1", "alice", "US", DAY.plusSeconds(3_600)),
+                record("203.0.113.1", "bob", "US", DAY.plusSeconds(7_200)),
+                // Sampled records count once
+                record("203.0.113.2", null, "DE", DAY.plusSeconds(86_400 + 60)).toBuilder().sampleRate(0.25).build(),
+                record("203.0.113.3", "alice", null, DAY.plusSeconds(86_400 + 120))));
+        aggregator.flush();
+    }
+
+    @Test
+    @DisplayName("should maintain totals and per-value counts from stored records")
+    void shouldMaintainTotalsAndValueCounts() {
+        assertEquals(4.0, rollups.sumHits(IpRollupGranularity.DAY, IpRollupDimension.TOTAL, DAY, END));
+        assertEquals(2.0, rollups.sumHits(IpRollupGranularity.HOUR, IpRollupDimension.TOTAL,
+                DAY, DAY.plusSeconds(86_400)));
+        assertEquals(3, rollups.findTopValues(IpRollupGranularity.DAY, IpRollupDimension.IP, DAY, END,
+                PageRequest.of(0, 10)).size());
+        assertEquals(2, rollups.findTopValues(IpRollupGranularity.DAY, IpRollupDimension.USER, DAY, END,
+                PageRequest.of(0, 10)).size());
+        assertEquals(0.0, rollups.sumHits(IpRollupGranularity.HOUR, IpRollupDimension.IP, DAY, END),
+                "IP addresses are only counted per day");
+        assertEquals(2.0, rollups.sumHitsByValue(IpRollupGranularity.DAY, IpRollupDimension.IP,
+                "203.0.113.1", DAY, END));
+    }
+
+    @Test
+    @DisplayName("should rank values and page frequent ones")
+    void shouldRankValues() {
+        final List<Object[]> top = rollups.findTopValues(IpRollupGranularity.DAY, IpRollupDimension.COUNTRY,
+                DAY, END, PageRequest.of(0, 10));
+        assertEquals(2, top.size());
+        assertEquals("US", top.get(0)[0]);
+        assertEquals(2.0, ((Number) top.get(0)[1]).doubleValue());
+        assertEquals("DE", top.get(1)[0]);
+
+        final Page<Object[]> frequent = rollups.findFrequentValues(IpRollupGranularity.DAY, IpRollupDimension.IP,
+                DAY, END, 1, PageRequest.of(0, 1));
+        assertEquals(3, frequent.getTotalElements());
+        assertEquals(1, frequent.getContent().size());
+    }
+
+    @Test
+    @DisplayName("should sum hits per bucket")
+    void shouldSumPerBucket() {
+        final List<Object[]> buckets = rollups.sumHitsByBucket(IpRollupGranularity.DAY, IpRollupDimension.TOTAL,
+                DAY, END);
+
+        assertEquals(2, buckets.size());
+        for (Object[] bucket : buckets) {
+            assertEquals(2.0, ((Number) bucket[1]).doubleValue());
+        }
+    }
+
+    @Test
+    @DisplayName("should rebuild the same rollups from the records table")
+    void shouldRebuildSameRollups() {
+        final long before = rollups.count();
+        rollups.deleteAll();
+
+        assertEquals(4, rebuilder.rebuild(DAY, END));
+
+        assertEquals(before, rollups.count());
+        assertEquals(4.0, rollups.sumHits(IpRollupGranularity.DAY, IpRollupDimension.TOTAL, DAY, END));
+        assertEquals(2.0, rollups.sumHitsByValue(IpRollupGranularity.DAY, IpRollupDimension.IP,
+                "203.0.113.1", DAY, END));
+    }
+
+    private static IpAddressRecord record(String ip, String userId, String countryCode, Instant createdAt) {
+        return IpAddressRecord.builder()
+                .ipAddress(ip)
+                .userId(userId)
+                .httpMethod("GET")
+                .countryCode(countryCode)
+                .createdAt(createdAt)
+                .build();
+    }
+}
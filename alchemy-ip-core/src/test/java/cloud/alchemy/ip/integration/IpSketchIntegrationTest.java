@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.integration;
+
+import cloud.alchemy.ip.config.IpManagementDataSource;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import cloud.alchemy.ip.sketch.IpDistinctCounter;
+import cloud.alchemy.ip.sketch.IpSketchBackfiller;
+import cloud.alchemy.ip.sketch.IpSketchScope;
+import cloud.alchemy.ip.sketch.IpSketchType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for distinct-count sketches maintained from the storage service
+ * and persisted in the {@code ip_sketches} table.
+ */
+@SpringBootTest(
+        classes = TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"alchemy.ip.sketches.enabled=true", "alchemy.ip.sketches.relative-error=0.02"}
+)
+@ActiveProfiles("test")
+@DisplayName("IP sketches")
+class IpSketchIntegrationTest {
+
+    private static final Instant DAY = Instant.parse("2024-03-01T00:00:00Z");
+
+    @Autowired
+    private IpAddressStorageService storageService;
+
+    @Autowired
+    private IpAddressRepository repository;
+
+    @Autowired
+    private IpDistinctCounter counter;
+
+    @Autowired
+    private IpSketchBackfiller backfiller;
+
+    @Autowired
+    private IpManagementDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        counter.flush();
+        repository.deleteAll();
+        dataSource.getJdbcTemplate().update("DELETE FROM ip_sketches");
+        storageService.storeAll(List.of(
+                record("203.0.113.1", "alice", "US", DAY.plusSeconds(3_600)),
+                record("203.0.113.1", "bob", "US", DAY.plusSeconds(7_200)),
+                record("203.0.113.2", null, "DE", DAY.plusSeconds(86_400 + 60)),
+                record("203.0.113.3", "alice", null, DAY.plusSeconds(86_400 + 120))));
+        counter.flush();
+    }
+
+    @Test
+    @DisplayName("should estimate distinct counts of stored records per scope")
+    void shouldEstimateFromStoredSketches() {
+        assertEquals(0.02, counter.getRelativeError(), 0.005);
+        assertEquals(3, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, ""));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.GLOBAL, ""));
+        assertEquals(1, counter.estimateDays(IpSketchType.DISTINCT_IPS, LocalDate.parse("2024-03-01"),
+                LocalDate.parse("2024-03-01")));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.COUNTRY, "US"));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, "alice"));
+    }
+
+    @Test
+    @DisplayName("should backfill without counting records twice")
+    void shouldBackfillIdempotently() {
+        assertEquals(4, backfiller.backfill(DAY, DAY.plusSeconds(2 * 86_400)));
+
+        assertEquals(3, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, ""));
+        assertEquals(1, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.IP, "203.0.113.3"));
+    }
+
+    private static IpAddressRecord record(String ip, String userId, String countryCode, Instant createdAt) {
+        return IpAddressRecord.builder()
+                .ipAddress(ip)
+                .userId(userId)
+                .httpMethod("GET")
+                .countryCode(countryCode)
+                .createdAt(createdAt)
+                .build();
+    }
+}
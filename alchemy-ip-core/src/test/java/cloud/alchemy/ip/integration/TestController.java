@@ -58,6 +58,18 @@ public class TestController {
         return "POST OK";
     }
 
+    @StoreIPAddress(async = false, sampleRate = 0.0)
+    @GetMapping("/never-sampled")
+    public String neverSampledEndpoint() {
+        return "OK never sampled";
+    }
+
+    @StoreIPAddress(async = false, sampleRate = 0.999999)
+    @GetMapping("/sampled")
+    public String sampledEndpoint() {
+        return "OK sampled";
+    }
+
     @GetMapping("/no-store")
     public String noStoreEndpoint() {
         return "Not stored";
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.journal;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpRecordJournalReplayer}.
+ */
+@DisplayName("IpRecordJournalReplayer")
+class IpRecordJournalReplayerTest {
+
+    private static final String REJECTED_IP = "203.0.113.255";
+
+    @TempDir
+    Path directory;
+
+    private IpRecordJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    @DisplayName("should replay journaled records once the database recovers")
+    void shouldReplayAfterRecovery() {
+        journal = new IpRecordJournal(directory, 64 * 1024, 1024 * 1024, false);
+        final FlakyStorageService storageService = new FlakyStorageService();
+        final IpRecordJournalReplayer replayer = new IpRecordJournalReplayer(
+                journal, storageService, 2, Duration.ofHours(1), "test-journal");
+        for (int i = 0; i < 5; i++) {
+            journal.append(IpAddressRecord.builder().ipAddress("203.0.113." + i).build());
+        }
+
+        storageService.down = true;
+        assertEquals(0, replayer.replay());
+        assertTrue(journal.hasPending());
+
+        storageService.down = false;
+        assertEquals(5, replayer.replay());
+        assertEquals(5, storageService.stored.size());
+        assertFalse(journal.hasPending());
+    }
+
+    @Test
+    @DisplayName("should quarantine records that fail permanently and replay the rest")
+    void shouldQuarantinePermanentFailures() {
+        journal = new IpRecordJournal(directory, 64 * 1024, 1024 * 1024, false);
+        final FlakyStorageService storageService = new FlakyStorageService();
+        final IpRecordJournalReplayer replayer = new IpRecordJournalReplayer(
+                journal, storageService, 10, Duration.ofHours(1), "test-journal");
+        for (int i = 0; i < 5; i++) {
+            journal.append(IpAddressRecord.builder().ipAddress("203.0.113." + i).build());
+        }
+        journal.append(IpAddressRecord.builder().ipAddress(REJECTED_IP).build());
+
+        assertEquals(6, replayer.replay());
+
+        assertEquals(5, storageService.stored.size());
+        assertEquals(1, journal.getQuarantinedCount());
+        assertFalse(journal.hasPending());
+    }
+
+    private static class FlakyStorageService implements IpAddressStorageService {
+        final List<IpAddressRecord> stored = new CopyOnWriteArrayList<>();
+        volatile boolean down;
+
+        @Override
+        public List<IpAddressRecord> storeAll(List<IpAddressRecord> records) {
+            if (down) {
+                throw new IllegalStateException("database unavailable");
+            }
+            if (records.stream().anyMatch(record -> REJECTED_IP.equals(record.getIpAddress()))) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            stored.addAll(records);
+            return records;
+        }
+
+        @Override
+        public Optional<IpAddressRecord> store(IpAddressRecord record) {
+            return Optional.of(record);
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+            return CompletableFuture.completedFuture(Optional.of(record));
+        }
+
+        @Override
+        public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request,
+                                                                                  String userId) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.journal;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpRecordJournal}.
+ */
+@DisplayName("IpRecordJournal")
+class IpRecordJournalTest {
+
+    private static final long SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private IpRecordJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    @DisplayName("should replay appended records with all fields")
+    void shouldRoundTripRecords() {
+        journal = open(SEGMENT_SIZE * 4);
+        final Instant capturedAt = Instant.parse("2024-01-01T12:00:00.123456789Z");
+        final IpAddressRecord record = IpAddressRecord.builder()
+                .ipAddress("2001:db8::1")
+                .userId("user@example.com")
+                .userAgent("Mozilla/5.0 (ünïcödé)")
+                .requestPath("/api/resource")
+                .httpMethod("POST")
+                .tag("login")
+                .countryCode("DE")
+                .city("Berlin")
+                .region("BE")
+                .latitude(52.52)
+                .longitude(13.405)
+                .sourceHeader("X-Forwarded-For")
+                .sampleRate(0.5)
+                .createdAt(capturedAt)
+                .metadata("{\"k\":\"v\"}")
+                .build();
+
+        assertTrue(journal.append(record));
+        final List<IpAddressRecord> replayed = drain();
+
+        assertEquals(1, replayed.size());
+        final IpAddressRecord copy = replayed.getFirst();
+        assertEquals(record.getIpAddress(), copy.getIpAddress());
+        assertEquals(record.getUserId(), copy.getUserId());
+        assertEquals(record.getUserAgent(), copy.getUserAgent());
+        assertEquals(record.getRequestPath(), copy.getRequestPath());
+        assertEquals(record.getHttpMethod(), copy.getHttpMethod());
+        assertEquals(record.getTag(), copy.getTag());
+        assertEquals(record.getCountryCode(), copy.getCountryCode());
+        assertEquals(record.getCity(), copy.getCity());
+        assertEquals(record.getRegion(), copy.getRegion());
+        assertEquals(record.getLatitude(), copy.getLatitude());
+        assertEquals(record.getLongitude(), copy.getLongitude());
+        assertEquals(record.getSourceHeader(), copy.getSourceHeader());
+        assertEquals(record.getSampleRate(), copy.getSampleRate());
+        assertEquals(capturedAt, copy.getCreatedAt());
+        assertEquals(record.getMetadata(), copy.getMetadata());
+        assertFalse(journal.hasPending());
+    }
+
+    @Test
+    @DisplayName("should roll segments and delete them once replayed")
+    void shouldRollAndDeleteSegments() throws IOException {
+        journal = open(SEGMENT_SIZE * 16);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(journal.append(record(i)));
+        }
+        assertTrue(journal.getSegmentCount() > 1);
+
+        final List<IpAddressRecord> replayed = drain();
+
+        assertEquals(200, replayed.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals("/" + i, replayed.get(i).getRequestPath());
+        }
+        assertEquals(1, journal.getSegmentCount());
+        assertEquals(1, segmentFiles());
+    }
+
+    @Test
+    @DisplayName("should offer the same batch again when the sink fails")
+    void shouldRetryFailedBatch() {
+        journal = open(SEGMENT_SIZE * 4);
+        journal.append(record(1));
+        journal.append(record(2));
+
+        assertThrows(IllegalStateException.class, () -> journal.replay(10, batch -> {
+            throw new IllegalStateException("database unavailable");
+        }));
+        assertTrue(journal.hasPending());
+
+        final List<IpAddressRecord> replayed = drain();
+        assertEquals(List.of("/1", "/2"), replayed.stream().map(IpAddressRecord::getRequestPath).toList());
+        assertEquals(2, journal.getReplayedCount());
+    }
+
+    @Test
+    @DisplayName("should recover unreplayed records after reopening")
+    void shouldRecoverAfterRestart() {
+        journal = open(SEGMENT_SIZE * 16);
+        for (int i = 0; i < 100; i++) {
+            journal.append(record(i));
+        }
+        journal.close();
+
+        journal = open(SEGMENT_SIZE * 16);
+
+        assertTrue(journal.hasPending());
+        assertEquals(100, drain().size());
+    }
+
+    @Test
+    @DisplayName("should resume replay from the checkpoint after reopening")
+    void shouldResumeFromCheckpoint() {
+        journal = open(SEGMENT_SIZE * 16);
+        for (int i = 0; i < 100; i++) {
+            journal.append(record(i));
+        }
+        final List<IpAddressRecord> consumed = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> journal.replay(10, batch -> {
+            if (consumed.size() == 30) {
+                throw new IllegalStateException("database unavailable");
+            }
+            consumed.addAll(batch);
+        }));
+        journal.close();
+
+        journal = open(SEGMENT_SIZE * 16);
+
+        final List<IpAddressRecord> replayed = drain();
+        assertEquals(70, replayed.size());
+        assertEquals("/30", replayed.get(0).getRequestPath());
+    }
+
+    @Test
+    @DisplayName("should not replay a drained journal again after reopening")
+    void shouldNotReplayDrainedJournal() throws IOException {
+        journal = open(SEGMENT_SIZE * 4);
+        journal.append(record(1));
+        journal.append(record(2));
+        assertEquals(2, drain().size());
+        journal.close();
+
+        journal = open(SEGMENT_SIZE * 4);
+
+        assertFalse(journal.hasPending());
+        assertEquals(List.of(), drain());
+        assertEquals(1, segmentFiles());
+    }
+
+    @Test
+    @DisplayName("should replay every segment when the checkpoint is torn")
+    void shouldReplayAllWhenCheckpointTorn() throws IOException {
+        journal = open(SEGMENT_SIZE * 4);
+        journal.append(record(1));
+        journal.append(record(2));
+        final List<IpAddressRecord> consumed = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> journal.replay(1, batch -> {
+            if (!consumed.isEmpty()) {
+                throw new IllegalStateException("database unavailable");
+            }
+            consumed.addAll(batch);
+        }));
+        journal.close();
+        journal = null;
+
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("checkpoint.journal").toFile(), "rw")) {
+            file.seek(8);
+            file.writeInt(1);
+        }
+
+        journal = open(SEGMENT_SIZE * 4);
+
+        assertEquals(List.of("/1", "/2"), drain().stream().map(IpAddressRecord::getRequestPath).toList());
+    }
+
+    @Test
+    @DisplayName("should ignore a torn entry at the end of a recovered segment")
+    void shouldIgnoreTornEntry() throws IOException {
+        journal = open(SEGMENT_SIZE * 4);
+        journal.append(record(1));
+        journal.append(record(2));
+        journal.close();
+        journal = null;
+
+        // Corrupt the payload of the second entry
+        final Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(IpRecordJournalTest::isSegment).sorted().findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            final int firstLength = file.readInt();
+            final long secondPayload = 8L + firstLength + 8 + 4;
+            file.seek(secondPayload);
+            file.writeInt(0x7f7f7f7f);
+        }
+
+        journal = open(SEGMENT_SIZE * 4);
+
+        assertEquals(List.of("/1"), drain().stream().map(IpAddressRecord::getRequestPath).toList());
+    }
+
+    @Test
+    @DisplayName("should refuse a directory another journal holds")
+    void shouldRefuseLockedDirectory() {
+        journal = open(SEGMENT_SIZE * 4);
+        journal.append(record(1));
+
+        assertThrows(IllegalStateException.class, () -> open(SEGMENT_SIZE * 4));
+
+        journal.close();
+        journal = open(SEGMENT_SIZE * 4);
+        assertEquals(1, drain().size());
+    }
+
+    @Test
+    @DisplayName("should keep quarantined records out of replay")
+    void shouldQuarantineRecords() throws IOException {
+        journal = open(SEGMENT_SIZE * 4);
+        journal.quarantine(List.of(record(1), record(2)));
+
+        assertFalse(journal.hasPending());
+        assertEquals(2, journal.getQuarantinedCount());
+        assertTrue(Files.size(directory.resolve("quarantine.journal")) > 0);
+
+        journal.close();
+        journal = open(SEGMENT_SIZE * 4);
+        assertFalse(journal.hasPending());
+    }
+
+    @Test
+    @DisplayName("should drop records once the maximum size is reached")
+    void shouldDropWhenFull() {
+        journal = open(SEGMENT_SIZE * 2);
+        int accepted = 0;
+        for (int i = 0; i < 500; i++) {
+            if (journal.append(record(i))) {
+                accepted++;
+            }
+        }
+
+        assertTrue(accepted > 0 && accepted < 500);
+        assertEquals(500 - accepted, journal.getDroppedCount());
+        assertEquals(accepted, drain().size());
+    }
+
+    private IpRecordJournal open(long maxSize) {
+        return new IpRecordJournal(directory, SEGMENT_SIZE, maxSize, false);
+    }
+
+    private List<IpAddressRecord> drain() {
+        final List<IpAddressRecord> replayed = new ArrayList<>();
+        journal.replay(7, replayed::addAll);
+        return replayed;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(IpRecordJournalTest::isSegment).count();
+        }
+    }
+
+    private static boolean isSegment(Path file) {
+        return file.getFileName().toString().startsWith("segment-");
+    }
+
+    private static IpAddressRecord record(int sequence) {
+        return IpAddressRecord.builder()
+                .ipAddress("203.0.113." + (sequence % 256))
+                .requestPath("/" + sequence)
+                .httpMethod("GET")
+                .build();
+    }
+}
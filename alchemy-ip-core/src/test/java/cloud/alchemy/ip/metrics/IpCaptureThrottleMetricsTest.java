@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.metrics;
+
+import cloud.alchemy.ip.capture.IpCaptureThrottle;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpCaptureThrottleMetrics}.
+ */
+@DisplayName("IpCaptureThrottleMetrics")
+class IpCaptureThrottleMetricsTest {
+
+    @Test
+    @DisplayName("should publish the throttled capture and IP counts")
+    void shouldPublishCounters() {
+        final IpCaptureThrottle throttle = new IpCaptureThrottle(0.001, 1, 4096, 10);
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        throttle.tryAcquire("203.0.113.1");
+        throttle.tryAcquire("203.0.113.1");
+        new IpCaptureThrottleMetrics(throttle).bindTo(registry);
+        throttle.tryAcquire("198.51.100.2");
+        throttle.tryAcquire("198.51.100.2");
+        throttle.tryAcquire("198.51.100.2");
+
+        assertEquals(3, registry.get(IpCaptureThrottleMetrics.THROTTLED).functionCounter().count());
+        assertEquals(2, registry.get(IpCaptureThrottleMetrics.THROTTLED_IPS).gauge().value());
+        assertTrue(registry.getMeters().stream().noneMatch(meter -> meter.getId().getTag("ip") != null),
+                "IP addresses are not used as tags");
+    }
+}
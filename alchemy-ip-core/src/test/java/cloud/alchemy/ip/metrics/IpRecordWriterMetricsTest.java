@@ -0,0 +1,56 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.metrics;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpRecordWriterMetrics}.
+ */
+@DisplayName("IpRecordWriterMetrics")
+class IpRecordWriterMetricsTest {
+
+    @Test
+    @DisplayName("should publish batch size, flush interval and record counters")
+    void shouldPublishWriterState() {
+        final IpRecordWriter writer = new IpRecordWriter(null,
+                1, 25, Duration.ofMillis(200), "test-writer");
+        // Never started, so the storage service is not used and every record is dropped
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new IpRecordWriterMetrics(writer).bindTo(registry);
+
+        writer.submit(IpAddressRecord.builder().ipAddress("203.0.113.1").build());
+        writer.submit(IpAddressRecord.builder().ipAddress("203.0.113.2").build());
+
+        assertEquals(25, registry.get(IpRecordWriterMetrics.BATCH_SIZE).gauge().value());
+        assertEquals(200, registry.get(IpRecordWriterMetrics.FLUSH_INTERVAL).timeGauge().value(TimeUnit.MILLISECONDS));
+        assertEquals(0, registry.get(IpRecordWriterMetrics.PENDING).gauge().value());
+        assertEquals(0, registry.get(IpRecordWriterMetrics.BUFFERED_BYTES).gauge().value());
+        assertEquals(2, registry.get(IpRecordWriterMetrics.RECORDS)
+                .tag("outcome", "dropped").functionCounter().count());
+        assertEquals(0, registry.get(IpRecordWriterMetrics.RECORDS)
+                .tag("outcome", "written").functionCounter().count());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.reactive;
+
+import cloud.alchemy.ip.capture.CaptureOptions;
+import cloud.alchemy.ip.capture.PathPatternTrie;
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import cloud.alchemy.ip.writer.IpRecordWriter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpCaptureWebFilter}.
+ */
+@DisplayName("IpCaptureWebFilter")
+class IpCaptureWebFilterTest {
+
+    private final RecordingWriter writer = new RecordingWriter();
+
+    @Test
+    @DisplayName("should capture matching request after the chain completes")
+    void shouldCaptureMatchingRequest() {
+        final IpCaptureWebFilter filter = filter(new CaptureOptions(true, true, true, "login", true));
+        final MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.post("/api/login")
+                        .header("X-Forwarded-For", "203.0.113.195")
+                        .header("User-Agent", "Mozilla/5.0"));
+        final AtomicBoolean chainCompleted = new AtomicBoolean();
+        final WebFilterChain chain = ex -> Mono.<Void>empty().doOnSuccess(v -> {
+            assertTrue(writer.submitted.isEmpty());
+            chainCompleted.set(true);
+        });
+
+        filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+
+        assertTrue(chainCompleted.get());
+        assertEquals(1, writer.submitted.size());
+        final IpAddressRecord record = writer.submitted.getFirst();
+        assertEquals("203.0.113.195", record.getIpAddress());
+        assertEquals("user@example.com", record.getUserId());
+        assertEquals("Mozilla/5.0", record.getUserAgent());
+        assertEquals("/api/login", record.getRequestPath());
+        assertEquals("POST", record.getHttpMethod());
+        assertEquals("login", record.getTag());
+    }
+
+    @Test
+    @DisplayName("should fall back to the connection remote address")
+    void shouldUseRemoteAddress() {
+        final IpCaptureWebFilter filter = filter(new CaptureOptions(false, true, true, "", true));
+        final MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/orders")
+                        .remoteAddress(new InetSocketAddress("198.51.100.7", 54321)));
+
+        filter.filter(exchange, ex -> Mono.empty()).block(Duration.ofSeconds(5));
+
+        assertEquals("198.51.100.7", writer.submitted.getFirst().getIpAddress());
+    }
+
+    @Test
+    @DisplayName("should not capture requests outside the include patterns")
+    void shouldNotCaptureNonMatchingRequest() {
+        final IpCaptureWebFilter filter = filter(new CaptureOptions(false, true, true, "", true));
+        final MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/static/app.js").header("X-Forwarded-For", "203.0.113.195"));
+
+        filter.filter(exchange, ex -> Mono.empty()).block(Duration.ofSeconds(5));
+
+        assertTrue(writer.submitted.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should capture and propagate the error when the chain fails")
+    void shouldCaptureFailedRequest() {
+        final IpCaptureWebFilter filter = filter(new CaptureOptions(false, true, true, "", true));
+        final MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/orders").header("X-Forwarded-For", "203.0.113.195"));
+
+        final Mono<Void> result = filter.filter(exchange, ex -> Mono.error(new IllegalStateException("boom")));
+
+        assertThrows(IllegalStateException.class, () -> result.block(Duration.ofSeconds(5)));
+        assertEquals(1, writer.submitted.size());
+    }
+
+    @Test
+    @DisplayName("should capture anonymous requests without a user ID")
+    void shouldCaptureAnonymousRequest() {
+        final IpCaptureWebFilter filter = new IpCaptureWebFilter(
+                writer,
+                new DefaultReactiveIpAddressExtractor(new DefaultIpAddressExtractor()),
+                new DefaultReactiveUserIdResolver(),
+                new PathPatternTrie(List.of("/api/**")),
+                new CaptureOptions(false, true, true, "", true),
+                0
+        );
+        final MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/orders").header("X-Forwarded-For", "203.0.113.195"));
+
+        filter.filter(exchange, ex -> Mono.empty()).block(Duration.ofSeconds(5));
+
+        assertNull(writer.submitted.getFirst().getUserId());
+    }
+
+    @Test
+    @DisplayName("should not block when run on a non-blocking scheduler")
+    void shouldNotBlock() {
+        final IpCaptureWebFilter filter = filter(new CaptureOptions(false, true, true, "", true));
+        final MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/orders").header("X-Forwarded-For", "203.0.113.195"));
+
+        Mono.defer(() -> filter.filter(exchange, ex -> Mono.empty()))
+                .subscribeOn(Schedulers.parallel())
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(1, writer.submitted.size());
+    }
+
+    private IpCaptureWebFilter filter(CaptureOptions options) {
+        return new IpCaptureWebFilter(
+                writer,
+                new DefaultReactiveIpAddressExtractor(new DefaultIpAddressExtractor()),
+                exchange -> Mono.just("user@example.com"),
+                new PathPatternTrie(List.of("/api/**")),
+                options,
+                0
+        );
+    }
+
+    private static class RecordingWriter extends IpRecordWriter {
+        final List<IpAddressRecord> submitted = new ArrayList<>();
+
+        RecordingWriter() {
+            super(null, 10, 10, Duration.ofSeconds(1), "test-writer");
+        }
+
+        @Override
+        public boolean submit(IpAddressRecord record) {
+            submitted.add(record);
+            return true;
+        }
+    }
+}
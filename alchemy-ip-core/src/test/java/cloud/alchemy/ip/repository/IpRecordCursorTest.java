@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpRecordCursor}.
+ */
+@DisplayName("IpRecordCursor")
+class IpRecordCursorTest {
+
+    @Test
+    @DisplayName("should round-trip through an opaque URL-safe token")
+    void shouldRoundTrip() {
+        final IpRecordCursor cursor = new IpRecordCursor(Instant.parse("2024-03-01T10:00:00.123456789Z"), 1L << 40);
+
+        final String token = cursor.encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+        assertEquals(cursor, IpRecordCursor.decode(token));
+    }
+
+    @Test
+    @DisplayName("should reject malformed tokens")
+    void shouldRejectMalformedTokens() {
+        assertThrows(IllegalArgumentException.class, () -> IpRecordCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> IpRecordCursor.decode("AAAA"));
+        assertThrows(IllegalArgumentException.class, () -> IpRecordCursor.decode("f".repeat(27)));
+    }
+}
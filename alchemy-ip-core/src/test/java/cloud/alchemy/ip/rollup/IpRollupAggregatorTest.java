@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.rollup;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpRollupAggregator}.
+ */
+@DisplayName("IpRollupAggregator")
+class IpRollupAggregatorTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-01T10:15:00Z");
+    private static final Instant HOUR = Instant.parse("2024-03-01T10:00:00Z");
+    private static final Instant DAY = Instant.parse("2024-03-01T00:00:00Z");
+
+    private final RecordingStore store = new RecordingStore();
+
+    @Test
+    @DisplayName("should add each record to the hourly and daily rows of its dimensions")
+    void shouldExpandRecordIntoRows() {
+        final IpRollupAggregator aggregator = aggregator(1000);
+
+        aggregator.record(record("203.0.113.1", "alice", "US", T0));
+        aggregator.record(record("203.0.113.2", null, "US", T0.plusSeconds(3600)));
+        aggregator.flush();
+
+        final List<IpRollupDelta> batch = store.batches.getFirst();
+        assertEquals(2.0, hits(batch, IpRollupGranularity.DAY, DAY, IpRollupDimension.TOTAL, ""));
+        assertEquals(1.0, hits(batch, IpRollupGranularity.HOUR, HOUR, IpRollupDimension.TOTAL, ""));
+        assertEquals(1.0, hits(batch, IpRollupGranularity.HOUR, HOUR.plusSeconds(3600), IpRollupDimension.TOTAL, ""));
+        assertEquals(2.0, hits(batch, IpRollupGranularity.DAY, DAY, IpRollupDimension.COUNTRY, "US"));
+        assertEquals(2.0, hits(batch, IpRollupGranularity.DAY, DAY, IpRollupDimension.METHOD, "GET"));
+        assertEquals(1.0, hits(batch, IpRollupGranularity.DAY, DAY, IpRollupDimension.IP, "203.0.113.1"));
+        assertEquals(1.0, hits(batch, IpRollupGranularity.DAY, DAY, IpRollupDimension.USER, "alice"));
+        assertTrue(batch.stream().noneMatch(delta -> delta.granularity() == IpRollupGranularity.HOUR
+                        && (delta.dimension() == IpRollupDimension.IP || delta.dimension() == IpRollupDimension.USER)),
+                "IP addresses and users are only counted per day");
+        assertTrue(batch.stream().noneMatch(delta -> delta.dimension() == IpRollupDimension.TAG),
+                "records without a tag add no tag row");
+        assertEquals(1, batch.stream()
+                .filter(delta -> delta.dimension() == IpRollupDimension.USER
+                        && delta.granularity() == IpRollupGranularity.DAY)
+                .count(), "anonymous records add no user row");
+    }
+
+    @Test
+    @DisplayName("should count sampled records once")
+    void shouldCountSampledRecordsOnce() {
+        final IpRollupAggregator aggregator = aggregator(1000);
+
+        aggregator.record(record("203.0.113.1", null, "DE", T0).toBuilder().sampleRate(0.25).build());
+        aggregator.flush();
+
+        assertEquals(1.0, hits(store.batches.getFirst(), IpRollupGranularity.DAY, DAY, IpRollupDimension.TOTAL, ""));
+    }
+
+    @Test
+    @DisplayName("should reset rows after a flush and evict idle ones")
+    void shouldResetAndEvict() {
+        final IpRollupAggregator aggregator = aggregator(1000);
+        aggregator.record(record("203.0.113.1", null, null, T0));
+        aggregator.flush();
+        assertTrue(aggregator.getPendingKeyCount() > 0);
+
+        aggregator.flush();
+
+        assertEquals(1, store.batches.size());
+        assertEquals(0, aggregator.getPendingKeyCount());
+        assertEquals(1, aggregator.getRecordedCount());
+    }
+
+    @Test
+    @DisplayName("should retry deltas on the next flush when the store fails")
+    void shouldRetryFailedFlush() {
+        final IpRollupAggregator aggregator = aggregator(1000);
+        aggregator.record(record("203.0.113.1", null, null, T0));
+        store.fail = true;
+        aggregator.flush();
+
+        store.fail = false;
+        aggregator.record(record("203.0.113.2", null, null, T0));
+        aggregator.flush();
+
+        assertEquals(2.0, hits(store.batches.getLast(), IpRollupGranularity.DAY, DAY, IpRollupDimension.TOTAL, ""));
+    }
+
+    @Test
+    @DisplayName("should flush remaining rows on stop")
+    void shouldFlushOnStop() {
+        final IpRollupAggregator aggregator = aggregator(1000);
+        aggregator.start();
+        aggregator.record(record("203.0.113.1", null, null, T0));
+        aggregator.stop();
+
+        assertFalse(aggregator.isRunning());
+        assertEquals(1, store.batches.size());
+    }
+
+    @Test
+    @DisplayName("should reject invalid configuration")
+    void shouldRejectInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpRollupAggregator(store, Duration.ZERO, 100, "test"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpRollupAggregator(store, Duration.ofSeconds(1), 0, "test"));
+    }
+
+    private IpRollupAggregator aggregator(int maxKeys) {
+        return new IpRollupAggregator(store, Duration.ofHours(1), maxKeys, "test-rollups", T0::toEpochMilli);
+    }
+
+    private static IpAddressRecord record(String ip, String userId, String countryCode, Instant createdAt) {
+        return IpAddressRecord.builder()
+                .ipAddress(ip)
+                .userId(userId)
+                .httpMethod("GET")
+                .countryCode(countryCode)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private static double hits(List<IpRollupDelta> deltas, IpRollupGranularity granularity, Instant bucketStart,
+                               IpRollupDimension dimension, String value) {
+        return find(deltas, granularity, bucketStart, dimension, value).orElseThrow().hits();
+    }
+
+    private static Optional<IpRollupDelta> find(List<IpRollupDelta> deltas, IpRollupGranularity granularity,
+                                                Instant bucketStart, IpRollupDimension dimension, String value) {
+        return deltas.stream()
+                .filter(delta -> delta.granularity() == granularity && delta.bucketStart().equals(bucketStart)
+                        && delta.dimension() == dimension && delta.value().equals(value))
+                .findFirst();
+    }
+
+    private static final class RecordingStore implements IpRollupStore {
+        private final List<List<IpRollupDelta>> batches = new ArrayList<>();
+        private volatile boolean fail;
+
+        @Override
+        public void upsert(List<IpRollupDelta> deltas) {
+            if (fail) {
+                throw new IllegalStateException("database unavailable");
+            }
+            batches.add(List.copyOf(deltas));
+        }
+    }
+}
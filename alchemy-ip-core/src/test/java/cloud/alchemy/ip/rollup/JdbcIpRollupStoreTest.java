@@ -0,0 +1,217 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.rollup;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link JdbcIpRollupStore} and {@link IpRollupRebuilder} against an
+ * in-memory H2 database.
+ */
+@DisplayName("JdbcIpRollupStore")
+class JdbcIpRollupStoreTest {
+
+    private static final Instant DAY = Instant.parse("2024-03-01T00:00:00Z");
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcIpRollupStore store;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("""
+                CREATE TABLE ip_rollups (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    granularity VARCHAR(5) NOT NULL,
+                    bucket_start TIMESTAMP WITH TIME ZONE NOT NULL,
+                    dimension VARCHAR(10) NOT NULL,
+                    dimension_value VARCHAR(255) NOT NULL,
+                    hits DOUBLE PRECISION NOT NULL,
+                    CONSTRAINT uk_ip_rollups_row UNIQUE (granularity, bucket_start, dimension, dimension_value)
+                )
+                """);
+        jdbcTemplate.execute("""
+                CREATE TABLE ip_addresses (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    ip_address VARCHAR(45) NOT NULL,
+                    user_id VARCHAR(255),
+                    http_method VARCHAR(10),
+                    tag VARCHAR(100),
+                    country_code VARCHAR(2),
+                    city VARCHAR(100),
+                    sample_rate DOUBLE PRECISION,
+                    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+                )
+                """);
+        store = new JdbcIpRollupStore(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("should insert new rows and accumulate existing ones")
+    void shouldInsertThenAccumulate() {
+        store.upsert(List.of(
+                total(DAY, 3),
+                new IpRollupDelta(IpRollupGranularity.DAY, DAY, IpRollupDimension.COUNTRY, "US", 2)
+        ));
+        store.upsert(List.of(total(DAY, 1.5)));
+
+        assertEquals(4.5, hits(IpRollupDimension.TOTAL, ""));
+        assertEquals(2.0, hits(IpRollupDimension.COUNTRY, "US"));
+        assertEquals(2, rowCount());
+    }
+
+    @Test
+    @DisplayName("should upsert more rows than fit in one batch")
+    void shouldUpsertSeveralBatches() {
+        final List<IpRollupDelta> deltas = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            deltas.add(new IpRollupDelta(IpRollupGranularity.DAY, DAY, IpRollupDimension.IP, "10.0.0." + i, 1));
+        }
+        store.upsert(deltas);
+        store.upsert(deltas);
+
+        assertEquals(2500, rowCount());
+        assertEquals(2.0, hits(IpRollupDimension.IP, "10.0.0.2499"));
+    }
+
+    @Test
+    @DisplayName("should apply none of the batches of an upsert that fails")
+    void shouldRollBackFailedUpsert() {
+        store.upsert(List.of(total(DAY, 1)));
+        final List<IpRollupDelta> deltas = new ArrayList<>();
+        deltas.add(total(DAY, 1));
+        for (int i = 0; i < 1500; i++) {
+            deltas.add(new IpRollupDelta(IpRollupGranularity.DAY, DAY, IpRollupDimension.IP, "10.0.0." + i, 1));
+        }
+        deltas.add(new IpRollupDelta(IpRollupGranularity.DAY, DAY, IpRollupDimension.TAG, "x".repeat(300), 1));
+
+        assertThrows(DataAccessException.class, () -> store.upsert(deltas));
+
+        assertEquals(1.0, hits(IpRollupDimension.TOTAL, ""));
+        assertEquals(1, rowCount());
+    }
+
+    @Test
+    @DisplayName("should not count rows inserted by a failed insert batch twice")
+    void shouldRetryFailedInsertBatchOnce() {
+        // The second delta collides with the row the first one inserts, like a concurrent insert
+        store.upsert(List.of(total(DAY, 1), total(DAY, 2), total(DAY.plusSeconds(86_400), 4)));
+
+        assertEquals(3.0, jdbcTemplate.queryForObject(
+                "SELECT hits FROM ip_rollups WHERE bucket_start = ?", Double.class, Timestamp.from(DAY)));
+        assertEquals(2, rowCount());
+    }
+
+    @Test
+    @DisplayName("should delete the rows whose bucket starts within a range")
+    void shouldDeleteRange() {
+        store.upsert(List.of(total(DAY, 1), total(DAY.plusSeconds(86_400), 1)));
+
+        assertEquals(1, store.delete(DAY, DAY.plusSeconds(86_400)));
+        assertEquals(1, rowCount());
+    }
+
+    @Test
+    @DisplayName("should rebuild the rollups of whole days from the records table")
+    void shouldRebuildFromRecords() {
+        insertRecord("203.0.113.1", "alice", "US", null, DAY.plusSeconds(3_600));
+        insertRecord("203.0.113.1", "bob", "US", null, DAY.plusSeconds(7_200));
+        insertRecord("203.0.113.2", null, "DE", 0.5, DAY.plusSeconds(7_300));
+        insertRecord("203.0.113.3", null, "FR", null, DAY.plusSeconds(86_400 + 60));
+        store.upsert(List.of(total(DAY, 99)));
+
+        final IpRollupRebuilder rebuilder = new IpRollupRebuilder(jdbcTemplate, "ip_addresses", store, null);
+        final long records = rebuilder.rebuild(DAY.plusSeconds(5_000), DAY.plusSeconds(6_000));
+
+        assertEquals(3, records, "the range is widened to the whole day");
+        assertEquals(3.0, hits(IpRollupDimension.TOTAL, ""), "sampled records count once");
+        assertEquals(2.0, hits(IpRollupDimension.COUNTRY, "US"));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM ip_rollups WHERE granularity = 'DAY' AND dimension = 'IP'", Integer.class));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM ip_rollups WHERE granularity = 'HOUR' AND dimension = 'TOTAL'", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM ip_rollups WHERE dimension_value = 'FR'", Integer.class),
+                "days outside the range are not rebuilt");
+    }
+
+    @Test
+    @DisplayName("should keep a day's rows when its rebuild fails")
+    void shouldKeepRowsWhenRebuildFails() {
+        store.upsert(List.of(total(DAY, 5)));
+        final IpRollupRebuilder rebuilder = new IpRollupRebuilder(jdbcTemplate, "missing_table", store, null);
+
+        assertThrows(DataAccessException.class, () -> rebuilder.rebuild(DAY, DAY.plusSeconds(86_400)));
+
+        assertEquals(5.0, hits(IpRollupDimension.TOTAL, ""), "the delete is rolled back with the failed scan");
+    }
+
+    @Test
+    @DisplayName("should reject an empty range and invalid table names")
+    void shouldRejectInvalidArguments() {
+        final IpRollupRebuilder rebuilder = new IpRollupRebuilder(jdbcTemplate, "ip_addresses", store, null);
+
+        assertThrows(IllegalArgumentException.class, () -> rebuilder.rebuild(DAY, DAY));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpRollupRebuilder(jdbcTemplate, "ip_addresses; DROP TABLE x", store, null));
+    }
+
+    private static IpRollupDelta total(Instant bucketStart, double hits) {
+        return new IpRollupDelta(IpRollupGranularity.DAY, bucketStart, IpRollupDimension.TOTAL, "", hits);
+    }
+
+    private double hits(IpRollupDimension dimension, String value) {
+        return jdbcTemplate.queryForObject(
+                "SELECT hits FROM ip_rollups WHERE granularity = 'DAY' AND bucket_start = ? " +
+                        "AND dimension = ? AND dimension_value = ?",
+                Double.class, Timestamp.from(DAY), dimension.name(), value);
+    }
+
+    private int rowCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ip_rollups", Integer.class);
+    }
+
+    private void insertRecord(String ip, String userId, String countryCode, Double sampleRate, Instant createdAt) {
+        jdbcTemplate.update("INSERT INTO ip_addresses (ip_address, user_id, http_method, country_code, " +
+                        "sample_rate, created_at) VALUES (?, ?, 'GET', ?, ?, ?)",
+                ip, userId, countryCode, sampleRate, Timestamp.from(createdAt));
+    }
+}
@@ -18,6 +18,13 @@ package cloud.alchemy.ip.service;
 import cloud.alchemy.ip.entity.IpAddressRecord;
 import cloud.alchemy.ip.extractor.IpAddressExtractor;
 import cloud.alchemy.ip.repository.IpAddressRepository;
+import cloud.alchemy.ip.repository.IpRecordCursor;
+import cloud.alchemy.ip.rollup.IpRollupAggregator;
+import cloud.alchemy.ip.rollup.IpRollupDelta;
+import cloud.alchemy.ip.rollup.IpRollupDimension;
+import cloud.alchemy.ip.rollup.IpRollupGranularity;
+import cloud.alchemy.ip.sighting.IpSightingAggregator;
+import cloud.alchemy.ip.sighting.IpSightingDelta;
 import jakarta.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -26,11 +33,14 @@ import org.junit.jupiter.api.Test;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.repository.query.FluentQuery;
 import org.springframework.mock.web.MockHttpServletRequest;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -308,6 +318,156 @@ class DefaultIpAddressStorageServiceTest {
 
     // Stub implementations for testing
 
+    @Nested
+    @DisplayName("storeAll")
+    class StoreAll {
+
+        @Test
+        @DisplayName("should save the new records of a batch in one call")
+        void shouldSaveNewRecordsInOneCall() {
+            repository.save(IpAddressRecord.builder().ipAddress("203.0.113.1").build());
+
+            final List<IpAddressRecord> stored = storageService.storeAll(List.of(
+                    IpAddressRecord.builder().ipAddress("203.0.113.1").build(),
+                    IpAddressRecord.builder().ipAddress("203.0.113.2").build(),
+                    IpAddressRecord.builder().ipAddress("203.0.113.2").build(),
+                    IpAddressRecord.builder().ipAddress("203.0.113.2").userId("user@example.com").build()));
+
+            assertEquals(2, stored.size());
+            assertEquals(1, repository.saveAllCalls);
+            assertEquals(3, repository.savedRecords.size());
+        }
+
+        @Test
+        @DisplayName("should not save when every record is a duplicate")
+        void shouldSkipBatchOfDuplicates() {
+            repository.save(IpAddressRecord.builder().ipAddress("203.0.113.1").build());
+
+            final List<IpAddressRecord> stored = storageService.storeAll(List.of(
+                    IpAddressRecord.builder().ipAddress("203.0.113.1").build()));
+
+            assertTrue(stored.isEmpty());
+            assertEquals(0, repository.saveAllCalls);
+        }
+    }
+
+    @Nested
+    @DisplayName("store with windowed dedup")
+    class StoreWithWindowedDedup {
+
+        @BeforeEach
+        void setUp() {
+            storageService = DefaultIpAddressStorageService.builder(repository, ipAddressExtractor)
+                    .windowedDeduplicator(new WindowedDeduplicator(Duration.ofMinutes(5), 1000))
+                    .build();
+        }
+
+        @Test
+        @DisplayName("should store once per window without reading the database")
+        void shouldStoreOncePerWindow() {
+            repository.save(IpAddressRecord.builder()
+                    .ipAddress("203.0.113.195")
+                    .userId("user@example.com")
+                    .build());
+            repository.lookups = 0;
+
+            final Optional<IpAddressRecord> first = storageService.store(IpAddressRecord.builder()
+                    .ipAddress("203.0.113.195")
+                    .userId("user@example.com")
+                    .build());
+            final Optional<IpAddressRecord> second = storageService.store(IpAddressRecord.builder()
+                    .ipAddress("203.0.113.195")
+                    .userId("user@example.com")
+                    .build());
+
+            assertTrue(first.isPresent());
+            assertTrue(second.isEmpty());
+            assertEquals(2, repository.savedRecords.size());
+            assertEquals(0, repository.lookups);
+        }
+    }
+
+    @Nested
+    @DisplayName("store with sightings")
+    class StoreWithSightings {
+
+        private final List<IpSightingDelta> flushed = new ArrayList<>();
+        private IpSightingAggregator aggregator;
+
+        @BeforeEach
+        void setUp() {
+            aggregator = new IpSightingAggregator(flushed::addAll, Duration.ofHours(1), 1000, "test-sightings");
+            storageService = DefaultIpAddressStorageService.builder(repository, ipAddressExtractor)
+                    .sightingAggregator(aggregator)
+                    .build();
+        }
+
+        @Test
+        @DisplayName("should count duplicates and scale sampled captures")
+        void shouldCountEveryCapture() {
+            storageService.store(IpAddressRecord.builder().ipAddress("203.0.113.195").build());
+            storageService.store(IpAddressRecord.builder().ipAddress("203.0.113.195").build());
+            storageService.store(IpAddressRecord.builder().ipAddress("203.0.113.195").sampleRate(0.25).build());
+            aggregator.flush();
+
+            assertEquals(1, repository.savedRecords.size());
+            assertEquals(1, flushed.size());
+            assertEquals(6, flushed.getFirst().hits());
+        }
+
+        @Test
+        @DisplayName("should count a capture once when its write is retried")
+        void shouldCountRetriedCapturesOnce() {
+            final IpAddressRecord first = IpAddressRecord.builder().ipAddress("203.0.113.195").build();
+            final IpAddressRecord second = IpAddressRecord.builder().ipAddress("203.0.113.196").build();
+            repository.down = true;
+            assertThrows(IllegalStateException.class, () -> storageService.store(first));
+            assertThrows(IllegalStateException.class, () -> storageService.storeAll(List.of(first, second)));
+
+            repository.down = false;
+            storageService.storeAll(List.of(first, second));
+            aggregator.flush();
+
+            assertEquals(2, flushed.size());
+            assertEquals(2, flushed.stream().mapToLong(IpSightingDelta::hits).sum());
+        }
+    }
+
+    @Nested
+    @DisplayName("store with rollups")
+    class StoreWithRollups {
+
+        private final List<IpRollupDelta> flushed = new ArrayList<>();
+        private IpRollupAggregator aggregator;
+
+        @BeforeEach
+        void setUp() {
+            aggregator = new IpRollupAggregator(flushed::addAll, Duration.ofHours(1), 1000, "test-rollups");
+            storageService = DefaultIpAddressStorageService.builder(repository, ipAddressExtractor)
+                    .storedListener(aggregator)
+                    .build();
+        }
+
+        @Test
+        @DisplayName("should add stored records only, from single and batch stores")
+        void shouldRollUpStoredRecords() {
+            storageService.store(IpAddressRecord.builder().ipAddress("203.0.113.195").build());
+            storageService.store(IpAddressRecord.builder().ipAddress("203.0.113.195").build());
+            storageService.storeAll(List.of(
+                    IpAddressRecord.builder().ipAddress("203.0.113.196").build(),
+                    IpAddressRecord.builder().ipAddress("203.0.113.195").build()));
+            aggregator.flush();
+
+            assertEquals(2, repository.savedRecords.size());
+            assertEquals(2, aggregator.getRecordedCount());
+            assertEquals(2.0, flushed.stream()
+                    .filter(delta -> delta.granularity() == IpRollupGranularity.DAY
+                            && delta.dimension() == IpRollupDimension.TOTAL)
+                    .mapToDouble(IpRollupDelta::hits)
+                    .sum());
+        }
+    }
+
     private static class StubIpAddressExtractor implements IpAddressExtractor {
         private String ipAddress = "127.0.0.1";
 
@@ -324,9 +484,13 @@ class DefaultIpAddressStorageServiceTest {
     private static class StubIpAddressRepository implements IpAddressRepository {
         final List<IpAddressRecord> savedRecords = new ArrayList<>();
         private final AtomicLong idGenerator = new AtomicLong(1);
+        int lookups;
+        int saveAllCalls;
+        boolean down;
 
         @Override
         public List<IpAddressRecord> findByIpAddress(String ipAddress) {
+            lookups++;
             return savedRecords.stream()
                     .filter(r -> ipAddress.equals(r.getIpAddress()))
                     .toList();
@@ -334,6 +498,7 @@ class DefaultIpAddressStorageServiceTest {
 
         @Override
         public boolean existsByIpAddressAndUserId(String ipAddress, String userId) {
+            lookups++;
             return savedRecords.stream()
                     .anyMatch(r -> ipAddress.equals(r.getIpAddress()) &&
                              userId != null && userId.equals(r.getUserId()));
@@ -341,12 +506,55 @@ class DefaultIpAddressStorageServiceTest {
 
         @Override
         public <S extends IpAddressRecord> S save(S entity) {
+            if (down) {
+                throw new IllegalStateException("database unavailable");
+            }
             savedRecords.add(entity);
             return entity;
         }
 
         // Unused methods - minimal implementations
 
+        @Override
+        public long countByCreatedAtBetween(Instant start, Instant end) {
+            return 0;
+        }
+
+        @Override
+        public long countDistinctIpAddresses() {
+            return 0;
+        }
+
+        @Override
+        public long countDistinctUsers() {
+            return 0;
+        }
+
+        @Override
+        public Optional<Instant> findOldestCreatedAt() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Instant> findNewestCreatedAt() {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<Object[]> findTopCountries(Pageable pageable) {
+            return List.of();
+        }
+
+        @Override
+        public List<Object[]> findTopCities(Pageable pageable) {
+            return List.of();
+        }
+
+        @Override
+        public List<Object[]> countByCreatedAtBuckets(Instant start, Instant end, long bucketSeconds) {
+            return List.of();
+        }
+
         @Override
         public Page<IpAddressRecord> findByIpAddress(String ipAddress, Pageable pageable) {
             return Page.empty();
@@ -417,6 +625,11 @@ class DefaultIpAddressStorageServiceTest {
             return List.of();
         }
 
+        @Override
+        public List<String> findDistinctIpAddressesByUserId(String userId, Pageable pageable) {
+            return List.of();
+        }
+
         @Override
         public Page<IpAddressRecord> findByCountryCode(String countryCode, Pageable pageable) {
             return Page.empty();
@@ -550,10 +763,33 @@ class DefaultIpAddressStorageServiceTest {
         }
 
         @Override
-        public <S extends IpAddressRecord> List<S> saveAll(Iterable<S> entities) {
+        public <T> Page<T> findAll(Specification<IpAddressRecord> spec, Pageable pageable, Class<T> type) {
+            return Page.empty();
+        }
+
+        @Override
+        public <T> Slice<T> findSlice(Specification<IpAddressRecord> spec, Pageable pageable, Class<T> type) {
+            return new SliceImpl<>(List.of());
+        }
+
+        @Override
+        public <T> List<T> findAfter(Specification<IpAddressRecord> spec, IpRecordCursor after,
+                                     Sort.Direction direction, int limit, Class<T> type) {
             return List.of();
         }
 
+        @Override
+        public <S extends IpAddressRecord> List<S> saveAll(Iterable<S> entities) {
+            saveAllCalls++;
+            if (down) {
+                throw new IllegalStateException("database unavailable");
+            }
+            final List<S> saved = new ArrayList<>();
+            entities.forEach(saved::add);
+            savedRecords.addAll(saved);
+            return saved;
+        }
+
         @Override
         public Optional<IpAddressRecord> findById(Long aLong) {
             return Optional.empty();
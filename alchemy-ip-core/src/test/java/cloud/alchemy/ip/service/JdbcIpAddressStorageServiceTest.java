@@ -0,0 +1,191 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.service;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.extractor.DefaultIpAddressExtractor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link JdbcIpAddressStorageService} against an in-memory H2 database.
+ */
+@DisplayName("JdbcIpAddressStorageService")
+class JdbcIpAddressStorageServiceTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("""
+                CREATE TABLE ip_addresses (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    ip_address VARCHAR(45) NOT NULL,
+                    user_id VARCHAR(255),
+                    user_agent VARCHAR(512),
+                    request_path VARCHAR(2048),
+                    http_method VARCHAR(10),
+                    tag VARCHAR(100),
+                    country_code VARCHAR(2),
+                    city VARCHAR(100),
+                    region VARCHAR(100),
+                    latitude DOUBLE PRECISION,
+                    longitude DOUBLE PRECISION,
+                    source_header VARCHAR(50),
+                    sample_rate DOUBLE PRECISION,
+                    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+                    metadata TEXT
+                )
+                """);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("should insert all columns and stamp the creation time")
+    void shouldInsertAllColumns() {
+        final JdbcIpAddressStorageService service = service(null);
+
+        final IpAddressRecord stored = service.store(IpAddressRecord.builder()
+                .ipAddress("203.0.113.1")
+                .userId("user@example.com")
+                .requestPath("/api/orders")
+                .httpMethod("POST")
+                .latitude(52.52)
+                .sampleRate(0.25)
+                .build()).orElseThrow();
+
+        assertNotNull(stored.getCreatedAt());
+        final Map<String, Object> row = jdbcTemplate.queryForMap("SELECT * FROM ip_addresses");
+        assertEquals("user@example.com", row.get("USER_ID"));
+        assertEquals("/api/orders", row.get("REQUEST_PATH"));
+        assertEquals(52.52, ((Number) row.get("LATITUDE")).doubleValue());
+        assertNull(row.get("LONGITUDE"));
+        assertEquals(0.25, ((Number) row.get("SAMPLE_RATE")).doubleValue());
+    }
+
+    @Test
+    @DisplayName("should skip duplicates of stored IP + user combinations")
+    void shouldSkipDuplicates() {
+        final JdbcIpAddressStorageService service = service(null);
+
+        assertTrue(service.store(record("203.0.113.1", null)).isPresent());
+        assertTrue(service.store(record("203.0.113.1", "user@example.com")).isPresent());
+
+        assertTrue(service.store(record("203.0.113.1", null)).isEmpty());
+        assertTrue(service.store(record("203.0.113.1", "user@example.com")).isEmpty());
+        assertEquals(2, count());
+    }
+
+    @Test
+    @DisplayName("should insert a batch once, skipping existing and repeated combinations")
+    void shouldStoreBatch() {
+        final JdbcIpAddressStorageService service = service(null);
+        service.store(record("203.0.113.1", "existing@example.com"));
+
+        final List<IpAddressRecord> stored = service.storeAll(List.of(
+                record("203.0.113.1", "existing@example.com"),
+                record("203.0.113.1", "new@example.com"),
+                record("203.0.113.2", null),
+                record("203.0.113.2", null),
+                record("203.0.113.3", null)
+        ));
+
+        assertEquals(3, stored.size());
+        assertEquals(4, count());
+        assertTrue(service.storeAll(List.of(record("203.0.113.3", null))).isEmpty());
+    }
+
+    @Test
+    @DisplayName("should deduplicate batches in memory in window mode")
+    void shouldStoreBatchWithWindowedDedup() {
+        final JdbcIpAddressStorageService service =
+                service(new WindowedDeduplicator(Duration.ofMinutes(5), 1000));
+
+        assertEquals(2, service.storeAll(List.of(
+                record("203.0.113.1", null),
+                record("203.0.113.1", null),
+                record("203.0.113.2", null)
+        )).size());
+        assertTrue(service.storeAll(List.of(record("203.0.113.1", null))).isEmpty());
+        assertEquals(2, count());
+    }
+
+    @Test
+    @DisplayName("should write IDs from the ID generator")
+    void shouldWriteGeneratedIds() {
+        final AtomicLong ids = new AtomicLong(1000);
+        final JdbcIpAddressStorageService service = JdbcIpAddressStorageService.builder(jdbcTemplate, "ip_addresses",
+                new DefaultIpAddressExtractor()).idGenerator(ids::incrementAndGet).build();
+
+        final List<IpAddressRecord> stored = service.storeAll(List.of(
+                record("203.0.113.1", null),
+                record("203.0.113.2", null)
+        ));
+
+        assertEquals(List.of(1001L, 1002L), stored.stream().map(IpAddressRecord::getId).toList());
+        assertEquals(List.of(1001L, 1002L),
+                jdbcTemplate.queryForList("SELECT id FROM ip_addresses ORDER BY id", Long.class));
+    }
+
+    @Test
+    @DisplayName("should reject table names that are not plain identifiers")
+    void shouldRejectInvalidTableName() {
+        assertThrows(IllegalArgumentException.class, () -> JdbcIpAddressStorageService.builder(
+                jdbcTemplate, "ip_addresses; DROP TABLE users", new DefaultIpAddressExtractor()).build());
+    }
+
+    private JdbcIpAddressStorageService service(WindowedDeduplicator deduplicator) {
+        return JdbcIpAddressStorageService.builder(jdbcTemplate, "ip_addresses", new DefaultIpAddressExtractor())
+                .windowedDeduplicator(deduplicator)
+                .build();
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ip_addresses", Integer.class);
+    }
+
+    private static IpAddressRecord record(String ipAddress, String userId) {
+        return IpAddressRecord.builder()
+                .ipAddress(ipAddress)
+                .userId(userId)
+                .createdAt(Instant.parse("2024-01-01T00:00:00Z"))
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SingleFlight}.
+ */
+@DisplayName("SingleFlight")
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    @DisplayName("should run concurrent calls for the same key once")
+    void shouldCoalesceConcurrentCalls() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CompletableFuture<String> leader = call(() -> {
+            executions.incrementAndGet();
+            awaitQuietly(release);
+            return "saved";
+        });
+        await().atMost(5, TimeUnit.SECONDS).until(() -> singleFlight.size() == 1);
+
+        final List<CompletableFuture<String>> followers = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 19; i++) {
+            final CompletableFuture<String> follower = new CompletableFuture<>();
+            threads.add(Thread.ofPlatform().start(() -> follower.complete(singleFlight.execute("key", () -> {
+                executions.incrementAndGet();
+                return "duplicate";
+            }))));
+            followers.add(follower);
+        }
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> threads.stream().allMatch(t -> t.getState() == Thread.State.WAITING));
+        release.countDown();
+
+        assertEquals("saved", leader.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<String> follower : followers) {
+            assertEquals("saved", follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    @DisplayName("should share the exception with waiting callers")
+    void shouldShareException() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CompletableFuture<String> leader = call(() -> {
+            awaitQuietly(release);
+            throw new IllegalStateException("database unavailable");
+        });
+        await().atMost(5, TimeUnit.SECONDS).until(() -> singleFlight.size() == 1);
+
+        final CompletableFuture<String> follower = new CompletableFuture<>();
+        final Thread thread = Thread.ofPlatform().start(() -> {
+            try {
+                follower.complete(singleFlight.execute("key", () -> "ran"));
+            } catch (RuntimeException e) {
+                follower.completeExceptionally(e);
+            }
+        });
+        await().atMost(5, TimeUnit.SECONDS).until(() -> thread.getState() == Thread.State.WAITING);
+        release.countDown();
+
+        final ExecutionException leaderError =
+                assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+        final ExecutionException followerError =
+                assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertSame(leaderError.getCause(), followerError.getCause());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    @DisplayName("should not cache results between calls")
+    void shouldNotCacheResults() {
+        assertEquals("first", singleFlight.execute("key", () -> "first"));
+        assertEquals("second", singleFlight.execute("key", () -> "second"));
+    }
+
+    @Test
+    @DisplayName("should run different keys independently")
+    void shouldRunDifferentKeysIndependently() {
+        final String result = singleFlight.execute("a", () -> singleFlight.execute("b", () -> "nested"));
+
+        assertEquals("nested", result);
+        assertEquals(0, singleFlight.size());
+    }
+
+    private CompletableFuture<String> call(Supplier<String> work) {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        Thread.ofPlatform().start(() -> {
+            try {
+                result.complete(singleFlight.execute("key", work));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
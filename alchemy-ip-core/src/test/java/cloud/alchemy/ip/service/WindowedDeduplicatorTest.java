@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link WindowedDeduplicator}.
+ */
+@DisplayName("WindowedDeduplicator")
+class WindowedDeduplicatorTest {
+
+    private static final long WINDOW_MILLIS = Duration.ofMinutes(5).toMillis();
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    @DisplayName("should admit a key once per window")
+    void shouldAdmitOncePerWindow() {
+        final WindowedDeduplicator deduplicator = deduplicator(100);
+
+        assertTrue(deduplicator.tryAdmit("203.0.113.1", "user@example.com"));
+        assertFalse(deduplicator.tryAdmit("203.0.113.1", "user@example.com"));
+
+        clock.addAndGet(WINDOW_MILLIS);
+        assertTrue(deduplicator.tryAdmit("203.0.113.1", "user@example.com"));
+        assertFalse(deduplicator.tryAdmit("203.0.113.1", "user@example.com"));
+    }
+
+    @Test
+    @DisplayName("should distinguish users and anonymous requests")
+    void shouldDistinguishUsers() {
+        final WindowedDeduplicator deduplicator = deduplicator(100);
+
+        assertTrue(deduplicator.tryAdmit("203.0.113.1", null));
+        assertTrue(deduplicator.tryAdmit("203.0.113.1", "a@example.com"));
+        assertTrue(deduplicator.tryAdmit("203.0.113.1", "b@example.com"));
+        assertFalse(deduplicator.tryAdmit("203.0.113.1", null));
+    }
+
+    @Test
+    @DisplayName("should sweep keys from past windows")
+    void shouldSweepPastWindows() {
+        final WindowedDeduplicator deduplicator = deduplicator(100);
+        deduplicator.tryAdmit("203.0.113.1", null);
+        deduplicator.tryAdmit("203.0.113.2", null);
+        assertEquals(2, deduplicator.size());
+
+        clock.addAndGet(WINDOW_MILLIS);
+        deduplicator.tryAdmit("203.0.113.3", null);
+
+        assertEquals(1, deduplicator.size());
+    }
+
+    @Test
+    @DisplayName("should admit untracked keys when full")
+    void shouldAdmitUntrackedWhenFull() {
+        final WindowedDeduplicator deduplicator = deduplicator(1);
+
+        assertTrue(deduplicator.tryAdmit("203.0.113.1", null));
+        assertTrue(deduplicator.tryAdmit("203.0.113.2", null));
+        assertTrue(deduplicator.tryAdmit("203.0.113.2", null));
+        assertFalse(deduplicator.tryAdmit("203.0.113.1", null));
+        assertEquals(1, deduplicator.size());
+    }
+
+    @Test
+    @DisplayName("should admit a forgotten key again")
+    void shouldAdmitForgottenKey() {
+        final WindowedDeduplicator deduplicator = deduplicator(100);
+        deduplicator.tryAdmit("203.0.113.1", "user@example.com");
+
+        deduplicator.forget("203.0.113.1", "user@example.com");
+
+        assertTrue(deduplicator.tryAdmit("203.0.113.1", "user@example.com"));
+    }
+
+    private WindowedDeduplicator deduplicator(int maxKeys) {
+        return new WindowedDeduplicator(Duration.ofMillis(WINDOW_MILLIS), maxKeys, clock::get);
+    }
+}
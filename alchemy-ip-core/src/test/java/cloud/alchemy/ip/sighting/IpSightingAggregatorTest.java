@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sighting;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpSightingAggregator}.
+ */
+@DisplayName("IpSightingAggregator")
+class IpSightingAggregatorTest {
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+    private final RecordingStore store = new RecordingStore();
+
+    @Test
+    @DisplayName("should flush one delta per IP and user with summed hits")
+    void shouldAggregatePerKey() {
+        final IpSightingAggregator aggregator = aggregator(100);
+
+        aggregator.record("203.0.113.1", "user@example.com", 1);
+        clock.addAndGet(1_000);
+        aggregator.record("203.0.113.1", "user@example.com", 4);
+        aggregator.record("203.0.113.1", null, 1);
+        aggregator.flush();
+
+        assertEquals(1, store.batches.size());
+        final List<IpSightingDelta> batch = store.batches.getFirst();
+        assertEquals(2, batch.size());
+
+        final IpSightingDelta user = find(batch, "user@example.com");
+        assertEquals(5, user.hits());
+        assertEquals(Instant.ofEpochMilli(1_700_000_000_000L), user.firstSeen());
+        assertEquals(Instant.ofEpochMilli(1_700_000_001_000L), user.lastSeen());
+
+        final IpSightingDelta anonymous = find(batch, "");
+        assertEquals(1, anonymous.hits());
+    }
+
+    @Test
+    @DisplayName("should reset counters after a flush and evict idle keys")
+    void shouldResetAndEvict() {
+        final IpSightingAggregator aggregator = aggregator(100);
+        aggregator.record("203.0.113.1", null, 3);
+        aggregator.flush();
+        assertEquals(1, aggregator.getPendingKeyCount());
+        assertEquals(3, aggregator.getFlushedHitCount());
+
+        aggregator.flush();
+
+        assertEquals(1, store.batches.size());
+        assertEquals(0, aggregator.getPendingKeyCount());
+    }
+
+    @Test
+    @DisplayName("should retry deltas on the next flush when the store fails")
+    void shouldRetryFailedFlush() {
+        final IpSightingAggregator aggregator = aggregator(100);
+        aggregator.record("203.0.113.1", null, 2);
+        store.fail = true;
+        aggregator.flush();
+        assertEquals(0, aggregator.getFlushedHitCount());
+
+        store.fail = false;
+        aggregator.record("203.0.113.1", null, 1);
+        aggregator.flush();
+
+        assertEquals(3, store.batches.getLast().getFirst().hits());
+        assertEquals(3, aggregator.getFlushedHitCount());
+    }
+
+    @Test
+    @DisplayName("should ignore non-positive hits")
+    void shouldIgnoreNonPositiveHits() {
+        final IpSightingAggregator aggregator = aggregator(100);
+        aggregator.record("203.0.113.1", null, 0);
+        aggregator.flush();
+
+        assertEquals(0, aggregator.getPendingKeyCount());
+        assertTrue(store.batches.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should flush remaining hits on stop")
+    void shouldFlushOnStop() {
+        final IpSightingAggregator aggregator = aggregator(100);
+        aggregator.start();
+        aggregator.record("203.0.113.1", null, 1);
+        aggregator.stop();
+
+        assertFalse(aggregator.isRunning());
+        assertEquals(1, aggregator.getFlushedHitCount());
+    }
+
+    @Test
+    @DisplayName("should reject invalid configuration")
+    void shouldRejectInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpSightingAggregator(store, Duration.ZERO, 100, "test"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpSightingAggregator(store, Duration.ofSeconds(1), 0, "test"));
+    }
+
+    private IpSightingAggregator aggregator(int maxKeys) {
+        return new IpSightingAggregator(store, Duration.ofHours(1), maxKeys, "test-sightings", clock::get);
+    }
+
+    private static IpSightingDelta find(List<IpSightingDelta> deltas, String userId) {
+        return deltas.stream()
+                .filter(delta -> delta.userId().equals(userId))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static final class RecordingStore implements IpSightingStore {
+        private final List<List<IpSightingDelta>> batches = new ArrayList<>();
+        private volatile boolean fail;
+
+        @Override
+        public void upsert(List<IpSightingDelta> deltas) {
+            if (fail) {
+                throw new IllegalStateException("database unavailable");
+            }
+            batches.add(List.copyOf(deltas));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sighting;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link JdbcIpSightingStore} against an in-memory H2 database.
+ */
+@DisplayName("JdbcIpSightingStore")
+class JdbcIpSightingStoreTest {
+
+    private static final Instant T0 = Instant.parse("2024-01-01T00:00:00Z");
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcIpSightingStore store;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("""
+                CREATE TABLE ip_sightings (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    ip_address VARCHAR(45) NOT NULL,
+                    user_id VARCHAR(255) NOT NULL,
+                    first_seen TIMESTAMP WITH TIME ZONE NOT NULL,
+                    last_seen TIMESTAMP WITH TIME ZONE NOT NULL,
+                    hit_count BIGINT NOT NULL,
+                    CONSTRAINT uk_ip_sightings_ip_user UNIQUE (ip_address, user_id)
+                )
+                """);
+        store = new JdbcIpSightingStore(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("should insert new sightings and accumulate existing ones")
+    void shouldInsertThenAccumulate() {
+        store.upsert(List.of(
+                new IpSightingDelta("203.0.113.1", "", T0, T0.plusSeconds(5), 3),
+                new IpSightingDelta("203.0.113.1", "user@example.com", T0, T0, 1)
+        ));
+        store.upsert(List.of(
+                new IpSightingDelta("203.0.113.1", "", T0.plusSeconds(60), T0.plusSeconds(90), 2)
+        ));
+
+        final Map<String, Object> anonymous = row("203.0.113.1", "");
+        assertEquals(5L, ((Number) anonymous.get("HIT_COUNT")).longValue());
+        assertEquals(T0, instant(anonymous.get("FIRST_SEEN")));
+        assertEquals(T0.plusSeconds(90), instant(anonymous.get("LAST_SEEN")));
+
+        assertEquals(1L, ((Number) row("203.0.113.1", "user@example.com").get("HIT_COUNT")).longValue());
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ip_sightings", Integer.class));
+    }
+
+    @Test
+    @DisplayName("should keep the earliest first_seen and latest last_seen")
+    void shouldKeepTimestampBounds() {
+        store.upsert(List.of(new IpSightingDelta("203.0.113.1", "", T0.plusSeconds(10), T0.plusSeconds(20), 1)));
+        store.upsert(List.of(new IpSightingDelta("203.0.113.1", "", T0, T0.plusSeconds(15), 1)));
+
+        final Map<String, Object> row = row("203.0.113.1", "");
+        assertEquals(T0, instant(row.get("FIRST_SEEN")));
+        assertEquals(T0.plusSeconds(20), instant(row.get("LAST_SEEN")));
+    }
+
+    @Test
+    @DisplayName("should apply nothing of an upsert that fails")
+    void shouldRollBackFailedUpsert() {
+        store.upsert(List.of(new IpSightingDelta("203.0.113.1", "", T0, T0, 1)));
+
+        assertThrows(DataAccessException.class, () -> store.upsert(List.of(
+                new IpSightingDelta("203.0.113.1", "", T0, T0, 1),
+                new IpSightingDelta("203.0.113.2", "x".repeat(300), T0, T0, 1))));
+
+        assertEquals(1L, ((Number) row("203.0.113.1", "").get("HIT_COUNT")).longValue());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ip_sightings", Integer.class));
+    }
+
+    private Map<String, Object> row(String ip, String userId) {
+        return jdbcTemplate.queryForMap(
+                "SELECT * FROM ip_sightings WHERE ip_address = ? AND user_id = ?", ip, userId);
+    }
+
+    private static Instant instant(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toInstant();
+        }
+        if (value instanceof java.time.OffsetDateTime offsetDateTime) {
+            return offsetDateTime.toInstant();
+        }
+        throw new AssertionError("Unexpected timestamp type: " + value.getClass());
+    }
+}
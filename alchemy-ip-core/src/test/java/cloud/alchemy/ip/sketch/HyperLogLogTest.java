@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link HyperLogLog}.
+ */
+@DisplayName("HyperLogLog")
+class HyperLogLogTest {
+
+    @Test
+    @DisplayName("should pick the smallest precision meeting the error bound")
+    void shouldDerivePrecisionFromError() {
+        assertEquals(14, HyperLogLog.precisionFor(0.01));
+        assertEquals(12, HyperLogLog.precisionFor(0.02));
+        assertEquals(HyperLogLog.MAX_PRECISION, HyperLogLog.precisionFor(0.0001));
+        assertEquals(HyperLogLog.MIN_PRECISION, HyperLogLog.precisionFor(0.9));
+        assertTrue(HyperLogLog.relativeError(14) <= 0.01);
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.precisionFor(0));
+    }
+
+    @Test
+    @DisplayName("should count small cardinalities almost exactly")
+    void shouldCountSmallCardinalities() {
+        final HyperLogLog sketch = new HyperLogLog(14);
+        assertEquals(0, sketch.estimate());
+        assertTrue(sketch.isEmpty());
+
+        for (int i = 0; i < 100; i++) {
+            sketch.add("10.0.0." + i);
+            sketch.add("10.0.0." + i);
+        }
+
+        assertEquals(100, sketch.estimate(), 2, "only a register collision can lose a value");
+    }
+
+    @Test
+    @DisplayName("should estimate large cardinalities within the error bound")
+    void shouldEstimateLargeCardinalities() {
+        final HyperLogLog sketch = new HyperLogLog(14);
+        for (int i = 0; i < 200_000; i++) {
+            sketch.add("user-" + i);
+        }
+
+        assertEquals(200_000, sketch.estimate(), 200_000 * 3 * sketch.getRelativeError());
+    }
+
+    @Test
+    @DisplayName("should estimate the union of merged sketches")
+    void shouldMerge() {
+        final HyperLogLog first = new HyperLogLog(12);
+        final HyperLogLog second = new HyperLogLog(12);
+        for (int i = 0; i < 30_000; i++) {
+            first.add("ip-" + i);
+            second.add("ip-" + (i + 15_000));
+        }
+
+        final HyperLogLog union = HyperLogLog.union(first, second);
+
+        assertEquals(45_000, union.estimate(), 45_000 * 3 * union.getRelativeError());
+        assertEquals(union.estimate(), HyperLogLog.union(union, second).estimate(), "merging is idempotent");
+        assertEquals(30_000, first.estimate(), 30_000 * 3 * first.getRelativeError(), "inputs are unchanged");
+    }
+
+    @Test
+    @DisplayName("should fold a sketch of higher precision into a lower one")
+    void shouldMergeDifferentPrecisions() {
+        final HyperLogLog coarse = new HyperLogLog(10);
+        final HyperLogLog fine = new HyperLogLog(14);
+        for (int i = 0; i < 50_000; i++) {
+            fine.add("ip-" + i);
+        }
+
+        final HyperLogLog union = HyperLogLog.union(fine, coarse);
+
+        assertEquals(10, union.getPrecision());
+        assertEquals(50_000, union.estimate(), 50_000 * 3 * union.getRelativeError());
+        assertThrows(IllegalArgumentException.class, () -> fine.copy().merge(coarse));
+    }
+
+    @Test
+    @DisplayName("should round-trip sparse and dense encodings")
+    void shouldRoundTripBytes() {
+        final HyperLogLog sparse = new HyperLogLog(14);
+        for (int i = 0; i < 50; i++) {
+            sparse.add("ip-" + i);
+        }
+        final HyperLogLog dense = new HyperLogLog(14);
+        for (int i = 0; i < 100_000; i++) {
+            dense.add("ip-" + i);
+        }
+
+        assertEquals(2 + 4 + 3 * 50, sparse.toBytes().length);
+        assertEquals(2 + (1 << 14) * 6 / 8, dense.toBytes().length);
+        assertEquals(sparse.estimate(), HyperLogLog.fromBytes(sparse.toBytes()).estimate());
+        assertEquals(dense.estimate(), HyperLogLog.fromBytes(dense.toBytes()).estimate());
+        assertArrayEquals(dense.toBytes(), HyperLogLog.fromBytes(dense.toBytes()).toBytes());
+    }
+
+    @Test
+    @DisplayName("should keep the registers when switching from sparse to dense")
+    void shouldMatchAcrossRepresentations() {
+        final HyperLogLog dense = new HyperLogLog(8);
+        for (int i = 0; i < 100; i++) {
+            dense.add("ip-" + i);
+        }
+        final HyperLogLog sparse = new HyperLogLog(8);
+        for (int i = 90; i < 110; i++) {
+            sparse.add("ip-" + i);
+        }
+
+        assertArrayEquals(HyperLogLog.union(dense, sparse).toBytes(), sparse.copy().merge(dense).toBytes());
+    }
+
+    @Test
+    @DisplayName("should reject malformed encodings")
+    void shouldRejectMalformedBytes() {
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{1, 14, 0}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{3, 14}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{2, 30, 0, 0, 0, 0}));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpDistinctCounter}.
+ */
+@DisplayName("IpDistinctCounter")
+class IpDistinctCounterTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-01T10:15:00Z");
+    private static final LocalDate DAY = LocalDate.parse("2024-03-01");
+
+    private final InMemoryStore store = new InMemoryStore();
+
+    @Test
+    @DisplayName("should count distinct IPs and users per scope")
+    void shouldCountPerScope() {
+        final IpDistinctCounter counter = counter();
+
+        counter.record(record("203.0.113.1", "alice", "US", "login", T0));
+        counter.record(record("203.0.113.1", "bob", "US", null, T0));
+        counter.record(record("203.0.113.2", "alice", "DE", "login", T0.plus(Duration.ofDays(1))));
+        counter.record(record("203.0.113.3", null, "DE", null, T0));
+        counter.flush();
+
+        assertEquals(3, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, ""));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.GLOBAL, null));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.DAY, IpDistinctCounter.dayKey(DAY)));
+        assertEquals(3, counter.estimateDays(IpSketchType.DISTINCT_IPS, DAY, DAY.plusDays(1)));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.TAG, "login"));
+        assertEquals(1, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.COUNTRY, "DE"));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, "alice"));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.IP, "203.0.113.1"));
+        assertEquals(0, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.IP, "203.0.113.3"),
+                "anonymous records add no users");
+        assertEquals(4, counter.getRecordedCount());
+    }
+
+    @Test
+    @DisplayName("should include pending records in estimates")
+    void shouldIncludePendingRecords() {
+        final IpDistinctCounter counter = counter();
+        counter.record(record("203.0.113.1", "alice", null, null, T0));
+        counter.flush();
+
+        counter.record(record("203.0.113.2", "alice", null, null, T0));
+
+        assertTrue(counter.getPendingKeyCount() > 0);
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, "alice"));
+        assertEquals(1, store.merges, "estimates do not flush");
+    }
+
+    @Test
+    @DisplayName("should merge pending sketches into stored ones on flush")
+    void shouldMergeIntoStore() {
+        final IpDistinctCounter counter = counter();
+        counter.record(record("203.0.113.1", null, null, null, T0));
+        counter.flush();
+        counter.record(record("203.0.113.1", null, null, null, T0));
+        counter.record(record("203.0.113.2", null, null, null, T0));
+        counter.flush();
+        counter.flush();
+
+        assertEquals(2, store.merges, "an empty flush writes nothing");
+        assertEquals(0, counter.getPendingKeyCount());
+        assertEquals(2, store.sketches.get(new IpSketchKey(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, ""))
+                .estimate());
+    }
+
+    @Test
+    @DisplayName("should retry sketches on the next flush when the store fails")
+    void shouldRetryFailedFlush() {
+        final IpDistinctCounter counter = counter();
+        counter.record(record("203.0.113.1", null, null, null, T0));
+        store.fail = true;
+        counter.flush();
+
+        store.fail = false;
+        counter.record(record("203.0.113.2", null, null, null, T0));
+        counter.flush();
+
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, ""));
+        assertEquals(0, counter.getPendingKeyCount());
+    }
+
+    @Test
+    @DisplayName("should unite sketches recorded from several threads")
+    void shouldUniteConcurrentRecords() throws InterruptedException {
+        final IpDistinctCounter counter = counter();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t * 250;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 250; i++) {
+                    final int n = offset + i;
+                    counter.record(record("10.0." + (n / 256) + "." + (n % 256), null, null, null, T0));
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final long estimate = counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, "");
+        assertTrue(Math.abs(estimate - 1000) <= 20, "estimate " + estimate);
+
+        counter.flush();
+        assertEquals(0, counter.getPendingKeyCount());
+        assertEquals(estimate, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, ""));
+    }
+
+    @Test
+    @DisplayName("should flush remaining sketches on stop")
+    void shouldFlushOnStop() {
+        final IpDistinctCounter counter = counter();
+        counter.start();
+        counter.record(record("203.0.113.1", null, null, null, T0));
+        counter.stop();
+
+        assertFalse(counter.isRunning());
+        assertEquals(1, store.merges);
+    }
+
+    @Test
+    @DisplayName("should reject invalid settings")
+    void shouldRejectInvalidSettings() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpDistinctCounter(store, 3, Duration.ofSeconds(1), 10, "test"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpDistinctCounter(store, 14, Duration.ZERO, 10, "test"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpDistinctCounter(store, 14, Duration.ofSeconds(1), 0, "test"));
+    }
+
+    private IpDistinctCounter counter() {
+        return new IpDistinctCounter(store, 14, Duration.ofHours(1), 1000, "test-sketches",
+                T0::toEpochMilli);
+    }
+
+    private static IpAddressRecord record(String ip, String userId, String country, String tag, Instant createdAt) {
+        return IpAddressRecord.builder()
+                .ipAddress(ip)
+                .userId(userId)
+                .countryCode(country)
+                .tag(tag)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private static final class InMemoryStore implements IpSketchStore<HyperLogLog> {
+
+        private final Map<IpSketchKey, HyperLogLog> sketches = new HashMap<>();
+        private int merges;
+        private boolean fail;
+
+        @Override
+        public void merge(Map<IpSketchKey, HyperLogLog> pending) {
+            if (fail) {
+                throw new IllegalStateException("store unavailable");
+            }
+            merges++;
+            pending.forEach((key, sketch) -> sketches.merge(key, sketch.copy(), HyperLogLog::union));
+        }
+
+        @Override
+        public Map<IpSketchKey, HyperLogLog> load(Collection<IpSketchKey> keys) {
+            final Map<IpSketchKey, HyperLogLog> loaded = new HashMap<>();
+            for (IpSketchKey key : keys) {
+                if (sketches.containsKey(key)) {
+                    loaded.put(key, sketches.get(key).copy());
+                }
+            }
+            return loaded;
+        }
+
+        @Override
+        public int deleteBefore(IpSketchType type, IpSketchScope scope, String keyBefore) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpHeavyHitterTracker}.
+ */
+@DisplayName("IpHeavyHitterTracker")
+class IpHeavyHitterTrackerTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-01T10:15:00Z");
+
+    private final InMemoryStore store = new InMemoryStore();
+    private final AtomicLong clock = new AtomicLong(T0.toEpochMilli());
+
+    @Test
+    @DisplayName("should rank IP addresses by record count, including pending records")
+    void shouldRankIpAddresses() {
+        final IpHeavyHitterTracker tracker = tracker();
+        record(tracker, "203.0.113.1", 1.0, T0, 3);
+        record(tracker, "203.0.113.2", 0.25, T0, 4);
+        tracker.flush();
+        record(tracker, "203.0.113.3", 1.0, T0, 2);
+
+        assertEquals(List.of(new SpaceSaving.Entry("203.0.113.2", 4, 0), new SpaceSaving.Entry("203.0.113.1", 3, 0),
+                new SpaceSaving.Entry("203.0.113.3", 2, 0)), tracker.allTime().top(10));
+        assertEquals(1, store.merges, "reads do not flush");
+    }
+
+    @Test
+    @DisplayName("should slide the window one bucket at a time and delete expired buckets")
+    void shouldSlideWindow() {
+        final IpHeavyHitterTracker tracker = tracker();
+        record(tracker, "203.0.113.1", 1.0, T0.minus(Duration.ofHours(2)), 5);
+        record(tracker, "203.0.113.2", 1.0, T0.minus(Duration.ofHours(1)), 2);
+        record(tracker, "203.0.113.3", 1.0, T0, 1);
+        tracker.flush();
+
+        assertEquals(List.of("203.0.113.1", "203.0.113.2", "203.0.113.3"), values(tracker.allTime()));
+        assertEquals(List.of("203.0.113.1", "203.0.113.2", "203.0.113.3"), values(tracker.window()));
+
+        clock.addAndGet(Duration.ofHours(1).toMillis());
+        tracker.flush();
+
+        assertEquals(List.of("203.0.113.2", "203.0.113.3"), values(tracker.window()));
+        assertEquals(3, values(tracker.allTime()).size());
+        assertFalse(store.summaries.containsKey(
+                new IpSketchKey(IpSketchType.TOP_IPS, IpSketchScope.BUCKET, "2024-03-01T08:00:00Z")));
+        assertTrue(store.summaries.containsKey(
+                new IpSketchKey(IpSketchType.TOP_IPS, IpSketchScope.BUCKET, "2024-03-01T09:00:00Z")));
+    }
+
+    @Test
+    @DisplayName("should restore the stored summaries on start")
+    void shouldRestoreOnStart() {
+        final IpHeavyHitterTracker first = tracker();
+        record(first, "203.0.113.1", 1.0, T0, 2);
+        first.flush();
+
+        final IpHeavyHitterTracker restarted = tracker();
+        assertTrue(restarted.allTime().top(10).isEmpty());
+        restarted.start();
+        try {
+            assertEquals(List.of(new SpaceSaving.Entry("203.0.113.1", 2, 0)), restarted.allTime().top(10));
+            assertEquals(List.of("203.0.113.1"), values(restarted.window()));
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("should keep pending counts when a flush fails")
+    void shouldRetryFailedFlush() {
+        final IpHeavyHitterTracker tracker = tracker();
+        record(tracker, "203.0.113.1", 1.0, T0, 2);
+        store.fail = true;
+        tracker.flush();
+
+        assertEquals(2, tracker.allTime().top(1).get(0).count());
+
+        store.fail = false;
+        tracker.flush();
+
+        assertEquals(2, tracker.allTime().top(1).get(0).count());
+        assertEquals(2, tracker.window().top(1).get(0).count());
+    }
+
+    private IpHeavyHitterTracker tracker() {
+        return new IpHeavyHitterTracker(store, 100, Duration.ofHours(3), 3, Duration.ofHours(1), 1000,
+                "test", clock::get);
+    }
+
+    private static void record(IpHeavyHitterTracker tracker, String ip, double sampleRate, Instant createdAt,
+                               int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.record(IpAddressRecord.builder()
+                    .ipAddress(ip)
+                    .sampleRate(sampleRate)
+                    .createdAt(createdAt)
+                    .build());
+        }
+    }
+
+    private static List<String> values(SpaceSaving summary) {
+        return summary.top(10).stream().map(SpaceSaving.Entry::value).toList();
+    }
+
+    private static final class InMemoryStore implements IpSketchStore<SpaceSaving> {
+
+        private final Map<IpSketchKey, SpaceSaving> summaries = new HashMap<>();
+        private int merges;
+        private boolean fail;
+
+        @Override
+        public void merge(Map<IpSketchKey, SpaceSaving> pending) {
+            if (fail) {
+                throw new IllegalStateException("store unavailable");
+            }
+            merges++;
+            pending.forEach((key, summary) -> summaries.merge(key, summary.copy(), SpaceSaving::union));
+        }
+
+        @Override
+        public Map<IpSketchKey, SpaceSaving> load(Collection<IpSketchKey> keys) {
+            final Map<IpSketchKey, SpaceSaving> loaded = new HashMap<>();
+            for (IpSketchKey key : keys) {
+                if (summaries.containsKey(key)) {
+                    loaded.put(key, summaries.get(key).copy());
+                }
+            }
+            return loaded;
+        }
+
+        @Override
+        public int deleteBefore(IpSketchType type, IpSketchScope scope, String keyBefore) {
+            final int before = summaries.size();
+            summaries.keySet().removeIf(key -> key.type() == type && key.scope() == scope
+                    && key.key().compareTo(keyBefore) < 0);
+            return before - summaries.size();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link JdbcIpSketchStore} and {@link IpSketchBackfiller} against an
+ * in-memory H2 database.
+ */
+@DisplayName("JdbcIpSketchStore")
+class JdbcIpSketchStoreTest {
+
+    private static final IpSketchKey GLOBAL_IPS =
+            new IpSketchKey(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, "");
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcIpSketchStore<HyperLogLog> store;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("""
+                CREATE TABLE ip_sketches (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    sketch_type VARCHAR(20) NOT NULL,
+                    scope VARCHAR(10) NOT NULL,
+                    scope_key VARCHAR(255) NOT NULL,
+                    sketch_data VARBINARY(262144) NOT NULL,
+                    version BIGINT NOT NULL,
+                    CONSTRAINT uk_ip_sketches_key UNIQUE (sketch_type, scope, scope_key)
+                )
+                """);
+        jdbcTemplate.execute("""
+                CREATE TABLE ip_addresses (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    ip_address VARCHAR(45) NOT NULL,
+                    user_id VARCHAR(255),
+                    tag VARCHAR(100),
+                    country_code VARCHAR(2),
+                    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+                )
+                """);
+        store = JdbcIpSketchStore.forHyperLogLog(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("should insert new sketches and merge into existing ones")
+    void shouldInsertThenMerge() {
+        store.merge(Map.of(GLOBAL_IPS, sketch("203.0.113.1", "203.0.113.2")));
+        store.merge(Map.of(GLOBAL_IPS, sketch("203.0.113.2", "203.0.113.3")));
+
+        assertEquals(3, store.load(List.of(GLOBAL_IPS)).get(GLOBAL_IPS).estimate());
+        assertEquals(1L, version(GLOBAL_IPS));
+    }
+
+    @Test
+    @DisplayName("should not write sketches the merge does not change")
+    void shouldSkipUnchangedSketches() {
+        store.merge(Map.of(GLOBAL_IPS, sketch("203.0.113.1", "203.0.113.2")));
+        store.merge(Map.of(GLOBAL_IPS, sketch("203.0.113.1")));
+
+        assertEquals(0L, version(GLOBAL_IPS));
+    }
+
+    @Test
+    @DisplayName("should merge and load more sketches than fit in one IN list")
+    void shouldMergeSeveralChunks() {
+        final Map<IpSketchKey, HyperLogLog> sketches = new HashMap<>();
+        for (int i = 0; i < 1200; i++) {
+            sketches.put(new IpSketchKey(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, "user-" + i),
+                    sketch("203.0.113." + (i % 250)));
+        }
+        sketches.put(GLOBAL_IPS, sketch("203.0.113.1"));
+        store.merge(sketches);
+        store.merge(sketches);
+
+        assertEquals(1201, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ip_sketches", Integer.class));
+        final Map<IpSketchKey, HyperLogLog> loaded = store.load(sketches.keySet());
+        assertEquals(1201, loaded.size());
+        assertEquals(1, loaded.get(new IpSketchKey(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, "user-1199"))
+                .estimate());
+    }
+
+    @Test
+    @DisplayName("should apply a merge completely or not at all")
+    void shouldRollBackFailedMerge() {
+        final Map<IpSketchKey, HyperLogLog> sketches = new LinkedHashMap<>();
+        sketches.put(GLOBAL_IPS, sketch("203.0.113.1"));
+        sketches.put(new IpSketchKey(IpSketchType.DISTINCT_IPS, IpSketchScope.USER, "x".repeat(300)),
+                sketch("203.0.113.1"));
+
+        assertThrows(DataAccessException.class, () -> store.merge(sketches));
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ip_sketches", Integer.class));
+    }
+
+    @Test
+    @DisplayName("should merge Space-Saving summaries and delete buckets before a key")
+    void shouldStoreSpaceSavingSummaries() {
+        final JdbcIpSketchStore<SpaceSaving> summaries = JdbcIpSketchStore.forSpaceSaving(jdbcTemplate);
+        final IpSketchKey oldBucket = new IpSketchKey(IpSketchType.TOP_IPS, IpSketchScope.BUCKET, "2024-03-01T09:00:00Z");
+        final IpSketchKey newBucket = new IpSketchKey(IpSketchType.TOP_IPS, IpSketchScope.BUCKET, "2024-03-01T10:00:00Z");
+        final SpaceSaving summary = new SpaceSaving(10);
+        summary.offer("203.0.113.1", 2);
+        summaries.merge(Map.of(oldBucket, summary, newBucket, summary));
+        summaries.merge(Map.of(newBucket, summary));
+
+        assertEquals(1, summaries.deleteBefore(IpSketchType.TOP_IPS, IpSketchScope.BUCKET, "2024-03-01T10:00:00Z"));
+        final Map<IpSketchKey, SpaceSaving> loaded = summaries.load(List.of(oldBucket, newBucket));
+        assertEquals(List.of(newBucket), List.copyOf(loaded.keySet()));
+        assertEquals(4, loaded.get(newBucket).top(1).get(0).count());
+    }
+
+    @Test
+    @DisplayName("should backfill sketches from the records table, idempotently")
+    void shouldBackfillFromRecords() {
+        final Instant day = Instant.parse("2024-03-01T00:00:00Z");
+        insertRecord("203.0.113.1", "alice", "US", day.plusSeconds(3_600));
+        insertRecord("203.0.113.1", "bob", "US", day.plusSeconds(7_200));
+        insertRecord("203.0.113.2", null, "DE", day.plusSeconds(86_400 + 60));
+        final IpDistinctCounter counter = new IpDistinctCounter(store, 14, Duration.ofHours(1), 1000, "test");
+        final IpSketchBackfiller backfiller = new IpSketchBackfiller(jdbcTemplate, "ip_addresses", counter);
+
+        assertEquals(3, backfiller.backfill(day, day.plus(Duration.ofDays(2))));
+        assertEquals(3, backfiller.backfill(day, day.plus(Duration.ofDays(2))));
+
+        assertEquals(0, counter.getPendingKeyCount(), "each day is flushed");
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.GLOBAL, ""));
+        assertEquals(2, counter.estimate(IpSketchType.DISTINCT_USERS, IpSketchScope.IP, "203.0.113.1"));
+        assertEquals(1, counter.estimate(IpSketchType.DISTINCT_IPS, IpSketchScope.DAY, "2024-03-02"));
+        assertThrows(IllegalArgumentException.class, () -> backfiller.backfill(day, day));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IpSketchBackfiller(jdbcTemplate, "ip_addresses; DROP", counter));
+    }
+
+    private static HyperLogLog sketch(String... values) {
+        final HyperLogLog sketch = new HyperLogLog(14);
+        for (String value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    private Long version(IpSketchKey key) {
+        return jdbcTemplate.queryForObject(
+                "SELECT version FROM ip_sketches WHERE sketch_type = ? AND scope = ? AND scope_key = ?",
+                Long.class, key.type().name(), key.scope().name(), key.key());
+    }
+
+    private void insertRecord(String ip, String userId, String country, Instant createdAt) {
+        jdbcTemplate.update("INSERT INTO ip_addresses (ip_address, user_id, country_code, created_at)"
+                + " VALUES (?, ?, ?, ?)", ip, userId, country, Timestamp.from(createdAt));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SpaceSaving}.
+ */
+@DisplayName("SpaceSaving")
+class SpaceSavingTest {
+
+    @Test
+    @DisplayName("should count exactly while below capacity")
+    void shouldCountExactlyBelowCapacity() {
+        final SpaceSaving summary = new SpaceSaving(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                summary.offer("10.0.0." + i, 1);
+            }
+        }
+        summary.offer("10.0.0.9", 3.5);
+
+        final List<SpaceSaving.Entry> top = summary.top(3);
+        assertEquals(List.of(new SpaceSaving.Entry("10.0.0.4", 5, 0), new SpaceSaving.Entry("10.0.0.3", 4, 0),
+                new SpaceSaving.Entry("10.0.0.9", 3.5, 0)), top);
+        assertEquals(6, summary.size());
+        assertEquals(18.5, summary.getTotalWeight());
+    }
+
+    @Test
+    @DisplayName("should keep every heavy hitter of a long tail within the error bound")
+    void shouldFindHeavyHittersInLongTail() {
+        final SpaceSaving summary = new SpaceSaving(50);
+        for (int i = 0; i < 20_000; i++) {
+            summary.offer("tail-" + i, 1);
+            if (i % 10 == 0) {
+                summary.offer("heavy-a", 1);
+            }
+            if (i % 20 == 0) {
+                summary.offer("heavy-b", 1);
+            }
+        }
+
+        final List<SpaceSaving.Entry> top = summary.top(2);
+        final double bound = summary.getTotalWeight() / summary.getCapacity();
+        assertEquals("heavy-a", top.get(0).value());
+        assertEquals("heavy-b", top.get(1).value());
+        assertTrue(top.get(0).count() >= 2_000 && top.get(0).count() <= 2_000 + bound);
+        assertTrue(top.get(1).count() >= 1_000 && top.get(1).count() <= 1_000 + bound);
+        assertTrue(top.get(1).error() <= bound);
+        assertEquals(50, summary.size());
+    }
+
+    @Test
+    @DisplayName("should merge summaries like the concatenated stream")
+    void shouldMerge() {
+        final SpaceSaving first = new SpaceSaving(3);
+        final SpaceSaving second = new SpaceSaving(3);
+        first.offer("a", 5);
+        first.offer("b", 2);
+        second.offer("a", 1);
+        second.offer("c", 4);
+
+        final SpaceSaving union = SpaceSaving.union(first, second);
+
+        assertEquals(List.of(new SpaceSaving.Entry("a", 6, 0), new SpaceSaving.Entry("c", 4, 0),
+                new SpaceSaving.Entry("b", 2, 0)), union.top(10));
+        assertEquals(12, union.getTotalWeight());
+        assertEquals(2, first.size(), "union leaves its inputs unchanged");
+    }
+
+    @Test
+    @DisplayName("should charge the smallest count of a full summary to values it misses")
+    void shouldChargeMissingValuesWhenFull() {
+        final SpaceSaving full = new SpaceSaving(2);
+        full.offer("a", 5);
+        full.offer("b", 3);
+        final SpaceSaving other = new SpaceSaving(2);
+        other.offer("c", 4);
+
+        full.merge(other);
+
+        assertEquals(List.of(new SpaceSaving.Entry("c", 7, 3), new SpaceSaving.Entry("a", 5, 0)), full.top(10));
+    }
+
+    @Test
+    @DisplayName("should round-trip through bytes")
+    void shouldRoundTrip() {
+        final SpaceSaving summary = new SpaceSaving(4);
+        for (int i = 0; i < 10; i++) {
+            summary.offer("2001:db8::" + (i % 6), 1 + i % 3);
+        }
+
+        final SpaceSaving decoded = SpaceSaving.fromBytes(summary.toBytes());
+
+        assertEquals(summary.top(10), decoded.top(10));
+        assertEquals(summary.getTotalWeight(), decoded.getTotalWeight());
+        assertArrayEquals(summary.toBytes(), decoded.toBytes());
+        assertThrows(IllegalArgumentException.class, () -> SpaceSaving.fromBytes(new byte[]{1, 0}));
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSaving(0));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.writer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AdaptiveBatchController}.
+ */
+@DisplayName("AdaptiveBatchController")
+class AdaptiveBatchControllerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofMillis(500).toNanos();
+
+    private final AdaptiveBatchController controller = new AdaptiveBatchController(
+            100, 10, 200,
+            Duration.ofMillis(500), Duration.ofMillis(50), Duration.ofSeconds(2),
+            Duration.ofMillis(100));
+
+    @Test
+    @DisplayName("should grow the batch size additively while a backlog remains")
+    void shouldGrowWithBacklog() {
+        controller.onFlush(FAST, 500);
+        assertEquals(110, controller.getBatchSize());
+
+        for (int i = 0; i < 20; i++) {
+            controller.onFlush(FAST, 500);
+        }
+        assertEquals(200, controller.getBatchSize());
+    }
+
+    @Test
+    @DisplayName("should keep the batch size without a backlog and shorten the interval")
+    void shouldShortenIntervalWhenIdle() {
+        controller.onFlush(FAST, 0);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(Duration.ofMillis(450).toNanos(), controller.getFlushIntervalNanos());
+
+        for (int i = 0; i < 20; i++) {
+            controller.onFlush(FAST, 0);
+        }
+        assertEquals(Duration.ofMillis(50).toNanos(), controller.getFlushIntervalNanos());
+    }
+
+    @Test
+    @DisplayName("should halve the batch size and double the interval on slow flushes")
+    void shouldBackOffOnSlowFlush() {
+        controller.onFlush(SLOW, 500);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(Duration.ofSeconds(1).toNanos(), controller.getFlushIntervalNanos());
+
+        for (int i = 0; i < 10; i++) {
+            controller.onFailure();
+        }
+        assertEquals(10, controller.getBatchSize());
+        assertEquals(Duration.ofSeconds(2).toNanos(), controller.getFlushIntervalNanos());
+    }
+
+    @Test
+    @DisplayName("should never change a fixed controller")
+    void shouldKeepFixedValues() {
+        final AdaptiveBatchController fixed = AdaptiveBatchController.fixed(100, Duration.ofMillis(500));
+
+        fixed.onFlush(FAST, 1000);
+        fixed.onFlush(Long.MAX_VALUE, 0);
+        fixed.onFailure();
+
+        assertEquals(100, fixed.getBatchSize());
+        assertEquals(Duration.ofMillis(500).toNanos(), fixed.getFlushIntervalNanos());
+    }
+
+    @Test
+    @DisplayName("should clamp initial values and reject invalid bounds")
+    void shouldValidateBounds() {
+        final AdaptiveBatchController clamped = new AdaptiveBatchController(
+                5000, 10, 200,
+                Duration.ofMillis(1), Duration.ofMillis(50), Duration.ofSeconds(2),
+                Duration.ofMillis(100));
+        assertEquals(200, clamped.getBatchSize());
+        assertEquals(Duration.ofMillis(50).toNanos(), clamped.getFlushIntervalNanos());
+
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchController(
+                100, 300, 200, Duration.ofMillis(500), Duration.ofMillis(50), Duration.ofSeconds(2),
+                Duration.ofMillis(100)));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchController(
+                100, 10, 200, Duration.ofMillis(500), Duration.ZERO, Duration.ofSeconds(2),
+                Duration.ofMillis(100)));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.writer;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import cloud.alchemy.ip.service.IpAddressStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IpRecordWriter}.
+ */
+@DisplayName("IpRecordWriter")
+class IpRecordWriterTest {
+
+    private final BatchRecordingStorageService storageService = new BatchRecordingStorageService();
+    private IpRecordWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("should flush a full batch in a single storeAll call")
+    void shouldFlushFullBatch() {
+        writer = new IpRecordWriter(storageService, 100, 3, Duration.ofMinutes(1), "test-writer");
+        writer.start();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(writer.submit(record("10.0.0." + i)));
+        }
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> writer.getWrittenCount() == 3);
+        assertEquals(1, storageService.batches.size());
+        assertEquals(3, storageService.batches.getFirst().size());
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    @DisplayName("should flush a partial batch after the flush interval")
+    void shouldFlushPartialBatchAfterInterval() {
+        writer = new IpRecordWriter(storageService, 100, 50, Duration.ofMillis(50), "test-writer");
+        writer.start();
+
+        writer.submit(record("10.0.0.1"));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> writer.getWrittenCount() == 1);
+        assertEquals("10.0.0.1", storageService.batches.getFirst().getFirst().getIpAddress());
+    }
+
+    @Test
+    @DisplayName("should drop records when the buffer is full")
+    void shouldDropWhenFull() {
+        writer = new IpRecordWriter(storageService, 2, 10, Duration.ofMinutes(1), "test-writer");
+        writer.start();
+
+        assertTrue(writer.submit(record("10.0.0.1")));
+        assertTrue(writer.submit(record("10.0.0.2")));
+        assertFalse(writer.submit(record("10.0.0.3")));
+
+        assertEquals(2, writer.getPendingCount());
+        assertEquals(1, writer.getDroppedCount());
+    }
+
+    @Test
+    @DisplayName("should drop records beyond the byte bound and release bytes once flushed")
+    void shouldBoundBufferedBytes() {
+        final IpAddressRecord heavy = IpAddressRecord.builder()
+                .ipAddress("10.0.0.1")
+                .requestPath("/" + "x".repeat(2048))
+                .userAgent("y".repeat(512))
+                .build();
+        final long heavyBytes = RecordSizeEstimator.estimate(heavy);
+        writer = new IpRecordWriter(storageService, 100, heavyBytes * 2, 1,
+                () -> AdaptiveBatchController.fixed(10, Duration.ofMinutes(1)), "test-writer");
+        writer.start();
+
+        assertTrue(writer.submit(heavy));
+        assertTrue(writer.submit(heavy));
+        assertFalse(writer.submit(heavy));
+        assertFalse(writer.submit(record("10.0.0.2")));
+        assertEquals(heavyBytes * 2, writer.getBufferedBytes());
+        assertEquals(2, writer.getDroppedCount());
+
+        writer.stop();
+
+        assertEquals(0, writer.getBufferedBytes());
+        assertEquals(2, writer.getWrittenCount());
+    }
+
+    @Test
+    @DisplayName("should reject records when not running")
+    void shouldRejectWhenNotRunning() {
+        writer = new IpRecordWriter(storageService, 100, 10, Duration.ofMinutes(1), "test-writer");
+
+        assertFalse(writer.submit(record("10.0.0.1")));
+        writer.start();
+        writer.stop();
+        assertFalse(writer.submit(record("10.0.0.2")));
+
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(2, writer.getDroppedCount());
+        assertTrue(storageService.batches.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should drain buffered records on stop")
+    void shouldDrainOnStop() {
+        writer = new IpRecordWriter(storageService, 100, 50, Duration.ofMinutes(1), "test-writer");
+        writer.start();
+        for (int i = 0; i < 10; i++) {
+            writer.submit(record("10.0.0." + i));
+        }
+
+        writer.stop();
+
+        assertFalse(writer.isRunning());
+        assertEquals(10, writer.getWrittenCount());
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    @DisplayName("should count records of a failed batch and keep running")
+    void shouldCountFailedBatch() {
+        storageService.failNext = true;
+        writer = new IpRecordWriter(storageService, 100, 1, Duration.ofMinutes(1), "test-writer");
+        writer.start();
+
+        writer.submit(record("10.0.0.1"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> writer.getFailedCount() == 1);
+
+        writer.submit(record("10.0.0.2"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> writer.getWrittenCount() == 1);
+    }
+
+    @Test
+    @DisplayName("should store each IP on a single lane in submission order")
+    void shouldPartitionLanesByIp() {
+        writer = new IpRecordWriter(storageService, 1000, 4,
+                () -> AdaptiveBatchController.fixed(7, Duration.ofMillis(20)), "test-writer");
+        writer.start();
+
+        for (int i = 0; i < 200; i++) {
+            writer.submit(IpAddressRecord.builder()
+                    .ipAddress("10.0.0." + (i % 20))
+                    .requestPath("/" + i)
+                    .build());
+        }
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> writer.getWrittenCount() == 200);
+        assertEquals(4, writer.getLaneCount());
+        storageService.threadsByIp.forEach((ip, threads) -> assertEquals(1, threads.size(), ip));
+        assertTrue(storageService.threadsByIp.values().stream().flatMap(Set::stream).distinct().count() > 1);
+
+        final Map<String, Integer> lastSequence = new ConcurrentHashMap<>();
+        for (List<IpAddressRecord> batch : storageService.batches) {
+            for (IpAddressRecord stored : batch) {
+                final int sequence = Integer.parseInt(stored.getRequestPath().substring(1));
+                final Integer previous = lastSequence.put(stored.getIpAddress(), sequence);
+                assertTrue(previous == null || previous < sequence, stored.getIpAddress());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should reject invalid lane count")
+    void shouldRejectInvalidLaneCount() {
+        assertThrows(IllegalArgumentException.class, () -> new IpRecordWriter(storageService, 100, 0,
+                () -> AdaptiveBatchController.fixed(1, Duration.ofMillis(20)), "test-writer"));
+    }
+
+    private static IpAddressRecord record(String ipAddress) {
+        return IpAddressRecord.builder().ipAddress(ipAddress).build();
+    }
+
+    private static class BatchRecordingStorageService implements IpAddressStorageService {
+        final List<List<IpAddressRecord>> batches = new CopyOnWriteArrayList<>();
+        final Map<String, Set<String>> threadsByIp = new ConcurrentHashMap<>();
+        volatile boolean failNext;
+
+        @Override
+        public List<IpAddressRecord> storeAll(List<IpAddressRecord> records) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("database unavailable");
+            }
+            batches.add(List.copyOf(records));
+            final String thread = Thread.currentThread().getName();
+            records.forEach(r -> threadsByIp.computeIfAbsent(r.getIpAddress(), ip -> ConcurrentHashMap.newKeySet())
+                    .add(thread));
+            return records;
+        }
+
+        @Override
+        public Optional<IpAddressRecord> store(IpAddressRecord record) {
+            return Optional.of(record);
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeAsync(IpAddressRecord record) {
+            return CompletableFuture.completedFuture(Optional.of(record));
+        }
+
+        @Override
+        public Optional<IpAddressRecord> storeFromRequest(HttpServletRequest request, String userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public CompletableFuture<Optional<IpAddressRecord>> storeFromRequestAsync(HttpServletRequest request,
+                                                                                  String userId) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+}
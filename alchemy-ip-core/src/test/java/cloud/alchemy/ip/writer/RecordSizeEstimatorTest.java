@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024 Alchemy Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.alchemy.ip.writer;
+
+import cloud.alchemy.ip.entity.IpAddressRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RecordSizeEstimator}.
+ */
+@DisplayName("RecordSizeEstimator")
+class RecordSizeEstimatorTest {
+
+    @Test
+    @DisplayName("should grow with the length of string fields")
+    void shouldGrowWithStringFields() {
+        final IpAddressRecord bare = IpAddressRecord.builder().ipAddress("10.0.0.1").build();
+        final IpAddressRecord heavy = bare.toBuilder()
+                .requestPath("/" + "x".repeat(2047))
+                .userAgent("y".repeat(512))
+                .build();
+
+        final long bareBytes = RecordSizeEstimator.estimate(bare);
+        assertEquals(RecordSizeEstimator.FIXED_BYTES + RecordSizeEstimator.STRING_OVERHEAD_BYTES + 16, bareBytes);
+        assertEquals(bareBytes + 2 * RecordSizeEstimator.STRING_OVERHEAD_BYTES + 2 * (2048 + 512),
+                RecordSizeEstimator.estimate(heavy));
+    }
+}
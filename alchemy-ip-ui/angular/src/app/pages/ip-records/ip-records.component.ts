@@ -105,7 +105,7 @@ import { IpRecord, IpRecordDetail, PageResponse, SearchCriteria } from '../../sh
         <!-- Pagination -->
         <div class="pagination" *ngIf="totalElements > 0">
           <span class="pagination-info">
-            Showing {{ (currentPage * pageSize) + 1 }} - {{ Math.min((currentPage + 1) * pageSize, totalElements) }} of {{ totalElements }}
+            Showing {{ (currentPage * pageSize) + 1 }} - {{ Math.min((currentPage + 1) * pageSize, totalElements) }} of {{ approximateTotal ? '~' : '' }}{{ totalElements }}
           </span>
           <div class="pagination-controls">
             <button [disabled]="currentPage === 0" (click)="goToPage(0)">First</button>
@@ -428,6 +428,9 @@ export class IpRecordsComponent implements OnInit {
   pageSize = 20;
   totalElements = 0;
   totalPages = 0;
+  approximateTotal = false;
+  // Cursor of each page reached with Next, so deep pages are read by keyset instead of offset
+  pageCursors: (string | undefined)[] = [];
 
   // Sorting
   sortField = 'createdAt';
@@ -453,16 +456,23 @@ export class IpRecordsComponent implements OnInit {
     this.error = null;
 
     const hasFilters = Object.values(this.searchCriteria).some(v => v && v !== '');
+    const page = this.currentPage;
+    const cursor = this.pageCursors[page];
 
     const request = hasFilters
-      ? this.ipRecordService.searchRecords(this.searchCriteria, this.currentPage, this.pageSize, this.sortField, this.sortDirection)
-      : this.ipRecordService.getRecords(this.currentPage, this.pageSize, this.sortField, this.sortDirection);
+      ? this.ipRecordService.searchRecords(this.searchCriteria, page, this.pageSize, this.sortField, this.sortDirection, cursor)
+      : this.ipRecordService.getRecords(page, this.pageSize, this.sortField, this.sortDirection, cursor);
 
     request.subscribe({
       next: (response) => {
         this.records = response.content;
-        this.totalElements = response.totalElements;
-        this.totalPages = response.totalPages;
+        // Cursor pages carry no totals; keep those of the last numbered page
+        if (response.totalElements >= 0) {
+          this.totalElements = response.totalElements;
+          this.totalPages = response.totalPages;
+          this.approximateTotal = !!response.approximateTotal;
+        }
+        this.pageCursors[page + 1] = response.nextCursor ?? undefined;
         this.loading = false;
       },
       error: (err) => {
@@ -479,12 +489,14 @@ export class IpRecordsComponent implements OnInit {
 
   applyFilters(): void {
     this.currentPage = 0;
+    this.pageCursors = [];
     this.loadRecords();
   }
 
   clearFilters(): void {
     this.searchCriteria = {};
     this.currentPage = 0;
+    this.pageCursors = [];
     this.loadRecords();
   }
 
@@ -495,6 +507,7 @@ export class IpRecordsComponent implements OnInit {
       this.sortField = field;
       this.sortDirection = 'DESC';
     }
+    this.pageCursors = [];
     this.loadRecords();
   }
 
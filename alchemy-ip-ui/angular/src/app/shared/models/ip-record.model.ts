@@ -27,6 +27,8 @@ export interface PageResponse<T> {
   totalPages: number;
   first: boolean;
   last: boolean;
+  nextCursor?: string | null;
+  approximateTotal?: boolean;
 }
 
 export interface IpStats {
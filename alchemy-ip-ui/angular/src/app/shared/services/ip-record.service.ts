@@ -23,12 +23,15 @@ export class IpRecordService {
   constructor(private http: HttpClient) {}
 
   // Records endpoints
-  getRecords(page: number = 0, size: number = 20, sortBy: string = 'createdAt', direction: string = 'DESC'): Observable<PageResponse<IpRecord>> {
-    const params = new HttpParams()
+  getRecords(page: number = 0, size: number = 20, sortBy: string = 'createdAt', direction: string = 'DESC', cursor?: string): Observable<PageResponse<IpRecord>> {
+    let params = new HttpParams()
       .set('page', page.toString())
       .set('size', size.toString())
       .set('sortBy', sortBy)
       .set('direction', direction);
+    if (cursor !== undefined) {
+      params = params.set('cursor', cursor);
+    }
     return this.http.get<PageResponse<IpRecord>>(`${this.baseUrl}/records`, { params });
   }
 
@@ -73,12 +76,15 @@ export class IpRecordService {
     return this.http.get<PageResponse<IpRecord>>(`${this.baseUrl}/records/date-range`, { params });
   }
 
-  searchRecords(criteria: SearchCriteria, page: number = 0, size: number = 20, sortBy: string = 'createdAt', direction: string = 'DESC'): Observable<PageResponse<IpRecord>> {
-    const params = new HttpParams()
+  searchRecords(criteria: SearchCriteria, page: number = 0, size: number = 20, sortBy: string = 'createdAt', direction: string = 'DESC', cursor?: string): Observable<PageResponse<IpRecord>> {
+    let params = new HttpParams()
       .set('page', page.toString())
       .set('size', size.toString())
       .set('sortBy', sortBy)
       .set('direction', direction);
+    if (cursor !== undefined) {
+      params = params.set('cursor', cursor);
+    }
     return this.http.post<PageResponse<IpRecord>>(`${this.baseUrl}/records/search`, criteria, { params });
   }
 